@@ -4,10 +4,11 @@ import com.bot.aabot.context.ConstructionEventContext;
 import com.bot.aabot.initializer.BotContext;
 import com.bot.aabot.service.*;
 import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.MessagesUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.abilitybots.api.bot.AbilityBot;
 import org.telegram.telegrambots.abilitybots.api.objects.Ability;
@@ -16,19 +17,20 @@ import org.telegram.telegrambots.abilitybots.api.objects.MessageContext;
 import org.telegram.telegrambots.abilitybots.api.objects.Privacy;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.Serializable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import java.util.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 
 import static org.telegram.telegrambots.abilitybots.api.objects.Locality.ALL;
 import static org.telegram.telegrambots.abilitybots.api.objects.Privacy.PUBLIC;
@@ -57,15 +59,33 @@ public class TgBot extends AbilityBot{
     private org.springframework.jdbc.core.JdbcTemplate jdbcTemplate;
     @Autowired
     private com.bot.aabot.config.BotConfig botConfig;
+    @Autowired
+    private UpdateDispatcher updateDispatcher;
+    @Autowired
+    private DependencyLimiter dependencyLimiter;
+    @Autowired
+    private UpdateBatchService updateBatchService;
+    @Autowired
+    private UpdateJournal updateJournal;
+    @Autowired
+    private TelegramSendGateway telegramSendGateway;
+    @Autowired
+    private ForbiddenWordService forbiddenWordService;
+    @Autowired
+    private FloodLimiter floodLimiter;
+    @Autowired
+    private MessageSearchService messageSearchService;
 
 
-    // 并发处理配置
-    
-    @Value("${bot.concurrency.message-timeout:30000}")
-    private long messageTimeout;
+    @Value("${bot.polling.batch-mode:false}")
+    private boolean batchMode;
 
-    protected TgBot() {
-        super(new OkHttpTelegramClient("7647087531:AAEgk9kpws5RXS0pQg_iauLR1TT75JVjHXU"), "Tgbot");
+    /**
+     * 容器中存在 TelegramClient 实例时优先使用（如基准测试中的桩客户端），否则创建默认客户端
+     */
+    @Autowired
+    protected TgBot(ObjectProvider<TelegramClient> telegramClientProvider) {
+        super(telegramClientProvider.getIfAvailable(() -> new OkHttpTelegramClient("7647087531:AAEgk9kpws5RXS0pQg_iauLR1TT75JVjHXU")), "Tgbot");
     }
 
 
@@ -77,230 +97,570 @@ public class TgBot extends AbilityBot{
 
     @Override
     public void consume(Update update) {
+        // 先写入预写日志，再进行分发
+        UpdateJournal.Ticket ticket = updateJournal.append(update);
+        if (ticket == null) {
+            return; // 重复投递的更新
+        }
+        processUpdate(update, ticket);
+    }
+
+    /**
+     * 重放预写日志中上次运行未完成的更新，只执行尚未完成的阶段
+     * 需在开始接收新更新之前调用，以保证会话内顺序
+     */
+    public void replayJournal() {
+        List<Map.Entry<Update, UpdateJournal.Ticket>> entries = updateJournal.drainPendingReplay();
+        if (entries.isEmpty()) {
+            return;
+        }
+        LoggingUtils.logSystemStatus(String.format("开始重放预写日志中未完成的更新: %d 条", entries.size()));
+        for (Map.Entry<Update, UpdateJournal.Ticket> entry : entries) {
+            processUpdate(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 处理单条更新：广告过滤后按优先级分发各阶段
+     */
+    private void processUpdate(Update update, UpdateJournal.Ticket ticket) {
         long startTime = System.currentTimeMillis();
         String userId = update.hasMessage() ? String.valueOf(update.getMessage().getFrom().getId()) : "unknown";
 
         try {
             // 第零层：广告消息过滤（同步处理）
-            if (messageStorageService.checkAndHandleSpamMessage(update)) {
-                LoggingUtils.logSecurityEvent("SPAM_BLOCKED", userId, "广告消息已被拦截并处理");
-                LoggingUtils.logPerformance("spam_filter", startTime);
-                return; // 拦截广告消息，不继续处理
+            if (!ticket.isDone(UpdateJournal.Stage.SPAM_CHECK)) {
+                ticket.require(UpdateJournal.Stage.SPAM_CHECK);
+                if (messageStorageService.checkAndHandleSpamMessage(update)) {
+                    ticket.markDone(UpdateJournal.Stage.SPAM_CHECK);
+                    LoggingUtils.logSecurityEvent("SPAM_BLOCKED", userId, "广告消息已被拦截并处理");
+                    LoggingUtils.logPerformance("spam_filter", startTime);
+                    return; // 拦截广告消息，不继续处理
+                }
+                ticket.markDone(UpdateJournal.Stage.SPAM_CHECK);
             }
             
             // 第一层：快速预处理和分发
             LoggingUtils.logOperation("MESSAGE_RECEIVED", userId, "开始处理消息更新");
+            long chatId = UpdateDispatcher.resolveChatId(update);
             
-            // 异步处理构造事件
-            if (update.hasMessage() && ConstructionEventContext.creator_id != null && 
-                ConstructionEventContext.creator_id.equals(String.valueOf(update.getMessage().getFrom().getId())) && 
-                ConstructionEventContext.chatId != null && 
-                ConstructionEventContext.chatId.equals(String.valueOf(update.getMessage().getChatId()))) {
-//
-                processConstructionEventAsync(update);
+            // 处理构造事件
+            if (isConstructionEvent(update)) {
+                dispatchStage(ticket, chatId, UpdateDispatcher.Priority.MODERATION, UpdateJournal.Stage.CONSTRUCTION_EVENT,
+                        () -> processConstructionEvent(update));
             }else{
-                // 第二层：异步处理核心业务逻辑
-                processMessageAsync(update);
-
-                // 第三层：异步处理各种消息类型
-                if (update.hasMessage()) {
-                    processRegularMessageAsync(update);
-                } else if (update.hasEditedMessage()) {
-                    processEditedMessageAsync(update);
-                } else if (update.hasCallbackQuery()) {
-                    processCallbackQueryAsync(update);
-                } else if (update.getMessageReaction() != null) {
-                    processMessageReactionAsync(update);
-                }
+                // 第二层：按会话分片并按优先级分发各处理阶段
+                dispatchStages(update, chatId, false, isFloodThrottled(update), ticket);
             }
             LoggingUtils.logPerformance("consume", startTime);
         } catch (Exception e) {
             LoggingUtils.logError("BOT_CONSUME_ERROR", "处理更新消息失败", e);
+        } finally {
+            ticket.release();
         }
     }
 
     /**
-     * 异步处理构造事件
+     * 批量消费一次长轮询返回的更新
+     * 批量模式下按会话分组，每组在同一通道内用一个事务完成持久化与积分，其余阶段按优先级单独分发
      */
-    @Async("botAsyncExecutor")
-    public void processConstructionEventAsync(Update update) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                scoreService.addEvent(update.getMessage().getText());
-            } catch (Exception e) {
-                LoggingUtils.logError("CONSTRUCTION_EVENT_ERROR", "处理构造事件失败", e);
+    @Override
+    public void consume(List<Update> updates) {
+        // 先写入预写日志，再进行分发
+        List<Map.Entry<Update, UpdateJournal.Ticket>> entries = new ArrayList<>(updates.size());
+        for (Update update : updates) {
+            UpdateJournal.Ticket ticket = updateJournal.append(update);
+            if (ticket != null) {
+                entries.add(Map.entry(update, ticket));
             }
-        }).orTimeout(messageTimeout, TimeUnit.MILLISECONDS)
-        .exceptionally(throwable -> {
-            LoggingUtils.logError("CONSTRUCTION_EVENT_TIMEOUT", "构造事件处理超时", (Exception) throwable);
-            return null;
-        });
+        }
+        consumeJournaled(entries);
     }
 
     /**
-     * 异步处理核心消息逻辑
+     * 批量消费已写入预写日志的更新（Webhook 模式下接口应答前已完成追加）
+     * @param entries 更新及其日志确认凭据
      */
-    @Async("botAsyncExecutor")
-    public void processMessageAsync(Update update) {
-        String userId = update.hasMessage() ? String.valueOf(update.getMessage().getFrom().getId()) : "unknown";
-        
-        CompletableFuture.runAsync(() -> {
+    public void consumeJournaled(List<Map.Entry<Update, UpdateJournal.Ticket>> entries) {
+        if (!batchMode || entries.size() <= 1) {
+            entries.forEach(entry -> processUpdate(entry.getKey(), entry.getValue()));
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Map<Long, List<Update>> groups = new LinkedHashMap<>();
+        Map<Long, List<UpdateJournal.Ticket>> groupTickets = new HashMap<>();
+        for (Map.Entry<Update, UpdateJournal.Ticket> entry : entries) {
+            Update update = entry.getKey();
+            UpdateJournal.Ticket ticket = entry.getValue();
+            String userId = update.hasMessage() ? String.valueOf(update.getMessage().getFrom().getId()) : "unknown";
             try {
-                // 积分相关逻辑
-                scoreService.processMessage(update);
+                // 广告消息过滤（同步处理）
+                ticket.require(UpdateJournal.Stage.SPAM_CHECK);
+                if (messageStorageService.checkAndHandleSpamMessage(update)) {
+                    ticket.markDone(UpdateJournal.Stage.SPAM_CHECK);
+                    LoggingUtils.logSecurityEvent("SPAM_BLOCKED", userId, "广告消息已被拦截并处理");
+                    continue;
+                }
+                ticket.markDone(UpdateJournal.Stage.SPAM_CHECK);
+                long chatId = UpdateDispatcher.resolveChatId(update);
+                if (isConstructionEvent(update)) {
+                    dispatchStage(ticket, chatId, UpdateDispatcher.Priority.MODERATION, UpdateJournal.Stage.CONSTRUCTION_EVENT,
+                            () -> processConstructionEvent(update));
+                    continue;
+                }
+                // 被限流的消息不计积分，不进入批量处理，单独分发持久化阶段
+                boolean throttled = isFloodThrottled(update);
+                if (!throttled && (update.hasMessage() || update.hasEditedMessage() || update.getMessageReaction() != null)) {
+                    requireBatchStages(update, ticket);
+                    ticket.retain();
+                    groups.computeIfAbsent(chatId, k -> new ArrayList<>()).add(update);
+                    groupTickets.computeIfAbsent(chatId, k -> new ArrayList<>()).add(ticket);
+                }
+                dispatchStages(update, chatId, !throttled, throttled, ticket);
             } catch (Exception e) {
-                LoggingUtils.logError("SCORE_PROCESS_ERROR", "处理积分逻辑失败", e);
+                LoggingUtils.logError("BOT_CONSUME_ERROR", "处理更新消息失败", e);
+            } finally {
+                ticket.release();
+            }
+        }
+        groups.forEach((chatId, group) -> {
+            List<UpdateJournal.Ticket> tickets = groupTickets.get(chatId);
+            boolean accepted = updateDispatcher.dispatch(chatId, UpdateDispatcher.Priority.PERSISTENCE,
+                    "update_batch", () -> processUpdateBatch(group, tickets));
+            if (!accepted) {
+                tickets.forEach(UpdateJournal.Ticket::release);
             }
-        }).orTimeout(messageTimeout, TimeUnit.MILLISECONDS)
-        .exceptionally(throwable -> {
-            LoggingUtils.logError("MESSAGE_PROCESS_TIMEOUT", "消息处理超时", (Exception) throwable);
-            return null;
         });
+        LoggingUtils.logOperation("BATCH_RECEIVED", "SYSTEM",
+                String.format("批量接收更新 - 更新数: %d, 会话数: %d", entries.size(), groups.size()));
+        LoggingUtils.logPerformance("consume_batch", startTime);
     }
 
     /**
-     * 异步处理普通消息
+     * 登记批量处理负责的阶段
      */
-    @Async("botAsyncExecutor")
-    public void processRegularMessageAsync(Update update) {
-        String userId = String.valueOf(update.getMessage().getFrom().getId());
-        
-        CompletableFuture.runAsync(() -> {
+    private static void requireBatchStages(Update update, UpdateJournal.Ticket ticket) {
+        if (update.hasMessage()) {
+            ticket.require(UpdateJournal.Stage.SAVE_MESSAGE);
+            ticket.require(UpdateJournal.Stage.SCORE);
+        } else if (update.hasEditedMessage()) {
+            ticket.require(UpdateJournal.Stage.EDIT_MESSAGE);
+        } else {
+            ticket.require(UpdateJournal.Stage.SCORE);
+        }
+    }
+
+    /**
+     * 按优先级分发一条更新的各处理阶段：
+     * 管理指令与审核回调 > 消息持久化与积分 > 表情与回调 > AI回答（独立的AI通道）
+     * @param persistedInBatch 为true时持久化与积分已由批量处理负责，不再单独分发
+     * @param throttled 为true时用户被刷屏限流，只保存消息和处理指令，跳过积分与AI
+     */
+    private void dispatchStages(Update update, long chatId, boolean persistedInBatch, boolean throttled,
+                                UpdateJournal.Ticket ticket) {
+        if (update.hasMessage()) {
+            if (!persistedInBatch) {
+                dispatchAsyncStage(ticket, chatId, UpdateDispatcher.Priority.PERSISTENCE, UpdateJournal.Stage.SAVE_MESSAGE,
+                        () -> processRegularMessage(update));
+                if (!throttled) {
+                    // 积分与消息保存在同一队列，按消息顺序执行
+                    dispatchAsyncStage(ticket, chatId, UpdateDispatcher.Priority.PERSISTENCE, UpdateJournal.Stage.SCORE,
+                            () -> processScore(update));
+                }
+            }
+            // 管理员指令优先处理，普通消息的AbilityBot处理随持久化一起
+            dispatchStage(ticket, chatId,
+                    isCommand(update) ? UpdateDispatcher.Priority.MODERATION : UpdateDispatcher.Priority.PERSISTENCE,
+                    UpdateJournal.Stage.ABILITY, () -> processAbility(update));
+            if (update.getMessage().hasText() && !throttled) {
+                dispatchAiStage(ticket, chatId, update);
+            }
+        } else if (update.hasEditedMessage()) {
+            if (!persistedInBatch) {
+                dispatchAsyncStage(ticket, chatId, UpdateDispatcher.Priority.PERSISTENCE, UpdateJournal.Stage.EDIT_MESSAGE,
+                        () -> processEditedMessage(update));
+            }
+        } else if (update.hasCallbackQuery()) {
+            String callbackData = update.getCallbackQuery().getData();
+            // 广告处理相关的管理员回调优先处理
+            UpdateDispatcher.Priority priority = callbackData != null && callbackData.startsWith("SPAM_")
+                    ? UpdateDispatcher.Priority.MODERATION : UpdateDispatcher.Priority.SCORING;
+            dispatchStage(ticket, chatId, priority, UpdateJournal.Stage.CALLBACK_QUERY, () -> processCallbackQuery(update));
+        } else if (update.getMessageReaction() != null) {
+            if (!persistedInBatch) {
+                dispatchAsyncStage(ticket, chatId, UpdateDispatcher.Priority.PERSISTENCE, UpdateJournal.Stage.SCORE,
+                        () -> processScore(update));
+            }
+            dispatchStage(ticket, chatId, UpdateDispatcher.Priority.SCORING, UpdateJournal.Stage.MESSAGE_REACTION,
+                    () -> processMessageReaction(update));
+        }
+    }
+
+    /**
+     * 群消息是否因发送过快被限流
+     */
+    private boolean isFloodThrottled(Update update) {
+        if (!update.hasMessage() || update.getMessage().getFrom() == null) {
+            return false;
+        }
+        Message message = update.getMessage();
+        if (!message.getChat().isGroupChat() && !message.getChat().isSuperGroupChat()) {
+            return false;
+        }
+        return floodLimiter.isThrottled(message.getChatId(), message.getFrom().getId());
+    }
+
+    /**
+     * 分发单个处理阶段，阶段完成后在预写日志中确认；抛出异常或未能投递的阶段不确认，记录保留到下次启动重放
+     */
+    private void dispatchStage(UpdateJournal.Ticket ticket, long chatId, UpdateDispatcher.Priority priority,
+                               UpdateJournal.Stage stage, Runnable task) {
+        if (ticket.isDone(stage)) {
+            return; // 重放时跳过已完成的阶段
+        }
+        ticket.require(stage);
+        ticket.retain();
+        boolean accepted = updateDispatcher.dispatch(chatId, priority, stage.stageName(), () -> {
             try {
-                // 消息保存
-                messageStorageService.saveMessage(update);
-                
-                // 处理AbilityBot的消息处理
-                super.consume(update);
-                
-                LoggingUtils.logOperation("REGULAR_MESSAGE_PROCESSED", userId, "普通消息处理完成");
-            } catch (Exception e) {
-                LoggingUtils.logError("REGULAR_MESSAGE_ERROR", "处理普通消息失败", e);
+                task.run();
+                ticket.markDone(stage);
+            } finally {
+                ticket.release();
             }
-        }).orTimeout(messageTimeout, TimeUnit.MILLISECONDS)
-        .exceptionally(throwable -> {
-            LoggingUtils.logError("REGULAR_MESSAGE_TIMEOUT", "普通消息处理超时", (Exception) throwable);
-            return null;
         });
+        if (!accepted) {
+            ticket.release();
+        }
     }
 
     /**
-     * 异步处理编辑消息
+     * 分发AI回答阶段；AI队列已满时降级为不调用大模型、只记录会话上下文，在持久化队列中执行
      */
-    @Async("botAsyncExecutor")
-    public void processEditedMessageAsync(Update update) {
-        String userId = String.valueOf(update.getEditedMessage().getFrom().getId());
-        
-        CompletableFuture.runAsync(() -> {
+    private void dispatchAiStage(UpdateJournal.Ticket ticket, long chatId, Update update) {
+        if (ticket.isDone(UpdateJournal.Stage.AI_RESPONSE)) {
+            return;
+        }
+        ticket.require(UpdateJournal.Stage.AI_RESPONSE);
+        ticket.retain();
+        boolean accepted = updateDispatcher.dispatch(chatId, UpdateDispatcher.Priority.AI,
+                UpdateJournal.Stage.AI_RESPONSE.stageName(), () -> {
+                    try {
+                        messageStorageService.processTextMessage(update);
+                        ticket.markDone(UpdateJournal.Stage.AI_RESPONSE);
+                    } finally {
+                        ticket.release();
+                    }
+                });
+        if (!accepted) {
+            dispatchStage(ticket, chatId, UpdateDispatcher.Priority.PERSISTENCE, UpdateJournal.Stage.AI_RESPONSE,
+                    () -> messageStorageService.processTextMessageDegraded(update));
+            ticket.release();
+        }
+    }
+
+    /**
+     * 分发异步完成的处理阶段（消息日志组提交、积分事务），在写入事务提交后才确认，写入失败时不确认以便重放
+     */
+    private void dispatchAsyncStage(UpdateJournal.Ticket ticket, long chatId, UpdateDispatcher.Priority priority,
+                                    UpdateJournal.Stage stage, Supplier<CompletableFuture<Void>> task) {
+        if (ticket.isDone(stage)) {
+            return; // 重放时跳过已完成的阶段
+        }
+        ticket.require(stage);
+        ticket.retain();
+        boolean accepted = updateDispatcher.dispatch(chatId, priority, stage.stageName(), () -> {
+            CompletableFuture<Void> future;
             try {
-                messageStorageService.editMessage(update);
-                LoggingUtils.logOperation("EDITED_MESSAGE_PROCESSED", userId, "编辑消息处理完成");
+                future = task.get();
             } catch (Exception e) {
-                LoggingUtils.logError("EDITED_MESSAGE_ERROR", "处理编辑消息失败", e);
+                ticket.release();
+                throw e;
             }
-        }).orTimeout(messageTimeout, TimeUnit.MILLISECONDS)
-        .exceptionally(throwable -> {
-            LoggingUtils.logError("EDITED_MESSAGE_TIMEOUT", "编辑消息处理超时", (Exception) throwable);
-            return null;
+            future.whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    ticket.markDone(stage);
+                }
+                ticket.release();
+            });
         });
+        if (!accepted) {
+            ticket.release();
+        }
     }
 
     /**
-     * 异步处理回调查询
+     * 在会话通道内处理同一会话的一批更新的持久化与积分。
+     * 积分与消息在同一事务中写入，通知在提交后才发送；事务回滚后逐条重做，不会重复计分或重复通知
      */
-    @Async("botAsyncExecutor")
-    public void processCallbackQueryAsync(Update update) {
-        String userId = String.valueOf(update.getCallbackQuery().getFrom().getId());
-        
-        CompletableFuture.runAsync(() -> {
-            try {
-                AnswerCallbackQuery answer = new AnswerCallbackQuery(update.getCallbackQuery().getId());
-                telegramClient.execute(answer);
-                
-                // 处理积分排名分页回调
-                String callbackData = update.getCallbackQuery().getData();
-                if (callbackData.startsWith("pointList_")) {
-                    handlePointListCallback(update);
-                }else {
-                    callbackQueryService.callbackQuery(update);
+    private void processUpdateBatch(List<Update> group, List<UpdateJournal.Ticket> tickets) {
+        try {
+            if (updateBatchService.persistBatch(group)) {
+                for (UpdateJournal.Ticket ticket : tickets) {
+                    ticket.markDone(UpdateJournal.Stage.SAVE_MESSAGE);
+                    ticket.markDone(UpdateJournal.Stage.SCORE);
+                    ticket.markDone(UpdateJournal.Stage.EDIT_MESSAGE);
+                }
+            } else {
+                // 事务回滚后回退为逐条写入与积分，保证消息不丢失；只确认写入成功的更新，失败的保留到下次启动重放
+                List<CompletableFuture<Void>> writes = new ArrayList<>();
+                for (int i = 0; i < group.size(); i++) {
+                    Update update = group.get(i);
+                    UpdateJournal.Ticket ticket = tickets.get(i);
+                    if (update.hasMessage()) {
+                        writes.add(processRegularMessage(update)
+                                .thenRun(() -> ticket.markDone(UpdateJournal.Stage.SAVE_MESSAGE)));
+                    } else if (update.hasEditedMessage()) {
+                        writes.add(processEditedMessage(update)
+                                .thenRun(() -> ticket.markDone(UpdateJournal.Stage.EDIT_MESSAGE)));
+                    }
+                }
+                // 等待写入器提交后再处理积分
+                CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).handle((result, e) -> null).join();
+                for (int i = 0; i < group.size(); i++) {
+                    Update update = group.get(i);
+                    if (update.hasMessage() || update.getMessageReaction() != null) {
+                        UpdateJournal.Ticket ticket = tickets.get(i);
+                        processScore(update).thenRun(() -> ticket.markDone(UpdateJournal.Stage.SCORE));
+                    }
                 }
-                LoggingUtils.logOperation("CALLBACK_QUERY_PROCESSED", userId, "回调查询处理完成");
-            } catch (Exception e) {
-                LoggingUtils.logError("CALLBACK_QUERY_ERROR", "处理回调查询失败", e);
             }
-        }).orTimeout(messageTimeout, TimeUnit.MILLISECONDS)
-        .exceptionally(throwable -> {
-            LoggingUtils.logError("CALLBACK_QUERY_TIMEOUT", "回调查询处理超时", (Exception) throwable);
-            return null;
-        });
+        } finally {
+            tickets.forEach(UpdateJournal.Ticket::release);
+        }
+    }
+
+    /**
+     * 判断是否为机器人指令消息
+     */
+    private boolean isCommand(Update update) {
+        return update.getMessage().hasText() && update.getMessage().getText().startsWith("/");
+    }
+
+    /**
+     * 判断是否为活动创建者正在构造活动的消息
+     */
+    private boolean isConstructionEvent(Update update) {
+        return update.hasMessage() && ConstructionEventContext.creator_id != null &&
+                ConstructionEventContext.creator_id.equals(String.valueOf(update.getMessage().getFrom().getId())) &&
+                ConstructionEventContext.chatId != null &&
+                ConstructionEventContext.chatId.equals(String.valueOf(update.getMessage().getChatId()));
+    }
+
+    /**
+     * 处理构造事件
+     */
+    private void processConstructionEvent(Update update) {
+        try {
+            scoreService.addEvent(update.getMessage().getText());
+        } catch (Exception e) {
+            LoggingUtils.logError("CONSTRUCTION_EVENT_ERROR", "处理构造事件失败", e);
+        }
+    }
+
+    /**
+     * 处理积分逻辑：活动日志、计数与积分在一个事务中写入并登记 update_id，事务提交后积分阶段即可确认，
+     * 重放已提交过的更新时跳过
+     */
+    private CompletableFuture<Void> processScore(Update update) {
+        try {
+            updateBatchService.scoreUpdate(update);
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            LoggingUtils.logError("SCORE_PROCESS_ERROR", "处理积分逻辑失败", e);
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     /**
-     * 异步处理消息反应
+     * 处理普通消息的持久化
      */
-    @Async("botAsyncExecutor")
-    public void processMessageReactionAsync(Update update) {
+    private CompletableFuture<Void> processRegularMessage(Update update) {
+        String userId = String.valueOf(update.getMessage().getFrom().getId());
+        try {
+            // 消息保存（提交到组提交写入器，事务提交后future完成）
+            CompletableFuture<Void> saved = messageStorageService.persistMessage(update);
+            LoggingUtils.logOperation("REGULAR_MESSAGE_PROCESSED", userId, "普通消息处理完成");
+            return saved;
+        } catch (Exception e) {
+            LoggingUtils.logError("REGULAR_MESSAGE_ERROR", "处理普通消息失败", e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 处理AbilityBot的消息处理（指令等）
+     */
+    private void processAbility(Update update) {
+        try {
+            super.consume(update);
+        } catch (Exception e) {
+            LoggingUtils.logError("ABILITY_PROCESS_ERROR", "处理指令消息失败", e);
+        }
+    }
+
+    /**
+     * 处理编辑消息
+     */
+    private CompletableFuture<Void> processEditedMessage(Update update) {
+        String userId = String.valueOf(update.getEditedMessage().getFrom().getId());
+        try {
+            CompletableFuture<Void> edited = messageStorageService.editMessage(update);
+            LoggingUtils.logOperation("EDITED_MESSAGE_PROCESSED", userId, "编辑消息处理完成");
+            return edited;
+        } catch (Exception e) {
+            LoggingUtils.logError("EDITED_MESSAGE_ERROR", "处理编辑消息失败", e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 处理回调查询
+     */
+    private void processCallbackQuery(Update update) {
+        String userId = String.valueOf(update.getCallbackQuery().getFrom().getId());
+        try {
+            // 应答经出站网关异步发送，不在通道线程上等待 HTTP 调用
+            AnswerCallbackQuery answer = new AnswerCallbackQuery(update.getCallbackQuery().getId());
+            telegramSendGateway.submit(0L, TelegramSendGateway.SendPriority.REPLY, answer)
+                    .exceptionally(e -> {
+                        LoggingUtils.logError("ANSWER_CALLBACK_ERROR", "应答回调查询失败", asException(e));
+                        return null;
+                    });
+            
+            // 处理积分排名分页回调
+            String callbackData = update.getCallbackQuery().getData();
+            if (callbackData.startsWith("pointList_")) {
+                handlePointListCallback(update);
+            } else if (callbackData.startsWith(MessageSearchService.CALLBACK_PREFIX)) {
+                handleSearchCallback(update);
+            }else {
+                callbackQueryService.callbackQuery(update);
+            }
+            LoggingUtils.logOperation("CALLBACK_QUERY_PROCESSED", userId, "回调查询处理完成");
+        } catch (Exception e) {
+            LoggingUtils.logError("CALLBACK_QUERY_ERROR", "处理回调查询失败", e);
+        }
+    }
+
+    /**
+     * 处理消息反应
+     */
+    private void processMessageReaction(Update update) {
         String userId = String.valueOf(update.getMessageReaction().getUser().getId());
-        
-        CompletableFuture.runAsync(() -> {
-            try {
-                LoggingUtils.logOperation("MESSAGE_REACTION_PROCESSED", userId, "消息反应处理完成");
-            } catch (Exception e) {
-                LoggingUtils.logError("MESSAGE_REACTION_ERROR", "处理消息反应失败", e);
+        try {
+            LoggingUtils.logOperation("MESSAGE_REACTION_PROCESSED", userId, "消息反应处理完成");
+        } catch (Exception e) {
+            LoggingUtils.logError("MESSAGE_REACTION_ERROR", "处理消息反应失败", e);
+        }
+    }
+
+    /**
+     * 在Telegram并发许可内执行API调用
+     */
+    private <T extends Serializable> T executeLimited(BotApiMethod<T> method) throws TelegramApiException {
+        try {
+            return dependencyLimiter.call(DependencyLimiter.Dependency.TELEGRAM, () -> {
+                try {
+                    return telegramClient.execute(method);
+                } catch (TelegramApiException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof TelegramApiException telegramApiException) {
+                throw telegramApiException;
             }
-        }).orTimeout(messageTimeout, TimeUnit.MILLISECONDS)
-        .exceptionally(throwable -> {
-            LoggingUtils.logError("MESSAGE_REACTION_TIMEOUT", "消息反应处理超时", (Exception) throwable);
-            return null;
-        });
+            throw new TelegramApiException(e.getMessage(), e);
+        }
     }
 
-    // 回复消息
-    public void replyMessage(SendMessage message) {
-        long startTime = System.currentTimeMillis();
+    /**
+     * 向Telegram注册Webhook地址
+     */
+    public void registerWebhook(String url, String secretToken, List<String> allowedUpdates) {
         try {
-            telegramClient.execute(message);
-            LoggingUtils.logOperation("REPLY_MESSAGE", String.valueOf(message.getChatId()), "回复消息成功");
-            LoggingUtils.logPerformance("replyMessage", startTime);
+            SetWebhook setWebhook = SetWebhook.builder()
+                    .url(url)
+                    .allowedUpdates(allowedUpdates)
+                    .secretToken(secretToken == null || secretToken.isEmpty() ? null : secretToken)
+                    .build();
+            telegramClient.execute(setWebhook);
+            LoggingUtils.logSystemStatus("Webhook注册成功: " + url);
         } catch (TelegramApiException e) {
-            LoggingUtils.logError("REPLY_MESSAGE_ERROR", "回复消息失败", e);
+            LoggingUtils.logError("WEBHOOK_REGISTER_ERROR", "Webhook注册失败", e);
         }
     }
 
+    /**
+     * 直接执行Telegram调用（在Telegram并发许可内），供出站发送网关使用
+     */
+    public <T extends Serializable> T executeMethod(BotApiMethod<T> method) throws TelegramApiException {
+        return executeLimited(method);
+    }
+
+    // 回复消息
+    public CompletableFuture<Message> replyMessage(SendMessage message) {
+        long startTime = System.currentTimeMillis();
+        return telegramSendGateway.submit(TelegramSendGateway.chatIdOf(message.getChatId()),
+                        TelegramSendGateway.SendPriority.REPLY, message)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        LoggingUtils.logError("REPLY_MESSAGE_ERROR", "回复消息失败", asException(e));
+                        return;
+                    }
+                    LoggingUtils.logOperation("REPLY_MESSAGE", String.valueOf(message.getChatId()), "回复消息成功");
+                    LoggingUtils.logPerformance("replyMessage", startTime);
+                });
+    }
+
     // 删除消息
-    public void deleteMessage(DeleteMessage deleteMessage) {
+    public CompletableFuture<Boolean> deleteMessage(DeleteMessage deleteMessage) {
         long startTime = System.currentTimeMillis();
-        try {
-            telegramClient.execute(deleteMessage);
-            LoggingUtils.logOperation("DELETE_MESSAGE", String.valueOf(deleteMessage.getChatId()), "删除消息成功");
-            LoggingUtils.logPerformance("deleteMessage", startTime);
-        } catch (TelegramApiException e) {
-            LoggingUtils.logError("DELETE_MESSAGE_ERROR", "删除消息失败", e);
-        }
+        return telegramSendGateway.submit(TelegramSendGateway.chatIdOf(deleteMessage.getChatId()),
+                        TelegramSendGateway.SendPriority.MODERATION, deleteMessage)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        LoggingUtils.logError("DELETE_MESSAGE_ERROR", "删除消息失败", asException(e));
+                        return;
+                    }
+                    LoggingUtils.logOperation("DELETE_MESSAGE", String.valueOf(deleteMessage.getChatId()), "删除消息成功");
+                    LoggingUtils.logPerformance("deleteMessage", startTime);
+                });
     }
 
     // 封禁用户
-    public void banUser(BanChatMember banChatMember) {
+    public CompletableFuture<Boolean> banUser(BanChatMember banChatMember) {
         long startTime = System.currentTimeMillis();
-        try {
-            telegramClient.execute(banChatMember);
-            LoggingUtils.logOperation("BAN_USER", String.valueOf(banChatMember.getChatId()), "封禁用户成功");
-            LoggingUtils.logPerformance("banUser", startTime);
-        } catch (TelegramApiException e) {
-            LoggingUtils.logError("BAN_USER_ERROR", "封禁用户失败", e);
-        }
+        return telegramSendGateway.submit(TelegramSendGateway.chatIdOf(banChatMember.getChatId()),
+                        TelegramSendGateway.SendPriority.MODERATION, banChatMember)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        LoggingUtils.logError("BAN_USER_ERROR", "封禁用户失败", asException(e));
+                        return;
+                    }
+                    LoggingUtils.logOperation("BAN_USER", String.valueOf(banChatMember.getChatId()), "封禁用户成功");
+                    LoggingUtils.logPerformance("banUser", startTime);
+                });
     }
 
     // 限制用户权限
-    public void restrictUser(RestrictChatMember restrictChatMember) {
+    public CompletableFuture<Boolean> restrictUser(RestrictChatMember restrictChatMember) {
         long startTime = System.currentTimeMillis();
-        try {
-            telegramClient.execute(restrictChatMember);
-            LoggingUtils.logOperation("RESTRICT_USER", String.valueOf(restrictChatMember.getChatId()), "限制用户权限成功");
-            LoggingUtils.logPerformance("restrictUser", startTime);
-        } catch (TelegramApiException e) {
-            LoggingUtils.logError("RESTRICT_USER_ERROR", "限制用户权限失败", e);
-        }
+        return telegramSendGateway.submit(TelegramSendGateway.chatIdOf(restrictChatMember.getChatId()),
+                        TelegramSendGateway.SendPriority.MODERATION, restrictChatMember)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        LoggingUtils.logError("RESTRICT_USER_ERROR", "限制用户权限失败", asException(e));
+                        return;
+                    }
+                    LoggingUtils.logOperation("RESTRICT_USER", String.valueOf(restrictChatMember.getChatId()), "限制用户权限成功");
+                    LoggingUtils.logPerformance("restrictUser", startTime);
+                });
+    }
+
+    private static Exception asException(Throwable t) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
     }
 
     /**
@@ -635,6 +995,35 @@ public class TgBot extends AbilityBot{
                 .build();
     }
 
+    /**
+     * 管理员检索聊天记录
+     */
+    public Ability search() {
+        return Ability
+                .builder()
+                .name("search")
+                .info("检索聊天记录")
+                .locality(Locality.ALL)
+                .privacy(Privacy.ADMIN)
+                .action((ctx) -> {
+                    try {
+                        Map<String, Object> result = messageSearchService.startSearch(ctx.arguments());
+                        String text = (String) result.get("text");
+                        Object keyboard = result.get("keyboard");
+                        if (keyboard != null) {
+                            sendMessageWithKeyboard(String.valueOf(ctx.chatId()), text, keyboard);
+                        } else {
+                            silent.send(text, ctx.chatId());
+                        }
+                        LoggingUtils.logOperation("MESSAGE_SEARCH", String.valueOf(ctx.user().getId()), "检索聊天记录：" + String.join(" ", ctx.arguments()));
+                    } catch (Exception e) {
+                        LoggingUtils.logError("MESSAGE_SEARCH_ERROR", "检索聊天记录失败", e);
+                        silent.send("检索聊天记录失败", ctx.chatId());
+                    }
+                })
+                .build();
+    }
+
     /**
      * 切换AI互动功能开关
      */
@@ -849,19 +1238,8 @@ public class TgBot extends AbilityBot{
                 .privacy(Privacy.ADMIN)
                 .action((ctx) -> {
                     try {
-                        String filePath = botConfig.getForbidUrl();
-                        if (filePath == null || filePath.trim().isEmpty()) {
-                            silent.send("未配置违禁词文件路径", ctx.chatId());
-                            return;
-                        }
-                        Path path = Paths.get(filePath);
-                        List<String> lines = Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : new ArrayList<>();
-                        List<String> words = new ArrayList<>();
-                        for (String l : lines) {
-                            if (l != null && !l.trim().isEmpty()) {
-                                words.add(l.trim());
-                            }
-                        }
+                        // 从内存中的违禁词注册表读取，不访问磁盘
+                        List<String> words = forbiddenWordService.getWords();
                         StringBuilder sb = new StringBuilder();
                         if (words.isEmpty()) {
                             sb.append("当前违禁词列表为空");
@@ -914,23 +1292,21 @@ public class TgBot extends AbilityBot{
                             return;
                         }
 
-                        String filePath = botConfig.getForbidUrl();
-                        if (filePath == null || filePath.trim().isEmpty()) {
+                        if (botConfig.getForbidUrl() == null || botConfig.getForbidUrl().trim().isEmpty()) {
                             silent.send("未配置违禁词文件路径", ctx.chatId());
                             return;
                         }
-                        Path path = Paths.get(filePath);
-                        List<String> lines = Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : new ArrayList<>();
-                        if (lines.isEmpty()) {
+                        int size = forbiddenWordService.getWords().size();
+                        if (size == 0) {
                             silent.send("当前违禁词列表为空", ctx.chatId());
                             return;
                         }
-                        if (idx > lines.size()) {
-                            silent.send("行号超出范围（当前共有 " + lines.size() + " 行）", ctx.chatId());
+                        // 内存中删除后立即生效，文件由注册表异步保存
+                        String removedLine = forbiddenWordService.removeWord(idx - 1);
+                        if (removedLine == null) {
+                            silent.send("行号超出范围（当前共有 " + size + " 行）", ctx.chatId());
                             return;
                         }
-                        String removedLine = lines.remove(idx - 1);
-                        Files.write(path, lines, StandardCharsets.UTF_8);
                         SendMessage message = SendMessage.builder()
                                 .chatId(String.valueOf(ctx.chatId()))
                                 .text("已删除第" + idx + "行：" + removedLine)
@@ -963,35 +1339,21 @@ public class TgBot extends AbilityBot{
                             return;
                         }
                         String input = String.join(" ", args).trim();
-                        String target = cleanForbiddenWord(input);
-                        if (target.isEmpty()) {
+                        if (MessagesUtil.cleanMessageText(input).isEmpty()) {
                             silent.send("无效的违禁词", ctx.chatId());
                             return;
                         }
 
-                        String filePath = botConfig.getForbidUrl();
-                        if (filePath == null || filePath.trim().isEmpty()) {
+                        if (botConfig.getForbidUrl() == null || botConfig.getForbidUrl().trim().isEmpty()) {
                             silent.send("未配置违禁词文件路径", ctx.chatId());
                             return;
                         }
-                        Path path = Paths.get(filePath);
-                        List<String> lines = Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : new ArrayList<>();
-
-                        // 重复性校验（按清洗逻辑对齐SqlService）
-                        boolean exists = false;
-                        for (String l : lines) {
-                            if (cleanForbiddenWord(l).equals(target)) {
-                                exists = true;
-                                break;
-                            }
-                        }
-                        if (exists) {
+
+                        // 内存中添加后立即生效，文件由注册表异步保存；重复性按清洗后的文本校验
+                        if (!forbiddenWordService.addWord(input)) {
                             silent.send("该违禁词已存在", ctx.chatId());
                             return;
                         }
-
-                        lines.add(input);
-                        Files.write(path, lines, StandardCharsets.UTF_8);
                         SendMessage message = SendMessage.builder()
                                 .chatId(String.valueOf(ctx.chatId()))
                                 .text("已添加违禁词：" + input)
@@ -1006,12 +1368,7 @@ public class TgBot extends AbilityBot{
                 .build();
     }
 
-    private String cleanForbiddenWord(String text) {
-        if (text == null) {
-            return "";
-        }
-        return text.replaceAll("[\\s,。;、]", "").toLowerCase();
-    }
+
 
     /**
      * 处理积分排名分页回调
@@ -1039,6 +1396,26 @@ public class TgBot extends AbilityBot{
         }
     }
 
+    /**
+     * 处理聊天记录检索分页回调（search_检索ID_页码）
+     */
+    private void handleSearchCallback(Update update) {
+        try {
+            String[] parts = update.getCallbackQuery().getData().split("_");
+            if (parts.length >= 3) {
+                String searchId = parts[1];
+                int page = Integer.parseInt(parts[2]);
+
+                String chatId = String.valueOf(update.getCallbackQuery().getMessage().getChatId());
+                Map<String, Object> result = messageSearchService.getSearchPageMessage(searchId, page);
+                editMessageWithKeyboard(update.getCallbackQuery().getMessage().getMessageId(), chatId,
+                        (String) result.get("text"), result.get("keyboard"));
+            }
+        } catch (Exception e) {
+            LoggingUtils.logError("HANDLE_SEARCH_CALLBACK_ERROR", "处理检索分页回调失败", e);
+        }
+    }
+
     /**
      * 发送带内联键盘的消息
      */
@@ -1055,7 +1432,11 @@ public class TgBot extends AbilityBot{
                     .invoke(message, keyboard);
             }
             
-            telegramClient.execute(message);
+            telegramSendGateway.submit(TelegramSendGateway.chatIdOf(chatId), TelegramSendGateway.SendPriority.REPLY, message)
+                    .exceptionally(e -> {
+                        LoggingUtils.logError("SEND_MESSAGE_WITH_KEYBOARD_ERROR", "发送带键盘消息失败", asException(e));
+                        return null;
+                    });
         } catch (Exception e) {
             LoggingUtils.logError("SEND_MESSAGE_WITH_KEYBOARD_ERROR", "发送带键盘消息失败", e);
         }
@@ -1079,10 +1460,13 @@ public class TgBot extends AbilityBot{
                     .invoke(editMessage, keyboard);
             }
             
-            // 使用反射调用execute方法
-            telegramClient.getClass().getMethod("execute", 
-                Class.forName("org.telegram.telegrambots.meta.api.methods.BotApiMethod"))
-                .invoke(telegramClient, editMessage);
+            @SuppressWarnings("unchecked")
+            BotApiMethod<Serializable> method = (BotApiMethod<Serializable>) editMessage;
+            telegramSendGateway.submit(TelegramSendGateway.chatIdOf(chatId), TelegramSendGateway.SendPriority.REPLY, method)
+                    .exceptionally(e -> {
+                        LoggingUtils.logError("EDIT_MESSAGE_WITH_KEYBOARD_ERROR", "编辑消息键盘失败", asException(e));
+                        return null;
+                    });
         } catch (Exception e) {
             LoggingUtils.logError("EDIT_MESSAGE_WITH_KEYBOARD_ERROR", "编辑消息键盘失败", e);
         }
@@ -1,19 +1,28 @@
 package com.bot.aabot.config;
 
 import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.SimpleAsyncTaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 异步处理配置类
- * 配置Bot的异步处理线程池
+ * 配置Bot的异步处理线程池，支持 platform（平台线程池）与 virtual（虚拟线程）两种执行模式
  */
 @Configuration
 @EnableAsync(proxyTargetClass = true)
@@ -34,11 +43,46 @@ public class AsyncConfig {
     @Value("${bot.async.keep-alive-seconds:60}")
     private int keepAliveSeconds;
 
+    @Value("${bot.async.mode:platform}")
+    private String mode;
+
+    @Value("${bot.async.virtual-concurrency-limit:-1}")
+    private int virtualConcurrencyLimit; // 虚拟线程模式下的并发上限，-1表示不限制
+
+    @Value("${bot.async.scheduler-pool-size:1}")
+    private int schedulerPoolSize;
+
+    // virtual模式下的重试执行器，容器关闭时停止；公共ForkJoinPool无需关闭
+    private ExecutorService virtualRetryExecutor;
+
+    /**
+     * 是否启用虚拟线程模式
+     */
+    private boolean isVirtualMode() {
+        return "virtual".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 创建虚拟线程执行器，外部依赖的并发由 DependencyLimiter 的信号量控制
+     */
+    private Executor virtualExecutor(String namePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(namePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(virtualConcurrencyLimit);
+        executor.setTaskTerminationTimeout(60000);
+        return executor;
+    }
+
     /**
      * 配置主要的异步执行器
      */
     @Bean(name = "botAsyncExecutor")
     public Executor botAsyncExecutor() {
+        if (isVirtualMode()) {
+            LoggingUtils.logSystemStatus(String.format(
+                "异步执行器已初始化 - 执行模式: virtual, 并发上限: %d", virtualConcurrencyLimit));
+            return virtualExecutor(threadNamePrefix);
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         
         // 基本配置
@@ -58,7 +102,7 @@ public class AsyncConfig {
         executor.initialize();
         
         LoggingUtils.logSystemStatus(String.format(
-            "异步线程池已初始化 - 核心线程数: %d, 最大线程数: %d, 队列容量: %d, 保活时间: %ds", 
+            "异步线程池已初始化 - 执行模式: platform, 核心线程数: %d, 最大线程数: %d, 队列容量: %d, 保活时间: %ds", 
             corePoolSize, maxPoolSize, queueCapacity, keepAliveSeconds));
         
         return executor;
@@ -69,6 +113,10 @@ public class AsyncConfig {
      */
     @Bean(name = "messageAsyncExecutor")
     public Executor messageAsyncExecutor() {
+        if (isVirtualMode()) {
+            LoggingUtils.logSystemStatus("消息处理异步执行器已初始化 - 执行模式: virtual");
+            return virtualExecutor("msg-async-");
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         
         // 消息处理的特定配置
@@ -84,10 +132,68 @@ public class AsyncConfig {
         
         executor.initialize();
         
-        LoggingUtils.logSystemStatus("消息处理异步线程池已初始化");
+        LoggingUtils.logSystemStatus("消息处理异步线程池已初始化 - 执行模式: platform");
         
         return executor;
     }
+
+    /**
+     * 配置重试服务使用的执行器
+     * platform模式下沿用公共ForkJoinPool，virtual模式下每个重试任务使用独立虚拟线程
+     */
+    @Bean(name = "retryExecutor", destroyMethod = "")
+    public Executor retryExecutor() {
+        if (isVirtualMode()) {
+            LoggingUtils.logSystemStatus("重试执行器已初始化 - 执行模式: virtual");
+            virtualRetryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            return virtualRetryExecutor;
+        }
+        LoggingUtils.logSystemStatus("重试执行器已初始化 - 执行模式: platform");
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * 停止virtual模式下的重试执行器，等待进行中的重试结束
+     */
+    @PreDestroy
+    public void shutdownRetryExecutor() {
+        if (virtualRetryExecutor == null) {
+            return;
+        }
+        virtualRetryExecutor.shutdown();
+        try {
+            if (!virtualRetryExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                virtualRetryExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            virtualRetryExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 配置@Scheduled定时任务使用的调度器
+     */
+    @Bean(name = "taskScheduler")
+    public TaskScheduler taskScheduler() {
+        if (isVirtualMode()) {
+            SimpleAsyncTaskScheduler scheduler = new SimpleAsyncTaskScheduler();
+            scheduler.setThreadNamePrefix("bot-scheduler-");
+            scheduler.setVirtualThreads(true);
+            scheduler.setTaskTerminationTimeout(30000);
+            LoggingUtils.logSystemStatus("定时任务调度器已初始化 - 执行模式: virtual");
+            return scheduler;
+        }
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(schedulerPoolSize);
+        scheduler.setThreadNamePrefix("bot-scheduler-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        scheduler.initialize();
+        LoggingUtils.logSystemStatus(String.format(
+            "定时任务调度器已初始化 - 执行模式: platform, 线程数: %d", schedulerPoolSize));
+        return scheduler;
+    }
     
     /**
      * 自定义拒绝策略
@@ -0,0 +1,134 @@
+package com.bot.aabot.config;
+
+import com.bot.aabot.service.DependencyLimiter;
+import com.bot.aabot.utils.LoggingUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.sqlite.SQLiteConfig;
+
+import javax.sql.DataSource;
+
+/**
+ * ClassName: DataSourceConfig
+ * Package: com.bot.aabot.config
+ * Description: SQLite 数据源配置。
+ * bot.storage.profile=wal 时启用 WAL 存储配置：主数据源为单连接写入池，所有写操作（以及事务内的读）经它串行执行，
+ * 不再在多个连接之间争抢写锁产生 SQLITE_BUSY；另建一个只读连接池供统计、排行等查询使用，WAL 下读不阻塞写。
+ * 默认配置保持原有的单个连接池，只读 JdbcTemplate 与主 JdbcTemplate 使用同一个数据源。
+ * 两种配置下的连接都经 LimitedDataSource 领取 SQLite 并发许可（bot.async.limits.sqlite）。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${bot.storage.profile:default}")
+    private String profile; // default / wal
+
+    @Value("${bot.storage.synchronous:NORMAL}")
+    private String synchronous; // WAL 下 NORMAL 只在检查点时刷盘，进程崩溃不丢数据，操作系统崩溃可能丢失最近的提交
+
+    @Value("${bot.storage.cache-size:-65536}")
+    private int cacheSize; // 页缓存大小，负数表示KB
+
+    @Value("${bot.storage.mmap-size:268435456}")
+    private long mmapSize; // 内存映射读取的字节数
+
+    @Value("${bot.storage.busy-timeout:5000}")
+    private int busyTimeout; // 遇到锁时在 SQLite 内部等待的时间（毫秒）
+
+    @Value("${bot.storage.writer-timeout:30000}")
+    private long writerTimeout; // 等待写连接的最长时间（毫秒）
+
+    @Value("${bot.storage.read-pool-size:4}")
+    private int readPoolSize;
+
+    /**
+     * 是否启用 WAL 存储配置
+     */
+    private boolean isWalProfile() {
+        return "wal".equalsIgnoreCase(profile);
+    }
+
+    /**
+     * 主数据源（WAL 配置下为单连接写入池）
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, DependencyLimiter dependencyLimiter) {
+        if (!isWalProfile()) {
+            return new LimitedDataSource(properties.initializeDataSourceBuilder().type(HikariDataSource.class).build(),
+                    dependencyLimiter);
+        }
+        SQLiteConfig sqliteConfig = pragmas();
+        sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        HikariConfig hikariConfig = hikariConfig(properties, "sqlite-writer", sqliteConfig);
+        hikariConfig.setMaximumPoolSize(1);
+        hikariConfig.setMinimumIdle(1);
+        hikariConfig.setConnectionTimeout(writerTimeout);
+        HikariDataSource dataSource = new HikariDataSource(hikariConfig);
+        LoggingUtils.logSystemStatus(String.format("SQLite WAL 存储配置已启用 - synchronous: %s, cache_size: %d, mmap_size: %d, 只读连接数: %d",
+                synchronous, cacheSize, mmapSize, readPoolSize));
+        return new LimitedDataSource(dataSource, dependencyLimiter);
+    }
+
+    /**
+     * 只读数据源，依赖主数据源先完成初始化（数据库文件与 WAL 模式由写连接建立）
+     */
+    @Bean
+    public DataSource readDataSource(DataSourceProperties properties, @Qualifier("dataSource") DataSource dataSource,
+                                     DependencyLimiter dependencyLimiter) {
+        if (!isWalProfile()) {
+            // 主数据源已受限，这里不再重复领取许可
+            return new DelegatingDataSource(dataSource);
+        }
+        SQLiteConfig sqliteConfig = pragmas();
+        sqliteConfig.setReadOnly(true);
+        HikariConfig hikariConfig = hikariConfig(properties, "sqlite-reader", sqliteConfig);
+        hikariConfig.setMaximumPoolSize(Math.max(1, readPoolSize));
+        return new LimitedDataSource(new HikariDataSource(hikariConfig), dependencyLimiter);
+    }
+
+    @Bean
+    @Primary
+    public JdbcTemplate jdbcTemplate(@Qualifier("dataSource") DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * 只读查询使用的 JdbcTemplate，事务内的读仍应使用主 JdbcTemplate 以读到本事务的写入
+     */
+    @Bean
+    public JdbcTemplate readJdbcTemplate(@Qualifier("readDataSource") DataSource readDataSource) {
+        return new JdbcTemplate(readDataSource);
+    }
+
+    private SQLiteConfig pragmas() {
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(synchronous.toUpperCase()));
+        sqliteConfig.setCacheSize(cacheSize);
+        sqliteConfig.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+        sqliteConfig.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        sqliteConfig.setBusyTimeout(busyTimeout);
+        return sqliteConfig;
+    }
+
+    private HikariConfig hikariConfig(DataSourceProperties properties, String poolName, SQLiteConfig sqliteConfig) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setDriverClassName(properties.determineDriverClassName());
+        hikariConfig.setJdbcUrl(properties.determineUrl());
+        hikariConfig.setDataSourceProperties(sqliteConfig.toProperties());
+        return hikariConfig;
+    }
+}
@@ -0,0 +1,95 @@
+package com.bot.aabot.config;
+
+import com.bot.aabot.service.DependencyLimiter;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * ClassName: LimitedDataSource
+ * Package: com.bot.aabot.config
+ * Description: 受 DependencyLimiter 限制的数据源。
+ * 获取连接时领取 SQLite 许可，连接关闭时归还，所有经 JdbcTemplate、事务管理器访问数据库的 DAO 都受同一个并发上限约束；
+ * 事务持有连接期间一直占用许可。许可按线程可重入，事务中再取只读连接不占用第二个许可；
+ * 许可与连接包装绑定，连接在其他线程关闭时同样归还，且只归还一次。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+public class LimitedDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final DependencyLimiter dependencyLimiter;
+
+    public LimitedDataSource(DataSource targetDataSource, DependencyLimiter dependencyLimiter) {
+        super(targetDataSource);
+        this.dependencyLimiter = dependencyLimiter;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DependencyLimiter.Permit permit = acquire();
+        try {
+            return limited(super.getConnection(), permit);
+        } catch (SQLException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        DependencyLimiter.Permit permit = acquire();
+        try {
+            return limited(super.getConnection(username, password), permit);
+        } catch (SQLException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 关闭目标连接池（容器销毁时调用）
+     */
+    @Override
+    public void close() throws Exception {
+        if (obtainTargetDataSource() instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private DependencyLimiter.Permit acquire() throws SQLException {
+        try {
+            return dependencyLimiter.acquire(DependencyLimiter.Dependency.SQLITE);
+        } catch (IllegalStateException e) {
+            throw new SQLTransientConnectionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 包装连接：关闭时归还该连接领取的许可（在任意线程关闭均可，重复关闭只归还一次）
+     */
+    private Connection limited(Connection connection, DependencyLimiter.Permit permit) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        try {
+                            connection.close();
+                        } finally {
+                            permit.release();
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
@@ -1,6 +1,11 @@
 package com.bot.aabot.config;
 
 import com.bot.aabot.TgBot;
+import com.bot.aabot.service.UpdateIntakeBuffer;
+import com.bot.aabot.utils.LoggingUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -18,23 +23,58 @@ public class TelegramBotConfig {
     // 使用ApplicationContext代替直接依赖
     private final ApplicationContext applicationContext;
 
+    // 需要接收的更新类型
+    private static final List<String> ALLOWED_UPDATES = List.of("message_reaction","callback_query","message");
+
+    @Value("${bot.webhook.url:}")
+    private String webhookUrl;
+
+    @Value("${bot.webhook.secret-token:}")
+    private String webhookSecretToken;
+
     public TelegramBotConfig(ApplicationContext applicationContext) {
         this.applicationContext = applicationContext;
     }
 
     @Bean
+    @ConditionalOnProperty(name = "bot.ingest.mode", havingValue = "polling", matchIfMissing = true)
     public TelegramBotsLongPollingApplication telegramBotsLongPollingApplication() throws TelegramApiException {
         TelegramBotsLongPollingApplication application = new TelegramBotsLongPollingApplication();
         
         // 通过ApplicationContext获取TgBot实例
         TgBot tgBot = applicationContext.getBean(TgBot.class);
         tgBot.onRegister();
+        // 开始接收新更新前先重放预写日志
+        tgBot.replayJournal();
 
-        DefaultGetUpdatesGenerator defaultGetUpdatesGenerator = new DefaultGetUpdatesGenerator(List.of("message_reaction","callback_query","message"));
+        DefaultGetUpdatesGenerator defaultGetUpdatesGenerator = new DefaultGetUpdatesGenerator(ALLOWED_UPDATES);
 
 //       DefaultGetUpdatesGenerator defaultGetUpdatesGenerator = new DefaultGetUpdatesGenerator();
         application.registerBot(BOT_TOKEN,() -> TelegramUrl.DEFAULT_URL, defaultGetUpdatesGenerator, tgBot);
         
         return application;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Webhook模式：启动后重放预写日志，再打开接收缓冲区并向Telegram注册Webhook地址，更新由TelegramWebhookController接收
+     */
+    @Bean
+    @ConditionalOnProperty(name = "bot.ingest.mode", havingValue = "webhook")
+    public ApplicationRunner telegramWebhookRegistration() {
+        return args -> {
+            TgBot tgBot = applicationContext.getBean(TgBot.class);
+            tgBot.onRegister();
+            // 接口在缓冲区打开前返回503，先重放预写日志再开始接收新更新
+            try {
+                tgBot.replayJournal();
+            } finally {
+                applicationContext.getBean(UpdateIntakeBuffer.class).open();
+            }
+            if (webhookUrl.isEmpty()) {
+                LoggingUtils.logSystemStatus("Webhook模式已启用，但未配置bot.webhook.url，跳过向Telegram注册（仅用于本地调试）");
+                return;
+            }
+            tgBot.registerWebhook(webhookUrl, webhookSecretToken, ALLOWED_UPDATES);
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package com.bot.aabot.controller;
+
+import com.bot.aabot.service.UpdateIntakeBuffer;
+import com.bot.aabot.service.UpdateJournal;
+import com.bot.aabot.utils.LoggingUtils;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * ClassName: TelegramWebhookController
+ * Package: com.bot.aabot.controller
+ * Description: Telegram Webhook 接收接口。
+ * 校验密钥后解析更新，先追加到预写日志再放入接收缓冲区并应答，应答后的更新在崩溃后可以重放；
+ * 缓冲区满时撤销日志记录并返回429，由Telegram稍后重试。
+ * 启动时预写日志重放完成前返回503，Telegram稍后重新投递。
+ * 本地调试可直接 POST 录制的 Update JSON 到该接口。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/14
+ */
+@Slf4j
+@RestController
+@ConditionalOnProperty(name = "bot.ingest.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    // Update 使用独立的 ObjectMapper 解析，不受全局字段可见性配置影响
+    private final ObjectMapper updateMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Autowired
+    private UpdateIntakeBuffer updateIntakeBuffer;
+
+    @Autowired
+    private UpdateJournal updateJournal;
+
+    @Value("${bot.webhook.secret-token:}")
+    private String secretToken;
+
+    @Value("${bot.webhook.retry-after-seconds:1}")
+    private int retryAfterSeconds;
+
+    @PostMapping("${bot.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> receive(@RequestHeader(value = SECRET_HEADER, required = false) String token,
+                                        @RequestBody String body) {
+        if (!secretToken.isEmpty() && !secretMatches(token)) {
+            LoggingUtils.logSecurityEvent("WEBHOOK_UNAUTHORIZED", "unknown", "Webhook请求密钥校验失败");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        if (!updateIntakeBuffer.isOpen()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+
+        Update update;
+        try {
+            update = updateMapper.readValue(body, Update.class);
+        } catch (Exception e) {
+            LoggingUtils.logError("WEBHOOK_PARSE_ERROR", "Webhook更新解析失败", e);
+            return ResponseEntity.badRequest().build();
+        }
+
+        // 应答前写入预写日志
+        UpdateJournal.Ticket ticket = updateJournal.append(update);
+        if (ticket == null) {
+            return ResponseEntity.ok().build(); // 重复投递的更新
+        }
+        if (!updateIntakeBuffer.offer(update, ticket)) {
+            ticket.cancel();
+            LoggingUtils.logError("WEBHOOK_BUFFER_FULL",
+                    String.format("Webhook接收缓冲区已满，拒绝更新 %d - %s",
+                            update.getUpdateId(), updateIntakeBuffer.getStatusSummary()), null);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * 按固定时间比较密钥，避免通过响应耗时逐字节猜测
+     */
+    private boolean secretMatches(String token) {
+        return token != null && MessageDigest.isEqual(
+                secretToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,303 @@
+package com.bot.aabot.dao;
+
+import com.bot.aabot.entity.UserActivityLog;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
+
+/**
+ * ClassName: ActivityCounterDao
+ * Package: com.bot.aabot.dao
+ * Description: 用户活动计数器。
+ * 按 (群组, 用户, 计数类型) 保存消息数、签到数和被回复/被表情回复次数，追加活动日志时在同一事务中累加，
+ * 成就进度读取内存镜像即可，不再对 user_activity_logs 做 COUNT(*) 扫描。
+ * 计数器表首次创建时记录当时活动日志的最大 log_id 作为水位，水位之前的历史由回填任务统计后一次性补入；
+ * 回填完成前计数不完整，{@link #getCount} 返回 -1，调用方回退到原来的 COUNT 查询。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Repository
+public class ActivityCounterDao {
+
+    public static final String COUNTER_MESSAGE = "message";
+    public static final String COUNTER_CHECK_IN = "check_in";
+    /**
+     * 被互动次数的计数类型前缀，后接互动类型 message_reply / message_reaction，计入被互动的目标用户
+     */
+    public static final String COUNTER_RECEIVED_PREFIX = "received_";
+
+    private static final Set<String> MESSAGE_TYPES = Set.of(
+            "text_message", "photo_message", "video_message", "document_message", "audio_message", "sticker_message");
+    private static final Set<String> INTERACTION_TYPES = Set.of("message_reply", "message_reaction");
+    private static final String TARGET_MARKER = "目标用户:";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final Map<CounterKey, Integer> mirror = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+    // 累加计数的事务持读锁直到事务结束，加载镜像持写锁，保证镜像加载时没有未提交的累加
+    private final ReentrantReadWriteLock mirrorLock = new ReentrantReadWriteLock();
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS user_activity_counters (" +
+                "    chat_id TEXT NOT NULL," +
+                "    user_id TEXT NOT NULL," +
+                "    counter_type TEXT NOT NULL," +
+                "    total INTEGER NOT NULL DEFAULT 0," +
+                "    PRIMARY KEY (chat_id, user_id, counter_type)" +
+                ");");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS user_activity_counter_state (" +
+                "    id INTEGER PRIMARY KEY CHECK (id = 1)," +
+                "    watermark INTEGER NOT NULL," +
+                "    backfill_done INTEGER NOT NULL DEFAULT 0" +
+                ");");
+        transactionTemplate.executeWithoutResult(status -> {
+            Integer stateExists = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_activity_counter_state", Integer.class);
+            if (stateExists != null && stateExists > 0) {
+                return;
+            }
+            Integer logsExist = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'user_activity_logs'", Integer.class);
+            Long watermark = logsExist != null && logsExist > 0
+                    ? jdbcTemplate.queryForObject("SELECT COALESCE(MAX(log_id), 0) FROM user_activity_logs", Long.class)
+                    : Long.valueOf(0);
+            jdbcTemplate.update("INSERT INTO user_activity_counter_state (id, watermark, backfill_done) VALUES (1, ?, ?)",
+                    watermark, watermark == null || watermark == 0 ? 1 : 0);
+        });
+        if (isBackfillDone()) {
+            loadMirror();
+        }
+    }
+
+    /**
+     * 追加一条活动日志并在同一事务中累加对应的计数器
+     * @param log 活动日志
+     * @param insert 写入日志的操作，返回影响行数
+     * @return 影响行数
+     */
+    public int appendWithCounters(UserActivityLog log, IntSupplier insert) {
+        return appendWithCounters(log, insert, null);
+    }
+
+    /**
+     * 追加一条活动日志，在同一事务中累加对应的计数器并执行附加写入
+     * @param log 活动日志
+     * @param insert 写入日志的操作，返回影响行数
+     * @param alsoInTransaction 日志写入成功后在同一事务中执行的操作，可为null
+     * @return 影响行数
+     */
+    public int appendWithCounters(UserActivityLog log, IntSupplier insert, Runnable alsoInTransaction) {
+        List<CounterKey> keys = countersFor(log);
+        if (keys.isEmpty() && alsoInTransaction == null) {
+            return insert.getAsInt();
+        }
+        Integer rows = transactionTemplate.execute(status -> {
+            if (!keys.isEmpty()) {
+                lockMirrorUntilCompletion();
+            }
+            int inserted = insert.getAsInt();
+            if (inserted > 0) {
+                if (!keys.isEmpty()) {
+                    increment(keys);
+                }
+                if (alsoInTransaction != null) {
+                    alsoInTransaction.run();
+                }
+            }
+            return inserted;
+        });
+        return rows != null ? rows : 0;
+    }
+
+    /**
+     * 持有镜像读锁直到（可能是外层的）事务结束，保证加载镜像时没有已累加但未提交的计数；
+     * 在取得连接之后加锁，与加载镜像时先取得连接再加写锁的顺序一致
+     */
+    private void lockMirrorUntilCompletion() {
+        mirrorLock.readLock().lock();
+        try {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    mirrorLock.readLock().unlock();
+                }
+            });
+        } catch (RuntimeException e) {
+            mirrorLock.readLock().unlock();
+            throw e;
+        }
+    }
+
+    private void increment(List<CounterKey> keys) {
+        jdbcTemplate.batchUpdate("INSERT INTO user_activity_counters (chat_id, user_id, counter_type, total) VALUES (?, ?, ?, 1) " +
+                        "ON CONFLICT(chat_id, user_id, counter_type) DO UPDATE SET total = total + 1",
+                keys, keys.size(), (ps, key) -> {
+                    ps.setString(1, key.chatId());
+                    ps.setString(2, key.userId());
+                    ps.setString(3, key.counterType());
+                });
+        // 提交时仍持有读锁，ready 不会在判断与累加之间变化
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (ready) {
+                    keys.forEach(key -> mirror.merge(key, 1, Integer::sum));
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取计数
+     * @return 计数值，回填未完成时返回-1
+     */
+    public int getCount(String chatId, String userId, String counterType) {
+        if (!ready) {
+            return -1;
+        }
+        return mirror.getOrDefault(new CounterKey(chatId, userId, counterType), 0);
+    }
+
+    /**
+     * 一条活动日志会累加的计数器，与原 COUNT 查询的条件一致
+     */
+    public static List<CounterKey> countersFor(UserActivityLog log) {
+        List<CounterKey> keys = new ArrayList<>(1);
+        String type = log.getActivityType();
+        if (log.getChatId() == null || log.getUserId() == null || type == null) {
+            return keys;
+        }
+        if (MESSAGE_TYPES.contains(type)) {
+            keys.add(new CounterKey(log.getChatId(), log.getUserId(), COUNTER_MESSAGE));
+        } else if (COUNTER_CHECK_IN.equals(type)) {
+            keys.add(new CounterKey(log.getChatId(), log.getUserId(), COUNTER_CHECK_IN));
+        } else if (INTERACTION_TYPES.contains(type) && log.getActivityLog() != null) {
+            int index = log.getActivityLog().indexOf(TARGET_MARKER);
+            if (index >= 0) {
+                String targetUserId = log.getActivityLog().substring(index + TARGET_MARKER.length());
+                keys.add(new CounterKey(log.getChatId(), targetUserId, COUNTER_RECEIVED_PREFIX + type));
+            }
+        }
+        return keys;
+    }
+
+    public boolean isBackfillDone() {
+        Integer done = jdbcTemplate.queryForObject("SELECT backfill_done FROM user_activity_counter_state WHERE id = 1", Integer.class);
+        return done != null && done == 1;
+    }
+
+    /**
+     * 回填水位：计数器建立前活动日志的最大 log_id
+     */
+    public long getWatermark() {
+        Long watermark = jdbcTemplate.queryForObject("SELECT watermark FROM user_activity_counter_state WHERE id = 1", Long.class);
+        return watermark != null ? watermark : 0;
+    }
+
+    /**
+     * 统计 log_id 在 (fromExclusive, toInclusive] 范围内的历史日志对应的计数
+     */
+    public Map<CounterKey, Integer> countRange(long fromExclusive, long toInclusive) {
+        Map<CounterKey, Integer> counts = new HashMap<>();
+        String messageTypes = "'" + String.join("', '", MESSAGE_TYPES) + "'";
+        readJdbcTemplate.query("SELECT chat_id, user_id, COUNT(*) AS total FROM user_activity_logs " +
+                        "WHERE log_id > ? AND log_id <= ? AND chat_id IS NOT NULL AND user_id IS NOT NULL " +
+                        "AND activity_type IN (" + messageTypes + ") GROUP BY chat_id, user_id",
+                rs -> {
+                    counts.merge(new CounterKey(rs.getString("chat_id"), rs.getString("user_id"), COUNTER_MESSAGE),
+                            rs.getInt("total"), Integer::sum);
+                }, fromExclusive, toInclusive);
+        readJdbcTemplate.query("SELECT chat_id, user_id, COUNT(*) AS total FROM user_activity_logs " +
+                        "WHERE log_id > ? AND log_id <= ? AND chat_id IS NOT NULL AND user_id IS NOT NULL " +
+                        "AND activity_type = 'check_in' GROUP BY chat_id, user_id",
+                rs -> {
+                    counts.merge(new CounterKey(rs.getString("chat_id"), rs.getString("user_id"), COUNTER_CHECK_IN),
+                            rs.getInt("total"), Integer::sum);
+                }, fromExclusive, toInclusive);
+        // 目标用户取标记之后的全部文本，与 countersFor 的解析一致
+        readJdbcTemplate.query("SELECT chat_id, activity_type, substr(activity_log, instr(activity_log, ?) + ?) AS target, COUNT(*) AS total " +
+                        "FROM user_activity_logs WHERE log_id > ? AND log_id <= ? AND chat_id IS NOT NULL " +
+                        "AND activity_type IN ('message_reply', 'message_reaction') AND instr(activity_log, ?) > 0 " +
+                        "GROUP BY chat_id, activity_type, target",
+                rs -> {
+                    counts.merge(new CounterKey(rs.getString("chat_id"), rs.getString("target"),
+                            COUNTER_RECEIVED_PREFIX + rs.getString("activity_type")), rs.getInt("total"), Integer::sum);
+                }, TARGET_MARKER, TARGET_MARKER.length(), fromExclusive, toInclusive, TARGET_MARKER);
+        return counts;
+    }
+
+    /**
+     * 写入回填结果并启用内存镜像；水位之后的日志已在追加时实时累加，这里在其上加上历史部分
+     */
+    public void completeBackfill(Map<CounterKey, Integer> totals) {
+        List<Map.Entry<CounterKey, Integer>> entries = new ArrayList<>(totals.entrySet());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("INSERT INTO user_activity_counters (chat_id, user_id, counter_type, total) VALUES (?, ?, ?, ?) " +
+                            "ON CONFLICT(chat_id, user_id, counter_type) DO UPDATE SET total = total + excluded.total",
+                    entries, 1000, (ps, entry) -> {
+                        ps.setString(1, entry.getKey().chatId());
+                        ps.setString(2, entry.getKey().userId());
+                        ps.setString(3, entry.getKey().counterType());
+                        ps.setInt(4, entry.getValue());
+                    });
+            jdbcTemplate.update("UPDATE user_activity_counter_state SET backfill_done = 1 WHERE id = 1");
+        });
+        loadMirror();
+    }
+
+    /**
+     * 加载内存镜像：先从只读连接池取得连接再加写锁，持锁期间不等待写连接；
+     * 写锁保证此时没有已累加但未提交的计数，加载之后提交的累加由 afterCommit 合并
+     */
+    private void loadMirror() {
+        readJdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            mirrorLock.writeLock().lock();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT chat_id, user_id, counter_type, total FROM user_activity_counters")) {
+                mirror.clear();
+                while (rs.next()) {
+                    mirror.put(new CounterKey(rs.getString("chat_id"), rs.getString("user_id"), rs.getString("counter_type")),
+                            rs.getInt("total"));
+                }
+                ready = true;
+            } finally {
+                mirrorLock.writeLock().unlock();
+            }
+            return null;
+        });
+        LoggingUtils.logSystemStatus("用户活动计数器已加载，条目数: " + mirror.size());
+    }
+
+    /**
+     * 计数器键
+     */
+    public record CounterKey(String chatId, String userId, String counterType) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.bot.aabot.dao;
+
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * ClassName: AppliedUpdateDao
+ * Package: com.bot.aabot.dao
+ * Description: 已应用的更新处理阶段记录。
+ * 积分阶段的活动日志、计数器与积分写入不是幂等的，预写日志重放同一更新时会重复写入；
+ * 阶段在写入事务中先登记 (update_id, 阶段)，已登记的说明此前已经提交过，直接跳过。
+ * 登记与阶段的写入在同一事务中提交或回滚，不会出现写入已提交却未登记的情况。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Repository
+public class AppliedUpdateDao {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${bot.journal.applied-retention-days:7}")
+    private int retentionDays; // 登记记录的保留天数，需长于预写日志中记录的最长保留时间
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS applied_update_stage (" +
+                "    update_id INTEGER NOT NULL," +
+                "    stage TEXT NOT NULL," +
+                "    applied_time TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%S','now','localtime'))," +
+                "    PRIMARY KEY (update_id, stage)" +
+                ");");
+    }
+
+    /**
+     * 登记更新的处理阶段（需在阶段写入的事务中调用）
+     * @param updateId 更新ID
+     * @param stage 阶段名称
+     * @return true表示首次登记，应执行该阶段；false表示此前已经提交过
+     */
+    public boolean markApplied(long updateId, String stage) {
+        return jdbcTemplate.update("INSERT OR IGNORE INTO applied_update_stage (update_id, stage) VALUES (?, ?)",
+                updateId, stage) > 0;
+    }
+
+    /**
+     * 删除超过保留天数的登记记录
+     * @return 删除的条数
+     */
+    public int purgeExpired() {
+        int deleted = jdbcTemplate.update(
+                "DELETE FROM applied_update_stage WHERE applied_time < datetime('now', 'localtime', ?)",
+                "-" + retentionDays + " days");
+        if (deleted > 0) {
+            LoggingUtils.logOperation("APPLIED_UPDATE_PURGE", "SYSTEM", "已删除过期的更新阶段登记: " + deleted);
+        }
+        return deleted;
+    }
+}
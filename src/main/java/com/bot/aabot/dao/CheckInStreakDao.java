@@ -0,0 +1,262 @@
+package com.bot.aabot.dao;
+
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.LongPairMap;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * ClassName: CheckInStreakDao
+ * Package: com.bot.aabot.dao
+ * Description: 用户签到连续天数存储。
+ * 每个 (群组, 用户) 保存最后签到日（epoch day）、当前连续天数、最长连续天数和累计签到次数，
+ * 每次签到与签到日志在同一事务中更新，签到处理和“今天是否已签到”的判断都是 O(1) 的内存查找，
+ * 不再加载并逐条解析用户的全部签到记录。
+ * 内存缓存以 long 群组ID、用户ID为键，按分段加锁；未命中时从表中加载，同一用户的判断与更新在同一把锁内完成。
+ * 分段锁使用 ReentrantLock：持锁期间有 JDBC 调用，虚拟线程在 synchronized 中阻塞会占住载体线程。
+ * 表首次创建时由历史签到日志生成。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Repository
+public class CheckInStreakDao {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${bot.check-in.cache-stripes:16}")
+    private int stripeCount;
+
+    private Stripe[] stripes;
+    private int stripeMask;
+
+    @PostConstruct
+    public void init() {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1);
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        stripeMask = size - 1;
+
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'user_check_in_streak'", Integer.class);
+        if (exists != null && exists > 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE user_check_in_streak (" +
+                    "    chat_id TEXT NOT NULL," +
+                    "    user_id TEXT NOT NULL," +
+                    "    last_day INTEGER NOT NULL," +
+                    "    current_streak INTEGER NOT NULL," +
+                    "    longest_streak INTEGER NOT NULL," +
+                    "    total INTEGER NOT NULL," +
+                    "    PRIMARY KEY (chat_id, user_id)" +
+                    ");");
+            int migrated = migrateFromHistory();
+            LoggingUtils.logSystemStatus("已由历史签到记录生成签到连续天数表，用户数: " + migrated);
+        });
+    }
+
+    /**
+     * 用户今天是否已签到
+     */
+    public boolean hasCheckedIn(String chatId, String userId, LocalDate day) {
+        long chat = Long.parseLong(chatId);
+        long user = Long.parseLong(userId);
+        Stripe stripe = stripeFor(chat, user);
+        stripe.lock.lock();
+        try {
+            CheckInStreak streak = getOrLoad(stripe, chat, user, chatId, userId);
+            return streak.lastDay() == day.toEpochDay();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 获取用户的签到连续天数记录，没有签到过时各项为0
+     */
+    public CheckInStreak getStreak(String chatId, String userId) {
+        long chat = Long.parseLong(chatId);
+        long user = Long.parseLong(userId);
+        Stripe stripe = stripeFor(chat, user);
+        stripe.lock.lock();
+        try {
+            return getOrLoad(stripe, chat, user, chatId, userId);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 签到：计算新的连续天数，并与签到日志在同一事务中写入
+     * @param append 追加签到日志的操作，参数为需要在同一事务中执行的连续天数写入，返回是否成功
+     * @return 签到后的记录；今天已签到或写入失败时返回null
+     */
+    public CheckInStreak checkIn(String chatId, String userId, LocalDate day, Predicate<Runnable> append) {
+        long chat = Long.parseLong(chatId);
+        long user = Long.parseLong(userId);
+        Stripe stripe = stripeFor(chat, user);
+        stripe.lock.lock();
+        try {
+            CheckInStreak current = getOrLoad(stripe, chat, user, chatId, userId);
+            long today = day.toEpochDay();
+            if (current.lastDay() == today) {
+                return null;
+            }
+            CheckInStreak next = current.next(today);
+            boolean appended = append.test(() -> jdbcTemplate.update(
+                    "INSERT INTO user_check_in_streak (chat_id, user_id, last_day, current_streak, longest_streak, total) " +
+                            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(chat_id, user_id) DO UPDATE SET " +
+                            "last_day = excluded.last_day, current_streak = excluded.current_streak, " +
+                            "longest_streak = excluded.longest_streak, total = excluded.total",
+                    chatId, userId, next.lastDay(), next.currentStreak(), next.longestStreak(), next.total()));
+            if (!appended) {
+                return null;
+            }
+            stripe.streaks.put(chat, user, next);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // 在外层事务中写入时，外层回滚后恢复原记录，否则用户今天无法再签到
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status != STATUS_COMMITTED) {
+                            stripe.lock.lock();
+                            try {
+                                if (stripe.streaks.get(chat, user) == next) {
+                                    stripe.streaks.put(chat, user, current);
+                                }
+                            } finally {
+                                stripe.lock.unlock();
+                            }
+                        }
+                    }
+                });
+            }
+            return next;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private CheckInStreak getOrLoad(Stripe stripe, long chat, long user, String chatId, String userId) {
+        CheckInStreak streak = stripe.streaks.get(chat, user);
+        if (streak == null) {
+            // 加载走读连接池，持有分段锁时不占用写连接
+            List<CheckInStreak> rows = readJdbcTemplate.query(
+                    "SELECT last_day, current_streak, longest_streak, total FROM user_check_in_streak WHERE chat_id = ? AND user_id = ?",
+                    (rs, rowNum) -> new CheckInStreak(rs.getLong("last_day"), rs.getInt("current_streak"),
+                            rs.getInt("longest_streak"), rs.getInt("total")),
+                    chatId, userId);
+            streak = rows.isEmpty() ? CheckInStreak.NONE : rows.get(0);
+            stripe.streaks.put(chat, user, streak);
+        }
+        return streak;
+    }
+
+    /**
+     * 按群组、用户和日期顺序遍历历史签到日志生成连续天数记录
+     */
+    private int migrateFromHistory() {
+        Integer logsExist = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'user_activity_logs'", Integer.class);
+        if (logsExist == null || logsExist == 0) {
+            return 0;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        String[] key = new String[2];
+        CheckInStreak[] streak = new CheckInStreak[1];
+        jdbcTemplate.query("SELECT chat_id, user_id, substr(activity_time, 1, 10) AS day, COUNT(*) AS times " +
+                "FROM user_activity_logs WHERE activity_type = 'check_in' AND event_id = 0 " +
+                "AND chat_id IS NOT NULL AND user_id IS NOT NULL AND activity_time IS NOT NULL " +
+                "GROUP BY chat_id, user_id, day ORDER BY chat_id, user_id, day", rs -> {
+            String chatId = rs.getString("chat_id");
+            String userId = rs.getString("user_id");
+            if (!chatId.equals(key[0]) || !userId.equals(key[1])) {
+                if (streak[0] != null) {
+                    rows.add(toRow(key[0], key[1], streak[0]));
+                }
+                key[0] = chatId;
+                key[1] = userId;
+                streak[0] = CheckInStreak.NONE;
+            }
+            CheckInStreak next = streak[0].next(LocalDate.parse(rs.getString("day")).toEpochDay());
+            streak[0] = new CheckInStreak(next.lastDay(), next.currentStreak(), next.longestStreak(),
+                    streak[0].total() + rs.getInt("times"));
+        });
+        if (streak[0] != null) {
+            rows.add(toRow(key[0], key[1], streak[0]));
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO user_check_in_streak (chat_id, user_id, last_day, current_streak, longest_streak, total) " +
+                    "VALUES (?, ?, ?, ?, ?, ?)", rows);
+        }
+        return rows.size();
+    }
+
+    private static Object[] toRow(String chatId, String userId, CheckInStreak streak) {
+        return new Object[]{chatId, userId, streak.lastDay(), streak.currentStreak(), streak.longestStreak(), streak.total()};
+    }
+
+    private Stripe stripeFor(long chat, long user) {
+        long h = chat * 31 + user;
+        return stripes[(int) (h ^ (h >>> 32)) & stripeMask];
+    }
+
+    /**
+     * 用户在一个群组中的签到连续天数记录
+     * @param lastDay 最后签到日（epoch day），未签到过为 Long.MIN_VALUE
+     * @param currentStreak 截至最后签到日的连续天数
+     * @param longestStreak 最长连续天数
+     * @param total 累计签到次数
+     */
+    public record CheckInStreak(long lastDay, int currentStreak, int longestStreak, int total) {
+
+        public static final CheckInStreak NONE = new CheckInStreak(Long.MIN_VALUE, 0, 0, 0);
+
+        /**
+         * 在 day 签到后的记录
+         */
+        public CheckInStreak next(long day) {
+            if (day == lastDay) {
+                return this;
+            }
+            int streak = day == lastDay + 1 ? currentStreak + 1 : 1;
+            return new CheckInStreak(day, streak, Math.max(longestStreak, streak), total + 1);
+        }
+
+        /**
+         * 到 today 为止仍在延续的连续天数：最后一次签到是今天时为当前连续天数，否则为0
+         */
+        public int streakOn(long today) {
+            return lastDay == today ? currentStreak : 0;
+        }
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongPairMap<CheckInStreak> streaks = new LongPairMap<>(64);
+    }
+}
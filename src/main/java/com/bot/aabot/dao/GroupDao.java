@@ -1,12 +1,17 @@
 package com.bot.aabot.dao;
 
-import com.bot.aabot.context.DataContext;
+import com.bot.aabot.entity.BulkDeleteJob;
 import com.bot.aabot.utils.LoggingUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * ClassName: GroupDao
@@ -21,6 +26,8 @@ import java.util.List;
 public class GroupDao {
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private LogPartitionDao logPartitionDao;
 
 
     /**
@@ -140,12 +147,85 @@ public class GroupDao {
      * @return
      */
     public List<Integer> getUserMessages(String chatIdStr, String userIdStr) {
-        return  jdbcTemplate.query(
-                "SELECT message_id FROM " + DataContext.tableName + " WHERE chat_id = ? AND user_id = ?",
-                ps -> {
-                    ps.setString(1, chatIdStr);
-                    ps.setString(2, userIdStr);
-                },
-                (rs, rowNum) -> rs.getInt("message_id"));
+        // 跨全部日志分区并行查询，各分区按 (chat_id, user_id) 索引定位
+        return logPartitionDao.queryAcross(logPartitionDao.allTables(),
+                table -> "SELECT message_id FROM " + table + " WHERE chat_id = ? AND user_id = ?",
+                (rs, rowNum) -> rs.getInt("message_id"), chatIdStr, userIdStr);
+    }
+
+    /**
+     * 保存批量撤回任务。同一群组同一用户已结束的旧任务会被覆盖，仍在执行（RUNNING）的任务保持不变
+     * @param job
+     * @return 是否已保存；存在未结束的任务时返回false
+     */
+    public boolean saveBulkDeleteJob(BulkDeleteJob job) {
+        return jdbcTemplate.update(
+                "INSERT INTO bulk_delete_job (chat_id, user_id, message_ids, cursor, failed_count, status) VALUES (?, ?, ?, ?, ?, ?) " +
+                        "ON CONFLICT(chat_id, user_id) DO UPDATE SET message_ids = excluded.message_ids, cursor = excluded.cursor, " +
+                        "failed_count = excluded.failed_count, status = excluded.status, " +
+                        "updated_time = strftime('%Y-%m-%d %H:%M:%S','now','localtime') " +
+                        "WHERE bulk_delete_job.status <> 'RUNNING'",
+                job.getChatId(), job.getUserId(), joinIds(job.getMessageIds()), job.getCursor(), job.getFailedCount(), job.getStatus()) > 0;
+    }
+
+    /**
+     * 获取某群组某用户未结束的批量撤回任务
+     * @return 没有时返回null
+     */
+    public BulkDeleteJob getRunningBulkDeleteJob(String chatId, String userId) {
+        List<BulkDeleteJob> jobs = jdbcTemplate.query(
+                "SELECT chat_id, user_id, message_ids, cursor, failed_count, status FROM bulk_delete_job " +
+                        "WHERE chat_id = ? AND user_id = ? AND status = 'RUNNING'",
+                (rs, rowNum) -> mapBulkDeleteJob(rs), chatId, userId);
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    /**
+     * 更新未结束的批量撤回任务的消息ID（游标不变）
+     * @param job
+     */
+    public void updateBulkDeleteMessageIds(BulkDeleteJob job) {
+        jdbcTemplate.update(
+                "UPDATE bulk_delete_job SET message_ids = ?, " +
+                        "updated_time = strftime('%Y-%m-%d %H:%M:%S','now','localtime') WHERE chat_id = ? AND user_id = ? AND status = 'RUNNING'",
+                joinIds(job.getMessageIds()), job.getChatId(), job.getUserId());
+    }
+
+    /**
+     * 更新批量撤回任务的游标与状态
+     * @param job
+     */
+    public void updateBulkDeleteCursor(BulkDeleteJob job) {
+        jdbcTemplate.update(
+                "UPDATE bulk_delete_job SET cursor = ?, failed_count = ?, status = ?, " +
+                        "updated_time = strftime('%Y-%m-%d %H:%M:%S','now','localtime') WHERE chat_id = ? AND user_id = ?",
+                job.getCursor(), job.getFailedCount(), job.getStatus(), job.getChatId(), job.getUserId());
+    }
+
+    /**
+     * 获取未完成的批量撤回任务
+     * @return
+     */
+    public List<BulkDeleteJob> getUnfinishedBulkDeleteJobs() {
+        return jdbcTemplate.query(
+                "SELECT chat_id, user_id, message_ids, cursor, failed_count, status FROM bulk_delete_job WHERE status = 'RUNNING'",
+                (rs, rowNum) -> mapBulkDeleteJob(rs));
+    }
+
+    private static BulkDeleteJob mapBulkDeleteJob(ResultSet rs) throws SQLException {
+        BulkDeleteJob job = new BulkDeleteJob();
+        job.setChatId(rs.getString("chat_id"));
+        job.setUserId(rs.getString("user_id"));
+        String ids = rs.getString("message_ids");
+        job.setMessageIds(ids.isEmpty() ? new ArrayList<>() : Arrays.stream(ids.split(","))
+                .map(Integer::valueOf).collect(Collectors.toList()));
+        job.setCursor(rs.getInt("cursor"));
+        job.setFailedCount(rs.getInt("failed_count"));
+        job.setStatus(rs.getString("status"));
+        return job;
+    }
+
+    private static String joinIds(List<Integer> messageIds) {
+        return messageIds.stream().map(String::valueOf).collect(Collectors.joining(","));
     }
 }
@@ -0,0 +1,292 @@
+package com.bot.aabot.dao;
+
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * ClassName: InteractionDao
+ * Package: com.bot.aabot.dao
+ * Description: 消息互动记录（回复、表情）。
+ * 互动者、被互动用户、被互动消息和群组分别存放在 message_interactions 表的独立列中，
+ * 按消息和按被互动用户的统计都走覆盖索引，不再对 activity_log 做 LIKE 模糊匹配（消息12也会匹配到123）。
+ * 每条消息的互动者集合缓存在分段 LRU 中，单条消息互动上限与重复互动的判断在分段锁内完成
+ * （分段锁使用 ReentrantLock，持锁期间的 JDBC 调用不会让虚拟线程占住载体线程），
+ * 未命中时通过一次索引查询加载。表首次创建时解析历史活动日志中的“互动消息ID:X,目标用户:Y”生成。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Repository
+public class InteractionDao {
+
+    private static final String MESSAGE_MARKER = "互动消息ID:";
+    private static final String TARGET_MARKER = ",目标用户:";
+    private static final int MIGRATE_BATCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${bot.interaction.cache-size:20000}")
+    private int cacheSize; // 缓存的消息数
+
+    @Value("${bot.interaction.cache-stripes:16}")
+    private int stripeCount;
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private Stripe[] stripes;
+
+    @PostConstruct
+    public void init() {
+        stripes = new Stripe[Math.max(1, stripeCount)];
+        int perStripe = Math.max(16, cacheSize / stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'message_interactions'", Integer.class);
+        if (exists != null && exists > 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE message_interactions (" +
+                    "    interaction_id INTEGER PRIMARY KEY," +
+                    "    chat_id TEXT NOT NULL," +
+                    "    event_id INTEGER NOT NULL DEFAULT 0," +
+                    "    actor_user_id TEXT NOT NULL," +
+                    "    target_user_id TEXT NOT NULL," +
+                    "    target_message_id INTEGER NOT NULL," +
+                    "    interaction_type TEXT NOT NULL," +
+                    "    interaction_time TEXT NOT NULL" +
+                    ");");
+            // 按消息统计与判断重复互动
+            jdbcTemplate.execute("CREATE INDEX idx_message_interactions_message ON message_interactions " +
+                    "(chat_id, target_message_id, event_id, interaction_type, actor_user_id)");
+            // 按被互动用户统计
+            jdbcTemplate.execute("CREATE INDEX idx_message_interactions_target ON message_interactions " +
+                    "(chat_id, target_user_id, interaction_type, event_id)");
+            int migrated = migrateFromActivityLogs();
+            LoggingUtils.logSystemStatus("已由历史活动日志生成消息互动表，记录数: " + migrated);
+        });
+    }
+
+    /**
+     * 记录一次互动：在分段锁内检查单条消息互动上限与重复互动，通过后与活动日志在同一事务中写入
+     * @param maxPerMessage 单条消息（同一活动内）最多记录的互动次数
+     * @param append 追加活动日志的操作，参数为需要在同一事务中执行的互动记录写入，返回是否成功
+     * @return 是否记录成功；达到上限、重复互动或写入失败时返回false
+     */
+    public boolean record(String chatId, int eventId, String actorUserId, String targetUserId, long messageId,
+                          String interactionType, int maxPerMessage, Predicate<Runnable> append) {
+        MessageKey key = new MessageKey(chatId, eventId, messageId);
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Set<String> actors = getOrLoad(stripe, key);
+            String actor = actorKey(interactionType, actorUserId);
+            if (actors.size() >= maxPerMessage || actors.contains(actor)) {
+                return false;
+            }
+            String now = LocalDateTime.now().format(formatter);
+            boolean appended = append.test(() -> jdbcTemplate.update(
+                    "INSERT INTO message_interactions (chat_id, event_id, actor_user_id, target_user_id, target_message_id, interaction_type, interaction_time) " +
+                            "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    chatId, eventId, actorUserId, targetUserId, messageId, interactionType, now));
+            if (appended) {
+                actors.add(actor);
+                if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                    // 在外层事务中写入时，外层回滚后移除该互动者，否则重试的互动会被当作重复互动
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            if (status != STATUS_COMMITTED) {
+                                stripe.lock.lock();
+                                try {
+                                    actors.remove(actor);
+                                } finally {
+                                    stripe.lock.unlock();
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+            return appended;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 获取消息已被互动的次数
+     */
+    public int countForMessage(String chatId, int eventId, long messageId) {
+        MessageKey key = new MessageKey(chatId, eventId, messageId);
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            return getOrLoad(stripe, key).size();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 用户是否已对消息进行过该类型的互动
+     */
+    public boolean hasInteracted(String chatId, int eventId, String actorUserId, long messageId, String interactionType) {
+        MessageKey key = new MessageKey(chatId, eventId, messageId);
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            return getOrLoad(stripe, key).contains(actorKey(interactionType, actorUserId));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 获取用户被互动的次数
+     * @param eventId 活动ID，为null时统计所有活动
+     */
+    public int countForTarget(String chatId, Integer eventId, String targetUserId, String interactionType) {
+        Integer count = eventId == null
+                ? readJdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_interactions " +
+                        "WHERE chat_id = ? AND target_user_id = ? AND interaction_type = ?",
+                Integer.class, chatId, targetUserId, interactionType)
+                : readJdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_interactions " +
+                        "WHERE chat_id = ? AND target_user_id = ? AND interaction_type = ? AND event_id = ?",
+                Integer.class, chatId, targetUserId, interactionType, eventId);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 解析活动日志中的互动内容“互动消息ID:X,目标用户:Y”
+     * @return 解析结果，格式不符时返回null
+     */
+    public static InteractionRef parseActivityLog(String activityLog) {
+        if (activityLog == null || !activityLog.startsWith(MESSAGE_MARKER)) {
+            return null;
+        }
+        int targetIndex = activityLog.indexOf(TARGET_MARKER, MESSAGE_MARKER.length());
+        if (targetIndex < 0) {
+            return null;
+        }
+        String targetUserId = activityLog.substring(targetIndex + TARGET_MARKER.length());
+        if (targetUserId.isEmpty()) {
+            return null;
+        }
+        try {
+            long messageId = Long.parseLong(activityLog.substring(MESSAGE_MARKER.length(), targetIndex));
+            return new InteractionRef(messageId, targetUserId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Set<String> getOrLoad(Stripe stripe, MessageKey key) {
+        Set<String> actors = stripe.messages.get(key);
+        if (actors == null) {
+            // 加载走读连接池，持有分段锁时不占用写连接
+            actors = new HashSet<>(readJdbcTemplate.query(
+                    "SELECT interaction_type, actor_user_id FROM message_interactions " +
+                            "WHERE chat_id = ? AND target_message_id = ? AND event_id = ?",
+                    (rs, rowNum) -> actorKey(rs.getString("interaction_type"), rs.getString("actor_user_id")),
+                    key.chatId(), key.messageId(), key.eventId()));
+            stripe.messages.put(key, actors);
+        }
+        return actors;
+    }
+
+    private int migrateFromActivityLogs() {
+        Integer logsExist = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'user_activity_logs'", Integer.class);
+        if (logsExist == null || logsExist == 0) {
+            return 0;
+        }
+        String insertSql = "INSERT INTO message_interactions (chat_id, event_id, actor_user_id, target_user_id, target_message_id, interaction_type, interaction_time) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        List<Object[]> batch = new ArrayList<>(MIGRATE_BATCH_SIZE);
+        int[] migrated = new int[1];
+        jdbcTemplate.query("SELECT chat_id, event_id, user_id, activity_type, activity_log, activity_time FROM user_activity_logs " +
+                "WHERE activity_type IN ('message_reply', 'message_reaction') AND instr(activity_log, ?) = 1 " +
+                "AND chat_id IS NOT NULL AND user_id IS NOT NULL", rs -> {
+            InteractionRef ref = parseActivityLog(rs.getString("activity_log"));
+            if (ref == null) {
+                return;
+            }
+            String time = rs.getString("activity_time");
+            batch.add(new Object[]{rs.getString("chat_id"), rs.getInt("event_id"), rs.getString("user_id"),
+                    ref.targetUserId(), ref.messageId(), rs.getString("activity_type"),
+                    time != null ? time : LocalDateTime.now().format(formatter)});
+            if (batch.size() >= MIGRATE_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(insertSql, batch);
+                migrated[0] += batch.size();
+                batch.clear();
+            }
+        }, MESSAGE_MARKER);
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertSql, batch);
+            migrated[0] += batch.size();
+        }
+        return migrated[0];
+    }
+
+    private static String actorKey(String interactionType, String actorUserId) {
+        return interactionType + ":" + actorUserId;
+    }
+
+    private Stripe stripeFor(MessageKey key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    /**
+     * 活动日志中解析出的互动内容
+     * @param messageId 被互动的消息ID
+     * @param targetUserId 被互动的用户ID
+     */
+    public record InteractionRef(long messageId, String targetUserId) {
+    }
+
+    private record MessageKey(String chatId, int eventId, long messageId) {
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<MessageKey, Set<String>> messages;
+
+        private Stripe(int capacity) {
+            this.messages = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<MessageKey, Set<String>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.bot.aabot.dao;
+
+import com.bot.aabot.config.BotConfig;
+import com.bot.aabot.context.DataContext;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ClassName: LogPartitionDao
+ * Package: com.bot.aabot.dao
+ * Description: 按时间分区的消息日志存储。
+ * 分区目录表 message_log_partition 记录每个分区表及其时间范围 [start_time, end_time)；
+ * 按天存储时每天一个分区（表名沿用 log_yy_M_dd），写入按消息的发送时间路由到所属分区，跨零点的消息不会写错表；
+ * 分区的建表、建索引与登记目录在一个事务中完成，只在启动与轮转时创建，新分区提前一天创建，零点不需要切换全局表名；
+ * 写入路径（通常在调用方的事务中）只查内存快照，不建表、不加锁，发送时间落在已建分区之外的消息写入覆盖全部时间的溢出分区 log_overflow。
+ * 查询按时间范围裁剪到相关分区，跨多个分区时并行查询后合并。
+ * 每个分区在 (chat_id, message_id) 上有唯一索引，预写日志重放同一条消息时不会重复保存。
+ * 单表存储（oneOrEveryday=one）时只有一个覆盖全部时间的分区 log。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Repository
+public class LogPartitionDao {
+
+    /** 单表存储使用的表名 */
+    public static final String SINGLE_TABLE = "log";
+    /** 按天存储时，发送时间不在已建分区内的消息写入的表 */
+    public static final String OVERFLOW_TABLE = "log_overflow";
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yy_M_dd");
+    private static final Pattern DAILY_NAME = Pattern.compile("log_(\\d{2})_(\\d{1,2})_(\\d{1,2})");
+    private static final String MIN_TIME = "1970-01-01 00:00:00";
+    private static final String MAX_TIME = "9999-12-31 23:59:59";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private BotConfig botConfig;
+
+    @Value("${bot.log-partition.query-parallelism:4}")
+    private int queryParallelism; // 跨分区查询的并行数
+
+    // 按开始时间升序排列的分区快照，变更时整体替换
+    private volatile List<Partition> partitions = List.of();
+    private volatile Set<String> tableNames = Set.of();
+    private ExecutorService queryExecutor;
+
+    /**
+     * 创建目录表并登记已有的日志表，确保当前与下一个分区存在
+     */
+    @PostConstruct
+    public synchronized void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        queryExecutor = Executors.newFixedThreadPool(Math.max(1, queryParallelism), r -> {
+            Thread thread = new Thread(r, "log-partition-query-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS message_log_partition (" +
+                "    table_name TEXT PRIMARY KEY," +
+                "    start_time TEXT NOT NULL," +
+                "    end_time TEXT NOT NULL," +
+                "    created_time TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%S','now','localtime'))" +
+                ");");
+        registerLegacyTables();
+        reload();
+        for (String table : tableNames) {
+            ensureUniqueMessageKey(table);
+        }
+        rollover(LocalDate.now());
+        LoggingUtils.logSystemStatus(String.format("消息日志分区已加载 - 分区数: %d, 当前分区: %s",
+                partitions.size(), DataContext.tableName));
+    }
+
+    /**
+     * 分区轮转：确保当天与次日的分区存在，并更新兼容用的当前表名。
+     * 需要写连接，不能在事务中调用
+     */
+    public synchronized void rollover(LocalDate today) {
+        if (isSingleTable()) {
+            ensurePartition(SINGLE_TABLE, MIN_TIME, MAX_TIME);
+            DataContext.tableName = SINGLE_TABLE;
+            return;
+        }
+        ensurePartition(OVERFLOW_TABLE, MIN_TIME, MAX_TIME);
+        ensureDaily(today);
+        ensureDaily(today.plusDays(1));
+        DataContext.tableName = dailyName(today);
+    }
+
+    /**
+     * 消息应写入的分区表。只读内存快照，可在事务中调用
+     * @param sendTime 消息发送时间（秒级时间戳），为空时取当前时间
+     */
+    public String tableFor(Integer sendTime) {
+        if (isSingleTable()) {
+            return SINGLE_TABLE;
+        }
+        long epochSecond = sendTime != null ? sendTime : System.currentTimeMillis() / 1000;
+        LocalDate day = LocalDate.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+        String name = dailyName(day);
+        // 超出已创建范围（时钟偏差或长时间停机后的旧消息）时写入溢出分区，不在写入路径上建表
+        return tableNames.contains(name) ? name : OVERFLOW_TABLE;
+    }
+
+    /**
+     * 与时间范围 [from, to] 有交集的分区表，按时间从新到旧排列
+     */
+    public List<String> tablesBetween(LocalDateTime from, LocalDateTime to) {
+        String fromText = from.format(TIME_FORMAT);
+        String toText = to.format(TIME_FORMAT);
+        List<String> tables = new ArrayList<>();
+        List<Partition> snapshot = partitions;
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            Partition partition = snapshot.get(i);
+            if (partition.startTime().compareTo(toText) <= 0 && partition.endTime().compareTo(fromText) > 0) {
+                tables.add(partition.tableName());
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * 全部分区表，按时间从新到旧排列
+     */
+    public List<String> allTables() {
+        List<String> tables = new ArrayList<>();
+        List<Partition> snapshot = partitions;
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            tables.add(snapshot.get(i).tableName());
+        }
+        return tables;
+    }
+
+    /**
+     * 在多个分区上执行同一查询并合并结果，多个分区时并行执行
+     * 事务内顺序执行并使用事务连接，以免单连接写入池上的并行查询等待事务释放连接
+     * @param tables 分区表
+     * @param sqlForTable 根据表名生成SQL
+     * @param rowMapper 行映射
+     * @param args 查询参数
+     * @return 按分区顺序合并的结果
+     */
+    public <T> List<T> queryAcross(List<String> tables, Function<String, String> sqlForTable, RowMapper<T> rowMapper, Object... args) {
+        boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+        JdbcTemplate template = inTransaction ? jdbcTemplate : readJdbcTemplate;
+        if (tables.size() <= 1 || inTransaction) {
+            List<T> result = new ArrayList<>();
+            for (String table : tables) {
+                result.addAll(template.query(sqlForTable.apply(table), rowMapper, args));
+            }
+            return result;
+        }
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(tables.size());
+        for (String table : tables) {
+            futures.add(CompletableFuture.supplyAsync(() -> template.query(sqlForTable.apply(table), rowMapper, args), queryExecutor));
+        }
+        List<T> result = new ArrayList<>();
+        for (CompletableFuture<List<T>> future : futures) {
+            result.addAll(future.join());
+        }
+        return result;
+    }
+
+    /**
+     * 从新到旧依次查询分区，返回第一个非空结果（用于按消息ID定位，目标几乎总在最近的分区）
+     */
+    public <T> List<T> queryNewestFirst(List<String> tables, Function<String, String> sqlForTable, RowMapper<T> rowMapper, Object... args) {
+        JdbcTemplate template = TransactionSynchronizationManager.isActualTransactionActive() ? jdbcTemplate : readJdbcTemplate;
+        for (String table : tables) {
+            List<T> result = template.query(sqlForTable.apply(table), rowMapper, args);
+            if (!result.isEmpty()) {
+                return result;
+            }
+        }
+        return List.of();
+    }
+
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    private boolean isSingleTable() {
+        return "one".equals(botConfig.getOneOrEveryday());
+    }
+
+    private String dailyName(LocalDate day) {
+        return "log_" + day.format(NAME_FORMAT);
+    }
+
+    private void ensureDaily(LocalDate day) {
+        ensurePartition(dailyName(day), day.atStartOfDay().format(TIME_FORMAT), day.plusDays(1).atStartOfDay().format(TIME_FORMAT));
+    }
+
+    /**
+     * 在一个事务中建表、建索引并登记分区，提交后更新内存中的分区快照
+     */
+    private void ensurePartition(String tableName, String startTime, String endTime) {
+        if (tableNames.contains(tableName)) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            createTable(tableName);
+            jdbcTemplate.update("INSERT OR IGNORE INTO message_log_partition (table_name, start_time, end_time) VALUES (?, ?, ?)",
+                    tableName, startTime, endTime);
+        });
+        reload();
+        LoggingUtils.logOperation("LOG_PARTITION_CREATED", "SYSTEM",
+                String.format("创建消息日志分区 - %s [%s, %s)", tableName, startTime, endTime));
+    }
+
+    private void createTable(String tableName) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + tableName + "( " +
+                "    log_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "    form_name TEXT," +
+                "    message_id INTEGER," +
+                "    user_id TEXT," +
+                "    user_name TEXT," +
+                "    message_type TEXT," +
+                "    message TEXT," +
+                "    is_edit INTEGER DEFAULT 0," +
+                "    send_time TEXT," +
+                "    chat_id TEXT," +
+                "    topic_id INTEGER" +
+                ");");
+        // 早期创建的表缺少 chat_id / topic_id 列
+        List<String> columns = jdbcTemplate.queryForList("SELECT name FROM pragma_table_info('" + tableName + "')", String.class);
+        if (!columns.contains("chat_id")) {
+            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN chat_id TEXT");
+        }
+        if (!columns.contains("topic_id")) {
+            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN topic_id INTEGER");
+        }
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_" + tableName + "_chat_user ON " + tableName + " (chat_id, user_id)");
+        createUniqueMessageKey(tableName);
+    }
+
+    /**
+     * 为升级前创建的分区补建 (chat_id, message_id) 唯一索引，在一个事务中完成
+     */
+    private void ensureUniqueMessageKey(String tableName) {
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?", Integer.class,
+                "uk_" + tableName + "_chat_message");
+        if (exists != null && exists > 0) {
+            return;
+        }
+        Integer removed = transactionTemplate.execute(status -> createUniqueMessageKey(tableName));
+        LoggingUtils.logOperation("LOG_PARTITION_UNIQUE_KEY", "SYSTEM",
+                String.format("消息日志分区 %s 已建立唯一索引，删除重复消息: %d", tableName, removed));
+    }
+
+    /**
+     * 删除重复保存的消息（保留最早一条）后建立唯一索引，替换原来的普通索引（由调用方控制事务）
+     * @return 删除的重复消息数
+     */
+    private int createUniqueMessageKey(String tableName) {
+        int removed = jdbcTemplate.update("DELETE FROM " + tableName + " WHERE chat_id IS NOT NULL AND message_id IS NOT NULL " +
+                "AND log_id NOT IN (SELECT MIN(log_id) FROM " + tableName + " GROUP BY chat_id, message_id)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_" + tableName + "_chat_message ON " + tableName + " (chat_id, message_id)");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_" + tableName + "_chat_message");
+        return removed;
+    }
+
+    /**
+     * 登记分区目录建立之前按天或单表创建的日志表
+     */
+    private void registerLegacyTables() {
+        List<String> tables = jdbcTemplate.queryForList(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name LIKE 'log%' " +
+                        "AND name NOT IN (SELECT table_name FROM message_log_partition)", String.class);
+        for (String table : tables) {
+            Matcher matcher = DAILY_NAME.matcher(table);
+            String startTime;
+            String endTime;
+            if (matcher.matches()) {
+                LocalDate day = LocalDate.of(2000 + Integer.parseInt(matcher.group(1)),
+                        Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+                startTime = day.atStartOfDay().format(TIME_FORMAT);
+                endTime = day.plusDays(1).atStartOfDay().format(TIME_FORMAT);
+            } else if (SINGLE_TABLE.equals(table)) {
+                startTime = MIN_TIME;
+                endTime = MAX_TIME;
+            } else {
+                continue;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                createTable(table);
+                jdbcTemplate.update("INSERT OR IGNORE INTO message_log_partition (table_name, start_time, end_time) VALUES (?, ?, ?)",
+                        table, startTime, endTime);
+            });
+            LoggingUtils.logOperation("LOG_PARTITION_REGISTERED", "SYSTEM",
+                    String.format("登记已有消息日志表 - %s [%s, %s)", table, startTime, endTime));
+        }
+    }
+
+    private void reload() {
+        List<Partition> loaded = jdbcTemplate.query(
+                "SELECT table_name, start_time, end_time FROM message_log_partition",
+                (rs, rowNum) -> new Partition(rs.getString("table_name"), rs.getString("start_time"), rs.getString("end_time")));
+        loaded.sort(Comparator.comparing(Partition::startTime).thenComparing(Partition::endTime));
+        Set<String> names = new HashSet<>();
+        loaded.forEach(partition -> names.add(partition.tableName()));
+        tableNames = names;
+        partitions = List.copyOf(loaded);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (queryExecutor != null) {
+            queryExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 分区：表名与时间范围 [startTime, endTime)
+     */
+    private record Partition(String tableName, String startTime, String endTime) {
+    }
+}
@@ -9,6 +9,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * ClassName: messageDco
@@ -24,6 +30,10 @@ public class MessageDao {
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private LogPartitionDao logPartitionDao;
+    @Autowired
+    private MessageSearchDao messageSearchDao;
 
     /**
      * 保存回复信息
@@ -42,13 +52,13 @@ public class MessageDao {
     }
 
     /**
-     * 保存消息
+     * 保存消息（按发送时间写入所属分区），同一会话中已保存过的消息（重放）忽略
      * @param upLogEntity
      */
     public void saveMessages(UpLogEntity upLogEntity){
-        String sql = "INSERT INTO "+ DataContext.tableName +" (form_name, message_id, user_id, user_name, message_type, message, send_time, chat_id, topic_id) "
+        String sql = "INSERT OR IGNORE INTO "+ logPartitionDao.tableFor(upLogEntity.getSendTime()) +" (form_name, message_id, user_id, user_name, message_type, message, send_time, chat_id, topic_id) "
                 + "VALUES (?, ?, ?, ?, ?, ?, datetime(? , 'unixepoch', 'localtime'), ?, ?)";
-        jdbcTemplate.update(sql,
+        int inserted = jdbcTemplate.update(sql,
                 upLogEntity.getFormName(),
                 upLogEntity.getMessageId(),
                 upLogEntity.getUserId(),
@@ -58,15 +68,71 @@ public class MessageDao {
                 upLogEntity.getSendTime(),
                 upLogEntity.getChatId(),
                 upLogEntity.getTopicId());
+        if (inserted > 0) {
+            messageSearchDao.index(List.of(upLogEntity));
+        }
     }
     /**
-     * 修改消息被修改值的状态
+     * 批量保存消息（按发送时间分组写入所属分区，由调用方控制事务），同一会话中已保存过的消息（重放）忽略
+     * @param entities 消息日志实体
+     */
+    public void saveMessagesBatch(List<UpLogEntity> entities) {
+        List<UpLogEntity> inserted = new ArrayList<>(entities.size());
+        groupByPartition(entities).forEach((tableName, group) -> {
+            String sql = "INSERT OR IGNORE INTO "+ tableName +" (form_name, message_id, user_id, user_name, message_type, message, send_time, chat_id, topic_id) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, datetime(? , 'unixepoch', 'localtime'), ?, ?)";
+            int[][] counts = jdbcTemplate.batchUpdate(sql, group, group.size(), (ps, upLogEntity) -> {
+                ps.setString(1, upLogEntity.getFormName());
+                ps.setObject(2, upLogEntity.getMessageId());
+                ps.setObject(3, upLogEntity.getUserId());
+                ps.setString(4, upLogEntity.getUserName());
+                ps.setString(5, upLogEntity.getMessageType());
+                ps.setString(6, upLogEntity.getMessage());
+                ps.setObject(7, upLogEntity.getSendTime());
+                ps.setObject(8, upLogEntity.getChatId());
+                ps.setObject(9, upLogEntity.getTopicId());
+            });
+            for (int i = 0; i < group.size(); i++) {
+                // 驱动无法给出单条结果时按已写入处理
+                int count = counts[0][i];
+                if (count != 0) {
+                    inserted.add(group.get(i));
+                }
+            }
+        });
+        // 全文索引与消息在同一事务中写入，只索引本次新写入的消息
+        messageSearchDao.index(inserted);
+    }
+
+    /**
+     * 批量标记消息已编辑（由调用方控制事务）
+     * @param edited 被编辑的消息，只需 chatId、messageId 与原发送时间 sendTime
+     */
+    public void markEditedBatch(List<UpLogEntity> edited) {
+        groupByPartition(edited).forEach((tableName, group) ->
+                jdbcTemplate.batchUpdate("UPDATE " + tableName + " SET is_edit = 1 WHERE chat_id = ? AND message_id = ?",
+                        group, group.size(), (ps, upLogEntity) -> {
+                            ps.setObject(1, upLogEntity.getChatId());
+                            ps.setObject(2, upLogEntity.getMessageId());
+                        }));
+    }
+
+    /**
+     * 修改消息被修改值的状态（编辑消息的 date 为原消息的发送时间，据此定位分区）
      * @param update
      * @throws Exception
      */
     public void editMessage(Update update) throws Exception{
-        Integer messageId = update.getEditedMessage().getMessageId();
-        String sql = "UPDATE "+DataContext.tableName+" SET is_edit = 1 WHERE message_id =" + messageId;
-        jdbcTemplate.update(sql);
+        Message message = update.getEditedMessage();
+        String sql = "UPDATE " + logPartitionDao.tableFor(message.getDate()) + " SET is_edit = 1 WHERE chat_id = ? AND message_id = ?";
+        jdbcTemplate.update(sql, message.getChatId(), message.getMessageId());
+    }
+
+    private Map<String, List<UpLogEntity>> groupByPartition(List<UpLogEntity> entities) {
+        Map<String, List<UpLogEntity>> byTable = new LinkedHashMap<>();
+        for (UpLogEntity entity : entities) {
+            byTable.computeIfAbsent(logPartitionDao.tableFor(entity.getSendTime()), k -> new ArrayList<>()).add(entity);
+        }
+        return byTable;
     }
 }
@@ -0,0 +1,220 @@
+package com.bot.aabot.dao;
+
+import com.bot.aabot.entity.UpLogEntity;
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.SearchText;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ClassName: MessageSearchDao
+ * Package: com.bot.aabot.dao
+ * Description: 消息日志的 FTS5 全文索引。
+ * 索引表 message_fts 只对分词后的 content 列建倒排索引，原文与群组、用户、话题、时间等列不参与分词，用于过滤和展示；
+ * 新消息由消息保存路径在同一事务中写入索引。索引表首次创建时记录各日志分区当时的最大 log_id，
+ * 此前的历史消息由 {@link #backfillStep} 分批补建。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Repository
+public class MessageSearchDao {
+
+    // 只有文本消息建立索引，实时索引与历史补建使用同一条件
+    private static final String INDEXED_TYPE = "text";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private LogPartitionDao logPartitionDao;
+
+    @Value("${bot.search.enabled:true}")
+    private boolean enabled;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'message_fts'", Integer.class);
+        if (exists != null && exists > 0) {
+            return;
+        }
+        // 建索引表与记录补建水位在一个事务中完成，此后写入的消息都由保存路径实时索引
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE VIRTUAL TABLE message_fts USING fts5(" +
+                    "content, message UNINDEXED, chat_id UNINDEXED, user_id UNINDEXED, user_name UNINDEXED, " +
+                    "topic_id UNINDEXED, message_id UNINDEXED, send_time UNINDEXED, " +
+                    "tokenize = 'unicode61 remove_diacritics 2')");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS message_fts_backfill (" +
+                    "    table_name TEXT PRIMARY KEY," +
+                    "    last_log_id INTEGER NOT NULL DEFAULT 0," +
+                    "    until_log_id INTEGER NOT NULL" +
+                    ");");
+            for (String table : logPartitionDao.allTables()) {
+                Long maxLogId = jdbcTemplate.queryForObject("SELECT MAX(log_id) FROM " + table, Long.class);
+                if (maxLogId != null) {
+                    jdbcTemplate.update("INSERT OR IGNORE INTO message_fts_backfill (table_name, until_log_id) VALUES (?, ?)",
+                            table, maxLogId);
+                }
+            }
+        });
+        LoggingUtils.logSystemStatus("已创建消息全文索引，历史消息将在后台补建索引");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 为新保存的文本消息建立索引（由调用方控制事务）
+     */
+    public void index(List<UpLogEntity> entities) {
+        if (!enabled) {
+            return;
+        }
+        List<UpLogEntity> texts = new ArrayList<>(entities.size());
+        for (UpLogEntity entity : entities) {
+            if (INDEXED_TYPE.equals(entity.getMessageType()) && entity.getMessage() != null) {
+                texts.add(entity);
+            }
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO message_fts (content, message, chat_id, user_id, user_name, topic_id, message_id, send_time) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, datetime(?, 'unixepoch', 'localtime'))",
+                texts, texts.size(), (ps, entity) -> {
+                    ps.setString(1, SearchText.toIndexText(entity.getMessage()));
+                    ps.setString(2, entity.getMessage());
+                    ps.setString(3, String.valueOf(entity.getChatId()));
+                    ps.setString(4, String.valueOf(entity.getUserId()));
+                    ps.setString(5, entity.getUserName());
+                    ps.setObject(6, entity.getTopicId());
+                    ps.setObject(7, entity.getMessageId());
+                    ps.setObject(8, entity.getSendTime());
+                });
+    }
+
+    /**
+     * 为一个分区补建一批历史消息的索引
+     * @param batchSize 单批条数
+     * @return 本批补建的条数，没有待补建的分区时返回-1
+     */
+    public int backfillStep(int batchSize) {
+        if (!enabled) {
+            return -1;
+        }
+        List<Map<String, Object>> pending = jdbcTemplate.queryForList(
+                "SELECT table_name, last_log_id, until_log_id FROM message_fts_backfill WHERE last_log_id < until_log_id LIMIT 1");
+        if (pending.isEmpty()) {
+            return -1;
+        }
+        String table = (String) pending.get(0).get("table_name");
+        long lastLogId = ((Number) pending.get(0).get("last_log_id")).longValue();
+        long untilLogId = ((Number) pending.get(0).get("until_log_id")).longValue();
+        Integer indexed = transactionTemplate.execute(status -> {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT log_id, message, chat_id, user_id, user_name, topic_id, message_id, send_time FROM " + table +
+                            " WHERE log_id > ? AND log_id <= ? AND message_type = ? ORDER BY log_id LIMIT ?",
+                    lastLogId, untilLogId, INDEXED_TYPE, batchSize);
+            List<Object[]> args = new ArrayList<>(rows.size());
+            long cursor = rows.size() < batchSize ? untilLogId : lastLogId;
+            for (Map<String, Object> row : rows) {
+                cursor = Math.max(cursor, ((Number) row.get("log_id")).longValue());
+                Object message = row.get("message");
+                if (message == null) {
+                    continue;
+                }
+                // FTS5 的列没有类型亲和性，群组与用户ID统一按文本写入，与实时索引及过滤条件保持一致
+                args.add(new Object[]{SearchText.toIndexText(message.toString()), message, String.valueOf(row.get("chat_id")),
+                        String.valueOf(row.get("user_id")), row.get("user_name"), row.get("topic_id"), row.get("message_id"),
+                        row.get("send_time")});
+            }
+            if (!args.isEmpty()) {
+                jdbcTemplate.batchUpdate("INSERT INTO message_fts (content, message, chat_id, user_id, user_name, topic_id, message_id, send_time) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", args);
+            }
+            jdbcTemplate.update("UPDATE message_fts_backfill SET last_log_id = ? WHERE table_name = ?", cursor, table);
+            return args.size();
+        });
+        return indexed != null ? indexed : 0;
+    }
+
+    /**
+     * 检索消息，按写入顺序从新到旧排列
+     * @param match FTS5 查询（{@link SearchText#toMatchQuery}）
+     * @param filters 过滤条件
+     * @param offset 偏移
+     * @param limit 条数
+     */
+    public List<Map<String, Object>> search(String match, SearchFilters filters, int offset, int limit) {
+        List<Object> args = new ArrayList<>();
+        String where = where(match, filters, args);
+        args.add(limit);
+        args.add(offset);
+        return readJdbcTemplate.queryForList(
+                "SELECT message, chat_id, user_id, user_name, topic_id, message_id, send_time FROM message_fts WHERE " + where +
+                        " ORDER BY rowid DESC LIMIT ? OFFSET ?", args.toArray());
+    }
+
+    /**
+     * 命中的消息总数
+     */
+    public int count(String match, SearchFilters filters) {
+        List<Object> args = new ArrayList<>();
+        String where = where(match, filters, args);
+        Integer count = readJdbcTemplate.queryForObject("SELECT COUNT(*) FROM message_fts WHERE " + where, Integer.class, args.toArray());
+        return count != null ? count : 0;
+    }
+
+    private String where(String match, SearchFilters filters, List<Object> args) {
+        StringBuilder where = new StringBuilder("message_fts MATCH ?");
+        args.add(match);
+        if (filters.chatId() != null) {
+            where.append(" AND chat_id = ?");
+            args.add(filters.chatId());
+        }
+        if (filters.userId() != null) {
+            where.append(" AND user_id = ?");
+            args.add(filters.userId());
+        }
+        if (filters.topicId() != null) {
+            where.append(" AND topic_id = ?");
+            args.add(filters.topicId());
+        }
+        if (filters.from() != null) {
+            where.append(" AND send_time >= ?");
+            args.add(filters.from());
+        }
+        if (filters.to() != null) {
+            where.append(" AND send_time <= ?");
+            args.add(filters.to());
+        }
+        return where.toString();
+    }
+
+    /**
+     * 检索过滤条件，为null的条件不过滤
+     * @param from 开始时间（yyyy-MM-dd HH:mm:ss）
+     * @param to 结束时间（yyyy-MM-dd HH:mm:ss）
+     */
+    public record SearchFilters(String chatId, String userId, Integer topicId, String from, String to) {
+    }
+}
@@ -6,14 +6,20 @@ import com.bot.aabot.entity.UserAchievement;
 import com.bot.aabot.entity.UserActivityLog;
 import com.bot.aabot.utils.LoggingUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,9 +39,28 @@ public class ScoreDao {
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private LogPartitionDao logPartitionDao;
+    @Autowired
+    private ActivityCounterDao activityCounterDao;
+    @Autowired
+    private CheckInStreakDao checkInStreakDao;
+    @Autowired
+    private InteractionDao interactionDao;
 
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * 只读查询使用的 JdbcTemplate：事务内仍走主连接以读到本事务的写入，否则走只读连接池
+     */
+    private JdbcTemplate reader() {
+        return TransactionSynchronizationManager.isActualTransactionActive() ? jdbcTemplate : readJdbcTemplate;
+    }
 
     /**
      * 根据群组ID查询相关的活动ID列表
@@ -101,18 +126,30 @@ public class ScoreDao {
      * @return 是否添加成功
      */
     public boolean addUserActivityLog(UserActivityLog log) {
+        return addUserActivityLog(log, null);
+    }
+
+    /**
+     * 添加用户活动日志，并在同一事务中执行附加写入
+     *
+     * @param log 用户活动日志
+     * @param alsoInTransaction 日志写入成功后在同一事务中执行的操作，可为null
+     * @return 是否添加成功
+     */
+    public boolean addUserActivityLog(UserActivityLog log, Runnable alsoInTransaction) {
         String sql = "INSERT INTO user_activity_logs (user_id, activity_type, activity_time, activity_log, event_id, topic_id,chat_id) " +
                     "VALUES (?, ?, ?, ?, ?, ?,?)";
         try {
             LocalDateTime now = LocalDateTime.now();
-            int rows = jdbcTemplate.update(sql, 
+            // 计数器与日志在同一事务中累加
+            int rows = activityCounterDao.appendWithCounters(log, () -> jdbcTemplate.update(sql,
                 log.getUserId(),
                 log.getActivityType(),
                 now.format(formatter),
                 log.getActivityLog(),
                 log.getEventId(),
                 log.getTopicId(),
-                    log.getChatId());
+                    log.getChatId()), alsoInTransaction);
             return rows > 0;
         } catch (Exception e) {
             LoggingUtils.logError("ADD_USER_LOG_ERROR", "添加用户活动日志失败: " + e.getMessage(), e);
@@ -130,7 +167,7 @@ public class ScoreDao {
     public Map<String, Object> getUserPoints(int eventId, String userId) {
         String sql = "SELECT * FROM user_points WHERE event_id = ? AND user_id = ?";
         try {
-            List<Map<String, Object>> results = jdbcTemplate.queryForList(sql, eventId, userId);
+            List<Map<String, Object>> results = reader().queryForList(sql, eventId, userId);
             return results.isEmpty() ? null : results.get(0);
         } catch (Exception e) {
             LoggingUtils.logError("GET_USER_POINTS_ERROR", "获取用户积分失败: " + e.getMessage(), e);
@@ -139,7 +176,7 @@ public class ScoreDao {
     }
 
     /**
-     * 更新用户积分
+     * 更新用户积分（单条增量写入，积分累加在数据库中完成）
      *
      * @param eventId 活动ID
      * @param userId 用户ID
@@ -149,34 +186,67 @@ public class ScoreDao {
      */
     public boolean updateUserPoints(int eventId,String chatName, String userId, String userName, int pointsToAdd, int specialPointsToAdd) {
         try {
-            Map<String, Object> userPoints = getUserPoints(eventId, userId);
-            if (userPoints == null) {
-                // 用户在该活动中没有积分记录，创建新记录
-                String insertSql = "INSERT INTO user_points (event_id, user_id, user_name, points, special_points, role, chat_name) " +
-                                 "VALUES (?, ?, ?, ?, ?, 'member', ?)";
-                int rows = jdbcTemplate.update(insertSql, eventId, userId, userName, pointsToAdd, specialPointsToAdd, chatName);
-                return rows > 0;
-            } else {
-                // 用户已有积分记录，更新积分和用户名
-                int currentPoints = (int) userPoints.get("points");
-                int currentSpecialPoints = (int) userPoints.get("special_points");
-                String updateSql = "UPDATE user_points SET points = ?, special_points = ?, user_name = ? " +
-                                 "WHERE event_id = ? AND user_id = ? ";
-                int rows = jdbcTemplate.update(updateSql, 
-                    currentPoints + pointsToAdd, 
-                    currentSpecialPoints + specialPointsToAdd, 
-                    userName,
-                    eventId, 
-                    userId
-                );
-                return rows > 0;
-            }
+            upsertUserPointsBatch(List.of(new PointDelta(eventId, userId, userName, chatName, pointsToAdd, specialPointsToAdd)));
+            return true;
         } catch (Exception e) {
             LoggingUtils.logError("UPDATE_USER_POINTS_ERROR", "更新用户积分失败: " + e.getMessage(), e);
             return false;
         }
     }
 
+    /**
+     * 批量累加用户积分：不存在的记录插入，已存在的记录在原值上加上增量（由调用方控制事务）
+     *
+     * @param deltas 积分增量
+     */
+    public void upsertUserPointsBatch(List<PointDelta> deltas) {
+        String sql = "INSERT INTO user_points (event_id, user_id, user_name, points, special_points, role, chat_name) " +
+                    "VALUES (?, ?, ?, ?, ?, 'member', ?) " +
+                    "ON CONFLICT(event_id, user_id) DO UPDATE SET " +
+                    "points = points + excluded.points, " +
+                    "special_points = special_points + excluded.special_points, " +
+                    "user_name = excluded.user_name";
+        jdbcTemplate.batchUpdate(sql, deltas, deltas.size(), (ps, delta) -> {
+            ps.setInt(1, delta.eventId());
+            ps.setString(2, delta.userId());
+            ps.setString(3, delta.userName());
+            ps.setInt(4, delta.points());
+            ps.setInt(5, delta.specialPoints());
+            ps.setString(6, delta.chatName());
+        });
+    }
+
+    /**
+     * 为 user_points 建立 (event_id, user_id) 唯一索引，增量写入依赖它判断冲突。
+     * 建索引前先合并并发写入遗留的重复记录：积分累加到最早的一条上，其余删除。
+     * 合并、删除与建索引在同一事务中完成，中途失败时整体回滚，不会留下已删除重复记录却未合并积分的状态。
+     */
+    public void ensureUserPointsUniqueIndex() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Integer tableExists = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'user_points'", Integer.class);
+            Integer indexExists = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = 'uk_user_points_event_user'", Integer.class);
+            if (tableExists == null || tableExists == 0 || (indexExists != null && indexExists > 0)) {
+                return;
+            }
+            int merged = jdbcTemplate.update("UPDATE user_points SET " +
+                    "points = (SELECT SUM(p.points) FROM user_points p WHERE p.event_id = user_points.event_id AND p.user_id = user_points.user_id), " +
+                    "special_points = (SELECT SUM(p.special_points) FROM user_points p WHERE p.event_id = user_points.event_id AND p.user_id = user_points.user_id) " +
+                    "WHERE rowid IN (SELECT MIN(rowid) FROM user_points GROUP BY event_id, user_id HAVING COUNT(*) > 1)");
+            int removed = jdbcTemplate.update("DELETE FROM user_points WHERE rowid NOT IN " +
+                    "(SELECT MIN(rowid) FROM user_points GROUP BY event_id, user_id)");
+            jdbcTemplate.execute("CREATE UNIQUE INDEX uk_user_points_event_user ON user_points (event_id, user_id)");
+            LoggingUtils.logSystemStatus(String.format("已为 user_points 建立唯一索引 - 合并重复用户: %d, 删除重复记录: %d", merged, removed));
+        });
+    }
+
+    /**
+     * 一个用户在一个活动中待写入的积分增量
+     */
+    public record PointDelta(int eventId, String userId, String userName, String chatName, int points, int specialPoints) {
+    }
+
     /**
      * 获取活动的成就列表
      *
@@ -311,10 +381,21 @@ public class ScoreDao {
      * @return 是否已签到
      */
     public boolean hasUserCheckedInToday(String chatId, int eventId, String userId) {
-        String today = LocalDateTime.now().format(dateFormatter);
-        String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND event_id = ? AND user_id = ? AND activity_type = 'check_in' AND substr(activity_time, 1, 10) = ?";
+        LocalDate today = LocalDate.now();
+        // 全局签到由签到连续天数表判断，不再查询日志
+        if (eventId == 0) {
+            try {
+                return checkInStreakDao.hasCheckedIn(chatId, userId, today);
+            } catch (Exception e) {
+                LoggingUtils.logError("CHECK_IN_QUERY_ERROR", "查询用户签到状态失败: " + e.getMessage(), e);
+                return false;
+            }
+        }
+        String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND event_id = ? AND user_id = ? AND activity_type = 'check_in' " +
+                "AND activity_time >= ? AND activity_time < ?";
         try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, eventId, userId, today);
+            Integer count = reader().queryForObject(sql, Integer.class, chatId, eventId, userId,
+                    today.atStartOfDay().format(formatter), today.plusDays(1).atStartOfDay().format(formatter));
             return count != null && count > 0;
         } catch (Exception e) {
             LoggingUtils.logError("CHECK_IN_QUERY_ERROR", "查询用户签到状态失败: " + e.getMessage(), e);
@@ -322,6 +403,17 @@ public class ScoreDao {
         }
     }
 
+    /**
+     * 获取用户在群组中当前的连续签到天数
+     *
+     * @param chatId 聊天ID
+     * @param userId 用户ID
+     * @return 连续签到天数，今天未签到时为0
+     */
+    public int getUserConsecutiveCheckInDays(String chatId, String userId) {
+        return checkInStreakDao.getStreak(chatId, userId).streakOn(LocalDate.now().toEpochDay());
+    }
+
     /**
      * 记录用户签到
      *
@@ -340,7 +432,13 @@ public class ScoreDao {
             log.setUserId(userId);
             log.setActivityType("check_in");
             log.setActivityLog(message);
-            
+
+            // 全局签到：在签到连续天数表的锁内判断并更新，与签到记录同一事务写入
+            if (eventId == 0) {
+                return checkInStreakDao.checkIn(chatId, userId, LocalDate.now(),
+                        updateStreak -> addUserActivityLog(log, updateStreak)) != null;
+            }
+
             // 添加签到记录
             return addUserActivityLog(log);
         } catch (Exception e) {
@@ -358,13 +456,8 @@ public class ScoreDao {
      * @return 已被互动次数
      */
     public int getMessageInteractionCount(String chatId, int eventId, Integer messageId) {
-        String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND event_id = ? " +
-                    "AND activity_type IN ('message_reply', 'message_reaction') " +
-                    "AND activity_log LIKE ?";
         try {
-            String logPattern = "%" + messageId + "%";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, eventId, logPattern);
-            return count != null ? count : 0;
+            return interactionDao.countForMessage(chatId, eventId, messageId);
         } catch (Exception e) {
             LoggingUtils.logError("GET_INTERACTION_COUNT_ERROR", "获取消息互动次数失败: " + e.getMessage(), e);
             return 0;
@@ -382,11 +475,8 @@ public class ScoreDao {
      * @return 是否已互动
      */
     public boolean hasUserInteractedWithMessage(String chatId, int eventId, String userId, Integer messageId, String interactionType) {
-        String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND event_id = ? AND user_id = ? AND activity_type = ? AND activity_log LIKE ?";
         try {
-            String logPattern = "%" + messageId + "%";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, eventId, userId, interactionType, logPattern);
-            return count != null && count > 0;
+            return interactionDao.hasInteracted(chatId, eventId, userId, messageId, interactionType);
         } catch (Exception e) {
             LoggingUtils.logError("CHECK_USER_INTERACTION_ERROR", "检查用户消息互动失败: " + e.getMessage(), e);
             return false;
@@ -405,6 +495,23 @@ public class ScoreDao {
      * @return 是否成功记录
      */
     public boolean recordMessageInteraction(String chatId, int eventId, String userId, String targetUserId, Integer messageId, String interactionType) {
+        return recordMessageInteraction(chatId, eventId, userId, targetUserId, messageId, interactionType, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 记录消息互动，同一用户对同一消息的同类互动只记录一次
+     *
+     * @param chatId 聊天ID
+     * @param eventId 活动ID
+     * @param userId 互动者用户ID
+     * @param targetUserId 被互动者用户ID
+     * @param messageId 消息ID
+     * @param interactionType 互动类型 (message_reply 或 message_reaction)
+     * @param maxInteractionsPerMessage 每条消息最大互动次数
+     * @return 是否成功记录，达到上限或重复互动时返回false
+     */
+    public boolean recordMessageInteraction(String chatId, int eventId, String userId, String targetUserId, Integer messageId,
+                                            String interactionType, int maxInteractionsPerMessage) {
         try {
             // 创建活动日志记录
             UserActivityLog log = new UserActivityLog();
@@ -413,9 +520,10 @@ public class ScoreDao {
             log.setUserId(userId);
             log.setActivityType(interactionType);
             log.setActivityLog("互动消息ID:" + messageId + ",目标用户:" + targetUserId);
-            
-            // 添加互动记录
-            return addUserActivityLog(log);
+
+            // 添加互动记录，结构化互动记录与活动日志同一事务写入
+            return interactionDao.record(chatId, eventId, userId, targetUserId, messageId, interactionType,
+                    maxInteractionsPerMessage, insertInteraction -> addUserActivityLog(log, insertInteraction));
         } catch (Exception e) {
             LoggingUtils.logError("RECORD_INTERACTION_ERROR", "记录消息互动失败: " + e.getMessage(), e);
             return false;
@@ -433,7 +541,7 @@ public class ScoreDao {
     public int getUserCheckInCount(String chatId, int eventId, String userId) {
         String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND event_id = ? AND user_id = ? AND activity_type = 'check_in'";
         try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, eventId, userId);
+            Integer count = reader().queryForObject(sql, Integer.class, chatId, eventId, userId);
             return count != null ? count : 0;
         } catch (Exception e) {
             LoggingUtils.logError("GET_CHECK_IN_COUNT_ERROR", "获取用户签到次数失败: " + e.getMessage(), e);
@@ -454,7 +562,7 @@ public class ScoreDao {
         String sql = "SELECT * FROM user_activity_logs WHERE chat_id = ? AND event_id = ? AND user_id = ? AND activity_type = ? " +
                     "ORDER BY activity_time DESC";
         try {
-            return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            return reader().query(sql, (rs, rowNum) -> {
                 UserActivityLog log = new UserActivityLog();
                 log.setLogId(rs.getInt("log_id"));
                 log.setChatId(rs.getString("chat_id"));
@@ -484,7 +592,7 @@ public class ScoreDao {
         String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND event_id = ? AND user_id = ? AND " +
                     "activity_type IN ('text_message', 'photo_message', 'video_message', 'document_message', 'audio_message', 'sticker_message')";
         try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, eventId, userId);
+            Integer count = reader().queryForObject(sql, Integer.class, chatId, eventId, userId);
             return count != null ? count : 0;
         } catch (Exception e) {
             LoggingUtils.logError("GET_USER_MESSAGE_COUNT_ERROR", "获取用户消息数量失败: " + e.getMessage(), e);
@@ -502,12 +610,8 @@ public class ScoreDao {
      * @return 被互动次数
      */
     public int getUserInteractionCount(String chatId, int eventId, String userId, String interactionType) {
-        String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND event_id = ? AND activity_type = ? " +
-                    "AND activity_log LIKE ?";
         try {
-            String searchPattern = "%目标用户:" + userId + "%";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, eventId, interactionType, searchPattern);
-            return count != null ? count : 0;
+            return interactionDao.countForTarget(chatId, eventId, userId, interactionType);
         } catch (Exception e) {
             LoggingUtils.logError("GET_USER_INTERACTION_COUNT_ERROR", "获取用户互动次数失败: " + e.getMessage(), e);
             return 0;
@@ -711,9 +815,13 @@ public class ScoreDao {
      * @return 累计签到次数
      */
     public int getUserGlobalCheckInCount(String chatId, String userId) {
+        int counted = activityCounterDao.getCount(chatId, userId, ActivityCounterDao.COUNTER_CHECK_IN);
+        if (counted >= 0) {
+            return counted;
+        }
         String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND user_id = ? AND activity_type = 'check_in'";
         try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, userId);
+            Integer count = reader().queryForObject(sql, Integer.class, chatId, userId);
             return count != null ? count : 0;
         } catch (Exception e) {
             LoggingUtils.logError("GET_GLOBAL_CHECK_IN_COUNT_ERROR", "获取用户全局签到次数失败: " + e.getMessage(), e);
@@ -729,10 +837,14 @@ public class ScoreDao {
      * @return 用户消息数量
      */
     public int getUserGlobalMessageCount(String chatId, String userId) {
+        int counted = activityCounterDao.getCount(chatId, userId, ActivityCounterDao.COUNTER_MESSAGE);
+        if (counted >= 0) {
+            return counted;
+        }
         String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND user_id = ? AND " +
                     "activity_type IN ('text_message', 'photo_message', 'video_message', 'document_message', 'audio_message', 'sticker_message')";
         try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, userId);
+            Integer count = reader().queryForObject(sql, Integer.class, chatId, userId);
             return count != null ? count : 0;
         } catch (Exception e) {
             LoggingUtils.logError("GET_USER_GLOBAL_MESSAGE_COUNT_ERROR", "获取用户全局消息数量失败: " + e.getMessage(), e);
@@ -742,7 +854,7 @@ public class ScoreDao {
     
     /**
      * 获取用户在全局范围内被互动的次数
-     * 被互动消息的通缉逻辑比较特殊，因为要找到的是被互动的用户而不是互动的用户，所以要在activity_log中根据模糊匹配来搜索
+     * 计数器回填完成后直接读取计数器，否则按消息互动表的被互动用户列统计
      *
      * @param chatId 聊天ID
      * @param userId 被互动的用户ID
@@ -750,34 +862,37 @@ public class ScoreDao {
      * @return 被互动次数
      */
     public int getUserGlobalInteractionCount(String chatId, String userId, String interactionType) {
-        String sql = "SELECT COUNT(*) FROM user_activity_logs WHERE chat_id = ? AND activity_type = ? " +
-                    "AND activity_log LIKE ?";
+        int counted = activityCounterDao.getCount(chatId, userId, ActivityCounterDao.COUNTER_RECEIVED_PREFIX + interactionType);
+        if (counted >= 0) {
+            return counted;
+        }
         try {
-            String searchPattern = "%目标用户:" + userId + "%";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, chatId, interactionType, searchPattern);
-            return count != null ? count : 0;
+            return interactionDao.countForTarget(chatId, null, userId, interactionType);
         } catch (Exception e) {
             LoggingUtils.logError("GET_USER_GLOBAL_INTERACTION_COUNT_ERROR", "获取用户全局互动次数失败: " + e.getMessage(), e);
             return 0;
         }
     }
     /**
-     * 根据消息ID查询用户ID
+     * 根据消息ID查询用户ID（从最新的分区开始）
+     * @param chatId
      * @param messageId
      * @return
      */
-    public List<String> findUserIdByMessageId(Integer messageId){
-        String sql = "SELECT user_id FROM log WHERE message_id = ?";
-        return jdbcTemplate.queryForList(sql, new Object[]{messageId}, String.class);
+    public List<String> findUserIdByMessageId(String chatId, Integer messageId){
+        return logPartitionDao.queryNewestFirst(logPartitionDao.allTables(),
+                table -> "SELECT user_id FROM " + table + " WHERE chat_id = ? AND message_id = ?",
+                (rs, rowNum) -> rs.getString("user_id"), chatId, messageId);
     }
 
     /**
-     * 根据消息ID查询log表，返回user_id和topic_id
+     * 根据消息ID查询消息日志（从最新的分区开始），返回user_id和topic_id
      */
-    public Optional<Map<String, Object>> findUserIdAndTopicIdByMessageId(Integer messageId) {
-        String sql = "SELECT user_id, topic_id FROM log WHERE message_id = ? LIMIT 1";
+    public Optional<Map<String, Object>> findUserIdAndTopicIdByMessageId(String chatId, Integer messageId) {
         try {
-            List<Map<String, Object>> result = jdbcTemplate.queryForList(sql, messageId);
+            List<Map<String, Object>> result = logPartitionDao.queryNewestFirst(logPartitionDao.allTables(),
+                    table -> "SELECT user_id, topic_id FROM " + table + " WHERE chat_id = ? AND message_id = ? LIMIT 1",
+                    new ColumnMapRowMapper(), chatId, messageId);
             if (result.isEmpty()) return Optional.empty();
             return Optional.of(result.get(0));
         } catch (Exception e) {
@@ -870,7 +985,8 @@ public class ScoreDao {
         String dayStr = date.format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd"));
         String startTime = dayStr + " 00:00:00";
         String endTime = dayStr + " 23:59:59";
-        List<Map<String, Object>> groupTopics = jdbcTemplate.queryForList("SELECT group_id, group_name, topic_id, topic_name FROM group_chat_records");
+        List<Map<String, Object>> groupTopics = reader().queryForList("SELECT group_id, group_name, topic_id, topic_name FROM group_chat_records");
+        List<String> tables = logPartitionDao.tablesBetween(date.atStartOfDay(), date.atTime(23, 59, 59));
         List<GroupTopicMessage> result = new ArrayList<>();
         for (Map<String, Object> groupTopic : groupTopics) {
             LoggingUtils.logOperation( "GET_GROUP_TOPIC_MESSAGES_BY_DATE", "bot", "获取待总结的群聊,群聊名称" + String.valueOf(groupTopic.get("topic_name")));
@@ -881,8 +997,11 @@ public class ScoreDao {
             Object topicNameObj = groupTopic.get("topic_name");
             String topicName = topicNameObj != null ? String.valueOf(topicNameObj) : null;
             String topicIdCond = (topicIdObj == null) ? "IS NULL" : "= '" + topicIdObj + "'";
-            String sql = String.format("SELECT user_name, send_time, message FROM log WHERE chat_id = ? AND topic_id %s AND send_time >= ? AND send_time <= ? ORDER BY send_time ASC", topicIdCond);
-            List<Map<String, Object>> messages = jdbcTemplate.queryForList(sql, groupId, startTime, endTime);
+            String sql = String.format("SELECT user_name, send_time, message FROM %%s WHERE chat_id = ? AND topic_id %s AND send_time >= ? AND send_time <= ? ORDER BY send_time ASC", topicIdCond);
+            // 只查询与当天有交集的分区，多个分区时并行查询后按时间合并
+            List<Map<String, Object>> messages = logPartitionDao.queryAcross(tables,
+                    table -> String.format(sql, table), new ColumnMapRowMapper(), groupId, startTime, endTime);
+            messages.sort(Comparator.comparing(msg -> String.valueOf(msg.get("send_time"))));
 //            记录sql信息和执行结果
             LoggingUtils.logOperation( "GET_GROUP_TOPIC_MESSAGES_BY_DATE", "bot",  "sql" + sql + "执行结果"+startTime +"--"+endTime + messages);
             if (messages.isEmpty()) continue;
@@ -959,7 +1078,7 @@ public class ScoreDao {
                     "(datetime('now') BETWEEN datetime(start_time) AND datetime(end_time)) OR " +
                     "(datetime('now') BETWEEN datetime(end_time) AND datetime(end_time, '+2 days'))";
         try {
-            return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            return reader().query(sql, (rs, rowNum) -> {
                 EventRecord event = new EventRecord();
                 event.setEventId(rs.getInt("event_id"));
                 event.setEventName(rs.getString("event_name"));
@@ -986,7 +1105,7 @@ public class ScoreDao {
     public List<Map<String, Object>> getAllUserPointsByEventId(int eventId) {
         String sql = "SELECT * FROM user_points WHERE event_id = ?";
         try {
-            return jdbcTemplate.queryForList(sql, eventId);
+            return reader().queryForList(sql, eventId);
         } catch (Exception e) {
             LoggingUtils.logError("GET_ALL_USER_POINTS_ERROR", "获取活动用户积分失败: " + e.getMessage(), e);
             return List.of();
@@ -1005,7 +1124,7 @@ public class ScoreDao {
                     "JOIN global_achievements ga ON ua.achievement_name = ga.achievement_name AND ua.event_id = ga.achievement_id " +
                     "WHERE ua.user_id = ? AND ua.complete_time IS NOT NULL AND ua.is_global = 1";
         try {
-            List<Map<String, Object>> achievements = jdbcTemplate.queryForList(sql, userId);
+            List<Map<String, Object>> achievements = reader().queryForList(sql, userId);
             double totalBonus = 1.0;
             for (Map<String, Object> achievement : achievements) {
                 Object rewardObj = achievement.get("reward");
@@ -1084,7 +1203,7 @@ public class ScoreDao {
                     "WHERE ua.user_id = ? AND ua.chat_id = ? AND ua.complete_time IS NOT NULL AND ua.is_global = 1 " +
                     "ORDER BY ua.achievement_name, ua.event_id";
         try {
-            return jdbcTemplate.queryForList(sql, userId, chatId);
+            return reader().queryForList(sql, userId, chatId);
         } catch (Exception e) {
             LoggingUtils.logError("GET_USER_ACHIEVEMENTS_ERROR", "获取用户成就列表失败: " + e.getMessage(), e);
             return List.of();
@@ -1099,7 +1218,7 @@ public class ScoreDao {
     public List<EventRecord> getAllEvents() {
         String sql = "SELECT * FROM event_records ORDER BY event_id DESC";
         try {
-            return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            return reader().query(sql, (rs, rowNum) -> {
                 EventRecord event = new EventRecord();
                 event.setEventId(rs.getInt("event_id"));
                 event.setEventName(rs.getString("event_name"));
@@ -1140,7 +1259,7 @@ public class ScoreDao {
                     "ORDER BY final_points DESC " +
                     "LIMIT ? OFFSET ?";
         try {
-            return jdbcTemplate.queryForList(sql, eventId, pageSize, page * pageSize);
+            return reader().queryForList(sql, eventId, pageSize, page * pageSize);
         } catch (Exception e) {
             LoggingUtils.logError("GET_EVENT_POINTS_RANKING_ERROR", "获取活动积分排名失败: " + e.getMessage(), e);
             return List.of();
@@ -1156,7 +1275,7 @@ public class ScoreDao {
     public int getEventUserCount(int eventId) {
         String sql = "SELECT COUNT(*) FROM user_points WHERE event_id = ? AND user_id NOT IN (SELECT user_id FROM admin_user)";
         try {
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, eventId);
+            Integer count = reader().queryForObject(sql, Integer.class, eventId);
             return count != null ? count : 0;
         } catch (Exception e) {
             LoggingUtils.logError("GET_EVENT_USER_COUNT_ERROR", "获取活动用户数量失败: " + e.getMessage(), e);
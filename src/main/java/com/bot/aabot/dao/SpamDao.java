@@ -0,0 +1,88 @@
+package com.bot.aabot.dao;
+
+import com.bot.aabot.utils.NaiveBayesModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ClassName: SpamDao
+ * Package: com.bot.aabot.dao
+ * Description: 广告模型计数与样本的持久化
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/18
+ */
+@Repository
+public class SpamDao {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 加载全部特征计数
+     * @param model 目标模型
+     * @return 加载的行数
+     */
+    public int loadFeatures(NaiveBayesModel model) {
+        int[] rows = {0};
+        jdbcTemplate.query("SELECT feature, spam_count, ham_count FROM spam_feature", rs -> {
+            model.load(rs.getInt("feature"), rs.getInt("spam_count"), rs.getInt("ham_count"));
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    /**
+     * 批量写入特征计数
+     * @param rows 每行为 [feature, spam_count, ham_count]
+     */
+    public void saveFeatures(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO spam_feature (feature, spam_count, ham_count) VALUES (?, ?, ?) " +
+                        "ON CONFLICT(feature) DO UPDATE SET spam_count = excluded.spam_count, ham_count = excluded.ham_count",
+                rows);
+    }
+
+    /**
+     * 保存群组用户最近一条被判定的消息
+     */
+    public void saveSample(String chatId, String userId, String message, String label) {
+        jdbcTemplate.update("INSERT OR REPLACE INTO spam_sample (chat_id, user_id, message, label) VALUES (?, ?, ?, ?)",
+                chatId, userId, message, label);
+    }
+
+    /**
+     * 获取群组用户最近一条被判定的消息
+     * @return [message, label]，不存在时返回null
+     */
+    public String[] getSample(String chatId, String userId) {
+        try {
+            return jdbcTemplate.queryForObject("SELECT message, label FROM spam_sample WHERE chat_id = ? AND user_id = ?",
+                    (rs, rowNum) -> new String[]{rs.getString("message"), rs.getString("label")}, chatId, userId);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 统计指定标注的样本数
+     */
+    public int countSamples(String... labels) {
+        String placeholders = String.join(", ", Collections.nCopies(labels.length, "?"));
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM spam_sample WHERE label IN (" + placeholders + ")",
+                Integer.class, (Object[]) labels);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 更新样本标注
+     */
+    public void updateSampleLabel(String chatId, String userId, String label) {
+        jdbcTemplate.update("UPDATE spam_sample SET label = ? WHERE chat_id = ? AND user_id = ?", label, chatId, userId);
+    }
+}
@@ -0,0 +1,47 @@
+package com.bot.aabot.entity;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * ClassName: BulkDeleteJob
+ * Package: com.bot.aabot.entity
+ * Description: 批量撤回消息任务实体类
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/16
+ */
+@Data
+public class BulkDeleteJob {
+    /**
+     * 群组ID
+     */
+    private String chatId;
+
+    /**
+     * 被撤回消息的用户ID
+     */
+    private String userId;
+
+    /**
+     * 待撤回的消息ID（升序）
+     */
+    private List<Integer> messageIds;
+
+    /**
+     * 游标：下一条待撤回消息在 messageIds 中的下标
+     */
+    private int cursor;
+
+    /**
+     * 撤回失败的消息数
+     */
+    private int failedCount;
+
+    /**
+     * 任务状态：RUNNING / DONE
+     */
+    private String status;
+}
@@ -26,26 +26,13 @@ public class TableInit {
     public void init() {
 
         if("one".equals(BotContext.OneOrEveryday)){
-            DataContext.tableName = "log" ;
             DataContext.resTableName = "res";
         }else {
-            DataContext.tableName = "log_" + new Date().toString().substring(24, 28).substring(2) + "_" + (new Date().getMonth() + 1) + "_" + new Date().toString().substring(8, 10);
             DataContext.resTableName = "res_" + new Date().toString().substring(24, 28).substring(2) + "_" + (new Date().getMonth() + 1) + "_" + new Date().toString().substring(8, 10);
         }
-        String sql = "CREATE TABLE IF NOT EXISTS " + DataContext.tableName +"( " +
-                "    log_id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "    form_name TEXT,              " +
-                "    message_id INTEGER,          " +
-                "    user_id TEXT,                " +
-                "    user_name TEXT,              " +
-                "    message_type TEXT,           " +
-                "    message TEXT,  "   +
-                "    is_edit INTEGER DEFAULT 0,    " +
-                "     send_time TEXT            "+
-                ");";
-        sqLiteUtil.createTable(sql);
+        // 消息日志表由 LogPartitionDao 按分区创建
 
-        sql = "CREATE TABLE IF NOT EXISTS "+DataContext.resTableName+ "(" +
+        String sql = "CREATE TABLE IF NOT EXISTS "+DataContext.resTableName+ "(" +
                 "    id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 "    original_question TEXT NOT NULL, " +
                 "    message_id INTEGER UNIQUE,  " +
@@ -77,6 +64,19 @@ public class TableInit {
                 ");";
         sqLiteUtil.createTable(sql);
         
+        // 创建批量撤回消息任务表（游标用于中断后续传）
+        sql = "CREATE TABLE IF NOT EXISTS bulk_delete_job (" +
+                "    chat_id TEXT NOT NULL," +
+                "    user_id TEXT NOT NULL," +
+                "    message_ids TEXT NOT NULL," +
+                "    cursor INTEGER NOT NULL DEFAULT 0," +
+                "    failed_count INTEGER NOT NULL DEFAULT 0," +
+                "    status TEXT NOT NULL DEFAULT 'RUNNING'," +
+                "    updated_time TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%S','now','localtime'))," +
+                "    PRIMARY KEY (chat_id, user_id)" +
+                ");";
+        sqLiteUtil.createTable(sql);
+
         // 创建管理员群组表
         sql = "CREATE TABLE IF NOT EXISTS admin_group (" +
                 "    id INTEGER PRIMARY KEY AUTOINCREMENT," +
@@ -84,5 +84,24 @@ public class TableInit {
                 "    created_time TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%S','now','localtime'))" +
                 ");";
         sqLiteUtil.createTable(sql);
+
+        // 创建广告模型特征计数表（feature = -1 的行保存两类样本数）
+        sql = "CREATE TABLE IF NOT EXISTS spam_feature (" +
+                "    feature INTEGER PRIMARY KEY," +
+                "    spam_count INTEGER NOT NULL DEFAULT 0," +
+                "    ham_count INTEGER NOT NULL DEFAULT 0" +
+                ");";
+        sqLiteUtil.createTable(sql);
+
+        // 创建广告样本表：每个群组用户最近一条被判定的消息，管理员处理后据此修正模型
+        sql = "CREATE TABLE IF NOT EXISTS spam_sample (" +
+                "    chat_id TEXT NOT NULL," +
+                "    user_id TEXT NOT NULL," +
+                "    message TEXT NOT NULL," +
+                "    label TEXT NOT NULL," +
+                "    created_time TEXT NOT NULL DEFAULT (strftime('%Y-%m-%d %H:%M:%S','now','localtime'))," +
+                "    PRIMARY KEY (chat_id, user_id)" +
+                ");";
+        sqLiteUtil.createTable(sql);
     }
 }
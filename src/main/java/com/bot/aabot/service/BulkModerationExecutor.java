@@ -0,0 +1,222 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.GroupDao;
+import com.bot.aabot.entity.BulkDeleteJob;
+import com.bot.aabot.utils.BotReplyUtil;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessages;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ClassName: BulkModerationExecutor
+ * Package: com.bot.aabot.service
+ * Description: 批量审核执行器。
+ * 将待撤回的消息ID按每批最多100条拆分为 deleteMessages 调用，经出站发送网关（审核优先级）限速发送；
+ * 同一群组内逐批执行，不同群组并行执行；每批完成后持久化游标，进程中断后启动时从游标处续传；
+ * 开始、每隔若干批以及结束时向管理群组报告进度。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/16
+ */
+@Service
+public class BulkModerationExecutor {
+
+    /** Telegram deleteMessages 单次最多100条 */
+    private static final int MAX_CHUNK_SIZE = 100;
+
+    @Autowired
+    private GroupDao groupDao;
+    @Autowired
+    private TelegramSendGateway telegramSendGateway;
+
+    @Value("${bot.moderation.bulk.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${bot.moderation.bulk.parallel-chats:4}")
+    private int parallelChats; // 同时执行批量撤回的群组数
+
+    @Value("${bot.moderation.bulk.progress-every:10}")
+    private int progressEvery; // 每完成多少批向管理群组报告一次进度
+
+    @Value("${bot.moderation.bulk.chunk-timeout:60000}")
+    private long chunkTimeout; // 单批等待超时（毫秒）
+
+    private ExecutorService executor;
+    // 正在执行的任务（群组ID:用户ID），避免重复执行
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, parallelChats), r -> {
+            Thread thread = new Thread(r, "bulk-moderation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交撤回某用户在某群组中消息的任务
+     * @param chatId 群组ID
+     * @param userId 用户ID
+     * @param messageIds 消息ID
+     * @return 任务完成时结束
+     */
+    public CompletableFuture<Void> deleteUserMessages(String chatId, String userId, List<Integer> messageIds) {
+        String key = chatId + ":" + userId;
+        // 先占用任务，再写入任务表，正在执行的任务的消息ID与游标不会被新任务覆盖
+        if (!runningJobs.add(key)) {
+            LoggingUtils.logOperation("BULK_DELETE_DUPLICATE", userId, "该用户的批量撤回任务正在执行: " + key);
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            BulkDeleteJob job = new BulkDeleteJob();
+            job.setChatId(chatId);
+            job.setUserId(userId);
+            job.setMessageIds(messageIds.stream().distinct().sorted().toList());
+            job.setCursor(0);
+            job.setStatus("RUNNING");
+            if (!groupDao.saveBulkDeleteJob(job)) {
+                // 上次中断的任务尚未续传：新的消息ID追加在原任务之后，从原游标继续
+                BulkDeleteJob unfinished = groupDao.getRunningBulkDeleteJob(chatId, userId);
+                if (unfinished != null) {
+                    Set<Integer> known = new HashSet<>(unfinished.getMessageIds());
+                    List<Integer> merged = new ArrayList<>(unfinished.getMessageIds());
+                    job.getMessageIds().stream().filter(known::add).forEach(merged::add);
+                    unfinished.setMessageIds(merged);
+                    groupDao.updateBulkDeleteMessageIds(unfinished);
+                    job = unfinished;
+                }
+            }
+            return launch(job, key);
+        } catch (RuntimeException e) {
+            runningJobs.remove(key);
+            throw e;
+        }
+    }
+
+    /**
+     * 启动后续传未完成的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        try {
+            List<BulkDeleteJob> jobs = groupDao.getUnfinishedBulkDeleteJobs();
+            if (jobs.isEmpty()) {
+                return;
+            }
+            LoggingUtils.logSystemStatus("续传未完成的批量撤回任务: " + jobs.size());
+            jobs.forEach(this::start);
+        } catch (Exception e) {
+            LoggingUtils.logError("BULK_DELETE_RESUME_ERROR", "续传批量撤回任务失败", e);
+        }
+    }
+
+    private CompletableFuture<Void> start(BulkDeleteJob job) {
+        String key = job.getChatId() + ":" + job.getUserId();
+        if (!runningJobs.add(key)) {
+            LoggingUtils.logOperation("BULK_DELETE_DUPLICATE", job.getUserId(), "该用户的批量撤回任务正在执行: " + key);
+            return CompletableFuture.completedFuture(null);
+        }
+        return launch(job, key);
+    }
+
+    /**
+     * 执行已占用的任务，结束后释放
+     */
+    private CompletableFuture<Void> launch(BulkDeleteJob job, String key) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                run(job);
+            } finally {
+                runningJobs.remove(key);
+            }
+        }, executor);
+    }
+
+    /**
+     * 在群组内逐批执行撤回
+     */
+    private void run(BulkDeleteJob job) {
+        long startTime = System.currentTimeMillis();
+        List<Integer> ids = job.getMessageIds();
+        int size = Math.min(MAX_CHUNK_SIZE, Math.max(1, chunkSize));
+        int totalChunks = (ids.size() + size - 1) / size;
+        long chatId = TelegramSendGateway.chatIdOf(job.getChatId());
+        report(job, String.format("开始批量撤回消息 - 群组: %s, 用户: %s, 消息数: %d, 已完成: %d",
+                job.getChatId(), job.getUserId(), ids.size(), job.getCursor()));
+        int chunkIndex = 0;
+        while (job.getCursor() < ids.size()) {
+            int from = job.getCursor();
+            int to = Math.min(ids.size(), from + size);
+            DeleteMessages deleteMessages = DeleteMessages.builder()
+                    .chatId(job.getChatId())
+                    .messageIds(new ArrayList<>(ids.subList(from, to)))
+                    .build();
+            try {
+                telegramSendGateway.submit(chatId, TelegramSendGateway.SendPriority.MODERATION, deleteMessages)
+                        .get(chunkTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return; // 游标已持久化，下次启动时续传
+            } catch (Exception e) {
+                // 单批失败（如消息已被删除、超过可删除时限）不影响后续批次
+                job.setFailedCount(job.getFailedCount() + (to - from));
+                LoggingUtils.logError("BULK_DELETE_CHUNK_ERROR",
+                        String.format("批量撤回失败 - 群组: %s, 用户: %s, 范围: %d-%d", job.getChatId(), job.getUserId(), from, to), e);
+            }
+            job.setCursor(to);
+            job.setStatus(to >= ids.size() ? "DONE" : "RUNNING");
+            groupDao.updateBulkDeleteCursor(job);
+            chunkIndex++;
+            if (progressEvery > 0 && chunkIndex % progressEvery == 0 && to < ids.size()) {
+                report(job, String.format("批量撤回进度 - 群组: %s, 用户: %s, %d/%d（第%d/%d批）",
+                        job.getChatId(), job.getUserId(), to, ids.size(), (to + size - 1) / size, totalChunks));
+            }
+        }
+        if (!"DONE".equals(job.getStatus())) {
+            job.setStatus("DONE");
+            groupDao.updateBulkDeleteCursor(job);
+        }
+        LoggingUtils.logPerformance("bulkDeleteMessages", startTime);
+        report(job, String.format("批量撤回完成 - 群组: %s, 用户: %s, 消息数: %d, 失败: %d, 耗时: %ds",
+                job.getChatId(), job.getUserId(), ids.size(), job.getFailedCount(),
+                (System.currentTimeMillis() - startTime) / 1000));
+    }
+
+    /**
+     * 向管理群组报告进度，通知由发送网关合并
+     */
+    private void report(BulkDeleteJob job, String text) {
+        LoggingUtils.logOperation("BULK_DELETE_PROGRESS", job.getUserId(), text);
+        String adminGroup = groupDao.getAdminGroup();
+        if (adminGroup == null || adminGroup.isEmpty()) {
+            return;
+        }
+        BotReplyUtil.notify(SendMessage.builder().chatId(adminGroup).text(text).build());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
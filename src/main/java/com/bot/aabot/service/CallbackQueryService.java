@@ -45,6 +45,10 @@ public class CallbackQueryService {
     private AIResponseService aiResponseService;
     @Autowired
     private UserService userService;
+    @Autowired
+    private SpamClassifierService spamClassifierService;
+    @Autowired
+    private ModerationPipeline moderationPipeline;
     /**
      * 处理回调查询（异步 + 重试）
      * @param update 更新对象
@@ -57,7 +61,8 @@ public class CallbackQueryService {
         // 处理广告管控相关的按钮
         try {
             String data = update.getCallbackQuery().getData();
-            if (data != null && (data.startsWith("SPAM_UNRESTRICT:") || data.startsWith("SPAM_BLACKLIST:"))) {
+            if (data != null && (data.startsWith("SPAM_UNRESTRICT:") || data.startsWith("SPAM_BLACKLIST:")
+                    || data.startsWith("SPAM_IGNORE:"))) {
                 String[] parts = data.split(":");
                 if (parts.length >= 3) {
                     String chatIdStr = parts[1];
@@ -65,10 +70,18 @@ public class CallbackQueryService {
                     Object bot = applicationContext.getBean("tgBot");
                     if (data.startsWith("SPAM_UNRESTRICT:")) {
                         adminUnrestrictUser(bot, chatIdStr, userIdStr);
+                        moderationPipeline.clearRestriction(chatIdStr, userIdStr);
                         sendAdminResult("已解除封禁", chatIdStr, userIdStr);
+                        // 误判：作为正常样本修正广告模型
+                        spamClassifierService.onAdminUnrestrict(chatIdStr, userIdStr);
+                    } else if (data.startsWith("SPAM_IGNORE:")) {
+                        // 疑似广告报告被判为误报：不做处置，作为正常样本
+                        sendAdminResult("已标记为正常消息", chatIdStr, userIdStr);
+                        spamClassifierService.onAdminUnrestrict(chatIdStr, userIdStr);
                     } else {
                         userService.adminBlacklistUser(bot, chatIdStr, userIdStr);
                         sendAdminResult("已加入黑名单并移出群聊", chatIdStr, userIdStr);
+                        spamClassifierService.onAdminBlacklist(chatIdStr, userIdStr);
                     }
                 }
                 LoggingUtils.logPerformance("callbackQuery_spam", startTime);
@@ -0,0 +1,182 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 外部依赖并发限制服务
+ * 使用信号量分别限制对 SQLite、ChatModel、Telegram 的并发访问，
+ * 在虚拟线程模式下防止大量并发任务同时压垮下游依赖。
+ * SQLite 的许可在数据源获取连接时领取（见 LimitedDataSource），所有 DAO 都受限；
+ * 许可按线程可重入，同一线程在持有许可时再次获取（如事务中再取只读连接）不会占用第二个许可；
+ * 领取到的许可对象与调用方（如连接）绑定，可在任意线程归还且只归还一次，不依赖归还线程的状态。
+ */
+@Service
+public class DependencyLimiter {
+
+    /**
+     * 受限的外部依赖
+     */
+    public enum Dependency {
+        SQLITE, CHAT_MODEL, TELEGRAM
+    }
+
+    @Value("${bot.async.mode:platform}")
+    private String asyncMode;
+
+    @Value("${bot.async.limits.sqlite:4}")
+    private int sqlitePermits;
+
+    @Value("${bot.async.limits.chat-model:16}")
+    private int chatModelPermits;
+
+    @Value("${bot.async.limits.telegram:30}")
+    private int telegramPermits;
+
+    @Value("${bot.async.limits.acquire-timeout:30000}")
+    private long acquireTimeout; // 获取许可超时时间（毫秒）
+
+    private final Map<Dependency, Semaphore> semaphores = new EnumMap<>(Dependency.class);
+    private final Map<Dependency, Integer> permits = new EnumMap<>(Dependency.class);
+    private final Map<Dependency, LongAdder> timeouts = new EnumMap<>(Dependency.class);
+    private final Map<Dependency, LongAdder> acquisitions = new EnumMap<>(Dependency.class);
+    private final Map<Dependency, LongAdder> waitNanos = new EnumMap<>(Dependency.class);
+    // 当前线程对各依赖最外层领取的许可
+    private final ThreadLocal<Permit[]> held = ThreadLocal.withInitial(() -> new Permit[Dependency.values().length]);
+
+    @PostConstruct
+    public void init() {
+        register(Dependency.SQLITE, sqlitePermits);
+        register(Dependency.CHAT_MODEL, chatModelPermits);
+        register(Dependency.TELEGRAM, telegramPermits);
+        LoggingUtils.logSystemStatus(String.format(
+                "依赖并发限制已初始化 - 执行模式: %s, SQLite: %d, ChatModel: %d, Telegram: %d",
+                asyncMode, sqlitePermits, chatModelPermits, telegramPermits));
+    }
+
+    private void register(Dependency dependency, int permitCount) {
+        semaphores.put(dependency, new Semaphore(Math.max(1, permitCount), true));
+        permits.put(dependency, Math.max(1, permitCount));
+        timeouts.put(dependency, new LongAdder());
+        acquisitions.put(dependency, new LongAdder());
+        waitNanos.put(dependency, new LongAdder());
+    }
+
+    /**
+     * 领取依赖许可。当前线程已持有未归还的许可时返回不占用信号量的嵌套许可
+     * @return 许可，调用方用完后调用 {@link Permit#release()}（可在其他线程）
+     * @throws IllegalStateException 等待超时或被中断
+     */
+    public Permit acquire(Dependency dependency) {
+        Permit[] owned = held.get();
+        Permit current = owned[dependency.ordinal()];
+        if (current != null && current.isHeld()) {
+            return Permit.NESTED;
+        }
+        Semaphore semaphore = semaphores.get(dependency);
+        long startTime = System.nanoTime();
+        try {
+            if (!semaphore.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+                timeouts.get(dependency).increment();
+                throw new IllegalStateException(String.format("获取%s访问许可超时", dependency));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("等待%s访问许可被中断", dependency), e);
+        } finally {
+            waitNanos.get(dependency).add(System.nanoTime() - startTime);
+        }
+        acquisitions.get(dependency).increment();
+        Permit permit = new Permit(semaphore);
+        owned[dependency.ordinal()] = permit;
+        return permit;
+    }
+
+    /**
+     * 在依赖许可内执行操作
+     * @param dependency 依赖
+     * @param operation 操作
+     * @return 操作结果
+     */
+    public <T> T call(Dependency dependency, Supplier<T> operation) {
+        Permit permit = acquire(dependency);
+        try {
+            return operation.get();
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * 在依赖许可内执行操作（无返回值）
+     */
+    public void run(Dependency dependency, Runnable operation) {
+        call(dependency, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * 当前异步执行模式（platform / virtual）
+     */
+    public String getAsyncMode() {
+        return asyncMode;
+    }
+
+    /**
+     * 获取各依赖的使用状态
+     */
+    public String getStatusSummary() {
+        StringBuilder sb = new StringBuilder("执行模式: ").append(asyncMode);
+        for (Dependency dependency : Dependency.values()) {
+            int total = permits.get(dependency);
+            int inUse = total - semaphores.get(dependency).availablePermits();
+            long acquired = acquisitions.get(dependency).sum();
+            sb.append(String.format(", %s[使用中:%d/%d, 等待:%d, 获取:%d, 平均等待:%.1fms, 超时:%d]",
+                    dependency, inUse, total,
+                    semaphores.get(dependency).getQueueLength(), acquired,
+                    acquired == 0 ? 0.0 : waitNanos.get(dependency).sum() / 1_000_000.0 / acquired,
+                    timeouts.get(dependency).sum()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 已领取的依赖许可，与领取方绑定，可在任意线程归还，重复归还无效
+     */
+    public static final class Permit {
+        /** 线程已持有许可时的嵌套许可，不占用信号量 */
+        static final Permit NESTED = new Permit(null);
+
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        private boolean isHeld() {
+            return semaphore != null && !released.get();
+        }
+
+        /**
+         * 归还许可
+         */
+        public void release() {
+            if (semaphore != null && released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+}
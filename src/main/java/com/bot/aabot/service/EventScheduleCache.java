@@ -0,0 +1,121 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.ScoreDao;
+import com.bot.aabot.entity.EventRecord;
+import com.bot.aabot.utils.EventSchedule;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: EventScheduleCache
+ * Package: com.bot.aabot.service
+ * Description: 进行中活动的缓存。
+ * 活动一个月只变动几次，消息、回复、表情和签到却每次都要查询所在群组进行中的活动；
+ * 这里把全部活动加载为 {@link EventSchedule}，查询直接读内存快照。
+ * 在下一个活动开始或结束的时刻定时唤醒，用已加载的区间重新计算进行中的活动；
+ * 创建活动后立即重新加载，另按 reload-interval 定期从数据库全量重新加载，兜底其他途径对活动表的修改。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Service
+public class EventScheduleCache {
+
+    @Autowired
+    private ScoreDao scoreDao;
+
+    @Value("${bot.event-cache.reload-interval:600000}")
+    private long reloadInterval; // 从数据库全量重新加载的间隔（毫秒）
+
+    private volatile EventSchedule schedule = EventSchedule.build(List.of(), 0);
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextWakeup;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder wakeups = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "event-schedule");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reload();
+        scheduler.scheduleWithFixedDelay(this::reload, reloadInterval, reloadInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 群组中进行中的活动（不可修改）
+     */
+    public List<EventRecord> getActiveEvents(String groupId) {
+        lookups.increment();
+        return schedule.activeEvents(groupId);
+    }
+
+    /**
+     * 从数据库重新加载全部活动，活动被创建或修改后调用
+     */
+    public synchronized void reload() {
+        try {
+            List<EventRecord> events = scoreDao.getAllEvents();
+            schedule = EventSchedule.build(events, System.currentTimeMillis());
+            reloads.increment();
+            scheduleWakeup();
+        } catch (Exception e) {
+            LoggingUtils.logError("EVENT_SCHEDULE_RELOAD_ERROR", "加载活动时间表失败", e);
+        }
+    }
+
+    /**
+     * 到达活动开始或结束时刻，基于已加载的区间重新计算
+     */
+    private synchronized void onBoundary() {
+        schedule = schedule.at(System.currentTimeMillis());
+        wakeups.increment();
+        scheduleWakeup();
+    }
+
+    private void scheduleWakeup() {
+        if (nextWakeup != null) {
+            nextWakeup.cancel(false);
+            nextWakeup = null;
+        }
+        long boundary = schedule.nextBoundary();
+        if (boundary == Long.MAX_VALUE) {
+            return;
+        }
+        long delay = Math.max(0, boundary - System.currentTimeMillis());
+        // 超过全量重新加载间隔的边界由下次重新加载负责安排
+        if (delay <= reloadInterval) {
+            nextWakeup = scheduler.schedule(this::onBoundary, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 运行状态摘要
+     */
+    public String getStatusSummary() {
+        long boundary = schedule.nextBoundary();
+        return String.format("查询次数: %d, 重新加载: %d, 边界唤醒: %d, 距下一边界: %s",
+                lookups.sum(), reloads.sum(), wakeups.sum(),
+                boundary == Long.MAX_VALUE ? "无" : Math.max(0, boundary - System.currentTimeMillis()) / 1000 + "s");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,157 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.GroupDao;
+import com.bot.aabot.utils.BotReplyUtil;
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.MessagesUtil;
+import com.bot.aabot.utils.TokenBucketTable;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * ClassName: FloodLimiter
+ * Package: com.bot.aabot.service
+ * Description: 刷屏限流器。
+ * 按 (群组ID, 用户ID) 维护令牌桶，在积分、AI 等开销较大的处理阶段之前判断；被限流的消息仍然保存，但跳过积分与AI处理。
+ * 连续被限流达到阈值时经 MessagesUtil.banUser 自动禁言并通知管理群组；按群组统计被限流的更新数。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/17
+ */
+@Service
+public class FloodLimiter {
+
+    @Autowired
+    private GroupDao groupDao;
+
+    @Value("${bot.flood.enabled:true}")
+    private boolean enabled;
+
+    @Value("${bot.flood.rate:1.0}")
+    private double rate; // 每个用户每秒补充的消息数
+
+    @Value("${bot.flood.burst:10}")
+    private int burst; // 允许的突发消息数
+
+    @Value("${bot.flood.capacity:65536}")
+    private int capacity; // 最多跟踪的 (群组, 用户) 数
+
+    @Value("${bot.flood.stripes:16}")
+    private int stripes;
+
+    @Value("${bot.flood.idle-timeout:600000}")
+    private long idleTimeout; // 空闲多久（毫秒）后回收令牌桶
+
+    @Value("${bot.flood.restrict-after:30}")
+    private int restrictAfter; // 连续被限流多少条后自动禁言，0表示不自动禁言
+
+    @Value("${bot.flood.restrict-seconds:600}")
+    private int restrictSeconds; // 自动禁言时长（秒）
+
+    private TokenBucketTable buckets;
+    private final Map<Long, LongAdder> throttledByChat = new ConcurrentHashMap<>();
+    private final LongAdder throttledTotal = new LongAdder();
+    private final LongAdder restrictedTotal = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        buckets = new TokenBucketTable(capacity, stripes, rate, burst);
+    }
+
+    /**
+     * 记录一条消息并判断是否被限流
+     * @param chatId 群组ID
+     * @param userId 用户ID
+     * @return true表示被限流，应跳过开销较大的处理
+     */
+    public boolean isThrottled(long chatId, long userId) {
+        if (!enabled) {
+            return false;
+        }
+        int strikes = buckets.tryAcquire(chatId, userId, System.currentTimeMillis());
+        if (strikes == 0) {
+            return false;
+        }
+        throttledTotal.increment();
+        throttledByChat.computeIfAbsent(chatId, id -> new LongAdder()).increment();
+        if (strikes == 1) {
+            LoggingUtils.logSecurityEvent("FLOOD_THROTTLED", String.valueOf(userId),
+                    String.format("用户发送消息过快，开始限流 - 群组: %d", chatId));
+        }
+        // 恰好达到阈值的那一次触发，避免并发重复禁言
+        if (restrictAfter > 0 && strikes == restrictAfter) {
+            restrict(chatId, userId, strikes);
+        }
+        return true;
+    }
+
+    private void restrict(long chatId, long userId, int strikes) {
+        restrictedTotal.increment();
+        String text = String.format("🚫 检测到刷屏\n\n📍 群组ID: %d\n👤 用户ID: %d\n连续 %d 条消息被限流，已自动禁言 %d 秒",
+                chatId, userId, strikes, restrictSeconds);
+        LoggingUtils.logSecurityEvent("FLOOD_RESTRICT", String.valueOf(userId),
+                String.format("刷屏自动禁言 - 群组: %d, 连续限流: %d, 禁言: %ds", chatId, strikes, restrictSeconds));
+        MessagesUtil.banUser(chatId, userId, restrictSeconds);
+        try {
+            String adminGroup = groupDao.getAdminGroup();
+            if (adminGroup != null && !adminGroup.isEmpty()) {
+                BotReplyUtil.notify(SendMessage.builder().chatId(adminGroup).text(text).build());
+            }
+        } catch (Exception e) {
+            LoggingUtils.logError("FLOOD_NOTIFY_ERROR", "刷屏禁言通知管理员失败", e);
+        }
+    }
+
+    /**
+     * 某群组被限流的更新数
+     */
+    public long getThrottledCount(long chatId) {
+        LongAdder counter = throttledByChat.get(chatId);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * 各群组被限流的更新数
+     */
+    public Map<Long, Long> getThrottledCounts() {
+        return throttledByChat.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum()));
+    }
+
+    /**
+     * 定期回收空闲的令牌桶
+     */
+    @Scheduled(fixedDelayString = "${bot.flood.sweep-interval:60000}")
+    public void evictIdle() {
+        if (!enabled) {
+            return;
+        }
+        int evicted = buckets.evictIdle(System.currentTimeMillis(), idleTimeout);
+        if (evicted > 0) {
+            LoggingUtils.logOperation("FLOOD_EVICT", "SYSTEM", "回收空闲令牌桶: " + evicted);
+        }
+    }
+
+    /**
+     * 运行状态摘要
+     */
+    public String getStatusSummary() {
+        String topChats = throttledByChat.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .limit(5)
+                .map(entry -> entry.getKey() + "=" + entry.getValue().sum())
+                .collect(Collectors.joining(", "));
+        return String.format("跟踪用户数: %d, 被限流: %d, 自动禁言: %d, 表满放行: %d, 按群组: [%s]",
+                buckets.size(), throttledTotal.sum(), restrictedTotal.sum(), buckets.getOverflowCount(), topChats);
+    }
+}
@@ -0,0 +1,280 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.config.BotConfig;
+import com.bot.aabot.utils.ForbiddenWordMatcher;
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.MessagesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassName: ForbiddenWordService
+ * Package: com.bot.aabot.service
+ * Description: 违禁词注册表。
+ * 违禁词文件只在启动时读取一次，编译为不可变的 Aho-Corasick 匹配器快照，更新时整体替换引用，读取方无需加锁。
+ * 管理员指令在内存中增删后立即发布新快照，再由后台线程以“写临时文件 + 原子重命名”的方式持久化；
+ * 通过 WatchService 监听文件被外部修改后自动重新加载。消息检查路径不再访问磁盘。
+ *
+ * @author fuchen
+ * @version 1.1
+ * @createTime 2025/9/16
+ */
+@Service
+public class ForbiddenWordService {
+
+    @Autowired
+    private BotConfig botConfig;
+
+    @Value("${bot.forbid.watch:true}")
+    private boolean watchEnabled;
+
+    @Value("${bot.forbid.watch-debounce:50}")
+    private long watchDebounce; // 文件事件去抖时间（毫秒），编辑器保存时可能连续触发多次
+
+    private volatile Snapshot snapshot = new Snapshot(List.of(), ForbiddenWordMatcher.empty());
+    // 最近一次由本服务写入文件的内容，用于忽略自身写入触发的文件事件
+    private volatile List<String> lastWritten = List.of();
+
+    private Path path;
+    private final ExecutorService persistExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "forbid-persist");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WatchService watchService;
+    private Thread watcher;
+
+    @PostConstruct
+    public void init() {
+        String forbidUrl = botConfig.getForbidUrl();
+        if (forbidUrl == null || forbidUrl.trim().isEmpty()) {
+            LoggingUtils.logError("FORBID_FILE_ERROR", "禁止词文件路径未配置", null);
+            return;
+        }
+        path = Paths.get(forbidUrl).toAbsolutePath();
+        reload();
+        if (watchEnabled) {
+            startWatcher();
+        }
+    }
+
+    /**
+     * 重新读取违禁词文件并发布新快照
+     */
+    public synchronized void reload() {
+        if (path == null) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        List<String> lines = readLines();
+        if (lines == null) {
+            return;
+        }
+        publish(lines);
+        LoggingUtils.logSystemStatus(String.format("违禁词匹配器已加载 - 违禁词数: %d, 耗时: %dms",
+                snapshot.matcher.size(), System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * 查找消息中命中的违禁词
+     * @param text 原始消息文本
+     * @return 命中的违禁词，未命中返回null
+     */
+    public String findForbiddenWord(String text) {
+        return snapshot.matcher.findFirst(text);
+    }
+
+    /**
+     * 当前违禁词列表（按文件顺序，不可修改）
+     */
+    public List<String> getWords() {
+        return snapshot.words;
+    }
+
+    /**
+     * 添加违禁词，立即生效并异步持久化
+     * @param word 违禁词
+     * @return false表示清洗后与已有违禁词重复
+     */
+    public synchronized boolean addWord(String word) {
+        String target = MessagesUtil.cleanMessageText(word);
+        for (String existing : snapshot.words) {
+            if (MessagesUtil.cleanMessageText(existing).equals(target)) {
+                return false;
+            }
+        }
+        List<String> words = new ArrayList<>(snapshot.words);
+        words.add(word.trim());
+        publish(words);
+        persistAsync();
+        return true;
+    }
+
+    /**
+     * 按序号删除违禁词，立即生效并异步持久化
+     * @param index 下标（从0开始）
+     * @return 被删除的违禁词，下标越界时返回null
+     */
+    public synchronized String removeWord(int index) {
+        if (index < 0 || index >= snapshot.words.size()) {
+            return null;
+        }
+        List<String> words = new ArrayList<>(snapshot.words);
+        String removed = words.remove(index);
+        publish(words);
+        persistAsync();
+        return removed;
+    }
+
+    private void publish(List<String> words) {
+        snapshot = new Snapshot(List.copyOf(words), ForbiddenWordMatcher.compile(words));
+    }
+
+    /**
+     * 读取文件中的非空行，读取失败返回null
+     */
+    private List<String> readLines() {
+        try {
+            if (!Files.exists(path)) {
+                LoggingUtils.logError("FORBID_FILE_NOT_FOUND", "禁止词文件不存在: " + path, null);
+                return List.of();
+            }
+            List<String> words = new ArrayList<>();
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    words.add(line.trim());
+                }
+            }
+            return words;
+        } catch (IOException e) {
+            LoggingUtils.logError("READ_FORBID_FILE_ERROR", "读取禁止词文件失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 后台持久化最新快照：写入同目录临时文件后原子替换，多次修改只写最后一次
+     */
+    private void persistAsync() {
+        if (path == null) {
+            return;
+        }
+        persistExecutor.execute(() -> {
+            List<String> words = snapshot.words;
+            if (words.equals(lastWritten)) {
+                return;
+            }
+            try {
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                Files.write(temp, words, StandardCharsets.UTF_8);
+                lastWritten = words;
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                LoggingUtils.logOperation("FORBID_PERSIST", "SYSTEM", "违禁词文件已保存，违禁词数: " + words.size());
+            } catch (Exception e) {
+                LoggingUtils.logError("FORBID_PERSIST_ERROR", "保存违禁词文件失败", e);
+            }
+        });
+    }
+
+    /**
+     * 监听违禁词文件所在目录，文件被外部修改后重新加载
+     */
+    private void startWatcher() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LoggingUtils.logError("FORBID_WATCH_ERROR", "违禁词文件监听启动失败", e);
+            return;
+        }
+        watcher = new Thread(this::watch, "forbid-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        Path fileName = path.getFileName();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                // 去抖：合并短时间内的连续事件
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (fileName.equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll(watchDebounce, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                if (changed) {
+                    onFileChanged();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                LoggingUtils.logError("FORBID_WATCH_ERROR", "处理违禁词文件变更失败", e);
+            }
+        }
+    }
+
+    private synchronized void onFileChanged() {
+        List<String> lines = readLines();
+        // 忽略本服务自身写入，以及内容未变化的事件
+        if (lines == null || lines.equals(lastWritten) || lines.equals(snapshot.words)) {
+            return;
+        }
+        publish(lines);
+        LoggingUtils.logSystemStatus("违禁词文件已被外部修改，重新加载完成，违禁词数: " + snapshot.matcher.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            LoggingUtils.logError("FORBID_WATCH_ERROR", "关闭违禁词文件监听失败", e);
+        }
+        // 等待未完成的持久化
+        persistExecutor.shutdown();
+        try {
+            persistExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 违禁词快照：原始列表与编译后的匹配器
+     */
+    private record Snapshot(List<String> words, ForbiddenWordMatcher matcher) {
+    }
+}
@@ -39,6 +39,9 @@ public class GPTService {
     private final ChatClient structuredChatClient;  // 结构化输出客户端
     private final ChatMemory chatMemory;
     private final QdrantClientService qdrantClientService;
+
+    @Autowired
+    private DependencyLimiter dependencyLimiter;
     
     // 模型配置
     private static final String SIMPLE_MODEL = "gpt-4o-mini";
@@ -97,14 +100,14 @@ public class GPTService {
     public boolean isQuestion(String input) {
         long startTime = System.currentTimeMillis();
         try {
-            String response = simpleChatClient.prompt()
+            String response = dependencyLimiter.call(DependencyLimiter.Dependency.CHAT_MODEL, () -> simpleChatClient.prompt()
                 .options(OpenAiChatOptions.builder()
                     .model(SIMPLE_MODEL)
                     .temperature(simpleTemperature)
                     .build())
                 .user("你是一名专业知识丰富的社区管理人员，现在需要对下面的消息做出如下判断：**如何这条消息明显是一个专业性的提问，并且你在不了解历史聊天记录的情况下就可以对消息做出回答则返回`yes`，或者返回`no`**,仅返回 'yes' 或 'no'。消息内容：" + input)
                 .call()
-                .content();
+                .content());
             
             boolean result = response.trim().toLowerCase().contains("yes");
             LoggingUtils.logPerformance("isQuestion", startTime);
@@ -122,14 +125,14 @@ public class GPTService {
     public boolean isQuoteQuestion(String input) {
         long startTime = System.currentTimeMillis();
         try {
-            String response = simpleChatClient.prompt()
+            String response = dependencyLimiter.call(DependencyLimiter.Dependency.CHAT_MODEL, () -> simpleChatClient.prompt()
                     .options(OpenAiChatOptions.builder()
                             .model(SIMPLE_MODEL)
                             .temperature(simpleTemperature)
                             .build())
                     .user("你是一名专业知识丰富的社区管理人员，现在需要对下面的对话消息做出如下判断（这条互动消息是一定是一条机器人的专业知识讲解消息和一个用户的消息；消息格式为`机器人[<消息内容>],用户[<消息内容>]`）：**用户是否是对机器人的消息抛出了疑问，并且这个疑问适合你这个专业知识丰富的管理员回答，适合则返回`yes`，或者返回`no`**,仅允许返回 'yes' 或 'no'。消息内容：" + input)
                     .call()
-                    .content();
+                    .content());
 
             boolean result = response.trim().toLowerCase().contains("yes");
             LoggingUtils.logPerformance("isQuestion", startTime);
@@ -179,7 +182,7 @@ public class GPTService {
             userMessage.append("\n请判断后续消息中是否有任何消息对一条消息进行了互动（可能是回答问题，也可能是对问题进行了延伸等等形式都属于互动）？请只回答'yes'或'no'。");
             
             // 获取AI分析结果
-            String response = simpleChatClient.prompt()
+            String response = dependencyLimiter.call(DependencyLimiter.Dependency.CHAT_MODEL, () -> simpleChatClient.prompt()
                 .options(OpenAiChatOptions.builder()
                     .model(SIMPLE_MODEL)
                     .temperature(simpleTemperature)
@@ -188,7 +191,7 @@ public class GPTService {
                         "请只返回'yes'或'no'，不要包含其他内容。")
                 .user(userMessage.toString())
                 .call()
-                .content();
+                .content());
             
             boolean result = response.trim().toLowerCase().contains("yes");
             LoggingUtils.logPerformance("isBeAnswered", startTime);
@@ -236,7 +239,7 @@ public class GPTService {
                     .map(TextChunk::getContent)
                     .reduce("", (a, b) -> a + "\\n" + b);
             
-            String response = complexChatClient.prompt()
+            String response = dependencyLimiter.call(DependencyLimiter.Dependency.CHAT_MODEL, () -> complexChatClient.prompt()
                 .options(OpenAiChatOptions.builder()
                     .model(COMPLEX_MODEL)
                     .temperature(complexTemperature)
@@ -244,7 +247,7 @@ public class GPTService {
                 .user(context + "\\n\\n问题：" + userQuestion)
                 .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, sessionId))
                 .call()
-                .content();
+                .content());
 
             LoggingUtils.logPerformance("answerUserQuestion", startTime);
             LoggingUtils.logBusinessOperation("CHAT_MEMORY", sessionId, 
@@ -300,7 +303,7 @@ public class GPTService {
                 context, userQuestion, outputConverter.getFormat()
             );
             
-            String response = structuredChatClient.prompt()
+            String response = dependencyLimiter.call(DependencyLimiter.Dependency.CHAT_MODEL, () -> structuredChatClient.prompt()
                 .options(OpenAiChatOptions.builder()
                     .model(COMPLEX_MODEL)
                     .temperature(0.3) // 较低温度确保输出格式稳定
@@ -308,7 +311,7 @@ public class GPTService {
                 .user(prompt)
                 .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, sessionId))
                 .call()
-                .content();
+                .content());
             
             // 直接转换为GuideMessage对象
             GuideMessage guideMessage = outputConverter.convert(response);
@@ -344,12 +347,13 @@ public class GPTService {
         } else {
             prompt = "你是一位群组活跃度分析助手，请根据以下 json 格式的数据，为管理员生成当天的互动表现分析与建议。\n\n输入数据包含两部分：\n1. messages: 群聊消息数组，每条消息包含发言人姓名、发送时间和内容\n2. adminUsers: 管理员用户名列表\n\n请你完成以下任务：\n1.  分析聊天内容，为今日群聊撰写一段简短的表现总结（从内容质量、活跃程度、气氛维持等进行评价）。\n2.  根据聊天内容，识别优秀用户若干名，并生成一个'优秀用户'列表。评选标准可以包括但不限于：积极参与讨论、有建设性的信息输出、帮助他人解答问题、引导话题深入、有助于建立友好氛围等。优秀用户不宜过多，一般控制在1～3人，若实在没有符合标准者可留空。**重要提醒：优秀用户不包括管理员用户。**\n3.  根据聊天内容，如有用户存在负面行为，请生成一个'表现恶劣用户'列表。判断标准可以包括但不限于：散播负面情绪、频繁打断或质疑他人、发布无关或低质量信息等。如果没有此类用户，请明确写'无'。如果有，请列出这些用户的名字并给出判定为恶劣用户的理由\n4.  请根据今日聊天内容给出1～2条'鼓励建议'，包括如何鼓励群成员更多交流、话题引导建议或互动形式优化等。\n5.  如有需要指出的改善建议（针对负面行为、内容质量或参与度等），请列出1～2条'惩罚建议'用于管理员参考，比如提醒用户注意发言质量、减少刷屏等。如无明显问题可写'无'。\n 6.使用英语进行总结\n请用以下格式输出结果：\n╭── 群聊日报 ──╮\n🏆 优秀用户：\n1.用户名A（简要说明理由）\n2.用户名B（如有）\n🚫 表现恶劣用户： （用户名 + 简要说明，或写'无'）\n\n响应示例：\n╭── Group Chat Daily Report ──╮\n🏆 Outstanding Users:\n\n- Lin Chester (Actively provided updates and followed up on task execution; helped clarify project developments and contributed to problem analysis such as potential allocation issues.)\n- xxx hahah (Frequently initiated relevant questions and discussions, helping drive group communication forward, especially around timing and bribery concerns.)\n\n🚫 Poorly Performing Users:\n\n- YieldGot (Displayed negative attitude by calling others \"菜鸡,\" which could harm group morale and derail constructive discussion.)\n\n💡 Encouragement Suggestions:\n\n1. Encourage users like Lin Chester and xxx hahah to continue engaging and lead more conversations — their involvement demonstrates initiative and value to the group.\n2. Consider organizing regular Q&A threads or voting update periods to help new or confused members feel more confident about asking questions without disrupting the flow.\n\n⚠️ Disciplinary Suggestions:\n\n1. Issue a reminder to all members to maintain respectful language and avoid derogatory comments like those from YieldGot.\n2. Encourage members to stay focused on constructive input and avoid speculative or unhelpful commentary that doesn't contribute to group goals.";
         }
+        final String systemPrompt = prompt;
         try {
-            String response = simpleChatClient.prompt()
-                    .system(prompt)
+            String response = dependencyLimiter.call(DependencyLimiter.Dependency.CHAT_MODEL, () -> simpleChatClient.prompt()
+                    .system(systemPrompt)
                     .user("输入数据：" + json)
                     .call()
-                    .content();
+                    .content());
             return response;
         } catch (Exception e) {
             return "AI总结失败：" + e.getMessage();
@@ -0,0 +1,260 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.MessageDao;
+import com.bot.aabot.entity.UpLogEntity;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: MessageLogWriter
+ * Package: com.bot.aabot.service
+ * Description: 消息日志组提交写入器。
+ * 消息保存与编辑标记先进入有界队列，由单个写入线程取出：首条到达后最多等待 max-delay 毫秒或凑满 batch-size 条，
+ * 在一个事务中用 batchUpdate 写入，把逐条提交的一次事务一次刷盘合并为一批一次。
+ * 每个调用方拿到的 future 在所在事务提交后才完成，写入失败时以异常完成；整批失败时逐条重写，只让出错的条目失败，
+ * 逐条重写遇到 SQLITE_BUSY 等暂时性错误时按 busy-retries 次数短暂退避重试。
+ * 编辑标记与消息保存共用一个队列，保证编辑标记不会早于对应消息落库；两者都按消息发送时间写入所属的日志分区。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Service
+public class MessageLogWriter {
+
+    @Autowired
+    private MessageDao messageDao;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CircuitBreakerService circuitBreakerService;
+
+    @Value("${bot.log-writer.batch-size:500}")
+    private int batchSize; // 单个事务最多写入的条数
+
+    @Value("${bot.log-writer.max-delay:20}")
+    private long maxDelay; // 首条到达后最多等待合并的时间（毫秒）
+
+    @Value("${bot.log-writer.queue-capacity:20000}")
+    private int queueCapacity;
+
+    @Value("${bot.log-writer.offer-timeout:1000}")
+    private long offerTimeout; // 队列满时调用方最多等待的时间（毫秒），超时后以异常完成
+
+    @Value("${bot.log-writer.busy-retries:3}")
+    private int busyRetries; // 逐条写入遇到数据库忙时的重试次数
+
+    @Value("${bot.log-writer.busy-retry-delay:50}")
+    private long busyRetryDelay; // 首次重试前的等待时间（毫秒），之后每次翻倍
+
+    private BlockingQueue<LogWrite> queue;
+    private Thread worker;
+    private volatile boolean running = true;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        worker = new Thread(this::run, "message-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+        LoggingUtils.logSystemStatus(String.format("消息日志写入器已启动 - 批量: %d, 最大等待: %dms, 队列容量: %d",
+                batchSize, maxDelay, queueCapacity));
+    }
+
+    /**
+     * 提交一条消息保存
+     * @return 所在事务提交后完成的future
+     */
+    public CompletableFuture<Void> save(UpLogEntity entity) {
+        return enqueue(new LogWrite(entity, false));
+    }
+
+    /**
+     * 提交一条编辑标记
+     * @param sendTime 原消息的发送时间（秒级时间戳），用于定位分区
+     * @return 所在事务提交后完成的future
+     */
+    public CompletableFuture<Void> markEdited(Long chatId, Integer messageId, Integer sendTime) {
+        UpLogEntity key = UpLogEntity.builder().chatId(chatId).messageId(messageId).sendTime(sendTime).build();
+        return enqueue(new LogWrite(key, true));
+    }
+
+    private CompletableFuture<Void> enqueue(LogWrite write) {
+        try {
+            if (running && queue.offer(write, offerTimeout, TimeUnit.MILLISECONDS)) {
+                return write.future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        write.future.completeExceptionally(new IllegalStateException("消息日志写入队列已满或写入器已停止"));
+        return write.future;
+    }
+
+    private void run() {
+        List<LogWrite> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                LogWrite first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 先取走已排队的，再在剩余的等待时间内继续凑批
+                queue.drainTo(batch, batchSize - batch.size());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+                while (batch.size() < batchSize) {
+                    long wait = deadline - System.nanoTime();
+                    LogWrite next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                LoggingUtils.logError("LOG_WRITER_ERROR", "消息日志写入线程异常", e);
+                batch.forEach(write -> write.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批，提交后完成各自的future
+     */
+    private void flush(List<LogWrite> batch) {
+        long startTime = System.currentTimeMillis();
+        List<UpLogEntity> entities = new ArrayList<>(batch.size());
+        List<UpLogEntity> edits = new ArrayList<>();
+        for (LogWrite write : batch) {
+            (write.edit ? edits : entities).add(write.entity);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // 编辑标记排在对应消息之后入队，先写消息再写标记即可保证顺序
+                if (!entities.isEmpty()) {
+                    messageDao.saveMessagesBatch(entities);
+                }
+                if (!edits.isEmpty()) {
+                    messageDao.markEditedBatch(edits);
+                }
+            });
+            commits.increment();
+            written.add(batch.size());
+            circuitBreakerService.recordSuccess("DATABASE_SAVE");
+            batch.forEach(write -> write.future.complete(null));
+            LoggingUtils.logPerformance("messageLogGroupCommit", startTime);
+        } catch (Exception e) {
+            LoggingUtils.logError("LOG_WRITER_BATCH_ERROR",
+                    String.format("消息日志批量写入失败，改为逐条写入 - 条数: %d", batch.size()), e);
+            circuitBreakerService.recordFailure("DATABASE_SAVE", e);
+            batch.forEach(this::writeSingle);
+        }
+    }
+
+    private void writeSingle(LogWrite write) {
+        long delay = busyRetryDelay;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (write.edit) {
+                    messageDao.markEditedBatch(List.of(write.entity));
+                } else {
+                    messageDao.saveMessagesBatch(List.of(write.entity));
+                }
+                commits.increment();
+                written.increment();
+                write.future.complete(null);
+                return;
+            } catch (Exception e) {
+                if (attempt < busyRetries && isBusy(e)) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    delay *= 2;
+                    continue;
+                }
+                failed.increment();
+                write.future.completeExceptionally(e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 是否为数据库忙或锁表这类可重试的暂时性错误（SQLITE_BUSY = 5，SQLITE_LOCKED = 6）
+     */
+    private static boolean isBusy(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException
+                    && (sqlException.getErrorCode() == 5 || sqlException.getErrorCode() == 6)) {
+                return true;
+            }
+            String message = cause.getMessage();
+            if (message != null && (message.contains("SQLITE_BUSY") || message.contains("database is locked"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 运行状态摘要
+     */
+    public String getStatusSummary() {
+        long commitCount = commits.sum();
+        return String.format("排队: %d, 已写入: %d, 提交次数: %d, 平均每次: %.1f, 失败: %d, 拒绝: %d",
+                queue.size(), written.sum(), commitCount,
+                commitCount == 0 ? 0.0 : (double) written.sum() / commitCount, failed.sum(), rejected.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            // 等待排队中的条目写入
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 待写入的条目：消息保存或编辑标记
+     */
+    private static final class LogWrite {
+        private final UpLogEntity entity;
+        private final boolean edit;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private LogWrite(UpLogEntity entity, boolean edit) {
+            this.entity = entity;
+            this.edit = edit;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.MessageSearchDao;
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.SearchText;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClassName: MessageSearchService
+ * Package: com.bot.aabot.service
+ * Description: 聊天记录全文检索。
+ * 管理员的检索条件缓存在内存中并分配一个短ID，分页按钮的回调数据只携带 search_ID_页码，
+ * 不受 Telegram 回调数据 64 字节的限制；条件超过 query-ttl 未被翻页即失效。
+ * 同时负责按计划为全文索引创建前的历史消息补建索引。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Service
+public class MessageSearchService {
+
+    public static final String CALLBACK_PREFIX = "search_";
+
+    @Autowired
+    private MessageSearchDao messageSearchDao;
+
+    @Value("${bot.search.page-size:10}")
+    private int pageSize;
+
+    @Value("${bot.search.snippet-radius:30}")
+    private int snippetRadius; // 片段中关键词前后保留的字符数
+
+    @Value("${bot.search.query-ttl:30}")
+    private long queryTtl; // 检索条件的保留时间（分钟）
+
+    @Value("${bot.search.backfill-batch-size:1000}")
+    private int backfillBatchSize;
+
+    private final Map<String, SearchQuery> queries = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * 解析 /search 参数并返回第一页
+     * @param args 关键词 [chat:群组ID] [user:用户ID] [topic:话题ID] [from:yyyy-MM-dd] [to:yyyy-MM-dd]
+     * @return text 为消息文本，keyboard 为分页键盘（只有一页时为null）
+     */
+    public Map<String, Object> startSearch(String[] args) {
+        if (!messageSearchDao.isEnabled()) {
+            return textOnly("全文检索未启用");
+        }
+        StringBuilder keywords = new StringBuilder();
+        String chatId = null;
+        String userId = null;
+        Integer topicId = null;
+        String from = null;
+        String to = null;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("chat:")) {
+                    chatId = String.valueOf(Long.parseLong(arg.substring(5)));
+                } else if (arg.startsWith("user:")) {
+                    userId = String.valueOf(Long.parseLong(arg.substring(5)));
+                } else if (arg.startsWith("topic:")) {
+                    topicId = Integer.parseInt(arg.substring(6));
+                } else if (arg.startsWith("from:")) {
+                    from = LocalDate.parse(arg.substring(5)) + " 00:00:00";
+                } else if (arg.startsWith("to:")) {
+                    to = LocalDate.parse(arg.substring(3)) + " 23:59:59";
+                } else {
+                    keywords.append(arg).append(' ');
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return textOnly("参数格式错误，ID必须是数字，日期格式为yyyy-MM-dd");
+        }
+        String match = SearchText.toMatchQuery(keywords.toString());
+        if (match == null) {
+            return textOnly("用法：/search 关键词 [chat:群组ID] [user:用户ID] [topic:话题ID] [from:yyyy-MM-dd] [to:yyyy-MM-dd]");
+        }
+        String id = Long.toString(nextId.incrementAndGet(), 36);
+        queries.put(id, new SearchQuery(keywords.toString().trim(), match,
+                new MessageSearchDao.SearchFilters(chatId, userId, topicId, from, to), System.currentTimeMillis()));
+        return getSearchPageMessage(id, 0);
+    }
+
+    /**
+     * 获取检索结果的某一页
+     * @param id 检索条件ID
+     * @param page 页码（从0开始）
+     */
+    public Map<String, Object> getSearchPageMessage(String id, int page) {
+        SearchQuery query = queries.get(id);
+        if (query == null) {
+            return textOnly("检索已过期，请重新执行 /search");
+        }
+        query.touch();
+        try {
+            int total = messageSearchDao.count(query.match, query.filters);
+            if (total == 0) {
+                return textOnly(String.format("没有找到包含“%s”的消息", query.keywords));
+            }
+            int totalPages = (int) Math.ceil((double) total / pageSize);
+            if (page < 0) page = 0;
+            if (page >= totalPages) page = totalPages - 1;
+
+            List<Map<String, Object>> rows = messageSearchDao.search(query.match, query.filters, page * pageSize, pageSize);
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("“%s”共找到 %d 条消息\n\n", query.keywords, total));
+            for (Map<String, Object> row : rows) {
+                String userName = (String) row.get("user_name");
+                if (userName == null || userName.trim().isEmpty()) {
+                    userName = String.valueOf(row.get("user_id"));
+                }
+                sb.append(String.format("%s  %s  群组:%s", row.get("send_time"), userName, row.get("chat_id")));
+                if (row.get("topic_id") != null) {
+                    sb.append(" 话题:").append(row.get("topic_id"));
+                }
+                sb.append(" 消息:").append(row.get("message_id")).append('\n');
+                sb.append(SearchText.snippet((String) row.get("message"), query.keywords, snippetRadius)).append("\n\n");
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("text", sb.toString());
+            result.put("keyboard", totalPages > 1 ? createPaginationKeyboard(id, page, totalPages) : null);
+            return result;
+        } catch (Exception e) {
+            LoggingUtils.logError("MESSAGE_SEARCH_ERROR", "检索消息失败: " + e.getMessage(), e);
+            return textOnly("检索消息失败，请稍后再试。");
+        }
+    }
+
+    /**
+     * 为历史消息补建索引，每次补建一批
+     */
+    @Scheduled(fixedDelayString = "${bot.search.backfill-interval:5000}")
+    public void backfill() {
+        try {
+            int indexed = messageSearchDao.backfillStep(backfillBatchSize);
+            if (indexed > 0) {
+                LoggingUtils.logSystemStatus(String.format("历史消息全文索引补建 - 本批: %d", indexed));
+            }
+        } catch (Exception e) {
+            LoggingUtils.logError("MESSAGE_SEARCH_BACKFILL_ERROR", "补建全文索引失败", e);
+        }
+    }
+
+    /**
+     * 清理过期的检索条件
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpiredQueries() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(queryTtl);
+        queries.values().removeIf(query -> query.lastAccess < expireBefore);
+    }
+
+    private Map<String, Object> textOnly(String text) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("text", text);
+        result.put("keyboard", null);
+        return result;
+    }
+
+    /**
+     * 创建分页键盘
+     * @param id 检索条件ID
+     * @param currentPage 当前页码
+     * @param totalPages 总页数
+     * @return 内联键盘
+     */
+    private Object createPaginationKeyboard(String id, int currentPage, int totalPages) {
+        try {
+            // 使用反射创建InlineKeyboardMarkup和相关对象
+            Class<?> inlineKeyboardMarkupClass = Class.forName("org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup");
+            Class<?> inlineKeyboardButtonClass = Class.forName("org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton");
+            Class<?> inlineKeyboardRowClass = Class.forName("org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow");
+
+            Object keyboardMarkup = inlineKeyboardMarkupClass.getDeclaredConstructor().newInstance();
+            Object keyboardRow = inlineKeyboardRowClass.getDeclaredConstructor().newInstance();
+
+            List<Object> buttons = new ArrayList<>();
+
+            // 上一页按钮
+            if (currentPage > 0) {
+                Object prevButton = inlineKeyboardButtonClass.getDeclaredConstructor().newInstance();
+                inlineKeyboardButtonClass.getMethod("setText", String.class).invoke(prevButton, "⬅️上一页");
+                inlineKeyboardButtonClass.getMethod("setCallbackData", String.class).invoke(prevButton,
+                    CALLBACK_PREFIX + id + "_" + (currentPage - 1));
+                buttons.add(prevButton);
+            }
+
+            // 页码信息按钮
+            Object pageInfoButton = inlineKeyboardButtonClass.getDeclaredConstructor().newInstance();
+            inlineKeyboardButtonClass.getMethod("setText", String.class).invoke(pageInfoButton,
+                String.format("%d/%d", currentPage + 1, totalPages));
+            inlineKeyboardButtonClass.getMethod("setCallbackData", String.class).invoke(pageInfoButton, "page_info");
+            buttons.add(pageInfoButton);
+
+            // 下一页按钮
+            if (currentPage < totalPages - 1) {
+                Object nextButton = inlineKeyboardButtonClass.getDeclaredConstructor().newInstance();
+                inlineKeyboardButtonClass.getMethod("setText", String.class).invoke(nextButton, "下一页➡️");
+                inlineKeyboardButtonClass.getMethod("setCallbackData", String.class).invoke(nextButton,
+                    CALLBACK_PREFIX + id + "_" + (currentPage + 1));
+                buttons.add(nextButton);
+            }
+
+            inlineKeyboardRowClass.getMethod("addAll", java.util.Collection.class).invoke(keyboardRow, buttons);
+            inlineKeyboardMarkupClass.getMethod("setKeyboard", List.class).invoke(keyboardMarkup, List.of(keyboardRow));
+            return keyboardMarkup;
+        } catch (Exception e) {
+            LoggingUtils.logError("CREATE_SEARCH_KEYBOARD_ERROR", "创建检索分页键盘失败: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 缓存的检索条件
+     */
+    private static final class SearchQuery {
+        private final String keywords;
+        private final String match;
+        private final MessageSearchDao.SearchFilters filters;
+        private volatile long lastAccess;
+
+        private SearchQuery(String keywords, String match, MessageSearchDao.SearchFilters filters, long lastAccess) {
+            this.keywords = keywords;
+            this.match = match;
+            this.filters = filters;
+            this.lastAccess = lastAccess;
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -4,27 +4,21 @@ import com.bot.aabot.config.BotConfig;
 import com.bot.aabot.context.DataContext;
 import com.bot.aabot.context.MessageContext;
 import com.bot.aabot.dao.GroupDao;
-import com.bot.aabot.dao.MessageDao;
 import com.bot.aabot.entity.TextMessageEntity;
 import com.bot.aabot.entity.UpLogEntity;
 import com.bot.aabot.utils.BotReplyUtil;
 import com.bot.aabot.utils.LoggingUtils;
-import com.bot.aabot.utils.MessagesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
 
 import java.util.Comparator;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * ClassName: MessageStorageService
@@ -57,9 +51,17 @@ public class MessageStorageService {
     @Autowired
     private AIResponseService aiResponseService;
     @Autowired
-    private MessageDao messageDao;
-    @Autowired
     private GroupDao groupDao;
+    @Autowired
+    private ForbiddenWordService forbiddenWordService;
+    @Autowired
+    private NearDuplicateDetector nearDuplicateDetector;
+    @Autowired
+    private SpamClassifierService spamClassifierService;
+    @Autowired
+    private ModerationPipeline moderationPipeline;
+    @Autowired
+    private MessageLogWriter messageLogWriter;
 
 
     /**
@@ -80,22 +82,56 @@ public class MessageStorageService {
             Long userId = message.getFrom().getId();
             Integer messageId = message.getMessageId();
 
-            // 获取并清理消息内容
-            String cleanedText = MessagesUtil.cleanMessageText(messageText);
+            // 一次线性扫描检查是否包含禁止内容（匹配时同步完成文本清洗）
+            String forbiddenWord = forbiddenWordService.findForbiddenWord(messageText);
+            if (forbiddenWord != null) {
+                LoggingUtils.logSecurityEvent("SPAM_DETECTED", String.valueOf(userId),
+                        String.format("检测到广告消息 - 违规内容: %s", forbiddenWord));
+                spamClassifierService.recordDetection(chatId, userId, messageText, true);
 
-            // 读取禁止词文件
-            List<String> forbiddenWords = MessagesUtil.readForbiddenWords(botConfig.getForbidUrl());
+                // 处理违规消息：撤回、封禁、通知管理员
+                handleSpamMessage(update, forbiddenWord);
+                return true;
+            }
 
-            // 检查是否包含禁止内容
-            for (String forbiddenWord : forbiddenWords) {
-                if (cleanedText.contains(forbiddenWord.trim())) {
-                    LoggingUtils.logSecurityEvent("SPAM_DETECTED", String.valueOf(userId),
-                            String.format("检测到广告消息 - 违规内容: %s", forbiddenWord));
+            if (message.getChat().isGroupChat() || message.getChat().isSuperGroupChat()) {
+                // 本地广告模型：识别改写过的广告
+                double spamScore = spamClassifierService.score(messageText);
+                if (spamClassifierService.isSpam(spamScore)) {
+                    String violation = String.format("疑似广告（模型评分 %.3f）", spamScore);
+                    spamClassifierService.recordDetection(chatId, userId, messageText, false);
+                    if (spamClassifierService.isEnforcing()) {
+                        LoggingUtils.logSecurityEvent("SPAM_CLASSIFIED", String.valueOf(userId),
+                                String.format("广告模型判定为广告 - 群组: %d, %s", chatId, violation));
+                        handleSpamMessage(update, violation);
+                        return true;
+                    }
+                    // 影子模式：只报告不处置，消息照常处理
+                    LoggingUtils.logSecurityEvent("SPAM_CLASSIFIED_REPORTED", String.valueOf(userId),
+                            String.format("广告模型判定为疑似广告，已报告管理员 - 群组: %d, %s", chatId, violation));
+                    moderationPipeline.submitReport(message, violation);
+                    return false;
+                }
 
-                    // 处理违规消息：撤回、封禁、通知管理员
-                    handleSpamMessage(applicationContext.getBean("tgBot"), update, forbiddenWord);
-                    return true;
+                // 近似重复检测：多个用户发送同一广告的变体
+                int similarUsers = nearDuplicateDetector.check(chatId, userId, messageText);
+                if (similarUsers > 0) {
+                    String violation = String.format("近似重复消息（%d 名其他用户近期发送过相似内容）", similarUsers);
+                    spamClassifierService.recordDetection(chatId, userId, messageText, false);
+                    if (nearDuplicateDetector.isEnforcing()) {
+                        LoggingUtils.logSecurityEvent("SPAM_NEAR_DUPLICATE", String.valueOf(userId),
+                                String.format("检测到近似重复广告 - 群组: %d, %s", chatId, violation));
+                        handleSpamMessage(update, violation);
+                        return true;
+                    }
+                    // 只报告不处置，消息照常处理
+                    LoggingUtils.logSecurityEvent("SPAM_NEAR_DUPLICATE_REPORTED", String.valueOf(userId),
+                            String.format("检测到疑似近似重复广告，已报告管理员 - 群组: %d, %s", chatId, violation));
+                    moderationPipeline.submitReport(message, violation);
+                    return false;
                 }
+
+                spamClassifierService.sampleHam(chatId, userId, messageText);
             }
 
             return false;
@@ -108,67 +144,116 @@ public class MessageStorageService {
 
 
     /**
-     * 保存消息（带重试和熔断器）
+     * 保存消息（经组提交写入器批量落库，带熔断器）
+     * AI相关处理由 processTextMessage 以较低优先级单独执行
+     * @return 消息所在事务提交后完成的future，写入失败或熔断时以异常完成
      */
-    public void saveMessage(Update update) {
-        long startTime = System.currentTimeMillis();
+    public CompletableFuture<Void> persistMessage(Update update) {
         try {
-            Message message = update.getMessage();
-            UpLogEntity upLogEntity = UpLogEntity.builder()
-                    .messageId(message.getMessageId())
-                    .userId(message.getFrom().getId())
-                    .userName(message.getFrom().getUserName())
-                    .formName(update.getMessage().getChat().getTitle())
-                    .sendTime(message.getDate())
-                    .chatId(message.getChatId())
-                    .topicId(message.getMessageThreadId() != null ? message.getMessageThreadId() : null)
-                    .build();
-
-            if(message.hasPhoto()){
-                upLogEntity.setMessageType("photo");
-                String f_id = update.getMessage().getPhoto().stream().max(Comparator.comparing(PhotoSize::getFileSize))
-                        .map(PhotoSize::getFileId)
-                        .orElse("");
-                upLogEntity.setMessage(update.getMessage().getCaption()+"["+f_id+"]");
-            }else if(message.hasText()){
-                ordinaryMessageProcessing(update);
-                upLogEntity.setMessageType("text");
-                upLogEntity.setMessage(message.getText());
-            }else if(message.hasVideo()){
-                upLogEntity.setMessageType("video");
-                upLogEntity.setMessage(message.getVideo().getFileId());
-            }else if (message.hasAnimation()){
-                upLogEntity.setMessageType("animation");
-                upLogEntity.setMessage(message.getAnimation().getFileId());
-            }else if(message.hasDocument()){
-                upLogEntity.setMessageType("document");
-                upLogEntity.setMessage(message.getDocument().getFileName()+"["+message.getDocument().getFileId()+"]");
-            }
-            if(upLogEntity.getMessageType() == null){
-                upLogEntity.setMessageType("other");
-                upLogEntity.setMessage("other");
+            if (!circuitBreakerService.isRequestAllowed("DATABASE_SAVE")) {
+                return CompletableFuture.failedFuture(new RuntimeException("熔断器开启，拒绝执行"));
             }
-
-            // 使用重试和熔断器保存消息到数据库
-            saveMessageWithRetryAndCircuitBreaker(upLogEntity);
-
-            LoggingUtils.logPerformance("saveMessage", startTime);
+            UpLogEntity upLogEntity = buildLogEntity(update);
+            return messageLogWriter.save(upLogEntity)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            LoggingUtils.logError("SAVE_MESSAGE_FINAL_FAILURE", "数据库保存最终失败", new RuntimeException(throwable));
+                        } else {
+                            LoggingUtils.logOperation("SAVE_MESSAGE", String.valueOf(upLogEntity.getUserId()), "保存消息成功");
+                        }
+                    });
         } catch (Exception e) {
             LoggingUtils.logError("SAVE_MESSAGE_ERROR", "保存消息失败", e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     /**
-     * 处理`编辑消息`事件
+     * 处理文本消息的AI相关逻辑（@机器人、追问、加入会话队列）
      * @param update
      */
-    public void editMessage(Update update){
+    public void processTextMessage(Update update) {
+        try {
+            if (update.hasMessage() && update.getMessage().hasText()) {
+                ordinaryMessageProcessing(update);
+            }
+        } catch (Exception e) {
+            LoggingUtils.logError("TEXT_MESSAGE_PROCESS_ERROR", "处理文本消息失败", e);
+        }
+    }
+
+    /**
+     * AI队列已满时的降级处理：不调用大模型，只把消息记入会话上下文队列（不判断是否为问题）
+     */
+    public void processTextMessageDegraded(Update update) {
         try {
-            messageDao.editMessage(update);
-            LoggingUtils.logOperation("EDIT_MESSAGE", String.valueOf(update.getEditedMessage().getFrom().getId()), "更新消息编辑状态成功");
+            if (update.hasMessage() && update.getMessage().hasText() && groupManagementService.isGroupEnabledForResponse(update)) {
+                localSaveMessage(update, false);
+            }
         } catch (Exception e) {
-            LoggingUtils.logError("EDIT_MESSAGE_ERROR", "更新消息编辑状态失败", e);
+            LoggingUtils.logError("TEXT_MESSAGE_PROCESS_ERROR", "降级处理文本消息失败", e);
+        }
+    }
+
+    /**
+     * 根据消息构建消息日志实体
+     * @param update
+     * @return 消息日志实体
+     */
+    public UpLogEntity buildLogEntity(Update update) {
+        Message message = update.getMessage();
+        UpLogEntity upLogEntity = UpLogEntity.builder()
+                .messageId(message.getMessageId())
+                .userId(message.getFrom().getId())
+                .userName(message.getFrom().getUserName())
+                .formName(update.getMessage().getChat().getTitle())
+                .sendTime(message.getDate())
+                .chatId(message.getChatId())
+                .topicId(message.getMessageThreadId() != null ? message.getMessageThreadId() : null)
+                .build();
+
+        if(message.hasPhoto()){
+            upLogEntity.setMessageType("photo");
+            String f_id = update.getMessage().getPhoto().stream().max(Comparator.comparing(PhotoSize::getFileSize))
+                    .map(PhotoSize::getFileId)
+                    .orElse("");
+            upLogEntity.setMessage(update.getMessage().getCaption()+"["+f_id+"]");
+        }else if(message.hasText()){
+            upLogEntity.setMessageType("text");
+            upLogEntity.setMessage(message.getText());
+        }else if(message.hasVideo()){
+            upLogEntity.setMessageType("video");
+            upLogEntity.setMessage(message.getVideo().getFileId());
+        }else if (message.hasAnimation()){
+            upLogEntity.setMessageType("animation");
+            upLogEntity.setMessage(message.getAnimation().getFileId());
+        }else if(message.hasDocument()){
+            upLogEntity.setMessageType("document");
+            upLogEntity.setMessage(message.getDocument().getFileName()+"["+message.getDocument().getFileId()+"]");
+        }
+        if(upLogEntity.getMessageType() == null){
+            upLogEntity.setMessageType("other");
+            upLogEntity.setMessage("other");
         }
+        return upLogEntity;
+    }
+
+    /**
+     * 处理`编辑消息`事件
+     * @param update
+     */
+    public CompletableFuture<Void> editMessage(Update update){
+        String userId = String.valueOf(update.getEditedMessage().getFrom().getId());
+        // 与消息保存走同一写入队列，编辑标记不会早于消息落库
+        Message edited = update.getEditedMessage();
+        return messageLogWriter.markEdited(edited.getChatId(), edited.getMessageId(), edited.getDate())
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        LoggingUtils.logError("EDIT_MESSAGE_ERROR", "更新消息编辑状态失败", new RuntimeException(throwable));
+                    } else {
+                        LoggingUtils.logOperation("EDIT_MESSAGE", userId, "更新消息编辑状态成功");
+                    }
+                });
     }
 
     /**
@@ -262,26 +347,18 @@ public class MessageStorageService {
 
 
     /**
-     * 带重试和熔断器的数据库保存操作
-     * @param upLogEntity
+     * 将消息保存到消息队列
+     * @param update
      */
-    private void saveMessageWithRetryAndCircuitBreaker(UpLogEntity upLogEntity) {
-        retryService.executeWithRetryAndCircuitBreaker(() -> {
-                    messageDao.saveMessages(upLogEntity);
-                    LoggingUtils.logOperation("SAVE_MESSAGE", String.valueOf(upLogEntity.getUserId()), "保存消息成功");
-                    return null;
-                }, "DATABASE_SAVE", circuitBreakerService)
-                .exceptionally(throwable -> {
-                    LoggingUtils.logError("SAVE_MESSAGE_FINAL_FAILURE", "数据库保存最终失败", (Exception) throwable);
-                    return null;
-                });
+    public void localSaveMessage(Update update) {
+        localSaveMessage(update, true);
     }
 
     /**
      * 将消息保存到消息队列
-     * @param update
+     * @param classify 是否调用大模型判断消息是否为问题
      */
-    public void localSaveMessage(Update update) {
+    private void localSaveMessage(Update update, boolean classify) {
         try {
             // 获取线程 ID 并构造会话 ID。
             String threadId = BotReplyUtil.getThreadId(update);
@@ -293,7 +370,7 @@ public class MessageStorageService {
                     .messageId(update.getMessage().getMessageId())
                     .content(update.getMessage().getText())
                     .sendTime(String.valueOf(update.getMessage().getDate()))
-                    .isQuestion(gptService.isQuestion(update.getMessage().getText()))
+                    .isQuestion(classify && gptService.isQuestion(update.getMessage().getText()))
                     .update(update)
                     .build();
 
@@ -316,112 +393,14 @@ public class MessageStorageService {
     }
 
     /**
-     * 处理违禁消息
-     * @param bot
+     * 处理违禁消息：撤回、禁言与通知管理员交由处置流水线异步执行，接收线程不等待
      * @param update
      * @param violationContent
      */
-    private void handleSpamMessage(Object bot, Update update, String violationContent) {
+    private void handleSpamMessage(Update update, String violationContent) {
         Message message = update.getMessage();
-        Long chatId = message.getChatId();
-        Long userId = message.getFrom().getId();
-        Integer messageId = message.getMessageId();
-
-        // 撤回消息
-        MessagesUtil.deleteMessage(bot, chatId, messageId);
-
-        // 限制用户权限 1小时 (3600秒)
-        MessagesUtil.banUser(bot, chatId, userId, 3600);
-
-        // 通知管理员
-        notifyAdmin(bot, update, violationContent);
-
-        LoggingUtils.logOperation("SPAM_HANDLED", String.valueOf(userId),
-                "已处理广告消息: 撤回消息并限制用户权限1小时");
+        moderationPipeline.submit(message, violationContent);
+        LoggingUtils.logOperation("SPAM_HANDLED", String.valueOf(message.getFrom().getId()),
+                "广告消息已提交处置：撤回消息并限制用户权限");
     }
-
-    private void notifyAdmin(Object bot, Update update, String violationContent) {
-        try {
-            String adminGroupId = groupDao.getAdminGroup();
-            if (adminGroupId == null) {
-                LoggingUtils.logError("ADMIN_GROUP_NOT_SET", "管理员群组未设置，无法发送通知", null);
-                return;
-            }
-
-            // 获取基本信息
-            Message message = update.getMessage();
-            LoggingUtils.logOperation(
-                    "SPAM_NOTIFY_CONTEXT",
-                    String.valueOf(message.getFrom().getId()),
-                    String.format("chatId=%s, msgId=%s", message.getChatId(), message.getMessageId())
-            );
-
-            // 获取群聊信息
-            String chatTitle = message.getChat().getTitle();
-            if (chatTitle == null || chatTitle.trim().isEmpty()) {
-                chatTitle = "未知群聊";
-            }
-
-            // 获取话题信息
-            String topicInfo = "";
-            if (message.getMessageThreadId() != null) {
-                topicInfo = String.format(" (话题ID: %d)", message.getMessageThreadId());
-            }
-
-            // 获取用户信息
-            String userName = userService.getUserDisplayName(message.getFrom());
-
-            // 获取消息内容（限制长度）
-            String messageText = message.getText();
-            if (messageText != null && messageText.length() > 100) {
-                messageText = messageText.substring(0, 100) + "...";
-            }
-            if (messageText == null) {
-                messageText = "[无文本内容]";
-            }
-
-            // 构建通知消息
-            String notificationText = String.format(
-                    "🚨 检测到广告消息\n\n" +
-                            "📍 群组: %s%s\n" +
-                            "👤 用户: %s (ID: %s)\n" +
-                            "📝 消息内容: %s\n\n" +
-                            "✅ 已自动处理：\n" +
-                            "• 撤回消息\n" +
-                            "• 限制用户权限1小时",
-                    chatTitle, topicInfo, userName, String.valueOf(message.getFrom().getId()), messageText
-            );
-
-            // 构建管理员操作按钮
-            InlineKeyboardMarkup keyboard = InlineKeyboardMarkup.builder()
-                    .keyboardRow(new InlineKeyboardRow(
-                            InlineKeyboardButton.builder()
-                                    .text("解除封禁")
-                                    .callbackData(String.format("SPAM_UNRESTRICT:%s:%s", String.valueOf(message.getChatId()), String.valueOf(message.getFrom().getId())))
-                                    .build(),
-                            InlineKeyboardButton.builder()
-                                    .text("加入黑名单")
-                                    .callbackData(String.format("SPAM_BLACKLIST:%s:%s", String.valueOf(message.getChatId()), String.valueOf(message.getFrom().getId())))
-                                    .build()
-                    ))
-                    .build();
-
-            // 使用现有的SendMessage方式
-            SendMessage sendMessage = SendMessage.builder()
-                    .chatId(adminGroupId)
-                    .text(notificationText)
-                    .replyMarkup(keyboard)
-                    .build();
-
-            // 发送通知消息
-            bot.getClass().getMethod("replyMessage", SendMessage.class).invoke(bot, sendMessage);
-
-            LoggingUtils.logOperation("ADMIN_NOTIFIED", adminGroupId, "已通知管理员群组（含操作按钮）");
-
-        } catch (Exception e) {
-            LoggingUtils.logError("NOTIFY_ADMIN_ERROR", "通知管理员失败", e);
-        }
-    }
-
-
 }
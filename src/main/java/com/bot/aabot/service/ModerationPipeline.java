@@ -0,0 +1,365 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.GroupDao;
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.MessagesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessages;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: ModerationPipeline
+ * Package: com.bot.aabot.service
+ * Description: 广告处置流水线。
+ * 广告判定在接收线程中同步完成后立即返回，撤回、禁言与管理员通知由本流水线的后台线程异步执行：
+ * 短时间内累积的处置请求按群组合并为 deleteMessages 批量撤回，同一用户的重复禁言合并为一次
+ * （近期已禁言的用户不再重复禁言），所有操作经出站发送网关以审核优先级限速发送，完成后异步向管理群组报告结果。
+ * 未确认的判定（如近似重复）可以只报告不处置，由管理员通过按钮确认。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/18
+ */
+@Service
+public class ModerationPipeline {
+
+    /** Telegram deleteMessages 单次最多100条 */
+    private static final int MAX_DELETE_BATCH = 100;
+
+    @Autowired
+    private TelegramSendGateway telegramSendGateway;
+    @Autowired
+    private GroupDao groupDao;
+    @Autowired
+    private UserService userService;
+
+    @Value("${bot.moderation.pipeline.linger:200}")
+    private long linger; // 首个请求到达后等待合并的时间（毫秒）
+
+    @Value("${bot.moderation.pipeline.max-batch:500}")
+    private int maxBatch; // 单次合并的最大请求数
+
+    @Value("${bot.moderation.pipeline.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${bot.moderation.pipeline.restrict-seconds:3600}")
+    private int restrictSeconds; // 广告用户禁言时长（秒）
+
+    private BlockingQueue<SpamIncident> queue;
+    private Thread worker;
+    private volatile boolean running = true;
+    // 近期已禁言的用户（群组ID:用户ID → 禁言到期时间），禁言期内不再重复禁言
+    private final Map<String, Long> restrictedUntil = new ConcurrentHashMap<>();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder restricted = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder reported = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        worker = new Thread(this::run, "moderation-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 提交广告处置请求，立即返回
+     * @param message 广告消息
+     * @param violation 违规原因
+     */
+    public void submit(Message message, String violation) {
+        SpamIncident incident = new SpamIncident(message, violation, false);
+        if (!queue.offer(incident)) {
+            // 队列已满时在调用线程中直接处置（撤回、禁言并通知管理员），不等待合并
+            LoggingUtils.logError("MODERATION_QUEUE_FULL", "广告处置队列已满，直接处置广告消息", null);
+            process(List.of(incident));
+        }
+    }
+
+    /**
+     * 提交只报告不处置的疑似广告，由管理员确认后处理，立即返回
+     * @param message 疑似广告消息
+     * @param violation 判定原因
+     */
+    public void submitReport(Message message, String violation) {
+        if (!queue.offer(new SpamIncident(message, violation, true))) {
+            LoggingUtils.logError("MODERATION_QUEUE_FULL", "广告处置队列已满，丢弃疑似广告报告", null);
+        }
+    }
+
+    private void run() {
+        List<SpamIncident> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                SpamIncident first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 等待一小段时间，合并同一波广告
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+                while (batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    SpamIncident next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                LoggingUtils.logError("MODERATION_PIPELINE_ERROR", "处理广告处置请求失败", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 按群组批量撤回，按用户合并禁言与通知。管理群组在此处查询，发送完成的回调中不再访问数据库
+     */
+    private void process(List<SpamIncident> batch) {
+        long now = System.currentTimeMillis();
+        String adminGroupId = findAdminGroup();
+        restrictedUntil.values().removeIf(until -> until <= now);
+        Map<Long, Map<Long, List<SpamIncident>>> byChat = new LinkedHashMap<>();
+        for (SpamIncident incident : batch) {
+            if (incident.reportOnly) {
+                reported.increment();
+                report(adminGroupId, List.of(incident), false, null);
+                continue;
+            }
+            byChat.computeIfAbsent(incident.message.getChatId(), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(incident.message.getFrom().getId(), k -> new ArrayList<>())
+                    .add(incident);
+        }
+        byChat.forEach((chatId, byUser) -> {
+            List<Integer> messageIds = new ArrayList<>();
+            byUser.values().forEach(incidents -> incidents.forEach(i -> messageIds.add(i.message.getMessageId())));
+            CompletableFuture<Boolean> deletion = deleteMessages(chatId, messageIds);
+            byUser.forEach((userId, incidents) -> {
+                CompletableFuture<Boolean> restriction = restrict(chatId, userId, now);
+                collapsed.add(incidents.size() - 1);
+                deletion.handle((deleteResult, deleteError) -> deleteError == null)
+                        .thenCombine(restriction.handle((result, error) -> error != null ? Boolean.FALSE : result),
+                                (deleteOk, restrictResult) -> {
+                                    report(adminGroupId, incidents, deleteOk, restrictResult);
+                                    return null;
+                                });
+            });
+        });
+    }
+
+    private CompletableFuture<Boolean> deleteMessages(long chatId, List<Integer> messageIds) {
+        List<CompletableFuture<Boolean>> chunks = new ArrayList<>();
+        for (int from = 0; from < messageIds.size(); from += MAX_DELETE_BATCH) {
+            DeleteMessages deleteMessages = DeleteMessages.builder()
+                    .chatId(String.valueOf(chatId))
+                    .messageIds(new ArrayList<>(messageIds.subList(from, Math.min(messageIds.size(), from + MAX_DELETE_BATCH))))
+                    .build();
+            chunks.add(telegramSendGateway.submit(chatId, TelegramSendGateway.SendPriority.MODERATION, deleteMessages)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            LoggingUtils.logError("DELETE_MESSAGE_ERROR",
+                                    String.format("批量撤回广告消息失败 - 群组: %d", chatId), new RuntimeException(e));
+                        } else {
+                            deleted.add(deleteMessages.getMessageIds().size());
+                        }
+                    }));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenApply(v -> Boolean.TRUE);
+    }
+
+    /**
+     * 禁言用户，禁言期内的重复请求直接返回null（表示已在禁言中）
+     */
+    private CompletableFuture<Boolean> restrict(long chatId, long userId, long now) {
+        String key = chatId + ":" + userId;
+        long until = now + restrictSeconds * 1000L;
+        if (restrictedUntil.putIfAbsent(key, until) != null) {
+            collapsed.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+        restricted.increment();
+        return MessagesUtil.banUser(chatId, userId, restrictSeconds).whenComplete((result, e) -> {
+            if (e != null || !Boolean.TRUE.equals(result)) {
+                restrictedUntil.remove(key, until); // 禁言失败，允许下次重试
+            }
+        });
+    }
+
+    private String findAdminGroup() {
+        try {
+            String adminGroupId = groupDao.getAdminGroup();
+            if (adminGroupId == null) {
+                LoggingUtils.logError("ADMIN_GROUP_NOT_SET", "管理员群组未设置，无法发送通知", null);
+            }
+            return adminGroupId;
+        } catch (Exception e) {
+            LoggingUtils.logError("NOTIFY_ADMIN_ERROR", "查询管理员群组失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 向管理群组报告处置结果或待确认的疑似广告（含操作按钮）
+     * @param adminGroupId 管理群组ID，为null时不报告
+     * @param restrictResult null表示用户已在禁言中
+     */
+    private void report(String adminGroupId, List<SpamIncident> incidents, boolean deleteOk, Boolean restrictResult) {
+        if (adminGroupId == null) {
+            return;
+        }
+        try {
+            SpamIncident first = incidents.get(0);
+            Message message = first.message;
+            String chatId = String.valueOf(message.getChatId());
+            String userId = String.valueOf(message.getFrom().getId());
+
+            String chatTitle = message.getChat().getTitle();
+            if (chatTitle == null || chatTitle.trim().isEmpty()) {
+                chatTitle = "未知群聊";
+            }
+            String topicInfo = message.getMessageThreadId() != null
+                    ? String.format(" (话题ID: %d)", message.getMessageThreadId()) : "";
+            String messageText = message.getText();
+            if (messageText == null) {
+                messageText = "[无文本内容]";
+            } else if (messageText.length() > 100) {
+                messageText = messageText.substring(0, 100) + "...";
+            }
+            String restrictInfo = restrictResult == null ? "• 用户已在限制中"
+                    : String.format("• 限制用户权限%s %s", formatDuration(restrictSeconds), Boolean.TRUE.equals(restrictResult) ? "✅" : "❌");
+            StringBuilder violations = new StringBuilder();
+            for (SpamIncident incident : incidents) {
+                String violation = incident.violation;
+                if (violations.indexOf(violation) < 0) {
+                    violations.append(violations.length() > 0 ? "；" : "").append(violation);
+                }
+            }
+
+            String actionInfo = first.reportOnly
+                    ? "未自动处理，请管理员确认：\n• 确认为广告时加入黑名单\n• 误判时标记为正常消息"
+                    : String.format("已自动处理：\n• 撤回消息 %d 条 %s\n%s", incidents.size(), deleteOk ? "✅" : "❌", restrictInfo);
+            String notificationText = String.format(
+                    "%s\n\n" +
+                            "📍 群组: %s%s\n" +
+                            "👤 用户: %s (ID: %s)\n" +
+                            "📝 消息内容: %s\n" +
+                            "⚠️ 原因: %s\n\n" +
+                            "%s",
+                    first.reportOnly ? "🔎 检测到疑似广告消息" : "🚨 检测到广告消息",
+                    chatTitle, topicInfo, userService.getUserDisplayName(message.getFrom()), userId, messageText,
+                    violations, actionInfo
+            );
+
+            InlineKeyboardMarkup keyboard = InlineKeyboardMarkup.builder()
+                    .keyboardRow(new InlineKeyboardRow(
+                            first.reportOnly
+                                    ? InlineKeyboardButton.builder()
+                                    .text("不是广告")
+                                    .callbackData(String.format("SPAM_IGNORE:%s:%s", chatId, userId))
+                                    .build()
+                                    : InlineKeyboardButton.builder()
+                                    .text("解除封禁")
+                                    .callbackData(String.format("SPAM_UNRESTRICT:%s:%s", chatId, userId))
+                                    .build(),
+                            InlineKeyboardButton.builder()
+                                    .text("加入黑名单")
+                                    .callbackData(String.format("SPAM_BLACKLIST:%s:%s", chatId, userId))
+                                    .build()
+                    ))
+                    .build();
+            SendMessage sendMessage = SendMessage.builder()
+                    .chatId(adminGroupId)
+                    .text(notificationText)
+                    .replyMarkup(keyboard)
+                    .build();
+            telegramSendGateway.submit(TelegramSendGateway.chatIdOf(adminGroupId),
+                            TelegramSendGateway.SendPriority.NOTIFICATION, sendMessage)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            LoggingUtils.logError("NOTIFY_ADMIN_ERROR", "通知管理员失败", new RuntimeException(e));
+                        } else {
+                            LoggingUtils.logOperation("ADMIN_NOTIFIED", adminGroupId, "已通知管理员群组（含操作按钮）");
+                        }
+                    });
+        } catch (Exception e) {
+            LoggingUtils.logError("NOTIFY_ADMIN_ERROR", "通知管理员失败", e);
+        }
+    }
+
+    /**
+     * 禁言时长的显示文本，如“1小时30分钟”“45分钟”“30秒”
+     */
+    private static String formatDuration(int seconds) {
+        int hours = seconds / 3600;
+        int minutes = seconds % 3600 / 60;
+        StringBuilder text = new StringBuilder();
+        if (hours > 0) {
+            text.append(hours).append("小时");
+        }
+        if (minutes > 0) {
+            text.append(minutes).append("分钟");
+        }
+        if (text.length() == 0) {
+            text.append(seconds).append("秒");
+        }
+        return text.toString();
+    }
+
+    /**
+     * 管理员解除封禁后清除禁言记录，用户再次发广告时重新禁言
+     */
+    public void clearRestriction(String chatId, String userId) {
+        restrictedUntil.remove(chatId + ":" + userId);
+    }
+
+    /**
+     * 运行状态摘要
+     */
+    public String getStatusSummary() {
+        return String.format("排队: %d, 已撤回: %d, 已禁言: %d, 合并: %d, 禁言中: %d, 待确认报告: %d",
+                queue.size(), deleted.sum(), restricted.sum(), collapsed.sum(), restrictedUntil.size(), reported.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            // 等待排队中的处置完成提交
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 待处置的广告消息
+     * @param reportOnly 只报告不处置，由管理员确认
+     */
+    private record SpamIncident(Message message, String violation, boolean reportOnly) {
+    }
+}
@@ -0,0 +1,161 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.utils.FingerprintRing;
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.SimHash;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClassName: NearDuplicateDetector
+ * Package: com.bot.aabot.service
+ * Description: 近似重复消息检测（刷屏广告的变体）。
+ * 每条群消息计算 SimHash 指纹，写入所在群组的环形窗口和全局环形窗口；
+ * 若窗口中已有至少 minUsers 个其他用户发送过汉明距离不超过 maxDistance 的消息，判定为近似重复广告。
+ * 查询通过分段索引完成，单个窗口的内存占用固定，与窗口大小无关；群组窗口空闲超过 chat-idle-timeout 后回收，
+ * 数量达到 max-chats 时新群组只使用全局窗口。
+ * 默认只向管理群组报告，由管理员确认处理；enforce 为 true 时才自动撤回并禁言。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/17
+ */
+@Service
+public class NearDuplicateDetector {
+
+    @Value("${bot.spam.near-duplicate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${bot.spam.near-duplicate.enforce:false}")
+    private boolean enforce; // 是否自动撤回并禁言；为false时只向管理群组报告
+
+    @Value("${bot.spam.near-duplicate.global-window:100000}")
+    private int globalWindow; // 全局窗口保存的最近指纹数
+
+    @Value("${bot.spam.near-duplicate.chat-window:4096}")
+    private int chatWindow; // 每个群组窗口保存的最近指纹数
+
+    @Value("${bot.spam.near-duplicate.max-distance:3}")
+    private int maxDistance; // 判定为近似的最大汉明距离（最大为3）
+
+    @Value("${bot.spam.near-duplicate.min-users:3}")
+    private int minUsers; // 发送过近似消息的其他用户数达到该值时判定为广告
+
+    @Value("${bot.spam.near-duplicate.min-length:20}")
+    private int minLength; // 规范化后短于该长度的消息不参与检测，避免“谢谢”“收到”之类被误判
+
+    @Value("${bot.spam.near-duplicate.max-probe:64}")
+    private int maxProbe; // 每段索引链最多检查的候选数
+
+    @Value("${bot.spam.near-duplicate.max-chats:200}")
+    private int maxChats; // 最多保留的群组窗口数，达到后新群组只使用全局窗口
+
+    @Value("${bot.spam.near-duplicate.chat-idle-timeout:3600000}")
+    private long chatIdleTimeout; // 群组窗口空闲多久（毫秒）后回收
+
+    private FingerprintRing globalRing;
+    private final Map<Long, ChatWindow> chatRings = new ConcurrentHashMap<>();
+    private final ThreadLocal<long[]> foundOwners = ThreadLocal.withInitial(() -> new long[Math.max(1, minUsers)]);
+
+    @PostConstruct
+    public void init() {
+        if (maxDistance > FingerprintRing.MAX_GUARANTEED_DISTANCE) {
+            LoggingUtils.logSystemStatus(String.format("近似重复检测的最大汉明距离 %d 超过 %d，已调整为 %d",
+                    maxDistance, FingerprintRing.MAX_GUARANTEED_DISTANCE, FingerprintRing.MAX_GUARANTEED_DISTANCE));
+            maxDistance = FingerprintRing.MAX_GUARANTEED_DISTANCE;
+        }
+        globalRing = new FingerprintRing(globalWindow, maxProbe);
+    }
+
+    /**
+     * 检查消息是否为近似重复广告，并将其指纹写入窗口
+     * @param chatId 群组ID
+     * @param userId 发送者ID
+     * @param text 消息文本
+     * @return 发送过近似消息的其他用户数达到阈值时返回该数量，否则返回0
+     */
+    public int check(long chatId, long userId, CharSequence text) {
+        if (!enabled) {
+            return 0;
+        }
+        long fingerprint = SimHash.fingerprint(text, minLength);
+        if (fingerprint == 0L) {
+            return 0;
+        }
+        FingerprintRing chatRing = chatRing(chatId);
+        long[] found = foundOwners.get();
+        int count = chatRing != null ? chatRing.collectOwners(fingerprint, maxDistance, userId, found, 0) : 0;
+        if (count < found.length) {
+            count = globalRing.collectOwners(fingerprint, maxDistance, userId, found, count);
+        }
+        if (chatRing != null) {
+            chatRing.add(fingerprint, userId);
+        }
+        globalRing.add(fingerprint, userId);
+        return count >= found.length ? count : 0;
+    }
+
+    /**
+     * 是否对检测结果自动撤回并禁言
+     */
+    public boolean isEnforcing() {
+        return enforce;
+    }
+
+    /**
+     * 获取群组窗口，群组窗口数已达上限时返回null
+     */
+    private FingerprintRing chatRing(long chatId) {
+        ChatWindow window = chatRings.get(chatId);
+        if (window == null) {
+            if (chatRings.size() >= maxChats) {
+                return null;
+            }
+            window = chatRings.computeIfAbsent(chatId, id -> new ChatWindow(new FingerprintRing(chatWindow, maxProbe)));
+        }
+        window.lastUsed = System.currentTimeMillis();
+        return window.ring;
+    }
+
+    /**
+     * 定期回收空闲的群组窗口
+     */
+    @Scheduled(fixedDelayString = "${bot.spam.near-duplicate.sweep-interval:300000}")
+    public void evictIdle() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int before = chatRings.size();
+        chatRings.values().removeIf(window -> now - window.lastUsed > chatIdleTimeout);
+        int evicted = before - chatRings.size();
+        if (evicted > 0) {
+            LoggingUtils.logOperation("NEAR_DUPLICATE_EVICT", "SYSTEM", "回收空闲群组窗口: " + evicted);
+        }
+    }
+
+    /**
+     * 运行状态摘要
+     */
+    public String getStatusSummary() {
+        return String.format("全局窗口: %d/%d, 群组窗口数: %d/%d, 自动处置: %s",
+                globalRing.size(), globalRing.capacity(), chatRings.size(), maxChats, enforce);
+    }
+
+    /**
+     * 群组窗口及其最近使用时间
+     */
+    private static final class ChatWindow {
+        private final FingerprintRing ring;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private ChatWindow(FingerprintRing ring) {
+            this.ring = ring;
+        }
+    }
+}
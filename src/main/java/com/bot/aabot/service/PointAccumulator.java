@@ -0,0 +1,296 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.ScoreDao;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ClassName: PointAccumulator
+ * Package: com.bot.aabot.service
+ * Description: 用户积分的写回累加器。
+ * 消息、回复、表情和签到加分只在内存中按 (活动ID, 用户ID) 累加增量，按分段锁分散竞争，消息处理路径上不再执行 SQL；
+ * 每隔 flush-interval 毫秒或累计 flush-threshold 次加分，把全部增量在一个事务中以
+ * INSERT ... ON CONFLICT DO UPDATE SET points = points + excluded.points 写入 user_points，
+ * 累加在数据库中完成，不再有先读后写的丢失更新。
+ * 读取单个用户积分时合并尚未写入的增量；写入与读取之间用读写锁隔开，读到的值不会漏算或重复计算。
+ * 在事务中（消息积分阶段）加分时不进入内存增量，而是在该事务提交前一次写入，与活动日志、重放标记一起提交或回滚，
+ * 积分阶段提交即已落库，崩溃重放不会重复计分也不会丢分。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Service
+public class PointAccumulator {
+
+    @Autowired
+    private ScoreDao scoreDao;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${bot.points.stripes:16}")
+    private int stripeCount; // 分段数，取2的幂
+
+    @Value("${bot.points.flush-interval:3000}")
+    private long flushInterval; // 定时写入间隔（毫秒）
+
+    @Value("${bot.points.flush-threshold:1000}")
+    private int flushThreshold; // 累计加分次数达到该值时提前写入
+
+    private Stripe[] stripes;
+    private int stripeMask;
+    private ScheduledExecutorService flusher;
+    // 写入时持写锁：取走增量与事务提交对读取方是一个原子步骤
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final AtomicInteger pendingAdds = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final LongAdder adds = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1);
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        stripeMask = size - 1;
+        try {
+            scoreDao.ensureUserPointsUniqueIndex();
+        } catch (Exception e) {
+            LoggingUtils.logError("USER_POINTS_INDEX_ERROR", "建立 user_points 唯一索引失败，积分增量将保留在内存中重试", e);
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "point-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        LoggingUtils.logSystemStatus(String.format("积分累加器已启动 - 分段: %d, 写入间隔: %dms, 提前写入阈值: %d",
+                size, flushInterval, flushThreshold));
+    }
+
+    /**
+     * 累加用户在活动中的积分；在事务中调用时随该事务在提交前写入，回滚后不计分
+     * @param chatName 群聊名称，仅在首次插入记录时使用
+     * @param userName 用户名，写入时覆盖原值
+     */
+    public void addPoints(int eventId, String chatName, String userId, String userName, int points, int specialPoints) {
+        Key key = new Key(eventId, userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Delta delta = transactionDeltas().computeIfAbsent(key, k -> new Delta(chatName));
+            delta.points += points;
+            delta.specialPoints += specialPoints;
+            delta.userName = userName;
+            adds.increment();
+            return;
+        }
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Delta delta = stripe.deltas.computeIfAbsent(key, k -> new Delta(chatName));
+            delta.points += points;
+            delta.specialPoints += specialPoints;
+            delta.userName = userName;
+        }
+        adds.increment();
+        if (pendingAdds.incrementAndGet() >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * 当前事务中的加分，首次加分时登记在提交前写入
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Key, Delta> transactionDeltas() {
+        Map<Key, Delta> deltas = (Map<Key, Delta>) TransactionSynchronizationManager.getResource(this);
+        if (deltas != null) {
+            return deltas;
+        }
+        Map<Key, Delta> bound = new LinkedHashMap<>();
+        TransactionSynchronizationManager.bindResource(this, bound);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                List<ScoreDao.PointDelta> batch = new ArrayList<>(bound.size());
+                bound.forEach((key, delta) -> batch.add(new ScoreDao.PointDelta(key.eventId, key.userId,
+                        delta.userName, delta.chatName, delta.points, delta.specialPoints)));
+                scoreDao.upsertUserPointsBatch(batch);
+                rowsWritten.add(batch.size());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(PointAccumulator.this);
+            }
+        });
+        return bound;
+    }
+
+    /**
+     * 获取用户在活动中的基础积分（含未写入的增量）
+     */
+    public int getUserPoints(String userId, int eventId) {
+        return read(eventId, userId, "points", false);
+    }
+
+    /**
+     * 获取用户在活动中的特殊积分（含未写入的增量）
+     */
+    public int getUserSpecialPoints(String userId, int eventId) {
+        return read(eventId, userId, "special_points", true);
+    }
+
+    private int read(int eventId, String userId, String column, boolean special) {
+        flushLock.readLock().lock();
+        try {
+            Map<String, Object> userPoints = scoreDao.getUserPoints(eventId, userId);
+            Object value = userPoints != null ? userPoints.get(column) : null;
+            int stored = value != null ? Integer.parseInt(value.toString()) : 0;
+            Key key = new Key(eventId, userId);
+            Stripe stripe = stripeFor(key);
+            synchronized (stripe) {
+                Delta delta = stripe.deltas.get(key);
+                return delta == null ? stored : stored + (special ? delta.specialPoints : delta.points);
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把所有增量写入数据库。需要读取整张积分表（排名、最终积分计算）前调用。
+     */
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            List<ScoreDao.PointDelta> batch = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                Map<Key, Delta> drained;
+                synchronized (stripe) {
+                    if (stripe.deltas.isEmpty()) {
+                        continue;
+                    }
+                    drained = stripe.deltas;
+                    stripe.deltas = new HashMap<>();
+                }
+                drained.forEach((key, delta) -> batch.add(new ScoreDao.PointDelta(key.eventId, key.userId,
+                        delta.userName, delta.chatName, delta.points, delta.specialPoints)));
+            }
+            pendingAdds.set(0);
+            if (batch.isEmpty()) {
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            try {
+                transactionTemplate.executeWithoutResult(status -> scoreDao.upsertUserPointsBatch(batch));
+            } catch (RuntimeException e) {
+                // 写入失败时把增量放回，下次写入时重试
+                batch.forEach(this::restore);
+                flushFailures.increment();
+                throw e;
+            }
+            flushes.increment();
+            rowsWritten.add(batch.size());
+            LoggingUtils.logPerformance("pointAccumulatorFlush", startTime);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LoggingUtils.logError("POINT_FLUSH_ERROR", "积分增量写入失败", e);
+        }
+    }
+
+    private void restore(ScoreDao.PointDelta pointDelta) {
+        Key key = new Key(pointDelta.eventId(), pointDelta.userId());
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Delta delta = stripe.deltas.get(key);
+            if (delta == null) {
+                delta = new Delta(pointDelta.chatName());
+                delta.userName = pointDelta.userName();
+                stripe.deltas.put(key, delta);
+            }
+            delta.points += pointDelta.points();
+            delta.specialPoints += pointDelta.specialPoints();
+        }
+        pendingAdds.incrementAndGet();
+    }
+
+    private Stripe stripeFor(Key key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    /**
+     * 运行状态摘要
+     */
+    public String getStatusSummary() {
+        long flushCount = flushes.sum();
+        return String.format("加分次数: %d, 待写入: %d, 写入次数: %d, 平均每次行数: %.1f, 写入失败: %d",
+                adds.sum(), pendingAdds.get(), flushCount,
+                flushCount == 0 ? 0.0 : (double) rowsWritten.sum() / flushCount, flushFailures.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private record Key(int eventId, String userId) {
+    }
+
+    /**
+     * 一个用户在一个活动中尚未写入的增量
+     */
+    private static final class Delta {
+        private int points;
+        private int specialPoints;
+        private String userName;
+        private final String chatName;
+
+        private Delta(String chatName) {
+            this.chatName = chatName;
+        }
+    }
+
+    private static final class Stripe {
+        private Map<Key, Delta> deltas = new HashMap<>();
+    }
+}
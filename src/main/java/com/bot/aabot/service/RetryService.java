@@ -1,10 +1,13 @@
 package com.bot.aabot.service;
 
 import com.bot.aabot.utils.LoggingUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -24,6 +27,10 @@ public class RetryService {
     @Value("${bot.concurrency.retry-backoff-multiplier:2}")
     private double backoffMultiplier; // 退避倍数，默认2倍
 
+    @Autowired
+    @Qualifier("retryExecutor")
+    private Executor retryExecutor;
+
     /**
      * 执行带重试的操作
      *
@@ -106,7 +113,7 @@ public class RetryService {
                 // 递归调用进行重试
                 return executeWithRetryInternal(operation, operationName, currentAttempt + 1, nextDelay).join();
             }
-        });
+        }, retryExecutor);
     }
 
     /**
@@ -6,6 +6,7 @@ import com.bot.aabot.entity.EventRecord;
 import com.bot.aabot.entity.UserActivityLog;
 import com.bot.aabot.utils.LoggingUtils;
 import com.bot.aabot.utils.BotReplyUtil;
+import com.bot.aabot.utils.TextNormalizer;
 import com.bot.aabot.utils.TimeFormatUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -17,6 +18,8 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.api.objects.reactions.MessageReactionUpdated;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.time.LocalDateTime;
@@ -49,6 +52,12 @@ public class ScoreService {
 
     @Autowired
     ScoreDao scoreDao;
+
+    @Autowired
+    private PointAccumulator pointAccumulator;
+
+    @Autowired
+    private EventScheduleCache eventScheduleCache;
     
     @Autowired
     private JdbcTemplate jdbcTemplate;
@@ -88,6 +97,9 @@ public class ScoreService {
     
     // 签到关键词集合
     private Set<String> checkInKeywords = new HashSet<>();
+
+    // 规范化后的签到关键词，消息文本边扫描边比较，无需生成中间字符串
+    private char[][] normalizedCheckInKeywords = new char[0][];
     
     // 日期格式化
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -112,6 +124,10 @@ public class ScoreService {
                 keywordsStr = keywordsStr.replace("\"", "");
                 String[] keywords = keywordsStr.split(",");
                 checkInKeywords.addAll(Arrays.asList(keywords));
+                normalizedCheckInKeywords = checkInKeywords.stream()
+                        .map(keyword -> TextNormalizer.normalize(keyword).toCharArray())
+                        .filter(keyword -> keyword.length > 0)
+                        .toArray(char[][]::new);
                 LoggingUtils.logOperation("CHECK_IN_KEYWORDS", "SYSTEM", 
                         "签到关键词已加载: " + checkInKeywords);
             }
@@ -179,26 +195,26 @@ public class ScoreService {
                         String.format("处理消息引用回复: 用户 %s 回复了用户 %s 的消息 %d",
                                 userId, targetUserId, targetMessageId));
 
-                // 只为全局成就记录一次用户活动日志
-                UserActivityLog log = new UserActivityLog();
-                log.setUserId(userId);
-                log.setActivityType("message_reply");
-                log.setActivityLog(message.getText());
-                log.setEventId(0); // 全局日志
-                log.setTopicId(message.getMessageThreadId());
-                log.setChatId(groupId);
-                scoreDao.addUserActivityLog(log);
+                // 只为全局成就记录一次互动，消息达到互动上限或用户已回复过该消息时不再计分
+                boolean recorded = scoreDao.recordMessageInteraction(groupId, 0, userId, targetUserId, targetMessageId,
+                        "message_reply", maxInteractionsPerMessage);
+                if (!recorded) {
+                    LoggingUtils.logOperation("INTERACTION_LIMITED", userId,
+                            String.format("消息 %d 已达到互动上限或已回复过，不计分", targetMessageId));
+                    processOrdinaryMessage(update);
+                    return;
+                }
 
                 // 更新全局互动相关成就
                 updateGlobalInteractionAchievements(groupId, targetUserId, "message_reply", userId);
 
                 // 获取群聊相关的活动列表
-                List<EventRecord> activeEvents = scoreDao.getActiveEventsByGroupId(groupId);
+                List<EventRecord> activeEvents = eventScheduleCache.getActiveEvents(groupId);
                 for (EventRecord event : activeEvents) {
                     int eventId = event.getEventId();
                     // 只为每个活动添加基础分
                     int pointsToAdd = getInteractionPoints();
-                    scoreDao.updateUserPoints(eventId, update.getMessage().getChat().getTitle(), userId, replyTo.getFrom().getUserName(), pointsToAdd, 0);
+                    pointAccumulator.addPoints(eventId, update.getMessage().getChat().getTitle(), userId, replyTo.getFrom().getUserName(), pointsToAdd, 0);
                 }
 
                 LoggingUtils.logPerformance("processMessageReply", startTime);
@@ -224,7 +240,7 @@ public class ScoreService {
             if (reaction.getChat().isGroupChat() || reaction.getChat().isSuperGroupChat()) {
                 String groupId = String.valueOf(reaction.getChat().getId());
                 String userId = String.valueOf(reaction.getUser().getId());
-                Optional<Map<String, Object>> logInfoOpt = scoreDao.findUserIdAndTopicIdByMessageId(reaction.getMessageId());
+                Optional<Map<String, Object>> logInfoOpt = scoreDao.findUserIdAndTopicIdByMessageId(groupId, reaction.getMessageId());
                 if (logInfoOpt.isEmpty()) {
                     return;
                 }
@@ -250,26 +266,25 @@ public class ScoreService {
                         String.format("处理表情回复: 用户 %s 对用户 %s 的消息 %d 添加了表情",
                                 userId, targetUserId, targetMessageId));
 
-                // 只为全局成就记录一次用户活动日志
-                UserActivityLog log = new UserActivityLog();
-                log.setUserId(targetUserId);
-                log.setActivityType("message_reaction");
-                log.setActivityLog("");
-                log.setEventId(0); // 全局日志
-                log.setTopicId(targetMessageId);
-                log.setChatId(groupId);
-                scoreDao.addUserActivityLog(log);
+                // 只为全局成就记录一次互动，消息达到互动上限或用户已对该消息添加过表情时不再计分
+                boolean recorded = scoreDao.recordMessageInteraction(groupId, 0, userId, targetUserId, reaction.getMessageId(),
+                        "message_reaction", maxInteractionsPerMessage);
+                if (!recorded) {
+                    LoggingUtils.logOperation("INTERACTION_LIMITED", userId,
+                            String.format("消息 %d 已达到互动上限或已添加过表情，不计分", reaction.getMessageId()));
+                    return;
+                }
 
                 // 更新全局互动相关成就
                 updateGlobalInteractionAchievements(groupId, targetUserId, "message_reaction", userId);
 
                 // 获取群聊相关的活动列表
-                List<EventRecord> activeEvents = scoreDao.getActiveEventsByGroupId(groupId);
+                List<EventRecord> activeEvents = eventScheduleCache.getActiveEvents(groupId);
                 for (EventRecord event : activeEvents) {
                     int eventId = event.getEventId();
                     // 只为每个活动添加基础分
                     int pointsToAdd = getInteractionPoints();
-                    scoreDao.updateUserPoints(eventId, update.getMessageReaction().getChat().getTitle(), userId, "未知用户", pointsToAdd, 0);
+                    pointAccumulator.addPoints(eventId, update.getMessageReaction().getChat().getTitle(), userId, "未知用户", pointsToAdd, 0);
                 }
 
                 LoggingUtils.logPerformance("processMessageReaction", startTime);
@@ -320,8 +335,12 @@ public class ScoreService {
      */
     private boolean isCheckInMessage(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
-            String messageText = update.getMessage().getText().trim();
-            return checkInKeywords.contains(messageText);
+            String messageText = update.getMessage().getText();
+            for (char[] keyword : normalizedCheckInKeywords) {
+                if (TextNormalizer.matches(messageText, keyword)) {
+                    return true;
+                }
+            }
         }
         return false;
     }
@@ -372,11 +391,11 @@ public class ScoreService {
                 }
     
                 // 3. 遍历活动，仅为签到用户加基础分
-                List<EventRecord> activeEvents = scoreDao.getActiveEventsByGroupId(groupId);
+                List<EventRecord> activeEvents = eventScheduleCache.getActiveEvents(groupId);
                 int checkInPoints = getCheckInPoints();
                 for (EventRecord event : activeEvents) {
                     int eventId = event.getEventId();
-                    scoreDao.updateUserPoints(eventId, update.getMessage().getChat().getTitle(), userId, userName, checkInPoints, 0);
+                    pointAccumulator.addPoints(eventId, update.getMessage().getChat().getTitle(), userId, userName, checkInPoints, 0);
                 }
     
                 LoggingUtils.logPerformance("processCheckIn", startTime);
@@ -387,12 +406,25 @@ public class ScoreService {
     }
     
     /**
-     * 发送消息到群组
+     * 发送消息到群组，在批量事务中调用时等事务提交后再发送，回滚后不会发出
      * @param chatId 群组ID
      * @param text 消息内容
      * @param update 可选，若有则用于自动threadId
      */
     private void sendMessageToGroup(String chatId, String text, Update update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doSendMessageToGroup(chatId, text, update);
+                }
+            });
+            return;
+        }
+        doSendMessageToGroup(chatId, text, update);
+    }
+
+    private void doSendMessageToGroup(String chatId, String text, Update update) {
         try {
             SendMessage message = SendMessage
                     .builder()
@@ -402,9 +434,8 @@ public class ScoreService {
             if (update != null) {
                 BotReplyUtil.reply(message, update);
             } else {
-                // 无update时直接发送
-                Object bot = applicationContext.getBean("tgBot");
-                bot.getClass().getMethod("replyMessage", SendMessage.class).invoke(bot, message);
+                // 无update时作为通知发送，同一会话未发出的通知会被合并
+                BotReplyUtil.notify(message);
             }
         } catch (Exception e) {
             LoggingUtils.logError("SEND_MESSAGE_ERROR", "发送消息失败: " + e.getMessage(), e);
@@ -456,12 +487,12 @@ public class ScoreService {
                 updateGlobalAchievements(groupId, userId, activityType, userName);
 
                 // 获取群聊相关的活动列表
-                List<EventRecord> activeEvents = scoreDao.getActiveEventsByGroupId(groupId);
+                List<EventRecord> activeEvents = eventScheduleCache.getActiveEvents(groupId);
                 for (EventRecord event : activeEvents) {
                     int eventId = event.getEventId();
                     // 只为每个活动添加基础分
                     int pointsToAdd = getDefaultPoints();
-                    scoreDao.updateUserPoints(eventId, update.getMessage().getChat().getTitle(), userId, userName, pointsToAdd, 0);
+                    pointAccumulator.addPoints(eventId, update.getMessage().getChat().getTitle(), userId, userName, pointsToAdd, 0);
                 }
             }
         } catch (Exception e) {
@@ -505,48 +536,6 @@ public class ScoreService {
     }
 
 
-    /**
-     * 计算连续签到天数
-     * @param checkInLogs 签到记录列表
-     * @return 连续签到天数
-     */
-    private int calculateConsecutiveCheckInDays(List<UserActivityLog> checkInLogs) {
-        if (checkInLogs.isEmpty()) {
-            return 0;
-        }
-        
-        // 按活动时间降序排序
-        checkInLogs.sort((a, b) -> b.getActivityTime().compareTo(a.getActivityTime()));
-        
-        int consecutiveDays = 1; // 今天已经签到，从1开始计数
-        LocalDateTime lastCheckIn = LocalDateTime.parse(checkInLogs.get(0).getActivityTime(), formatter);
-        LocalDateTime today = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
-        
-        // 如果最后一次签到不是今天，则连续签到已中断
-        if (!lastCheckIn.toLocalDate().equals(today.toLocalDate())) {
-            return 0;
-        }
-        
-        // 检查过去的签到记录
-        for (int i = 1; i < checkInLogs.size(); i++) {
-            LocalDateTime currentCheckIn = LocalDateTime.parse(checkInLogs.get(i).getActivityTime(), formatter);
-            
-            // 计算当前签到与上次签到的天数差
-            LocalDateTime expectedPrevDay = lastCheckIn.minusDays(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
-            
-            // 如果不是前一天签到，则连续性中断
-            if (!currentCheckIn.toLocalDate().equals(expectedPrevDay.toLocalDate())) {
-                break;
-            }
-            
-            consecutiveDays++;
-            lastCheckIn = currentCheckIn;
-        }
-        
-        return consecutiveDays;
-    }
-
-
     /**
      * 更新用户全局成就
      * @param chatId 群组ID
@@ -624,28 +613,9 @@ public class ScoreService {
      */
     private void updateGlobalConsecutiveCheckInAchievement(String chatId, String userId, String userName) {
         try {
-            // 获取用户签到记录，按时间排序
-            List<UserActivityLog> checkInLogs = jdbcTemplate.query(
-                "SELECT * FROM user_activity_logs WHERE user_id = ? AND activity_type = 'check_in' ORDER BY activity_time DESC",
-                (rs, rowNum) -> {
-                    UserActivityLog log = new UserActivityLog();
-                    log.setLogId(rs.getInt("log_id"));
-                    log.setUserId(rs.getString("user_id"));
-                    log.setActivityType(rs.getString("activity_type"));
-                    log.setActivityTime(rs.getString("activity_time"));
-                    log.setActivityLog(rs.getString("activity_log"));
-                    log.setEventId(rs.getInt("event_id"));
-                    log.setTopicId(rs.getInt("topic_id"));
-                    return log;
-                }, userId);
-                
-            if (checkInLogs.isEmpty()) {
-                return;
-            }
-            
-            // 计算当前连续签到天数
-            int consecutiveDays = calculateConsecutiveCheckInDays(checkInLogs);
-            
+            // 连续签到天数由签到时增量维护
+            int consecutiveDays = scoreDao.getUserConsecutiveCheckInDays(chatId, userId);
+
             // 更新连续签到成就
             scoreDao.updateUserGlobalAchievement(chatId, userId, userName, "Consecutive check-in", consecutiveDays);
         } catch (Exception e) {
@@ -968,6 +938,9 @@ public class ScoreService {
         }else if(message.equals("yes")){
             try {
                 boolean created = scoreDao.createEvent(ConstructionEventContext.constructionEvent);
+                if (created) {
+                    eventScheduleCache.reload();
+                }
                 String reply = created ? "活动创建成功！" : "活动创建失败，请重新使用`/addEvent`命令。";
                 SendMessage toMessage = SendMessage.builder()
                     .chatId(ConstructionEventContext.chatId)
@@ -1084,7 +1057,7 @@ public class ScoreService {
             }
             
             // 获取该群聊的所有活跃活动
-            List<EventRecord> activeEvents = scoreDao.getActiveEventsByGroupId(chatId);
+            List<EventRecord> activeEvents = eventScheduleCache.getActiveEvents(chatId);
             if (activeEvents.isEmpty()) {
                 return "错误：当前群聊没有活跃的活动。";
             }
@@ -1124,7 +1097,7 @@ public class ScoreService {
         
         try {
             // 获取当前群聊所有正在进行的活动
-            List<EventRecord> activeEvents = scoreDao.getActiveEventsByGroupId(chatId);
+            List<EventRecord> activeEvents = eventScheduleCache.getActiveEvents(chatId);
             
             if (activeEvents.isEmpty()) {
                 SendMessage message = SendMessage.builder()
@@ -1143,8 +1116,8 @@ public class ScoreService {
             for (EventRecord event : activeEvents) {
                 int eventId = event.getEventId();
                 double achievementBonus = scoreDao.getUserAchievementBonus(userId, eventId);
-                int points = scoreDao.getUserPoints(userId, eventId);
-                int specialPoints = scoreDao.getUserSpecialPoints(userId, eventId);
+                int points = pointAccumulator.getUserPoints(userId, eventId);
+                int specialPoints = pointAccumulator.getUserSpecialPoints(userId, eventId);
                 double finalPoints = points * achievementBonus + specialPoints;
                 
                 StringBuilder messageBuilder = new StringBuilder();
@@ -1237,6 +1210,9 @@ public class ScoreService {
                 return result;
             }
             
+            // 排名直接查询积分表，先写入内存中的积分增量
+            pointAccumulator.flush();
+
             // 获取用户总数和总页数
             int pageSize = 15;
             int totalUsers = scoreDao.getEventUserCount(eventId);
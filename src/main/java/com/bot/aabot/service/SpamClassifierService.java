@@ -0,0 +1,253 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.SpamDao;
+import com.bot.aabot.utils.LoggingUtils;
+import com.bot.aabot.utils.NaiveBayesModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ClassName: SpamClassifierService
+ * Package: com.bot.aabot.service
+ * Description: 本地广告分类器（朴素贝叶斯），作为违禁词精确匹配之后的第二道检查。
+ * 训练样本来自审核记录：违禁词命中的消息直接作为广告样本；模型或近似重复判定的消息先记为待定，
+ * 管理员点击“加入黑名单”后作为广告样本，点击“解除封禁”或“不是广告”后作为正常样本（若已作为广告样本则先撤销）；
+ * 另按比例抽取通过检查的普通群消息，放置 ham-min-age 毫秒后发送者仍未被判定或举报时才作为正常样本。
+ * 默认只报告不处置（影子模式）；enforce 为 true 且管理员确认的样本达到 min-confirmed 条后才自动处置。
+ * 计数定期增量写入 SQLite，启动时加载。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/18
+ */
+@Service
+public class SpamClassifierService {
+
+    // 管理员确认的标注
+    private static final String LABEL_SPAM = "SPAM";
+    private static final String LABEL_HAM = "HAM";
+    // 违禁词命中、已作为广告样本训练但未经管理员确认
+    private static final String LABEL_AUTO_SPAM = "AUTO_SPAM";
+    private static final String LABEL_PENDING = "PENDING";
+
+    @Autowired
+    private SpamDao spamDao;
+
+    @Value("${bot.spam.classifier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${bot.spam.classifier.enforce:false}")
+    private boolean enforce; // 是否自动处置；为false时只向管理群组报告
+
+    @Value("${bot.spam.classifier.min-confirmed:100}")
+    private int minConfirmed; // 管理员确认的样本达到该数量后才自动处置
+
+    @Value("${bot.spam.classifier.feature-bits:18}")
+    private int featureBits; // 特征槽位数为 2^feature-bits
+
+    @Value("${bot.spam.classifier.threshold:0.99}")
+    private double threshold; // 广告概率达到该值时判定为广告
+
+    @Value("${bot.spam.classifier.min-docs:20}")
+    private int minDocs; // 广告与正常样本都达到该数量后才参与判定
+
+    @Value("${bot.spam.classifier.min-length:8}")
+    private int minLength; // 规范化后短于该长度的消息不参与判定
+
+    @Value("${bot.spam.classifier.ham-sample-rate:0.02}")
+    private double hamSampleRate; // 通过检查的普通群消息作为正常样本的抽样比例
+
+    @Value("${bot.spam.classifier.ham-min-age:86400000}")
+    private long hamMinAge; // 抽样消息放置多久（毫秒）后发送者仍未被判定或举报，才作为正常样本
+
+    @Value("${bot.spam.classifier.ham-pending-capacity:5000}")
+    private int hamPendingCapacity; // 等待放置期满的抽样消息上限
+
+    private NaiveBayesModel model;
+    private final AtomicInteger confirmed = new AtomicInteger();
+    private final Queue<HamCandidate> hamCandidates = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger hamCandidateCount = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        model = new NaiveBayesModel(featureBits);
+        try {
+            long startTime = System.currentTimeMillis();
+            int rows = spamDao.loadFeatures(model);
+            confirmed.set(spamDao.countSamples(LABEL_SPAM, LABEL_HAM));
+            LoggingUtils.logSystemStatus(String.format("广告模型已加载 - 特征行数: %d, 广告样本: %d, 正常样本: %d, 管理员确认: %d, 耗时: %dms",
+                    rows, model.getSpamDocs(), model.getHamDocs(), confirmed.get(), System.currentTimeMillis() - startTime));
+        } catch (Exception e) {
+            LoggingUtils.logError("SPAM_MODEL_LOAD_ERROR", "加载广告模型失败，将从空模型开始训练", e);
+        }
+    }
+
+    /**
+     * 计算消息为广告的概率，模型样本不足或未启用时返回0
+     */
+    public double score(String text) {
+        if (!enabled || !model.isReady(minDocs)) {
+            return 0;
+        }
+        return model.spamProbability(text, minLength);
+    }
+
+    /**
+     * 分数是否达到广告阈值
+     */
+    public boolean isSpam(double score) {
+        return score >= threshold;
+    }
+
+    /**
+     * 是否对模型判定自动处置：需开启 enforce 且管理员确认的样本足够，否则只报告
+     */
+    public boolean isEnforcing() {
+        return enforce && confirmed.get() >= minConfirmed;
+    }
+
+    /**
+     * 记录一次广告判定
+     * @param trusted 是否为确定的判定（违禁词命中）；非确定的判定等待管理员处理后再训练
+     */
+    public void recordDetection(long chatId, long userId, String text, boolean trusted) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        try {
+            boolean trained = trusted && model.train(text, true, 1);
+            spamDao.saveSample(String.valueOf(chatId), String.valueOf(userId), text, trained ? LABEL_AUTO_SPAM : LABEL_PENDING);
+        } catch (Exception e) {
+            LoggingUtils.logError("SPAM_SAMPLE_ERROR", "保存广告样本失败", e);
+        }
+    }
+
+    /**
+     * 管理员解除封禁：该用户最近被判定的消息作为正常样本
+     */
+    public void onAdminUnrestrict(String chatId, String userId) {
+        relabel(chatId, userId, false);
+    }
+
+    /**
+     * 管理员加入黑名单：该用户最近被判定的消息作为广告样本
+     */
+    public void onAdminBlacklist(String chatId, String userId) {
+        relabel(chatId, userId, true);
+    }
+
+    private void relabel(String chatId, String userId, boolean spam) {
+        try {
+            String[] sample = spamDao.getSample(chatId, userId);
+            if (sample == null) {
+                return;
+            }
+            String label = sample[1];
+            String target = spam ? LABEL_SPAM : LABEL_HAM;
+            if (target.equals(label)) {
+                return;
+            }
+            // 撤销之前相反的标注
+            boolean trainedSpam = LABEL_SPAM.equals(label) || LABEL_AUTO_SPAM.equals(label);
+            if (trainedSpam || LABEL_HAM.equals(label)) {
+                model.train(sample[0], trainedSpam, -1);
+            }
+            model.train(sample[0], spam, 1);
+            spamDao.updateSampleLabel(chatId, userId, target);
+            if (!LABEL_SPAM.equals(label) && !LABEL_HAM.equals(label)) {
+                confirmed.incrementAndGet();
+            }
+            LoggingUtils.logOperation("SPAM_MODEL_LABEL", userId,
+                    String.format("管理员标注样本 - 群组: %s, %s -> %s", chatId, label, target));
+        } catch (Exception e) {
+            LoggingUtils.logError("SPAM_SAMPLE_ERROR", "根据管理员处理结果修正广告模型失败", e);
+        }
+    }
+
+    /**
+     * 按比例抽取通过检查的普通群消息，放置期满且发送者未被判定或举报后作为正常样本
+     */
+    public void sampleHam(long chatId, long userId, String text) {
+        if (!enabled || hamSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= hamSampleRate) {
+            return;
+        }
+        if (hamCandidateCount.incrementAndGet() > hamPendingCapacity) {
+            hamCandidateCount.decrementAndGet();
+            return;
+        }
+        hamCandidates.offer(new HamCandidate(String.valueOf(chatId), String.valueOf(userId), text, System.currentTimeMillis()));
+    }
+
+    /**
+     * 训练放置期满的抽样消息：发送者在群组中有被判定或举报的记录时丢弃
+     */
+    private void trainAgedHam() {
+        long deadline = System.currentTimeMillis() - hamMinAge;
+        HamCandidate candidate;
+        // 按抽样时间先后入队，队首未期满即可停止
+        while ((candidate = hamCandidates.peek()) != null && candidate.sampledAt <= deadline) {
+            if ((candidate = hamCandidates.poll()) == null) {
+                break;
+            }
+            hamCandidateCount.decrementAndGet();
+            try {
+                if (spamDao.getSample(candidate.chatId, candidate.userId) == null) {
+                    model.train(candidate.text, false, 1);
+                }
+            } catch (Exception e) {
+                LoggingUtils.logError("SPAM_SAMPLE_ERROR", "检查正常样本的发送者失败", e);
+            }
+        }
+    }
+
+    /**
+     * 定期训练放置期满的正常样本，并将变化的计数写入数据库
+     */
+    @Scheduled(fixedDelayString = "${bot.spam.classifier.flush-interval:30000}")
+    public void flush() {
+        trainAgedHam();
+        List<Object[]> rows = new ArrayList<>();
+        model.drainDirty((feature, spamCount, hamCount) -> rows.add(new Object[]{feature, spamCount, hamCount}));
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            spamDao.saveFeatures(rows);
+        } catch (Exception e) {
+            // 写入失败的计数重新标记，下次再写
+            rows.forEach(row -> model.markDirty((Integer) row[0]));
+            LoggingUtils.logError("SPAM_MODEL_FLUSH_ERROR", "保存广告模型计数失败", e);
+        }
+    }
+
+    /**
+     * 运行状态摘要
+     */
+    public String getStatusSummary() {
+        return String.format("广告样本: %d, 正常样本: %d, 管理员确认: %d, 待放置样本: %d, 已启用判定: %s, 自动处置: %s",
+                model.getSpamDocs(), model.getHamDocs(), confirmed.get(), hamCandidateCount.get(),
+                enabled && model.isReady(minDocs), isEnforcing());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * 等待放置期满的抽样消息
+     */
+    private record HamCandidate(String chatId, String userId, String text, long sampledAt) {
+    }
+}
@@ -31,11 +31,6 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKe
 import org.springframework.scheduling.annotation.Async;
 import org.telegram.telegrambots.meta.api.objects.ChatPermissions;
 
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
@@ -73,6 +68,10 @@ public class SqlService {
     private com.bot.aabot.dao.ScoreDao scoreDao;
     @Autowired
     private GroupDao groupDao;
+    @Autowired
+    private BulkModerationExecutor bulkModerationExecutor;
+    @Autowired
+    private ForbiddenWordService forbiddenWordService;
 
     /**
      * 保存消息（带重试和熔断器）
@@ -892,22 +891,15 @@ public class SqlService {
             Long userId = message.getFrom().getId();
             Integer messageId = message.getMessageId();
 
-            // 获取并清理消息内容
-            String cleanedText = cleanMessageText(messageText);
-
-            // 读取禁止词文件
-            List<String> forbiddenWords = readForbiddenWords();
+            // 一次线性扫描检查是否包含禁止内容（匹配时同步完成文本清洗）
+            String forbiddenWord = forbiddenWordService.findForbiddenWord(messageText);
+            if (forbiddenWord != null) {
+                LoggingUtils.logSecurityEvent("SPAM_DETECTED", String.valueOf(userId),
+                        String.format("检测到广告消息 - 违规内容: %s", forbiddenWord));
 
-            // 检查是否包含禁止内容
-            for (String forbiddenWord : forbiddenWords) {
-                if (cleanedText.contains(forbiddenWord.trim())) {
-                    LoggingUtils.logSecurityEvent("SPAM_DETECTED", String.valueOf(userId),
-                            String.format("检测到广告消息 - 违规内容: %s", forbiddenWord));
-
-                    // 处理违规消息：撤回、封禁、通知管理员
-                    handleSpamMessage(applicationContext.getBean("tgBot"), update, forbiddenWord);
-                    return true;
-                }
+                // 处理违规消息：撤回、封禁、通知管理员
+                handleSpamMessage(applicationContext.getBean("tgBot"), update, forbiddenWord);
+                return true;
             }
 
             return false;
@@ -918,46 +910,6 @@ public class SqlService {
         }
     }
 
-    /**
-     * 清理消息文本（去除空格、标点符号等）
-     */
-    private String cleanMessageText(String text) {
-        if (text == null) return "";
-        return text.replaceAll("[\\s,。;、]", "").toLowerCase();
-    }
-
-    /**
-     * 读取禁止词文件
-     */
-    private List<String> readForbiddenWords() {
-        List<String> words = new ArrayList<>();
-        String forbidFilePath = botConfig.getForbidUrl();
-
-        if (forbidFilePath == null || forbidFilePath.trim().isEmpty()) {
-            LoggingUtils.logError("FORBID_FILE_ERROR", "禁止词文件路径未配置", null);
-            return words;
-        }
-
-        try {
-            Path path = Paths.get(forbidFilePath);
-            if (Files.exists(path)) {
-                List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
-                for (String line : lines) {
-                    String trimmed = line.trim();
-                    if (!trimmed.isEmpty()) {
-                        words.add(cleanMessageText(trimmed));
-                    }
-                }
-            } else {
-                LoggingUtils.logError("FORBID_FILE_NOT_FOUND", "禁止词文件不存在: " + forbidFilePath, null);
-            }
-        } catch (Exception e) {
-            LoggingUtils.logError("READ_FORBID_FILE_ERROR", "读取禁止词文件失败", e);
-        }
-
-        return words;
-    }
-
     /**
      * 处理垃圾消息
      */
@@ -1180,30 +1132,7 @@ public class SqlService {
     private void adminBlacklistUser(Object bot, String chatIdStr, String userIdStr) {
         try {
             long userId = Long.parseLong(userIdStr);
-            // 1) 批量撤回历史消息
-            try {
-                List<Integer> messageIds = jdbcTemplate.query(
-                        "SELECT message_id FROM " + DataContext.tableName + " WHERE chat_id = ? AND user_id = ?",
-                        ps -> {
-                            ps.setString(1, chatIdStr);
-                            ps.setString(2, userIdStr);
-                        },
-                        (rs, rowNum) -> rs.getInt("message_id")
-                );
-                if (messageIds != null) {
-                    LoggingUtils.logOperation("BLACKLIST_DELETE_COUNT", userIdStr, "准备撤回消息数量=" + messageIds.size());
-                    for (Integer mid : messageIds) {
-                        try {
-                            deleteMessage(bot, Long.parseLong(chatIdStr), mid);
-                        } catch (Exception ex) {
-                            // 忽略单条失败
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                LoggingUtils.logError("BLACKLIST_DELETE_HISTORY_ERROR", "删除历史消息失败", e);
-            }
-            // 2) 永久封禁并踢出
+            // 1) 永久封禁并踢出，先阻止继续发言
             try {
                 BanChatMember ban = BanChatMember.builder()
                         .chatId(chatIdStr)
@@ -1215,6 +1144,16 @@ public class SqlService {
             } catch (Exception e) {
                 LoggingUtils.logError("BLACKLIST_BAN_ERROR", "加入黑名单/踢出失败", e);
             }
+            // 2) 批量撤回历史消息（后台分批执行，进度报告到管理群组）
+            try {
+                List<Integer> messageIds = groupDao.getUserMessages(chatIdStr, userIdStr);
+                if (messageIds != null && !messageIds.isEmpty()) {
+                    LoggingUtils.logOperation("BLACKLIST_DELETE_COUNT", userIdStr, "准备撤回消息数量=" + messageIds.size());
+                    bulkModerationExecutor.deleteUserMessages(chatIdStr, userIdStr, messageIds);
+                }
+            } catch (Exception e) {
+                LoggingUtils.logError("BLACKLIST_DELETE_HISTORY_ERROR", "删除历史消息失败", e);
+            }
         } catch (Exception e) {
             LoggingUtils.logError("BLACKLIST_ERROR", "处理黑名单失败", e);
         }
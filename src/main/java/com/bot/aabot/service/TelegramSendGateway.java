@@ -0,0 +1,474 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.TgBot;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ClassName: TelegramSendGateway
+ * Package: com.bot.aabot.service
+ * Description: 出站消息发送网关。
+ * 所有发往 Telegram 的调用按优先级排队（审核操作 > 回复 > 通知），由单个调度线程按令牌桶放行：
+ * 全局令牌桶对应 Telegram 每秒30条的总限制，每个会话一个令牌桶对应群组每分钟20条、私聊每秒1条的限制（审核操作不受会话限制）。
+ * 收到 429 时按 retry_after 暂停该会话并把请求放回队首；同一会话尚未发出的通知会合并为一条。
+ * 调用方拿到 CompletableFuture，不再阻塞工作线程。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/15
+ */
+@Service
+public class TelegramSendGateway {
+
+    /**
+     * 发送优先级，按声明顺序从高到低
+     */
+    public enum SendPriority {
+        /** 撤回消息、禁言、封禁等审核操作 */
+        MODERATION,
+        /** AI回答与指令回复 */
+        REPLY,
+        /** 活动、总结等通知，同一会话未发出的通知会被合并 */
+        NOTIFICATION
+    }
+
+    private static final int PRIORITY_COUNT = SendPriority.values().length;
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+
+    @Lazy
+    @Autowired
+    private TgBot tgBot;
+
+    @Value("${bot.send.global-rate:30}")
+    private double globalRate; // 全局每秒发送数
+
+    @Value("${bot.send.group-per-minute:20}")
+    private double groupPerMinute; // 每个群组每分钟发送数
+
+    @Value("${bot.send.private-per-second:1}")
+    private double privatePerSecond; // 每个私聊每秒发送数
+
+    @Value("${bot.send.chat-burst:3}")
+    private double chatBurst; // 单个会话允许的突发条数
+
+    @Value("${bot.send.max-retries:3}")
+    private int maxRetries; // 429 后的最大重试次数
+
+    @Value("${bot.send.queue-capacity:10000}")
+    private int queueCapacity; // 排队上限，超出后拒绝非审核请求
+
+    @Value("${bot.send.workers:8}")
+    private int workers; // platform 模式下执行发送的线程数
+
+    @Value("${bot.async.mode:platform}")
+    private String asyncMode;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<PendingSend<?>>[] queues = new ArrayDeque[PRIORITY_COUNT];
+    private final Map<Long, ChatState> chats = new HashMap<>();
+    // 合并键（会话+话题） -> 尚未发出的通知
+    private final Map<String, PendingSend<Serializable>> pendingNotifications = new HashMap<>();
+    private final TokenBucket globalBucket = new TokenBucket();
+    private int queued;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private ExecutorService sendExecutor;
+    private Thread scheduler;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        globalBucket.configure(globalRate, globalRate);
+        if ("virtual".equalsIgnoreCase(asyncMode)) {
+            sendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            sendExecutor = Executors.newFixedThreadPool(workers, r -> {
+                Thread thread = new Thread(r, "bot-send-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduler = new Thread(this::schedule, "bot-send-scheduler");
+        scheduler.setDaemon(true);
+        scheduler.start();
+        LoggingUtils.logSystemStatus(String.format(
+                "出站发送网关已初始化 - 全局: %.0f/s, 群组: %.0f/min, 私聊: %.0f/s, 会话突发: %.0f, 排队上限: %d",
+                globalRate, groupPerMinute, privatePerSecond, chatBurst, queueCapacity));
+    }
+
+    /**
+     * 提交一个 Telegram 调用
+     * @param chatId 目标会话ID，用于按会话限速，无法确定时传0
+     * @param priority 优先级
+     * @param method 调用
+     * @return 调用结果
+     */
+    public <T extends Serializable> CompletableFuture<T> submit(long chatId, SendPriority priority, BotApiMethod<T> method) {
+        PendingSend<T> pending = new PendingSend<>(chatId, priority, method);
+        lock.lock();
+        try {
+            if (!enqueue(pending)) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("发送队列已满"));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return pending.future;
+    }
+
+    /**
+     * 提交一条通知，同一会话同一话题中尚未发出的通知会合并为一条
+     * @param message 消息
+     * @return 发送结果，被合并的通知与合并目标共享同一结果
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Message> notify(SendMessage message) {
+        long chatId = chatIdOf(message.getChatId());
+        String key = message.getChatId() + ":" + message.getMessageThreadId();
+        lock.lock();
+        try {
+            PendingSend<Serializable> existing = pendingNotifications.get(key);
+            if (existing != null && canCoalesce((SendMessage) existing.method, message)) {
+                SendMessage target = (SendMessage) existing.method;
+                target.setText(target.getText() + "\n\n" + message.getText());
+                coalesced.increment();
+                return (CompletableFuture<Message>) (CompletableFuture<?>) existing.future;
+            }
+            PendingSend<Message> pending = new PendingSend<>(chatId, SendPriority.NOTIFICATION, message);
+            if (!enqueue(pending)) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("发送队列已满"));
+            }
+            pending.coalesceKey = key;
+            pendingNotifications.put(key, (PendingSend<Serializable>) (PendingSend<?>) pending);
+            return pending.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 解析会话ID，无法解析（如@频道名）时返回0
+     */
+    public static long chatIdOf(String chatId) {
+        try {
+            return chatId == null ? 0L : Long.parseLong(chatId);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private boolean canCoalesce(SendMessage existing, SendMessage message) {
+        return existing.getReplyMarkup() == null && message.getReplyMarkup() == null
+                && Objects.equals(existing.getParseMode(), message.getParseMode())
+                && existing.getText().length() + message.getText().length() + 2 <= MAX_MESSAGE_LENGTH;
+    }
+
+    /**
+     * 入队，调用方需持有锁
+     */
+    private boolean enqueue(PendingSend<?> pending) {
+        if (queued >= queueCapacity && pending.priority != SendPriority.MODERATION) {
+            rejected.increment();
+            if (rejected.sum() % 100 == 1) {
+                LoggingUtils.logError("SEND_QUEUE_FULL",
+                        String.format("发送队列已满，请求被拒绝 - 优先级: %s, 累计拒绝: %d", pending.priority, rejected.sum()), null);
+            }
+            return false;
+        }
+        queues[pending.priority.ordinal()].addLast(pending);
+        queued++;
+        changed.signal();
+        return true;
+    }
+
+    /**
+     * 调度线程：按优先级选出第一个令牌充足的请求交给发送线程执行
+     */
+    private void schedule() {
+        long lastSweep = System.nanoTime();
+        while (running) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                if (now - lastSweep > TimeUnit.MINUTES.toNanos(1)) {
+                    chats.values().removeIf(state -> state.isIdle(now));
+                    lastSweep = now;
+                }
+                long waitNanos = TimeUnit.SECONDS.toNanos(1);
+                PendingSend<?> next = null;
+                if (queued > 0) {
+                    long globalWait = globalBucket.nanosUntilToken(now);
+                    if (globalWait > 0) {
+                        waitNanos = globalWait;
+                    } else {
+                        Set<Long> blocked = new HashSet<>();
+                        for (int p = 0; p < PRIORITY_COUNT && next == null; p++) {
+                            Iterator<PendingSend<?>> iterator = queues[p].iterator();
+                            while (iterator.hasNext()) {
+                                PendingSend<?> pending = iterator.next();
+                                long chatWait = chatWait(pending, blocked, now);
+                                if (chatWait == 0) {
+                                    iterator.remove();
+                                    next = pending;
+                                    break;
+                                }
+                                waitNanos = Math.min(waitNanos, chatWait);
+                            }
+                        }
+                    }
+                }
+                if (next == null) {
+                    changed.awaitNanos(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+                    continue;
+                }
+                queued--;
+                globalBucket.take(now);
+                if (next.paced()) {
+                    ChatState state = chat(next.chatId);
+                    state.bucket.take(now);
+                    state.inFlight = true;
+                }
+                if (next.coalesceKey != null) {
+                    pendingNotifications.remove(next.coalesceKey, next);
+                }
+                PendingSend<?> task = next;
+                sendExecutor.execute(() -> send(task));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LoggingUtils.logError("SEND_SCHEDULE_ERROR", "发送调度失败", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 计算请求还需等待多久才能发往其会话，0表示可以立即发送；调用方需持有锁
+     */
+    private long chatWait(PendingSend<?> pending, Set<Long> blocked, long now) {
+        ChatState state = chats.get(pending.chatId);
+        if (state != null && state.pausedUntil > now) {
+            return state.pausedUntil - now;
+        }
+        if (!pending.paced()) {
+            return 0;
+        }
+        // 同一会话前面的消息还没发出时，后面的消息不能越过它，保证会话内顺序
+        if (blocked.contains(pending.chatId)) {
+            return Long.MAX_VALUE;
+        }
+        state = chat(pending.chatId);
+        long wait = state.inFlight ? Long.MAX_VALUE : state.bucket.nanosUntilToken(now);
+        if (wait > 0) {
+            blocked.add(pending.chatId);
+        }
+        return wait;
+    }
+
+    private ChatState chat(long chatId) {
+        return chats.computeIfAbsent(chatId, id -> {
+            ChatState state = new ChatState();
+            // 群组ID为负数
+            double ratePerSecond = id < 0 ? groupPerMinute / 60.0 : privatePerSecond;
+            state.bucket.configure(ratePerSecond, chatBurst);
+            return state;
+        });
+    }
+
+    /**
+     * 在发送线程中执行调用
+     */
+    private <T extends Serializable> void send(PendingSend<T> pending) {
+        boolean requeued = false;
+        try {
+            T result = tgBot.executeMethod(pending.method);
+            sent.increment();
+            pending.future.complete(result);
+        } catch (TelegramApiRequestException e) {
+            Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+            if (Integer.valueOf(429).equals(e.getErrorCode()) && retryAfter != null && pending.attempts < maxRetries) {
+                rateLimited.increment();
+                requeued = true;
+                retryLater(pending, retryAfter);
+            } else {
+                failed.increment();
+                pending.future.completeExceptionally(e);
+            }
+        } catch (Exception e) {
+            failed.increment();
+            pending.future.completeExceptionally(e);
+        } finally {
+            if (pending.paced() || requeued) {
+                lock.lock();
+                try {
+                    ChatState state = chats.get(pending.chatId);
+                    if (state != null) {
+                        state.inFlight = false;
+                    }
+                    changed.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按 retry_after 暂停会话，并把请求放回队首
+     */
+    private void retryLater(PendingSend<?> pending, int retryAfterSeconds) {
+        lock.lock();
+        try {
+            pending.attempts++;
+            chat(pending.chatId).pausedUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfterSeconds);
+            queues[pending.priority.ordinal()].addFirst(pending);
+            queued++;
+            LoggingUtils.logError("SEND_RATE_LIMITED",
+                    String.format("Telegram限流 - 会话: %d, retry_after: %ds, 第%d次重试",
+                            pending.chatId, retryAfterSeconds, pending.attempts), null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取状态摘要
+     */
+    public String getStatusSummary() {
+        lock.lock();
+        try {
+            return String.format("排队[审核:%d, 回复:%d, 通知:%d], 会话数: %d, 已发送: %d, 失败: %d, 限流重试: %d, 合并: %d, 拒绝: %d",
+                    queues[0].size(), queues[1].size(), queues[2].size(), chats.size(),
+                    sent.sum(), failed.sum(), rateLimited.sum(), coalesced.sum(), rejected.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        scheduler.interrupt();
+        sendExecutor.shutdown();
+        try {
+            sendExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LoggingUtils.logSystemStatus("出站发送网关已关闭 - " + getStatusSummary());
+    }
+
+    /**
+     * 排队中的请求
+     */
+    private static class PendingSend<T extends Serializable> {
+        private final long chatId;
+        private final SendPriority priority;
+        private final BotApiMethod<T> method;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private String coalesceKey;
+        private int attempts;
+
+        PendingSend(long chatId, SendPriority priority, BotApiMethod<T> method) {
+            this.chatId = chatId;
+            this.priority = priority;
+            this.method = method;
+        }
+
+        /**
+         * 是否受会话限速（审核操作不受会话发送频率限制）
+         */
+        boolean paced() {
+            return priority != SendPriority.MODERATION && chatId != 0;
+        }
+    }
+
+    /**
+     * 会话发送状态
+     */
+    private static class ChatState {
+        private final TokenBucket bucket = new TokenBucket();
+        private long pausedUntil;
+        private boolean inFlight;
+
+        boolean isIdle(long now) {
+            return !inFlight && pausedUntil <= now && bucket.isFull(now);
+        }
+    }
+
+    /**
+     * 令牌桶，调用方需持有锁
+     */
+    private static class TokenBucket {
+        private double ratePerNano;
+        private double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        void configure(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+        }
+
+        long nanosUntilToken(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+
+        void take(long now) {
+            refill(now);
+            tokens -= 1;
+        }
+
+        boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.dao.AppliedUpdateDao;
+import com.bot.aabot.dao.MessageDao;
+import com.bot.aabot.utils.LoggingUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+
+/**
+ * ClassName: UpdateBatchService
+ * Package: com.bot.aabot.service
+ * Description: 批量更新持久化服务。
+ * 将一次长轮询返回的同一会话内的更新放在一个 SQLite 事务中完成消息保存、活动日志与积分变更，
+ * 把一次突发的上百条更新的提交次数从数百次降低到按会话计的少量几次。
+ * 签到通知在事务提交后才发送，积分在提交前随事务写入，计数、连续签到与互动缓存在回滚后恢复，回滚后调用方可以安全地逐条重做。
+ * 积分阶段在同一事务中登记 update_id，预写日志重放时跳过已提交的积分；消息按 (chat_id, message_id) 唯一写入，重放不会重复保存。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/13
+ */
+@Slf4j
+@Service
+public class UpdateBatchService {
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private MessageStorageService messageStorageService;
+    @Autowired
+    private ScoreService scoreService;
+    @Autowired
+    private MessageDao messageDao;
+    @Autowired
+    private AppliedUpdateDao appliedUpdateDao;
+
+    /**
+     * 在一个事务中持久化同一会话的一批更新
+     * @param updates 同一会话的更新（保持原始顺序）
+     * @return true表示事务提交成功，false表示事务已回滚，调用方需回退为逐条处理
+     */
+    public boolean persistBatch(List<Update> updates) {
+        long startTime = System.currentTimeMillis();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Update update : updates) {
+                    // 积分、活动日志、入群时间等逻辑
+                    scoreOnce(update);
+                    // 消息保存与编辑状态更新
+                    if (update.hasMessage()) {
+                        messageDao.saveMessages(messageStorageService.buildLogEntity(update));
+                    } else if (update.hasEditedMessage()) {
+                        try {
+                            messageDao.editMessage(update);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("更新消息编辑状态失败", e);
+                        }
+                    }
+                }
+            });
+            LoggingUtils.logOperation("BATCH_PERSIST", "SYSTEM",
+                    String.format("批量持久化完成 - 更新数: %d, 耗时: %dms", updates.size(), System.currentTimeMillis() - startTime));
+            LoggingUtils.logPerformance("persistBatch", startTime);
+            return true;
+        } catch (Exception e) {
+            LoggingUtils.logError("BATCH_PERSIST_ERROR",
+                    String.format("批量持久化失败，事务已回滚 - 更新数: %d", updates.size()), e);
+            return false;
+        }
+    }
+
+    /**
+     * 在一个事务中处理单条更新的积分
+     * @param update 更新
+     */
+    public void scoreUpdate(Update update) {
+        transactionTemplate.executeWithoutResult(status -> scoreOnce(update));
+    }
+
+    /**
+     * 处理积分，已提交过的更新（重放）跳过；需在事务中调用
+     */
+    private void scoreOnce(Update update) {
+        if (!update.hasMessage() && update.getMessageReaction() == null) {
+            return;
+        }
+        if (!appliedUpdateDao.markApplied(update.getUpdateId(), UpdateJournal.Stage.SCORE.stageName())) {
+            LoggingUtils.logOperation("SCORE_ALREADY_APPLIED", "SYSTEM", "积分已提交过，重放时跳过: " + update.getUpdateId());
+            return;
+        }
+        scoreService.processMessage(update);
+    }
+}
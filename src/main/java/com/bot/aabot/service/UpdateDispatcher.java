@@ -0,0 +1,416 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ClassName: UpdateDispatcher
+ * Package: com.bot.aabot.service
+ * Description: 按会话分片的有序更新分发器。
+ * 将 chatId 哈希到固定数量的执行通道（lane），每个通道由单个消费线程串行处理，
+ * 生产者通过无锁的多生产者队列投递任务，从而保证同一会话内的处理顺序，
+ * 同时避免每条更新多次线程切换带来的开销。
+ * 每个通道按优先级分为多个队列并分别限制容量，消费线程优先处理高优先级任务，
+ * 但任一队列头部任务排队超过 max-queue-delay 时先处理排队最久的任务，低优先级任务不会被无限期饿死。
+ * 投递从不阻塞生产者（长轮询与 Webhook 接收线程），每个队列都有硬上限：
+ * 审核、持久化队列已满时拒绝投递，积分、AI 队列已满时丢弃任务，均按优先级分别计数；
+ * 被拒绝的阶段不会在预写日志中确认，记录保留到下次启动重放，AI 回答由调用方降级处理。
+ * AI回答在独立的 AI 通道中执行，耗时的大模型调用不占用审核与持久化通道。
+ *
+ * @author fuchen
+ * @version 1.2
+ * @createTime 2025/9/13
+ */
+@Slf4j
+@Service
+public class UpdateDispatcher {
+
+    /**
+     * 任务优先级，按声明顺序从高到低
+     */
+    public enum Priority {
+        /** 广告审核、管理员指令 */
+        MODERATION,
+        /** 消息持久化 */
+        PERSISTENCE,
+        /** 积分与成就 */
+        SCORING,
+        /** AI回答，在独立的AI通道中执行 */
+        AI
+    }
+
+    /**
+     * 阶段完成监听器，用于基准测试等场景采集各阶段的排队与执行耗时
+     */
+    public interface StageListener {
+        /**
+         * @param stage 阶段名称
+         * @param queueNanos 排队耗时（纳秒）
+         * @param runNanos 执行耗时（纳秒）
+         * @param failed 是否抛出异常
+         */
+        void onStageComplete(String stage, long queueNanos, long runNanos, boolean failed);
+    }
+
+    private static final int PRIORITY_COUNT = Priority.values().length;
+
+    @Value("${bot.dispatcher.lanes:0}")
+    private int configuredLanes;
+
+    @Value("${bot.dispatcher.ai-lanes:0}")
+    private int configuredAiLanes;
+
+    @Value("${bot.dispatcher.max-queue-delay:2000}")
+    private long maxQueueDelay; // 排队超过该时间（毫秒）的任务优先执行
+
+    @Value("${bot.dispatcher.limits.moderation:1000}")
+    private int moderationLimit;
+
+    @Value("${bot.dispatcher.limits.persistence:1000}")
+    private int persistenceLimit;
+
+    @Value("${bot.dispatcher.limits.scoring:500}")
+    private int scoringLimit;
+
+    @Value("${bot.dispatcher.limits.ai:200}")
+    private int aiLimit;
+
+    @Value("${bot.dispatcher.thread-name-prefix:bot-lane-}")
+    private String threadNamePrefix;
+
+    @Value("${bot.async.mode:platform}")
+    private String asyncMode;
+
+    @Value("${bot.async.max-pool-size:20}")
+    private int maxPoolSize;
+
+    @Value("${bot.concurrency.message-timeout:30000}")
+    private long messageTimeout;
+
+    private Lane[] lanes;
+    private Lane[] aiLanes;
+
+    // 各优先级因队列已满被拒绝或丢弃的任务数
+    private final LongAdder[] shed = new LongAdder[PRIORITY_COUNT];
+
+    private volatile StageListener stageListener;
+
+    @PostConstruct
+    public void init() {
+        // 通道任务中仍有 SQLite 访问等阻塞调用，默认通道数不少于原异步线程池的最大线程数
+        int laneCount = configuredLanes > 0 ? configuredLanes
+                : Math.max(Runtime.getRuntime().availableProcessors(), maxPoolSize);
+        int aiLaneCount = configuredAiLanes > 0 ? configuredAiLanes
+                : Math.max(Runtime.getRuntime().availableProcessors(), maxPoolSize);
+        int[] limits = {moderationLimit, persistenceLimit, scoringLimit, aiLimit};
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            shed[i] = new LongAdder();
+        }
+        boolean virtual = "virtual".equalsIgnoreCase(asyncMode);
+        lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(this, i, limits);
+            lanes[i].start(threadNamePrefix + i, virtual);
+        }
+        aiLanes = new Lane[aiLaneCount];
+        for (int i = 0; i < aiLaneCount; i++) {
+            aiLanes[i] = new Lane(this, i, limits);
+            aiLanes[i].start(threadNamePrefix + "ai-" + i, virtual);
+        }
+        LoggingUtils.logSystemStatus(String.format(
+                "更新分发器已初始化 - 执行模式: %s, 通道数: %d, AI通道数: %d, 最大排队延迟: %dms, 单通道队列上限[审核:%d, 持久化:%d, 积分:%d, AI:%d]",
+                asyncMode, laneCount, aiLaneCount, maxQueueDelay, moderationLimit, persistenceLimit, scoringLimit, aiLimit));
+    }
+
+    /**
+     * 将任务投递到 chatId 对应通道的指定优先级队列，同一 chatId 同一优先级的任务按投递顺序执行
+     * @param chatId 会话ID
+     * @param priority 优先级
+     * @param stage 阶段名称，用于日志与性能统计
+     * @param task 任务
+     * @return 是否投递成功；队列已满时立即返回false，不等待空位
+     */
+    public boolean dispatch(long chatId, Priority priority, String stage, Runnable task) {
+        Lane lane = priority == Priority.AI ? aiLanes[indexOf(chatId, aiLanes.length)] : lanes[laneOf(chatId)];
+        if (!lane.offer(priority.ordinal(), stage, task)) {
+            shed[priority.ordinal()].increment();
+            long shedCount = shed[priority.ordinal()].sum();
+            // 高负载时避免每次丢弃都写错误日志
+            if (shedCount % 100 == 1) {
+                String action = priority == Priority.MODERATION || priority == Priority.PERSISTENCE
+                        ? "拒绝，等待重放" : "丢弃";
+                LoggingUtils.logError("LANE_SHED",
+                        String.format("分发通道队列已满，任务被%s - 通道: %d, 优先级: %s, 阶段: %s, 累计: %d",
+                                action, lane.index, priority, stage, shedCount), null);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 计算 chatId 对应的通道下标
+     */
+    public int laneOf(long chatId) {
+        return indexOf(chatId, lanes.length);
+    }
+
+    private static int indexOf(long chatId, int laneCount) {
+        // 混合高低位，避免群组ID（-100xxxx）集中在少数通道
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) ((h ^ (h >>> 32)) & 0x7fffffffL) % laneCount;
+    }
+
+    /**
+     * 从更新中解析会话ID，无法解析时返回0
+     */
+    public static long resolveChatId(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasEditedMessage()) {
+            return update.getEditedMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        if (update.getMessageReaction() != null && update.getMessageReaction().getChat() != null) {
+            return update.getMessageReaction().getChat().getId();
+        }
+        return 0L;
+    }
+
+    /**
+     * 获取指定优先级因队列已满被拒绝或丢弃的任务数
+     */
+    public long getShedCount(Priority priority) {
+        return shed[priority.ordinal()].sum();
+    }
+
+    /**
+     * 设置阶段完成监听器，传入null表示移除
+     */
+    public void setStageListener(StageListener stageListener) {
+        this.stageListener = stageListener;
+    }
+
+    /**
+     * 获取所有通道的状态摘要
+     */
+    public String getStatusSummary() {
+        StringBuilder sb = new StringBuilder("拒绝/丢弃[");
+        for (Priority priority : Priority.values()) {
+            sb.append(priority).append(':').append(shed[priority.ordinal()].sum()).append(' ');
+        }
+        sb.setLength(sb.length() - 1);
+        sb.append("] ");
+        for (Lane lane : lanes) {
+            sb.append(String.format("lane-%d[排队:%d/%d/%d, 已处理:%d] ",
+                    lane.index, lane.sizes[0].get(), lane.sizes[1].get(), lane.sizes[2].get(), lane.processed.sum()));
+        }
+        for (Lane lane : aiLanes) {
+            sb.append(String.format("ai-%d[排队:%d, 已处理:%d] ",
+                    lane.index, lane.sizes[Priority.AI.ordinal()].get(), lane.processed.sum()));
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * 获取所有通道中排队的任务总数
+     */
+    public int getPendingCount() {
+        int total = 0;
+        for (Lane lane : lanes) {
+            total += lane.pending();
+        }
+        for (Lane lane : aiLanes) {
+            total += lane.pending();
+        }
+        return total;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 先停AI通道，其降级任务可能投递到核心通道
+        stop(aiLanes);
+        stop(lanes);
+        LoggingUtils.logSystemStatus("更新分发器已关闭 - " + getStatusSummary());
+    }
+
+    private static void stop(Lane[] group) {
+        for (Lane lane : group) {
+            lane.running = false;
+            LockSupport.unpark(lane.worker);
+        }
+        for (Lane lane : group) {
+            try {
+                lane.worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 带阶段名称的任务
+     */
+    private record StageTask(String stage, Runnable task, long enqueuedAt) {
+    }
+
+    /**
+     * 单消费者执行通道，每个优先级一个队列
+     */
+    private static class Lane implements Runnable {
+        private final UpdateDispatcher dispatcher;
+        private final int index;
+        @SuppressWarnings("unchecked")
+        private final ConcurrentLinkedQueue<StageTask>[] queues = new ConcurrentLinkedQueue[PRIORITY_COUNT];
+        private final AtomicInteger[] sizes = new AtomicInteger[PRIORITY_COUNT];
+        // 各优先级队列的空位
+        private final Semaphore[] slots = new Semaphore[PRIORITY_COUNT];
+        private final LongAdder processed = new LongAdder();
+        private volatile boolean running = true;
+        private volatile boolean waiting = false;
+        private Thread worker;
+
+        Lane(UpdateDispatcher dispatcher, int index, int[] capacities) {
+            this.dispatcher = dispatcher;
+            this.index = index;
+            for (int i = 0; i < PRIORITY_COUNT; i++) {
+                queues[i] = new ConcurrentLinkedQueue<>();
+                sizes[i] = new AtomicInteger();
+                slots[i] = new Semaphore(Math.max(1, capacities[i]));
+            }
+        }
+
+        void start(String threadName, boolean virtual) {
+            if (virtual) {
+                worker = Thread.ofVirtual().name(threadName).start(this);
+                return;
+            }
+            worker = new Thread(this, threadName);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        /**
+         * 不阻塞地投递任务
+         * @return false表示该优先级队列已满
+         */
+        boolean offer(int priority, String stage, Runnable runnable) {
+            if (!slots[priority].tryAcquire()) {
+                return false;
+            }
+            sizes[priority].incrementAndGet();
+            queues[priority].offer(new StageTask(stage, runnable, System.nanoTime()));
+            // 仅在消费线程空闲等待时唤醒，减少不必要的unpark调用
+            if (waiting) {
+                LockSupport.unpark(worker);
+            }
+            return true;
+        }
+
+        int pending() {
+            int total = 0;
+            for (AtomicInteger size : sizes) {
+                total += size.get();
+            }
+            return total;
+        }
+
+        /**
+         * 取出一个任务：有队列头部任务排队超过 max-queue-delay 时取排队最久的，否则按优先级从高到低取
+         */
+        private StageTask poll() {
+            long now = System.nanoTime();
+            long maxDelay = TimeUnit.MILLISECONDS.toNanos(dispatcher.maxQueueDelay);
+            int selected = -1;
+            int aged = -1;
+            long oldestDelay = maxDelay;
+            for (int i = 0; i < PRIORITY_COUNT; i++) {
+                // 单消费者：peek 到的头部任务在 poll 前不会被取走
+                StageTask head = queues[i].peek();
+                if (head == null) {
+                    continue;
+                }
+                if (selected < 0) {
+                    selected = i;
+                }
+                long delay = now - head.enqueuedAt();
+                if (delay > oldestDelay) {
+                    oldestDelay = delay;
+                    aged = i;
+                }
+            }
+            if (selected < 0) {
+                return null;
+            }
+            int index = aged >= 0 ? aged : selected;
+            StageTask task = queues[index].poll();
+            sizes[index].decrementAndGet();
+            slots[index].release();
+            return task;
+        }
+
+        private boolean isEmpty() {
+            for (ConcurrentLinkedQueue<StageTask> queue : queues) {
+                if (!queue.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (running || !isEmpty()) {
+                StageTask task = poll();
+                if (task == null) {
+                    waiting = true;
+                    if (isEmpty() && running) {
+                        LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+                    }
+                    waiting = false;
+                    continue;
+                }
+                long startTime = System.currentTimeMillis();
+                long startNanos = System.nanoTime();
+                boolean failed = false;
+                try {
+                    task.task().run();
+                } catch (Throwable t) {
+                    failed = true;
+                    LoggingUtils.logError("LANE_TASK_ERROR",
+                            String.format("通道任务执行失败 - 通道: %d, 阶段: %s", index, task.stage()),
+                            t instanceof Exception ? (Exception) t : new RuntimeException(t));
+                } finally {
+                    processed.increment();
+                    LoggingUtils.logPerformance(task.stage(), startTime);
+                    long duration = System.currentTimeMillis() - startTime;
+                    if (duration > dispatcher.messageTimeout) {
+                        LoggingUtils.logError("MESSAGE_PROCESS_TIMEOUT",
+                                String.format("消息处理超时 - 阶段: %s, 耗时: %dms, 阈值: %dms",
+                                        task.stage(), duration, dispatcher.messageTimeout), null);
+                    }
+                    StageListener listener = dispatcher.stageListener;
+                    if (listener != null) {
+                        listener.onStageComplete(task.stage(), startNanos - task.enqueuedAt(),
+                                System.nanoTime() - startNanos, failed);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.TgBot;
+import com.bot.aabot.utils.LoggingUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: UpdateIntakeBuffer
+ * Package: com.bot.aabot.service
+ * Description: Webhook 模式下的有界更新接收缓冲区。
+ * HTTP 接口先把更新追加到预写日志，再放入固定容量的环形缓冲区后应答，
+ * 由单独的排空线程按批取出后交给 TgBot 的批量处理流程；缓冲区满时拒绝写入并撤销日志记录，由接口返回429。
+ * 启动时预写日志重放完成前缓冲区处于关闭状态，接口返回503，保证重放的更新先于新更新处理。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/14
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "bot.ingest.mode", havingValue = "webhook")
+public class UpdateIntakeBuffer {
+
+    @Autowired
+    @Lazy
+    private TgBot tgBot;
+
+    @Value("${bot.webhook.buffer-capacity:2048}")
+    private int capacity;
+
+    @Value("${bot.webhook.drain-batch-size:100}")
+    private int drainBatchSize;
+
+    private ArrayBlockingQueue<Map.Entry<Update, UpdateJournal.Ticket>> buffer;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean running = true;
+    private volatile boolean open = false;
+    private Thread drainer;
+
+    @PostConstruct
+    public void init() {
+        buffer = new ArrayBlockingQueue<>(capacity);
+        drainer = new Thread(this::drainLoop, "webhook-intake-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        LoggingUtils.logSystemStatus(String.format(
+                "Webhook接收缓冲区已初始化 - 容量: %d, 单批最大数量: %d", capacity, drainBatchSize));
+    }
+
+    /**
+     * 开始接收更新（预写日志重放完成后调用）
+     */
+    public void open() {
+        open = true;
+        LoggingUtils.logSystemStatus("Webhook接收缓冲区已开始接收更新");
+    }
+
+    /**
+     * 是否已开始接收更新
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * 写入一条已追加到预写日志的更新，不阻塞
+     * @param update 更新
+     * @param ticket 日志确认凭据
+     * @return false表示缓冲区已满，调用方需撤销日志记录
+     */
+    public boolean offer(Update update, UpdateJournal.Ticket ticket) {
+        if (buffer.offer(Map.entry(update, ticket))) {
+            accepted.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private void drainLoop() {
+        List<Map.Entry<Update, UpdateJournal.Ticket>> batch = new ArrayList<>(drainBatchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                Map.Entry<Update, UpdateJournal.Ticket> first = buffer.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, drainBatchSize - 1);
+                tgBot.consumeJournaled(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LoggingUtils.logError("WEBHOOK_DRAIN_ERROR", "Webhook缓冲区排空处理失败", e);
+            } finally {
+                batch = new ArrayList<>(drainBatchSize);
+            }
+        }
+    }
+
+    /**
+     * 获取缓冲区状态摘要
+     */
+    public String getStatusSummary() {
+        return String.format("缓冲: %d/%d, 已接收: %d, 已拒绝: %d",
+                buffer.size(), capacity, accepted.sum(), rejected.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LoggingUtils.logSystemStatus("Webhook接收缓冲区已关闭 - " + getStatusSummary());
+    }
+}
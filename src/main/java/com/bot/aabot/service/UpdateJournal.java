@@ -0,0 +1,504 @@
+package com.bot.aabot.service;
+
+import com.bot.aabot.utils.LoggingUtils;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * ClassName: UpdateJournal
+ * Package: com.bot.aabot.service
+ * Description: 基于内存映射文件的更新预写日志。
+ * 每条原始 Update 在分发前追加写入当前段文件，各处理阶段完成后在记录头中置位，
+ * 所有已分发的阶段都确认后才标记为完成；有阶段失败或被丢弃的记录保持未完成，
+ * 启动时重放未完成的记录，且只执行尚未完成的阶段，重放超过 max-replay-attempts 次的记录被放弃，
+ * 并按 update_id 去重，避免 Telegram 重新投递导致重复处理。
+ * 阶段写入提交后、确认前崩溃时阶段会被重放，消息按 (chat_id, message_id) 唯一写入，积分阶段在写入事务中登记 update_id，重放不会重复写入。
+ * 段文件写满后轮转，所有记录均已处理的段会被定期删除，其中失败的记录先搬到当前段，不会让整段无法删除。
+ * <p>
+ * 记录格式：[int 负载长度][long update_id][int 已完成阶段位图][int 状态][负载(JSON)]，
+ * 状态为1表示完成，0或负数表示未完成，负数的绝对值为已重放次数。
+ * 负载长度最后写入，因此进程崩溃时半条记录不会被识别为有效记录。
+ * 内存映射写入在JVM崩溃后仍由操作系统落盘，如需防止操作系统崩溃丢失，可开启 force-on-append。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/15
+ */
+@Slf4j
+@Service
+public class UpdateJournal {
+
+    /**
+     * 需要确认的处理阶段，位序号写入日志文件，新增阶段只能追加在末尾
+     */
+    public enum Stage {
+        SPAM_CHECK, CONSTRUCTION_EVENT, SAVE_MESSAGE, SCORE, ABILITY, AI_RESPONSE, EDIT_MESSAGE, CALLBACK_QUERY, MESSAGE_REACTION;
+
+        private final int bit = 1 << ordinal();
+
+        /**
+         * 阶段名称，用于分发日志与性能统计
+         */
+        public String stageName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final int HEADER_SIZE = 20;
+    private static final int OFFSET_UPDATE_ID = 4;
+    private static final int OFFSET_STAGES = 12;
+    private static final int OFFSET_COMPLETE = 16;
+    private static final int STATUS_COMPLETE = 1;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    @Value("${bot.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${bot.journal.dir:${logging.file.path:./logs}/journal}")
+    private String journalDir;
+
+    @Value("${bot.journal.segment-size:16777216}")
+    private int segmentSize;
+
+    @Value("${bot.journal.force-on-append:false}")
+    private boolean forceOnAppend;
+
+    @Value("${bot.journal.max-replay-attempts:3}")
+    private int maxReplayAttempts; // 同一记录最多重放的次数，超过后放弃
+
+    @Value("${bot.journal.recovered-id-ttl:600000}")
+    private long recoveredIdTtl; // 启动时恢复的update_id用于去重的保留时间（毫秒）
+
+    // 按 update_id 去重：当前未删除段中的记录
+    private final Set<Long> knownUpdateIds = ConcurrentHashMap.newKeySet();
+    // 启动时从旧段中读取的记录，保留一段时间用于拦截 Telegram 重新投递
+    private final Set<Long> recoveredUpdateIds = ConcurrentHashMap.newKeySet();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ObjectMapper journalMapper = new ObjectMapper()
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Path directory;
+    private Segment active;
+    private long nextSegmentSeq;
+    private long recoveredAt;
+    private List<Map.Entry<Update, Ticket>> pendingReplay = List.of();
+    private final AtomicInteger failedRecords = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            LoggingUtils.logSystemStatus("更新预写日志未启用");
+            return;
+        }
+        try {
+            directory = Paths.get(journalDir);
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            enabled = false;
+            LoggingUtils.logError("JOURNAL_INIT_ERROR", "更新预写日志初始化失败，已降级为不记录", e);
+        }
+    }
+
+    /**
+     * 追加一条更新
+     * @param update 更新
+     * @return 确认凭据；日志未启用时返回空操作凭据；update_id 已记录过时返回null，调用方应跳过该更新
+     */
+    public Ticket append(Update update) {
+        if (!enabled) {
+            return Ticket.NOOP;
+        }
+        Long updateId = Long.valueOf(update.getUpdateId());
+        if (recoveredUpdateIds.contains(updateId) || !knownUpdateIds.add(updateId)) {
+            LoggingUtils.logOperation("JOURNAL_DUPLICATE", "SYSTEM", "重复的更新已跳过: " + updateId);
+            return null;
+        }
+        try {
+            byte[] payload = journalMapper.writeValueAsBytes(update);
+            return write(updateId, 0, 0, payload);
+        } catch (Exception e) {
+            LoggingUtils.logError("JOURNAL_APPEND_ERROR", "写入更新预写日志失败: " + updateId, e);
+            return Ticket.NOOP;
+        }
+    }
+
+    /**
+     * 取出启动时需要重放的更新（只能取一次）
+     */
+    public synchronized List<Map.Entry<Update, Ticket>> drainPendingReplay() {
+        List<Map.Entry<Update, Ticket>> result = pendingReplay;
+        pendingReplay = List.of();
+        return result;
+    }
+
+    /**
+     * @param replays 已重放次数，写入状态字段
+     */
+    private synchronized Ticket write(long updateId, int stageMask, int replays, byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize + Integer.BYTES > segmentSize) {
+            LoggingUtils.logError("JOURNAL_RECORD_TOO_LARGE",
+                    String.format("更新 %d 超过段大小，未写入预写日志", updateId), null);
+            return Ticket.NOOP;
+        }
+        if (active == null || active.writePosition + recordSize + Integer.BYTES > segmentSize) {
+            rotate();
+        }
+        Segment segment = active;
+        int offset = segment.writePosition;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(offset + OFFSET_UPDATE_ID, updateId);
+        buffer.putInt(offset + OFFSET_STAGES, stageMask);
+        buffer.putInt(offset + OFFSET_COMPLETE, -replays);
+        buffer.put(offset + HEADER_SIZE, payload);
+        // 最后写入长度，使记录生效
+        buffer.putInt(offset, payload.length);
+        segment.writePosition = offset + recordSize;
+        segment.pending.incrementAndGet();
+        segment.updateIds.add(updateId);
+        if (forceOnAppend) {
+            buffer.force(offset, recordSize);
+        }
+        return new Ticket(this, segment, offset, updateId, stageMask);
+    }
+
+    /**
+     * 轮转到新的段文件
+     */
+    private void rotate() throws IOException {
+        if (active != null) {
+            active.sealed = true;
+        }
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentSeq++, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            segments.add(segment);
+            active = segment;
+        }
+    }
+
+    /**
+     * 启动恢复：扫描旧段，将未完成记录复制到新段并准备重放，随后删除旧段
+     */
+    private void recover() throws IOException {
+        List<Path> oldFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            oldFiles = files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        if (!oldFiles.isEmpty()) {
+            String last = oldFiles.get(oldFiles.size() - 1).getFileName().toString();
+            nextSegmentSeq = Long.parseLong(last.substring(SEGMENT_PREFIX.length(), last.length() - SEGMENT_SUFFIX.length())) + 1;
+        }
+
+        // 同一 update_id 只保留最后一条记录
+        Map<Long, byte[]> pendingPayloads = new LinkedHashMap<>();
+        Map<Long, Integer> pendingStages = new LinkedHashMap<>();
+        Map<Long, Integer> pendingReplays = new LinkedHashMap<>();
+        int scanned = 0;
+        for (Path file : oldFiles) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int position = 0;
+                while (position + HEADER_SIZE <= buffer.capacity()) {
+                    int length = buffer.getInt(position);
+                    if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+                        break;
+                    }
+                    long updateId = buffer.getLong(position + OFFSET_UPDATE_ID);
+                    int stages = buffer.getInt(position + OFFSET_STAGES);
+                    int status = buffer.getInt(position + OFFSET_COMPLETE);
+                    recoveredUpdateIds.add(updateId);
+                    if (status == STATUS_COMPLETE) {
+                        pendingPayloads.remove(updateId);
+                        pendingStages.remove(updateId);
+                        pendingReplays.remove(updateId);
+                    } else {
+                        byte[] payload = new byte[length];
+                        buffer.get(position + HEADER_SIZE, payload);
+                        pendingPayloads.put(updateId, payload);
+                        pendingStages.put(updateId, stages);
+                        pendingReplays.put(updateId, status < 0 ? -status : 0);
+                    }
+                    position += HEADER_SIZE + length;
+                    scanned++;
+                }
+            }
+        }
+
+        rotate();
+        List<Map.Entry<Update, Ticket>> replay = new ArrayList<>();
+        int abandoned = 0;
+        for (Map.Entry<Long, byte[]> entry : pendingPayloads.entrySet()) {
+            int replays = pendingReplays.get(entry.getKey());
+            if (replays >= maxReplayAttempts) {
+                abandoned++;
+                LoggingUtils.logError("JOURNAL_REPLAY_ABANDONED", String.format(
+                        "更新 %d 已重放 %d 次仍未完成，放弃重放，已完成阶段位图: %d",
+                        entry.getKey(), replays, pendingStages.get(entry.getKey())), null);
+                continue;
+            }
+            try {
+                Update update = journalMapper.readValue(entry.getValue(), Update.class);
+                Ticket ticket = write(entry.getKey(), pendingStages.get(entry.getKey()), replays + 1, entry.getValue());
+                knownUpdateIds.add(entry.getKey());
+                replay.add(Map.entry(update, ticket));
+            } catch (Exception e) {
+                LoggingUtils.logError("JOURNAL_REPLAY_PARSE_ERROR", "预写日志记录解析失败: " + entry.getKey(), e);
+            }
+        }
+        for (Path file : oldFiles) {
+            Files.deleteIfExists(file);
+        }
+        pendingReplay = replay;
+        recoveredAt = System.currentTimeMillis();
+        LoggingUtils.logSystemStatus(String.format(
+                "更新预写日志已初始化 - 目录: %s, 段大小: %d, 扫描旧段: %d, 扫描记录: %d, 待重放: %d, 放弃: %d",
+                directory.toAbsolutePath(), segmentSize, oldFiles.size(), scanned, replay.size(), abandoned));
+    }
+
+    /**
+     * 记录的所有引用释放后调用：已分发的阶段全部确认时标记完成，否则保持未完成，等待下次启动重放
+     */
+    private void finish(Ticket ticket) {
+        Segment segment = ticket.segment;
+        if (ticket.isSatisfied()) {
+            segment.buffer.putInt(ticket.offset + OFFSET_COMPLETE, STATUS_COMPLETE);
+        } else {
+            // 先登记再减计数，压缩线程看到计数归零时一定能看到失败记录
+            segment.failedOffsets.add(ticket.offset);
+            failedRecords.incrementAndGet();
+        }
+        segment.pending.decrementAndGet();
+    }
+
+    /**
+     * 撤销记录：标记为完成使其不被重放，并释放 update_id 的去重登记
+     */
+    private void cancel(Ticket ticket) {
+        Segment segment = ticket.segment;
+        segment.buffer.putInt(ticket.offset + OFFSET_COMPLETE, STATUS_COMPLETE);
+        segment.updateIds.remove(ticket.updateId);
+        knownUpdateIds.remove(ticket.updateId);
+        segment.pending.decrementAndGet();
+    }
+
+    /**
+     * 把已封存段中的失败记录搬到当前段，保留已完成阶段与重放次数
+     */
+    private void relocateFailed(Segment segment) throws IOException {
+        Integer offset;
+        while ((offset = segment.failedOffsets.poll()) != null) {
+            MappedByteBuffer buffer = segment.buffer;
+            int length = buffer.getInt(offset);
+            long updateId = buffer.getLong(offset + OFFSET_UPDATE_ID);
+            int stages = buffer.getInt(offset + OFFSET_STAGES);
+            int status = buffer.getInt(offset + OFFSET_COMPLETE);
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            Ticket ticket = write(updateId, stages, status < 0 ? -status : 0, payload);
+            segment.updateIds.remove(updateId);
+            if (ticket.segment != null) {
+                ticket.segment.failedOffsets.add(ticket.offset);
+                ticket.segment.pending.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 压缩：删除所有记录均已处理的已封存段，失败的记录先搬到当前段
+     */
+    @Scheduled(fixedDelayString = "${bot.journal.compact-interval:60000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        if (!recoveredUpdateIds.isEmpty() && System.currentTimeMillis() - recoveredAt > recoveredIdTtl) {
+            recoveredUpdateIds.clear();
+        }
+        Iterator<Segment> iterator = segments.iterator();
+        int deleted = 0;
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (!segment.sealed || segment.pending.get() > 0) {
+                continue;
+            }
+            try {
+                relocateFailed(segment);
+                Files.deleteIfExists(segment.file);
+                segments.remove(segment);
+                knownUpdateIds.removeAll(segment.updateIds);
+                deleted++;
+            } catch (IOException e) {
+                LoggingUtils.logError("JOURNAL_COMPACT_ERROR", "删除预写日志段失败: " + segment.file, e);
+            }
+        }
+        if (deleted > 0) {
+            LoggingUtils.logOperation("JOURNAL_COMPACT", "SYSTEM",
+                    String.format("已删除完成的预写日志段: %d, 剩余段: %d", deleted, segments.size()));
+        }
+    }
+
+    /**
+     * 获取状态摘要
+     */
+    public String getStatusSummary() {
+        if (!enabled) {
+            return "未启用";
+        }
+        int pending = 0;
+        for (Segment segment : segments) {
+            pending += segment.pending.get();
+        }
+        int failed = 0;
+        for (Segment segment : segments) {
+            failed += segment.failedOffsets.size();
+        }
+        return String.format("段数: %d, 处理中记录: %d, 待重放记录: %d, 累计失败: %d",
+                segments.size(), pending, failed, failedRecords.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        LoggingUtils.logSystemStatus("更新预写日志已关闭 - " + getStatusSummary());
+    }
+
+    /**
+     * 段文件
+     */
+    private static class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Set<Long> updateIds = ConcurrentHashMap.newKeySet();
+        // 有阶段未确认、等待下次启动重放的记录
+        private final Queue<Integer> failedOffsets = new ConcurrentLinkedQueue<>();
+        private int writePosition;
+        private volatile boolean sealed;
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 日志记录确认凭据。
+     * 采用引用计数：分发方持有一个引用，每个已分发的阶段各持有一个引用；
+     * 分发阶段前先登记为必需阶段，全部引用释放时必需阶段均已确认才标记为完成。
+     */
+    public static class Ticket {
+        /** 日志未启用时使用的空操作凭据 */
+        public static final Ticket NOOP = new Ticket(null, null, -1, 0L, 0);
+
+        private final UpdateJournal journal;
+        private final Segment segment;
+        private final int offset;
+        private final long updateId;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile int stageMask;
+        private volatile int requiredMask;
+
+        private Ticket(UpdateJournal journal, Segment segment, int offset, long updateId, int stageMask) {
+            this.journal = journal;
+            this.segment = segment;
+            this.offset = offset;
+            this.updateId = updateId;
+            this.stageMask = stageMask;
+        }
+
+        /**
+         * 阶段是否已在之前的运行中完成（重放时跳过）
+         */
+        public boolean isDone(Stage stage) {
+            return (stageMask & stage.bit) != 0;
+        }
+
+        /**
+         * 登记必需阶段：记录只有在该阶段确认后才会标记为完成
+         */
+        public synchronized void require(Stage stage) {
+            requiredMask |= stage.bit;
+        }
+
+        private synchronized boolean isSatisfied() {
+            return (stageMask & requiredMask) == requiredMask;
+        }
+
+        /**
+         * 标记阶段完成并写入日志
+         */
+        public synchronized void markDone(Stage stage) {
+            if (this == NOOP) {
+                return;
+            }
+            stageMask |= stage.bit;
+            segment.buffer.putInt(offset + OFFSET_STAGES, stageMask);
+        }
+
+        public void retain() {
+            if (this != NOOP) {
+                references.incrementAndGet();
+            }
+        }
+
+        public void release() {
+            if (this != NOOP && references.decrementAndGet() == 0) {
+                journal.finish(this);
+            }
+        }
+
+        /**
+         * 撤销刚追加、尚未分发的记录（如接收缓冲区已满被拒绝），Telegram 重新投递时可再次写入
+         */
+        public void cancel() {
+            if (this != NOOP && references.compareAndSet(1, 0)) {
+                journal.cancel(this);
+            }
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.bot.aabot.service;
 
 import com.bot.aabot.dao.GroupDao;
 import com.bot.aabot.utils.LoggingUtils;
-import com.bot.aabot.utils.MessagesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -25,6 +24,8 @@ public class UserService {
 
     @Autowired
     private GroupDao groupDao;
+    @Autowired
+    private BulkModerationExecutor bulkModerationExecutor;
 
     /**
      * 封禁用户
@@ -36,24 +37,7 @@ public class UserService {
     public void adminBlacklistUser(Object bot, String chatIdStr, String userIdStr) {
         try {
             long userId = Long.parseLong(userIdStr);
-            // 1) 批量撤回历史消息
-            try {
-                List<Integer> messageIds = groupDao.getUserMessages(chatIdStr, userIdStr);
-
-                if (messageIds != null) {
-                    LoggingUtils.logOperation("BLACKLIST_DELETE_COUNT", userIdStr, "准备撤回消息数量=" + messageIds.size());
-                    for (Integer mid : messageIds) {
-                        try {
-                            MessagesUtil.deleteMessage(bot, Long.parseLong(chatIdStr), mid);
-                        } catch (Exception ex) {
-                            // 忽略单条失败
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                LoggingUtils.logError("BLACKLIST_DELETE_HISTORY_ERROR", "删除历史消息失败", e);
-            }
-            // 2) 永久封禁并踢出
+            // 1) 永久封禁并踢出，先阻止继续发言
             try {
                 BanChatMember ban = BanChatMember.builder()
                         .chatId(chatIdStr)
@@ -65,6 +49,17 @@ public class UserService {
             } catch (Exception e) {
                 LoggingUtils.logError("BLACKLIST_BAN_ERROR", "加入黑名单/踢出失败", e);
             }
+            // 2) 批量撤回历史消息（后台分批执行，进度报告到管理群组）
+            try {
+                List<Integer> messageIds = groupDao.getUserMessages(chatIdStr, userIdStr);
+
+                if (messageIds != null && !messageIds.isEmpty()) {
+                    LoggingUtils.logOperation("BLACKLIST_DELETE_COUNT", userIdStr, "准备撤回消息数量=" + messageIds.size());
+                    bulkModerationExecutor.deleteUserMessages(chatIdStr, userIdStr, messageIds);
+                }
+            } catch (Exception e) {
+                LoggingUtils.logError("BLACKLIST_DELETE_HISTORY_ERROR", "删除历史消息失败", e);
+            }
         } catch (Exception e) {
             LoggingUtils.logError("BLACKLIST_ERROR", "处理黑名单失败", e);
         }
@@ -0,0 +1,93 @@
+package com.bot.aabot.task;
+
+import com.bot.aabot.dao.ActivityCounterDao;
+import com.bot.aabot.utils.LoggingUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ClassName: ActivityCounterBackfillTask
+ * Package: com.bot.aabot.task
+ * Description: 用户活动计数器回填任务。
+ * 启动后若计数器尚未回填，把水位之前的活动日志按 log_id 切分为若干段并行统计，汇总后一次性写入计数器并启用内存镜像；
+ * 失败时保持未回填状态，成就进度继续使用 COUNT 查询，下次启动重试。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+@Component
+public class ActivityCounterBackfillTask {
+
+    @Autowired
+    private ActivityCounterDao activityCounterDao;
+
+    @Value("${bot.activity-counter.backfill-parallelism:4}")
+    private int parallelism;
+
+    @Value("${bot.activity-counter.backfill-chunk-size:50000}")
+    private long chunkSize; // 每段包含的 log_id 数
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        try {
+            if (activityCounterDao.isBackfillDone()) {
+                return;
+            }
+        } catch (Exception e) {
+            LoggingUtils.logError("ACTIVITY_COUNTER_BACKFILL_ERROR", "读取计数器回填状态失败", e);
+            return;
+        }
+        Thread thread = new Thread(this::backfill, "activity-counter-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void backfill() {
+        long startTime = System.currentTimeMillis();
+        long watermark = activityCounterDao.getWatermark();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "activity-counter-backfill-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            LoggingUtils.logSystemStatus(String.format("开始回填用户活动计数器 - 水位: %d, 并行数: %d", watermark, parallelism));
+            Map<ActivityCounterDao.CounterKey, Integer> totals = new ConcurrentHashMap<>();
+            List<CompletableFuture<Void>> chunks = new ArrayList<>();
+            for (long from = 0; from < watermark; from += chunkSize) {
+                long fromExclusive = from;
+                long toInclusive = Math.min(watermark, from + chunkSize);
+                chunks.add(CompletableFuture.runAsync(() ->
+                        activityCounterDao.countRange(fromExclusive, toInclusive)
+                                .forEach((key, count) -> totals.merge(key, count, Integer::sum)), executor));
+            }
+            CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).join();
+            activityCounterDao.completeBackfill(totals);
+            LoggingUtils.logSystemStatus(String.format("用户活动计数器回填完成 - 分段: %d, 计数器: %d", chunks.size(), totals.size()));
+            LoggingUtils.logPerformance("activityCounterBackfill", startTime);
+        } catch (Exception e) {
+            LoggingUtils.logError("ACTIVITY_COUNTER_BACKFILL_ERROR", "回填用户活动计数器失败，将在下次启动时重试", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
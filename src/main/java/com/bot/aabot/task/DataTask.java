@@ -2,6 +2,8 @@ package com.bot.aabot.task;
 
 import com.bot.aabot.initializer.BotContext;
 import com.bot.aabot.context.DataContext;
+import com.bot.aabot.dao.AppliedUpdateDao;
+import com.bot.aabot.dao.LogPartitionDao;
 import com.bot.aabot.utils.SQLiteUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +11,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.util.Date;
 
 /**
@@ -26,32 +29,23 @@ import java.util.Date;
 public class DataTask {
     @Autowired
     private SQLiteUtil sqLiteUtil;
+    @Autowired
+    private LogPartitionDao logPartitionDao;
+    @Autowired
+    private AppliedUpdateDao appliedUpdateDao;
 
 
     @Scheduled(cron = "0 0 0 * * ?")
     public void upTableName() {
         if("one".equals(BotContext.OneOrEveryday)){
-            DataContext.tableName = "log" ;
             DataContext.resTableName = "res";
         }else {
-            DataContext.tableName = "log_" + new Date().toString().substring(24, 28).substring(2) + "_" + (new Date().getMonth() + 1) + "_" + new Date().toString().substring(8, 10);
             DataContext.resTableName = "res_" + new Date().toString().substring(24, 28).substring(2) + "_" + (new Date().getMonth() + 1) + "_" + new Date().toString().substring(8, 10);
-
         }
-        String sql = "CREATE TABLE IF NOT EXISTS " + DataContext.tableName +"( " +
-                "    log_id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                "    form_name TEXT,              " +
-                "    message_id INTEGER,          " +
-                "    user_id TEXT,                " +
-                "    user_name TEXT,              " +
-                "    message_type TEXT,           " +
-                "    message TEXT,  " +
-                "    is_edit INTEGER DEFAULT 0,    " +
-                "     send_time TEXT            "+
-                ");";
-        sqLiteUtil.createTable(sql);
+        // 消息日志分区提前一天创建，这里确保当天与次日的分区存在
+        logPartitionDao.rollover(LocalDate.now());
 
-        sql = "CREATE TABLE IF NOT EXISTS "+DataContext.resTableName+ "(" +
+        String sql = "CREATE TABLE IF NOT EXISTS "+DataContext.resTableName+ "(" +
                 "    id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 "    original_question TEXT NOT NULL, " +
                 "    message_id INTEGER UNIQUE,  " +
@@ -63,4 +57,12 @@ public class DataTask {
                 ");";
         sqLiteUtil.createTable(sql);
     }
+
+    /**
+     * 清理过期的更新阶段登记
+     */
+    @Scheduled(cron = "0 30 0 * * ?")
+    public void purgeAppliedUpdates() {
+        appliedUpdateDao.purgeExpired();
+    }
 }
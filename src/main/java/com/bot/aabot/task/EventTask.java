@@ -6,6 +6,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 
 import com.bot.aabot.dao.ScoreDao;
 import com.bot.aabot.service.GPTService;
+import com.bot.aabot.service.PointAccumulator;
 import com.bot.aabot.utils.LoggingUtils;
 
 import java.time.LocalDate;
@@ -39,6 +40,8 @@ public class EventTask {
     public ObjectMapper objectMapper;
     @Autowired
     private GroupDao groupDao;
+    @Autowired
+    private PointAccumulator pointAccumulator;
 
 
     /**
@@ -84,7 +87,7 @@ public class EventTask {
                         .chatId(summaryTargetGroup)
                         .text(sb.toString())
                         .build();
-                BotReplyUtil.reply(sendMessage, null);
+                BotReplyUtil.notify(sendMessage);
                 
                 // 在每两次总结之间添加2秒延时（除了最后一次）
                 if (i < groupTopicMessages.size() - 1) {
@@ -147,6 +150,9 @@ public class EventTask {
         try {
             LoggingUtils.logOperation("CALCULATE_FINAL_POINTS_START", "system", "开始执行用户最终积分计算任务");
             
+            // 先写入内存中的积分增量，再读取积分表
+            pointAccumulator.flush();
+
             // 1. 获取正在进行中和结束两天内的活动
             List<com.bot.aabot.entity.EventRecord> events = scoreDao.getActiveAndRecentEndedEvents();
             LoggingUtils.logOperation("CALCULATE_FINAL_POINTS_EVENTS", "system", 
@@ -259,7 +265,7 @@ public class EventTask {
                         .chatId(summaryTargetGroup)
                         .text(sb.toString())
                         .build();
-                BotReplyUtil.reply(sendMessage, null);
+                BotReplyUtil.notify(sendMessage);
                 
                 // 在每两次总结之间添加2秒延时（除了最后一次）
                 if (index < weeklyGroupTopicMessages.size() - 1) {
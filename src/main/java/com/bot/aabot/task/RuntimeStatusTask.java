@@ -0,0 +1,71 @@
+package com.bot.aabot.task;
+
+import com.bot.aabot.service.DependencyLimiter;
+import com.bot.aabot.service.EventScheduleCache;
+import com.bot.aabot.service.FloodLimiter;
+import com.bot.aabot.service.MessageLogWriter;
+import com.bot.aabot.service.ModerationPipeline;
+import com.bot.aabot.service.NearDuplicateDetector;
+import com.bot.aabot.service.PointAccumulator;
+import com.bot.aabot.service.SpamClassifierService;
+import com.bot.aabot.service.TelegramSendGateway;
+import com.bot.aabot.service.UpdateDispatcher;
+import com.bot.aabot.service.UpdateJournal;
+import com.bot.aabot.utils.LoggingUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 运行时状态报告任务
+ * 定期输出执行模式、分发通道和依赖并发限制的状态，便于对比不同执行模式下的表现
+ */
+@Component
+public class RuntimeStatusTask {
+
+    @Autowired
+    private DependencyLimiter dependencyLimiter;
+    @Autowired
+    private UpdateDispatcher updateDispatcher;
+    @Autowired
+    private UpdateJournal updateJournal;
+    @Autowired
+    private TelegramSendGateway telegramSendGateway;
+    @Autowired
+    private NearDuplicateDetector nearDuplicateDetector;
+    @Autowired
+    private FloodLimiter floodLimiter;
+    @Autowired
+    private SpamClassifierService spamClassifierService;
+    @Autowired
+    private ModerationPipeline moderationPipeline;
+    @Autowired
+    private MessageLogWriter messageLogWriter;
+    @Autowired
+    private PointAccumulator pointAccumulator;
+    @Autowired
+    private EventScheduleCache eventScheduleCache;
+
+    /**
+     * 每5分钟输出一次运行时状态
+     */
+    @Scheduled(fixedRate = 300000)
+    public void runtimeStatusReport() {
+        try {
+            LoggingUtils.logSystemStatus(String.format("运行时状态报告 - %s", dependencyLimiter.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("分发通道状态 - 排队总数: %d, %s",
+                    updateDispatcher.getPendingCount(), updateDispatcher.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("预写日志状态 - %s", updateJournal.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("出站发送网关状态 - %s", telegramSendGateway.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("近似重复检测状态 - %s", nearDuplicateDetector.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("刷屏限流状态 - %s", floodLimiter.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("广告模型状态 - %s", spamClassifierService.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("广告处置流水线状态 - %s", moderationPipeline.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("消息日志写入器状态 - %s", messageLogWriter.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("积分累加器状态 - %s", pointAccumulator.getStatusSummary()));
+            LoggingUtils.logSystemStatus(String.format("活动时间表缓存状态 - %s", eventScheduleCache.getStatusSummary()));
+        } catch (Exception e) {
+            LoggingUtils.logError("RUNTIME_STATUS_ERROR", "运行时状态报告失败", e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.bot.aabot.utils;
 
+import com.bot.aabot.service.TelegramSendGateway;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
@@ -10,6 +11,8 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.api.objects.message.MaybeInaccessibleMessage;
 
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 @Component
 public class BotReplyUtil implements ApplicationContextAware {
@@ -21,9 +24,16 @@ public class BotReplyUtil implements ApplicationContextAware {
     }
 
     /**
-     * 统一回复方法，自动判断并设置threadId（话题id）
+     * 获取出站发送网关
+     */
+    public static TelegramSendGateway sendGateway() {
+        return context.getBean(TelegramSendGateway.class);
+    }
+
+    /**
+     * 统一回复方法，自动判断并设置threadId（话题id），经发送网关异步发送
      */
-    public static void reply(SendMessage message, Update update) {
+    public static CompletableFuture<Message> reply(SendMessage message, Update update) {
         LoggingUtils.logOperation("BOT_REPLY", String.valueOf(update != null && update.getMessage() != null ? update.getMessage().getFrom().getId() : "unknown"), message.getText());
         try {
             Message msg = null;
@@ -46,15 +56,37 @@ public class BotReplyUtil implements ApplicationContextAware {
                     message.setMessageThreadId(msg.getMessageThreadId());
                 }
             }
-            Object bot = context.getBean("tgBot");
-            bot.getClass().getMethod("replyMessage", SendMessage.class).invoke(bot, message);
-            LoggingUtils.logOperation("BOT_REPLY", String.valueOf(msg != null ? msg.getFrom().getId() : "unknown"), "发送消息成功");
+            String userId = String.valueOf(msg != null && msg.getFrom() != null ? msg.getFrom().getId() : "unknown");
+            return sendGateway().submit(TelegramSendGateway.chatIdOf(message.getChatId()),
+                            TelegramSendGateway.SendPriority.REPLY, message)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            log.error("[BOT_REPLY_ERROR] 发送消息失败", e);
+                            LoggingUtils.logError("BOT_REPLY_ERROR", "发送消息失败" + message.getEntities(), new RuntimeException(e));
+                        } else {
+                            LoggingUtils.logOperation("BOT_REPLY", userId, "发送消息成功");
+                        }
+                    });
         } catch (Exception e) {
             log.error("[BOT_REPLY_ERROR] 发送消息失败", e);
-            LoggingUtils.logError("BOT_REPLY_ERROR", "发送消息失败" +message.getEntities().toString(), e);// 返回按钮信息
+            LoggingUtils.logError("BOT_REPLY_ERROR", "发送消息失败" +message.getEntities(), e);// 返回按钮信息
+            return CompletableFuture.failedFuture(e);
         }
     }
 
+    /**
+     * 发送通知（活动提醒、消息总结等），同一会话尚未发出的通知会被合并为一条
+     */
+    public static CompletableFuture<Message> notify(SendMessage message) {
+        LoggingUtils.logOperation("BOT_NOTIFY", String.valueOf(message.getChatId()), message.getText());
+        return sendGateway().notify(message)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        LoggingUtils.logError("BOT_NOTIFY_ERROR", "发送通知失败", new RuntimeException(e));
+                    }
+                });
+    }
+
     public static String getThreadId(Update update){
         String threadId = null;
         // 获取thread_id
@@ -0,0 +1,144 @@
+package com.bot.aabot.utils;
+
+import com.bot.aabot.entity.EventRecord;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ClassName: EventSchedule
+ * Package: com.bot.aabot.utils
+ * Description: 活动时间表的不可变快照。
+ * 每个群组的活动按开始时间排序存放为区间数组，构建时预先算出给定时刻进行中的活动列表和下一个开始/结束边界，
+ * 查询进行中的活动只是一次 Map 查找，不产生新对象；到达边界时用 {@link #at} 基于同一组区间重新计算。
+ * 判定规则与原 SQL 条件 datetime('now') BETWEEN datetime(start_time) AND datetime(end_time) 一致：
+ * 时间按 SQLite 的 datetime('now') 同样以 UTC 解释，精确到秒，结束时间所在的那一秒仍算进行中。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+public final class EventSchedule {
+
+    private final Map<String, GroupIntervals> intervals;
+    private final Map<String, List<EventRecord>> active;
+    private final long nextBoundary;
+
+    private EventSchedule(Map<String, GroupIntervals> intervals, long now) {
+        this.intervals = intervals;
+        Map<String, List<EventRecord>> activeByGroup = new HashMap<>();
+        long boundary = Long.MAX_VALUE;
+        for (Map.Entry<String, GroupIntervals> entry : intervals.entrySet()) {
+            GroupIntervals group = entry.getValue();
+            List<EventRecord> groupActive = new ArrayList<>();
+            for (int i = 0; i < group.starts.length; i++) {
+                long start = group.starts[i];
+                long endExclusive = group.ends[i] + 1000;
+                if (start > now) {
+                    // 按开始时间排序，之后的活动都未开始
+                    boundary = Math.min(boundary, start);
+                    break;
+                }
+                if (now < endExclusive) {
+                    groupActive.add(group.events[i]);
+                    boundary = Math.min(boundary, endExclusive);
+                }
+            }
+            if (!groupActive.isEmpty()) {
+                // 与原查询一致按活动ID顺序返回
+                groupActive.sort(Comparator.comparing(EventRecord::getEventId, Comparator.nullsLast(Comparator.naturalOrder())));
+                activeByGroup.put(entry.getKey(), Collections.unmodifiableList(groupActive));
+            }
+        }
+        this.active = activeByGroup;
+        this.nextBoundary = boundary;
+    }
+
+    /**
+     * 由活动记录构建时间表，时间无法解析的活动视为永不进行
+     * @param events 全部活动
+     * @param now 当前时间（毫秒）
+     */
+    public static EventSchedule build(List<EventRecord> events, long now) {
+        Map<String, List<Object[]>> byGroup = new HashMap<>();
+        for (EventRecord event : events) {
+            long start = parse(event.getStartTime());
+            long end = parse(event.getEndTime());
+            if (event.getEventGroupId() == null || start == Long.MIN_VALUE || end == Long.MIN_VALUE || end < start) {
+                continue;
+            }
+            byGroup.computeIfAbsent(event.getEventGroupId(), k -> new ArrayList<>()).add(new Object[]{start, end, event});
+        }
+        Map<String, GroupIntervals> intervals = new HashMap<>();
+        byGroup.forEach((groupId, list) -> {
+            list.sort(Comparator.comparingLong(entry -> (Long) entry[0]));
+            GroupIntervals group = new GroupIntervals(list.size());
+            for (int i = 0; i < list.size(); i++) {
+                group.starts[i] = (Long) list.get(i)[0];
+                group.ends[i] = (Long) list.get(i)[1];
+                group.events[i] = (EventRecord) list.get(i)[2];
+            }
+            intervals.put(groupId, group);
+        });
+        return new EventSchedule(intervals, now);
+    }
+
+    /**
+     * 基于同一组活动区间计算另一时刻的时间表
+     */
+    public EventSchedule at(long now) {
+        return new EventSchedule(intervals, now);
+    }
+
+    /**
+     * 群组中进行中的活动（不可修改）
+     */
+    public List<EventRecord> activeEvents(String groupId) {
+        List<EventRecord> events = active.get(groupId);
+        return events != null ? events : List.of();
+    }
+
+    /**
+     * 下一个活动开始或结束的时刻（毫秒），没有时返回 Long.MAX_VALUE
+     */
+    public long nextBoundary() {
+        return nextBoundary;
+    }
+
+    /**
+     * 按 SQLite datetime() 接受的常见格式解析为 UTC 毫秒，失败返回 Long.MIN_VALUE
+     */
+    static long parse(String time) {
+        if (time == null || time.isBlank()) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            String value = time.trim();
+            LocalDateTime dateTime = value.length() == 10
+                    ? LocalDate.parse(value).atStartOfDay()
+                    : LocalDateTime.parse(value.replace(' ', 'T'));
+            return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (Exception e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static final class GroupIntervals {
+        private final long[] starts;
+        private final long[] ends;
+        private final EventRecord[] events;
+
+        private GroupIntervals(int size) {
+            this.starts = new long[size];
+            this.ends = new long[size];
+            this.events = new EventRecord[size];
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.bot.aabot.utils;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ClassName: FingerprintRing
+ * Package: com.bot.aabot.utils
+ * Description: 固定容量的无锁指纹环形窗口，带分段索引。
+ * 每条记录保存 SimHash 指纹与发送者ID，写满后覆盖最旧的记录。
+ * 64位指纹切成4段各16位，每段建立“段值 → 最近记录”的哈希链；按鸽巢原理，汉明距离不超过3的两个指纹至少有一段完全相同，
+ * 因此查询只需沿4条链检查少量候选，而不必线性扫描整个窗口。
+ * 写入通过原子递增的序号领取槽位，槽位序号兼作版本号，读取方在读前后校验序号，读到正在被覆盖的记录时直接放弃该链。
+ * 记录字段是普通数组，写入方在清零序号后、读取方在复查序号前各加一道内存屏障，防止普通读写越过序号校验被重排。
+ * 并发写入时链头更新可能互相覆盖而丢失个别候选，这对近似去重的判断可以接受。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/17
+ */
+public final class FingerprintRing {
+
+    /** 分段数 */
+    public static final int BANDS = 4;
+    /** 保证不漏检的最大汉明距离 */
+    public static final int MAX_GUARANTEED_DISTANCE = BANDS - 1;
+
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final long BAND_MASK = (1L << BAND_BITS) - 1;
+
+    private final int capacity;
+    private final int bucketMask;
+    private final int maxProbe;
+    private final AtomicLong cursor = new AtomicLong();
+    // 槽位当前记录的序号+1，0表示空或正在写入
+    private final AtomicLongArray sequences;
+    private final long[] fingerprints;
+    private final long[] owners;
+    // 每段的链头（序号+1），下标为 band * 桶数 + 桶
+    private final AtomicLongArray heads;
+    // 每段链上的前一条记录（序号+1），下标为 band * capacity + 槽位
+    private final long[] next;
+
+    /**
+     * @param capacity 窗口容量
+     * @param maxProbe 每段链最多检查的候选数
+     */
+    public FingerprintRing(int capacity, int maxProbe) {
+        this.capacity = Math.max(1, capacity);
+        this.maxProbe = Math.max(1, maxProbe);
+        // 桶数取不小于容量的2的幂，且不超过段值的取值范围
+        int buckets = Integer.highestOneBit(Math.min(1 << BAND_BITS, Math.max(2, this.capacity) * 2 - 1));
+        this.bucketMask = buckets - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.fingerprints = new long[this.capacity];
+        this.owners = new long[this.capacity];
+        this.heads = new AtomicLongArray(BANDS * buckets);
+        this.next = new long[BANDS * this.capacity];
+    }
+
+    /**
+     * 写入一条记录
+     * @param fingerprint 指纹（0表示无指纹，忽略）
+     * @param owner 发送者ID
+     */
+    public void add(long fingerprint, long owner) {
+        if (fingerprint == 0L) {
+            return;
+        }
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence % capacity);
+        sequences.set(slot, 0L);
+        // 序号清零先于记录字段的写入对读取方可见
+        VarHandle.storeStoreFence();
+        fingerprints[slot] = fingerprint;
+        owners[slot] = owner;
+        for (int band = 0; band < BANDS; band++) {
+            int head = band * (bucketMask + 1) + bucket(fingerprint, band);
+            next[band * capacity + slot] = heads.getAndSet(head, sequence + 1);
+        }
+        // 最后发布序号，读取方看到序号即可看到完整记录
+        sequences.set(slot, sequence + 1);
+    }
+
+    /**
+     * 查找与指纹相近的记录，并收集不同的发送者
+     * @param fingerprint 指纹
+     * @param maxDistance 最大汉明距离（超过 {@link #MAX_GUARANTEED_DISTANCE} 时可能漏检）
+     * @param excludeOwner 排除的发送者（通常为当前用户）
+     * @param found 已收集的发送者，新找到的追加在后面
+     * @param count found 中已有的数量
+     * @return 收集后的发送者数量，达到 found.length 时提前返回
+     */
+    public int collectOwners(long fingerprint, int maxDistance, long excludeOwner, long[] found, int count) {
+        if (fingerprint == 0L) {
+            return count;
+        }
+        long oldest = cursor.get() - capacity;
+        for (int band = 0; band < BANDS && count < found.length; band++) {
+            long bandValue = bandValue(fingerprint, band);
+            long link = heads.get(band * (bucketMask + 1) + bucket(fingerprint, band));
+            for (int probe = 0; link != 0L && probe < maxProbe; probe++) {
+                long sequence = link - 1;
+                if (sequence < oldest) {
+                    break; // 链上更早的记录均已被覆盖
+                }
+                int slot = (int) (sequence % capacity);
+                if (sequences.get(slot) != link) {
+                    break;
+                }
+                long candidate = fingerprints[slot];
+                long owner = owners[slot];
+                long previous = next[band * capacity + slot];
+                // 记录字段的读取不能重排到复查序号之后
+                VarHandle.acquireFence();
+                if (sequences.get(slot) != link) {
+                    break; // 读取期间被覆盖
+                }
+                if (bandValue(candidate, band) == bandValue
+                        && owner != excludeOwner
+                        && SimHash.distance(candidate, fingerprint) <= maxDistance
+                        && !contains(found, count, owner)) {
+                    found[count++] = owner;
+                    if (count >= found.length) {
+                        return count;
+                    }
+                }
+                link = previous;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 窗口容量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 窗口内的记录数
+     */
+    public int size() {
+        return (int) Math.min(capacity, cursor.get());
+    }
+
+    private int bucket(long fingerprint, int band) {
+        return (int) bandValue(fingerprint, band) & bucketMask;
+    }
+
+    private static long bandValue(long fingerprint, int band) {
+        return (fingerprint >>> (band * BAND_BITS)) & BAND_MASK;
+    }
+
+    private static boolean contains(long[] values, int count, long value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
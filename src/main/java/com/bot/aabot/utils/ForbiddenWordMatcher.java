@@ -0,0 +1,208 @@
+package com.bot.aabot.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ClassName: ForbiddenWordMatcher
+ * Package: com.bot.aabot.utils
+ * Description: 违禁词多模式匹配器（Aho-Corasick 自动机）。
+ * 构建后不可变，可在多个线程间共享；转移表按节点压平为基本类型数组（按字符排序后二分查找）。
+ * 匹配时一次线性扫描，边扫描边经 TextNormalizer 逐字符规范化（全角转半角、跳过空白与标点、转小写），
+ * 不产生任何对象分配。
+ *
+ * @author fuchen
+ * @version 1.1
+ * @createTime 2025/9/16
+ */
+public final class ForbiddenWordMatcher {
+
+    private static final ForbiddenWordMatcher EMPTY = compile(List.of());
+
+    // 按原始顺序保存的违禁词（清洗后）
+    private final String[] words;
+    // 节点 i 的出边位于 [edgeStart[i], edgeStart[i + 1])，按字符升序
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    // 失败指针
+    private final int[] fail;
+    // 到达该节点时命中的最小违禁词下标（含失败链上的后缀），-1表示无
+    private final int[] match;
+
+    private ForbiddenWordMatcher(String[] words, int[] edgeStart, char[] edgeChars, int[] edgeTargets,
+                                 int[] fail, int[] match) {
+        this.words = words;
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.match = match;
+    }
+
+    /**
+     * 空匹配器
+     */
+    public static ForbiddenWordMatcher empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 编译违禁词列表，清洗后为空的词会被忽略
+     * @param rawWords 违禁词（按优先顺序）
+     */
+    public static ForbiddenWordMatcher compile(List<String> rawWords) {
+        List<String> words = new ArrayList<>(rawWords.size());
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> nodeMatch = new ArrayList<>();
+        children.add(new TreeMap<>());
+        nodeMatch.add(-1);
+        int edgeCount = 0;
+        for (String rawWord : rawWords) {
+            String word = TextNormalizer.normalize(rawWord);
+            if (word.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                Integer next = children.get(node).get(word.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.get(node).put(word.charAt(i), next);
+                    children.add(new TreeMap<>());
+                    nodeMatch.add(-1);
+                    edgeCount++;
+                }
+                node = next;
+            }
+            // 重复的词保留最先出现的下标
+            if (nodeMatch.get(node) < 0) {
+                nodeMatch.set(node, words.size());
+            }
+            words.add(word);
+        }
+
+        int nodeCount = children.size();
+        int[] edgeStart = new int[nodeCount + 1];
+        char[] edgeChars = new char[edgeCount];
+        int[] edgeTargets = new int[edgeCount];
+        int position = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            edgeStart[node] = position;
+            for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                edgeChars[position] = edge.getKey();
+                edgeTargets[position] = edge.getValue();
+                position++;
+            }
+        }
+        edgeStart[nodeCount] = position;
+
+        int[] fail = new int[nodeCount];
+        int[] match = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            match[node] = nodeMatch.get(node);
+        }
+        ForbiddenWordMatcher matcher = new ForbiddenWordMatcher(words.toArray(new String[0]),
+                edgeStart, edgeChars, edgeTargets, fail, match);
+
+        // 按层次遍历计算失败指针，并沿失败链合并命中信息
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                char c = edgeChars[e];
+                int child = edgeTargets[e];
+                int f = fail[node];
+                int target = matcher.child(f, c);
+                while (target < 0 && f != 0) {
+                    f = fail[f];
+                    target = matcher.child(f, c);
+                }
+                fail[child] = target < 0 ? 0 : target;
+                match[child] = min(match[child], match[fail[child]]);
+                queue.add(child);
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * 查找文本中命中的违禁词
+     * @param text 原始文本（无需预先清洗）
+     * @return 命中的违禁词中在列表里最靠前的一个，未命中返回null
+     */
+    public String findFirst(CharSequence text) {
+        int index = indexOf(text);
+        return index < 0 ? null : words[index];
+    }
+
+    /**
+     * 查找文本中命中的违禁词下标
+     * @param text 原始文本（无需预先清洗）
+     * @return 命中的违禁词中最小的下标，未命中返回-1
+     */
+    public int indexOf(CharSequence text) {
+        if (text == null || words.length == 0) {
+            return -1;
+        }
+        int state = 0;
+        int best = -1;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = TextNormalizer.fold(text.charAt(i));
+            if (c == TextNormalizer.IGNORED) {
+                continue;
+            }
+            int next = child(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = child(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            best = min(best, match[state]);
+            if (best == 0) {
+                return 0;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 违禁词数量
+     */
+    public int size() {
+        return words.length;
+    }
+
+    private int child(int node, char c) {
+        int low = edgeStart[node];
+        int high = edgeStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChars[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static int min(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,107 @@
+package com.bot.aabot.utils;
+
+/**
+ * ClassName: LongPairMap
+ * Package: com.bot.aabot.utils
+ * Description: 以两个 long（如群组ID、用户ID）为键的开放寻址哈希表。
+ * 键分别存放在两个 long 数组中，不装箱也不创建键对象；装载率超过3/4时扩容。
+ * 非线程安全，由调用方加锁；不支持删除，适合只增不减的缓存。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+public final class LongPairMap<V> {
+
+    private long[] firstKeys;
+    private long[] secondKeys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * @param expectedSize 预计条目数
+     */
+    public LongPairMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 4 / 3) * 2 - 1);
+        allocate(capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long first, long second) {
+        int mask = values.length - 1;
+        for (int index = indexFor(first, second, mask); ; index = (index + 1) & mask) {
+            Object value = values[index];
+            if (value == null) {
+                return null;
+            }
+            if (firstKeys[index] == first && secondKeys[index] == second) {
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * 写入或替换条目
+     * @param value 不能为null
+     */
+    public void put(long first, long second, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        if (size >= values.length - (values.length >> 2)) {
+            resize();
+        }
+        int mask = values.length - 1;
+        for (int index = indexFor(first, second, mask); ; index = (index + 1) & mask) {
+            if (values[index] == null) {
+                firstKeys[index] = first;
+                secondKeys[index] = second;
+                values[index] = value;
+                size++;
+                return;
+            }
+            if (firstKeys[index] == first && secondKeys[index] == second) {
+                values[index] = value;
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldFirst = firstKeys;
+        long[] oldSecond = secondKeys;
+        Object[] oldValues = values;
+        allocate(oldValues.length * 2);
+        int mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+            int index = indexFor(oldFirst[i], oldSecond[i], mask);
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            firstKeys[index] = oldFirst[i];
+            secondKeys[index] = oldSecond[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        firstKeys = new long[capacity];
+        secondKeys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    private static int indexFor(long first, long second, int mask) {
+        long h = first * 0x9E3779B97F4A7C15L + second;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
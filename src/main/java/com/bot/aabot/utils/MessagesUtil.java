@@ -1,6 +1,7 @@
 package com.bot.aabot.utils;
 
 import com.bot.aabot.config.BotConfig;
+import com.bot.aabot.service.TelegramSendGateway;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -15,6 +16,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * ClassName: MessagesUtil
@@ -31,13 +33,12 @@ public class MessagesUtil {
     @Autowired
     private BotConfig botConfig;
     /**
-     * 清理消息文本（去除空格、标点符号等）
+     * 清理消息文本（全角转半角，去除空白、标点符号，转小写）
      * @param text
      * @return
      */
     public static String cleanMessageText(String text) {
-        if (text == null) return "";
-        return text.replaceAll("[\\s,。;、]", "").toLowerCase();
+        return TextNormalizer.normalize(text);
     }
 
     /**
@@ -75,25 +76,31 @@ public class MessagesUtil {
     /**
      * 撤回消息
      */
-    public static void deleteMessage(Object bot, Long chatId, Integer messageId) {
+    public static CompletableFuture<Boolean> deleteMessage(Long chatId, Integer messageId) {
         try {
             DeleteMessage deleteMessage = DeleteMessage.builder()
                     .chatId(String.valueOf(chatId))
                     .messageId(messageId)
                     .build();
 
-            // 使用bot的deleteMessage方法来执行删除操作
-            bot.getClass().getMethod("deleteMessage", DeleteMessage.class).invoke(bot, deleteMessage);
-
+            // 经发送网关以审核优先级异步执行
+            return BotReplyUtil.sendGateway()
+                    .submit(chatId, TelegramSendGateway.SendPriority.MODERATION, deleteMessage)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            LoggingUtils.logError("DELETE_MESSAGE_ERROR", "撤回消息失败", new RuntimeException(e));
+                        }
+                    });
         } catch (Exception e) {
             LoggingUtils.logError("DELETE_MESSAGE_ERROR", "撤回消息失败", e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     /**
      * 限制用户权限（临时禁言）
      */
-    public static void banUser(Object bot, Long chatId, Long userId, int duration) {
+    public static CompletableFuture<Boolean> banUser(Long chatId, Long userId, int duration) {
         try {
             // 使用RestrictChatMember来限制用户权限，而不是踢出群聊
             // 限制所有权限（禁言）
@@ -121,11 +128,17 @@ public class MessagesUtil {
                     .untilDate((int) (System.currentTimeMillis() / 1000 + duration))
                     .build();
 
-            // 使用bot的restrictUser方法来执行限制操作
-            bot.getClass().getMethod("restrictUser", RestrictChatMember.class).invoke(bot, restrictChatMember);
-
+            // 经发送网关以审核优先级异步执行
+            return BotReplyUtil.sendGateway()
+                    .submit(chatId, TelegramSendGateway.SendPriority.MODERATION, restrictChatMember)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            LoggingUtils.logError("RESTRICT_USER_ERROR", "限制用户权限失败", new RuntimeException(e));
+                        }
+                    });
         } catch (Exception e) {
             LoggingUtils.logError("RESTRICT_USER_ERROR", "限制用户权限失败", e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 }
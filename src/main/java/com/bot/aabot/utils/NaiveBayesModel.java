@@ -0,0 +1,208 @@
+package com.bot.aabot.utils;
+
+/**
+ * ClassName: NaiveBayesModel
+ * Package: com.bot.aabot.utils
+ * Description: 基于哈希特征的多项式朴素贝叶斯广告模型。
+ * 文本经 TextNormalizer 规范化后取单字与相邻双字作为特征，特征哈希到 2^bits 个槽位，
+ * 广告/正常两类的计数保存在 int 数组中；训练支持增量加减（管理员纠正误判时撤销原标注）。
+ * 训练串行执行，评分不加锁，读到训练中途的计数只会使分数有微小偏差。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/18
+ */
+public final class NaiveBayesModel {
+
+    /** 文档数计数在持久化时使用的特征号 */
+    public static final int DOCS_FEATURE = -1;
+
+    private final int mask;
+    private final int[] spamCounts;
+    private final int[] hamCounts;
+    private final long[] dirty;
+    private volatile long spamTokens;
+    private volatile long hamTokens;
+    private volatile int spamDocs;
+    private volatile int hamDocs;
+    private boolean docsDirty;
+
+    /**
+     * @param bits 特征槽位数的位数
+     */
+    public NaiveBayesModel(int bits) {
+        int size = 1 << Math.max(8, Math.min(24, bits));
+        this.mask = size - 1;
+        this.spamCounts = new int[size];
+        this.hamCounts = new int[size];
+        this.dirty = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * 增量训练
+     * @param text 原始文本
+     * @param spam 是否为广告
+     * @param delta 1表示加入样本，-1表示撤销之前加入的样本
+     * @return 文本规范化后没有特征时返回false
+     */
+    public synchronized boolean train(CharSequence text, boolean spam, int delta) {
+        if (text == null) {
+            return false;
+        }
+        char[] buffer = TextNormalizer.acquire(text.length());
+        try {
+            int length = TextNormalizer.normalizeInto(text, buffer);
+            if (length == 0) {
+                return false;
+            }
+            int[] counts = spam ? spamCounts : hamCounts;
+            long tokens = 0;
+            for (int i = 0; i < length; i++) {
+                tokens += add(counts, feature(buffer, i, 1), delta);
+                if (i + 1 < length) {
+                    tokens += add(counts, feature(buffer, i, 2), delta);
+                }
+            }
+            if (spam) {
+                spamTokens = Math.max(0, spamTokens + tokens);
+                spamDocs = Math.max(0, spamDocs + delta);
+            } else {
+                hamTokens = Math.max(0, hamTokens + tokens);
+                hamDocs = Math.max(0, hamDocs + delta);
+            }
+            docsDirty = true;
+            return true;
+        } finally {
+            TextNormalizer.release(buffer);
+        }
+    }
+
+    /**
+     * 计算文本为广告的概率
+     * @param text 原始文本
+     * @param minLength 规范化后的最小长度，过短时返回0
+     * @return 0~1之间的概率
+     */
+    public double spamProbability(CharSequence text, int minLength) {
+        if (text == null || spamDocs == 0 || hamDocs == 0) {
+            return 0;
+        }
+        char[] buffer = TextNormalizer.acquire(text.length());
+        try {
+            int length = TextNormalizer.normalizeInto(text, buffer);
+            if (length == 0 || length < minLength) {
+                return 0;
+            }
+            // 拉普拉斯平滑，词表大小取槽位数
+            double spamTotal = spamTokens + (double) (mask + 1);
+            double hamTotal = hamTokens + (double) (mask + 1);
+            double logOdds = Math.log(spamDocs) - Math.log(hamDocs);
+            double tokenPrior = Math.log(hamTotal) - Math.log(spamTotal);
+            for (int i = 0; i < length; i++) {
+                int f = feature(buffer, i, 1);
+                logOdds += Math.log(spamCounts[f] + 1.0) - Math.log(hamCounts[f] + 1.0) + tokenPrior;
+                if (i + 1 < length) {
+                    f = feature(buffer, i, 2);
+                    logOdds += Math.log(spamCounts[f] + 1.0) - Math.log(hamCounts[f] + 1.0) + tokenPrior;
+                }
+            }
+            return 1.0 / (1.0 + Math.exp(-logOdds));
+        } finally {
+            TextNormalizer.release(buffer);
+        }
+    }
+
+    /**
+     * 两类样本数是否都达到要求
+     */
+    public boolean isReady(int minDocs) {
+        return spamDocs >= minDocs && hamDocs >= minDocs;
+    }
+
+    public int getSpamDocs() {
+        return spamDocs;
+    }
+
+    public int getHamDocs() {
+        return hamDocs;
+    }
+
+    /**
+     * 加载持久化的计数
+     * @param feature 特征号，{@link #DOCS_FEATURE} 表示文档数
+     */
+    public synchronized void load(int feature, int spam, int ham) {
+        if (feature == DOCS_FEATURE) {
+            spamDocs = spam;
+            hamDocs = ham;
+            return;
+        }
+        if (feature < 0 || feature > mask) {
+            return; // 特征位数调整后旧数据不再适用
+        }
+        spamTokens += spam - spamCounts[feature];
+        hamTokens += ham - hamCounts[feature];
+        spamCounts[feature] = spam;
+        hamCounts[feature] = ham;
+    }
+
+    /**
+     * 取出自上次以来变化的计数并清除标记
+     * @param visitor 接收 (特征号, 广告计数, 正常计数)
+     * @return 变化的条目数
+     */
+    public synchronized int drainDirty(CountVisitor visitor) {
+        int drained = 0;
+        for (int word = 0; word < dirty.length; word++) {
+            long bits = dirty[word];
+            while (bits != 0) {
+                int feature = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                visitor.visit(feature, spamCounts[feature], hamCounts[feature]);
+                drained++;
+            }
+            dirty[word] = 0;
+        }
+        if (docsDirty) {
+            visitor.visit(DOCS_FEATURE, spamDocs, hamDocs);
+            docsDirty = false;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * 重新标记为已变化（写入失败时调用，下次再写）
+     */
+    public synchronized void markDirty(int feature) {
+        if (feature == DOCS_FEATURE) {
+            docsDirty = true;
+        } else if (feature >= 0 && feature <= mask) {
+            dirty[feature >>> 6] |= 1L << (feature & 63);
+        }
+    }
+
+    private int add(int[] counts, int feature, int delta) {
+        int before = counts[feature];
+        int after = Math.max(0, before + delta);
+        counts[feature] = after;
+        dirty[feature >>> 6] |= 1L << (feature & 63);
+        return after - before;
+    }
+
+    private int feature(char[] buffer, int index, int width) {
+        long key = width == 1 ? buffer[index] : ((long) buffer[index] << 16 | buffer[index + 1]) | (1L << 40);
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * 计数访问器
+     */
+    @FunctionalInterface
+    public interface CountVisitor {
+        void visit(int feature, int spamCount, int hamCount);
+    }
+}
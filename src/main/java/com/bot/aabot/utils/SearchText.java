@@ -0,0 +1,129 @@
+package com.bot.aabot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ClassName: SearchText
+ * Package: com.bot.aabot.utils
+ * Description: 全文检索的文本处理。
+ * SQLite FTS5 的 unicode61 分词器不切分中日韩文字，整句会成为一个词元；
+ * 入库时在每个中日韩字符两侧插入空格使其按单字成词，查询时把关键词按同样方式切分后作为短语匹配，
+ * 相邻单字组成的短语即等价于子串匹配，英文数字仍按单词匹配。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/19
+ */
+public final class SearchText {
+
+    private SearchText() {
+    }
+
+    /**
+     * 生成入库的分词文本
+     */
+    public static String toIndexText(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length() * 2);
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                sb.append(' ').appendCodePoint(codePoint).append(' ');
+            } else {
+                sb.appendCodePoint(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把用户输入的关键词转换为 FTS5 查询：每个以空白分隔的关键词作为一个短语，多个关键词同时满足
+     * @return 没有可检索的字符时返回null
+     */
+    public static String toMatchQuery(String keywords) {
+        List<String> phrases = new ArrayList<>();
+        for (String term : splitTerms(keywords)) {
+            List<String> tokens = tokens(toIndexText(term));
+            if (!tokens.isEmpty()) {
+                // 词元只含字母数字，放入双引号中不需要转义
+                phrases.add('"' + String.join(" ", tokens) + '"');
+            }
+        }
+        return phrases.isEmpty() ? null : String.join(" AND ", phrases);
+    }
+
+    /**
+     * 截取命中关键词附近的片段
+     * @param text 原始消息
+     * @param keywords 用户输入的关键词
+     * @param radius 关键词前后保留的字符数
+     */
+    public static String snippet(String text, String keywords, int radius) {
+        if (text == null) {
+            return "";
+        }
+        String flat = text.replace('\n', ' ');
+        String lower = flat.toLowerCase();
+        int hit = -1;
+        int hitLength = 0;
+        for (String term : splitTerms(keywords)) {
+            int index = lower.indexOf(term.toLowerCase());
+            if (index >= 0 && (hit < 0 || index < hit)) {
+                hit = index;
+                hitLength = term.length();
+            }
+        }
+        if (hit < 0) {
+            hit = 0;
+        }
+        int start = Math.max(0, hit - radius);
+        int end = Math.min(flat.length(), hit + hitLength + radius);
+        return (start > 0 ? "…" : "") + flat.substring(start, end) + (end < flat.length() ? "…" : "");
+    }
+
+    private static List<String> splitTerms(String keywords) {
+        List<String> terms = new ArrayList<>();
+        if (keywords != null) {
+            for (String term : keywords.trim().split("\\s+")) {
+                if (!term.isEmpty()) {
+                    terms.add(term);
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 按 unicode61 的规则取出字母数字词元
+     */
+    private static List<String> tokens(String indexText) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < indexText.length(); ) {
+            int codePoint = indexText.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                current.appendCodePoint(codePoint);
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
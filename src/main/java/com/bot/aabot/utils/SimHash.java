@@ -0,0 +1,81 @@
+package com.bot.aabot.utils;
+
+import java.util.Arrays;
+
+/**
+ * ClassName: SimHash
+ * Package: com.bot.aabot.utils
+ * Description: 64位 SimHash 指纹。
+ * 文本经 TextNormalizer 规范化后按字符三元组切片，每个切片哈希后按位累加权重，权重为正的位置1；
+ * 内容相近的文本指纹之间的汉明距离较小。计算过程使用线程本地缓冲区，不产生对象分配。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/17
+ */
+public final class SimHash {
+
+    private static final int SHINGLE = 3;
+
+    private static final ThreadLocal<int[]> WEIGHTS = ThreadLocal.withInitial(() -> new int[64]);
+
+    private SimHash() {
+    }
+
+    /**
+     * 计算文本指纹
+     * @param text 原始文本
+     * @param minLength 规范化后的最小长度
+     * @return 指纹；文本规范化后短于 minLength（或不足一个切片）时返回0，表示不参与比较
+     */
+    public static long fingerprint(CharSequence text, int minLength) {
+        if (text == null) {
+            return 0L;
+        }
+        char[] buffer = TextNormalizer.acquire(text.length());
+        try {
+            int length = TextNormalizer.normalizeInto(text, buffer);
+            if (length < Math.max(SHINGLE, minLength)) {
+                return 0L;
+            }
+            int[] weights = WEIGHTS.get();
+            Arrays.fill(weights, 0);
+            for (int i = 0; i + SHINGLE <= length; i++) {
+                long shingle = ((long) buffer[i] << 32) | ((long) buffer[i + 1] << 16) | buffer[i + 2];
+                long hash = mix(shingle);
+                for (int bit = 0; bit < 64; bit++) {
+                    weights[bit] += (int) ((hash >>> bit) & 1L) * 2 - 1;
+                }
+            }
+            long fingerprint = 0L;
+            for (int bit = 0; bit < 64; bit++) {
+                if (weights[bit] > 0) {
+                    fingerprint |= 1L << bit;
+                }
+            }
+            // 0 保留为“无指纹”
+            return fingerprint == 0L ? 1L : fingerprint;
+        } finally {
+            TextNormalizer.release(buffer);
+        }
+    }
+
+    /**
+     * 两个指纹的汉明距离
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * 64位整数哈希（MurmurHash3 fmix64）
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
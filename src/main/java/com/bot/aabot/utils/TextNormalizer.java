@@ -0,0 +1,147 @@
+package com.bot.aabot.utils;
+
+/**
+ * ClassName: TextNormalizer
+ * Package: com.bot.aabot.utils
+ * Description: 消息文本规范化工具。
+ * 单次遍历完成：全角字符转半角、跳过空白与中英文标点、统一小写。
+ * 逐字符接口 {@link #fold(char)} 供违禁词匹配器、签到关键词比较等路径直接边扫描边规范化，不生成中间字符串；
+ * 需要得到规范化结果时写入线程本地复用的 char[] 缓冲区。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/17
+ */
+public final class TextNormalizer {
+
+    /** 表示该字符在规范化后被丢弃 */
+    public static final char IGNORED = '\0';
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    // 超过该长度的缓冲区用完后不保留，避免个别超长消息长期占用内存
+    private static final int MAX_RETAINED_BUFFER_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[INITIAL_BUFFER_SIZE]);
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * 规范化单个字符
+     * @param c 原始字符
+     * @return 规范化后的字符，需要丢弃时返回 {@link #IGNORED}
+     */
+    public static char fold(char c) {
+        // 全角ASCII（！到～）转半角，全角空格视为空白
+        if (c >= '！' && c <= '～') {
+            c = (char) (c - 0xFEE0);
+        } else if (c == '　') {
+            return IGNORED;
+        }
+        if (c < 128) {
+            if (c >= 'A' && c <= 'Z') {
+                return (char) (c + 32);
+            }
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                return c;
+            }
+            return c <= ' ' || isPunctuation(c) ? IGNORED : c;
+        }
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c) || isPunctuation(c)) {
+            return IGNORED;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * 规范化整段文本
+     * @param text 原始文本
+     * @return 规范化后的字符串，text为null时返回空字符串
+     */
+    public static String normalize(CharSequence text) {
+        if (text == null) {
+            return "";
+        }
+        char[] buffer = acquire(text.length());
+        int length = normalizeInto(text, buffer);
+        String result = new String(buffer, 0, length);
+        release(buffer);
+        return result;
+    }
+
+    /**
+     * 将规范化结果写入目标缓冲区
+     * @param text 原始文本
+     * @param dest 目标缓冲区，长度不小于 text.length()
+     * @return 写入的字符数
+     */
+    public static int normalizeInto(CharSequence text, char[] dest) {
+        int length = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = fold(text.charAt(i));
+            if (c != IGNORED) {
+                dest[length++] = c;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 获取当前线程的复用缓冲区，用完后调用 {@link #release(char[])}
+     * @param minCapacity 所需最小容量
+     */
+    public static char[] acquire(int minCapacity) {
+        char[] buffer = BUFFER.get();
+        if (buffer.length < minCapacity) {
+            buffer = new char[Math.max(minCapacity, buffer.length * 2)];
+        }
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，超长的缓冲区不保留
+     */
+    public static void release(char[] buffer) {
+        if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+            BUFFER.set(buffer);
+        }
+    }
+
+    /**
+     * 判断原始文本规范化后是否与已规范化的关键词完全相同，边扫描边比较，不产生对象分配
+     * @param text 原始文本
+     * @param normalized 已规范化的关键词
+     */
+    public static boolean matches(CharSequence text, char[] normalized) {
+        if (text == null) {
+            return normalized.length == 0;
+        }
+        int position = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = fold(text.charAt(i));
+            if (c == IGNORED) {
+                continue;
+            }
+            if (position >= normalized.length || normalized[position] != c) {
+                return false;
+            }
+            position++;
+        }
+        return position == normalized.length;
+    }
+
+    private static boolean isPunctuation(char c) {
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.bot.aabot.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: TokenBucketTable
+ * Package: com.bot.aabot.utils
+ * Description: 按 (会话ID, 用户ID) 索引的令牌桶表，无锁、分段。
+ * 键直接使用两个 long 计算哈希，不装箱；表按哈希分为多个段，每段为定长的开放寻址数组，新桶通过 CAS 插入空位。
+ * 令牌数（千分之一令牌为单位）与上次补充时间打包在一个 long 中，以 CAS 更新。
+ * 空闲的桶由 {@link #evictIdle(long, long)} 标记为墓碑，插入时复用。
+ * 并发插入同一个键时可能短暂出现重复的桶，仅影响该用户的计数，空闲后会被回收。
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/17
+ */
+public final class TokenBucketTable {
+
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    /** 单桶容量上限（令牌数），受打包位数限制 */
+    public static final int MAX_BURST = (int) (TOKEN_MASK / 1000);
+
+    private static final Bucket TOMBSTONE = new Bucket(0, 0, 0);
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final double refillPerMilli; // 每毫秒补充的千分之一令牌数
+    private final long maxTokens; // 千分之一令牌
+    private final LongAdder overflow = new LongAdder();
+
+    /**
+     * @param capacity 最多跟踪的桶数
+     * @param stripes 段数（取2的幂）
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param burst 桶容量（令牌数）
+     */
+    public TokenBucketTable(int capacity, int stripes, double ratePerSecond, int burst) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, stripes));
+        int perStripe = Integer.highestOneBit(Math.max(2, capacity / stripeCount) * 2 - 1);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(perStripe);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.refillPerMilli = ratePerSecond; // 令牌/秒 = 千分之一令牌/毫秒
+        this.maxTokens = Math.max(1, Math.min(MAX_BURST, burst)) * 1000L;
+    }
+
+    /**
+     * 尝试消耗一个令牌
+     * @param chatId 会话ID
+     * @param userId 用户ID
+     * @param now 当前时间（毫秒）
+     * @return 0表示放行；大于0表示被限流，值为连续被限流的次数（任意一次放行后清零）
+     */
+    public int tryAcquire(long chatId, long userId, long now) {
+        Bucket bucket = getOrCreate(chatId, userId, now);
+        if (bucket == null) {
+            overflow.increment();
+            return 0; // 表已满时放行
+        }
+        while (true) {
+            long state = bucket.state.get();
+            long last = state >>> TOKEN_BITS;
+            long tokens = state & TOKEN_MASK;
+            long elapsed = Math.max(0, now - last);
+            long refill = (long) (elapsed * refillPerMilli);
+            long available = Math.min(maxTokens, tokens + refill);
+            // 没有补充到令牌时保留原时间，避免频繁请求吞掉不足一个单位的补充量
+            long time = refill > 0 || available == maxTokens ? Math.max(now, last) : last;
+            if (available >= 1000) {
+                if (bucket.state.compareAndSet(state, pack(time, available - 1000))) {
+                    if (bucket.strikes.get() != 0) {
+                        bucket.strikes.set(0);
+                    }
+                    return 0;
+                }
+            } else if (bucket.state.compareAndSet(state, pack(time, available))) {
+                return bucket.strikes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 回收空闲的桶
+     * @param now 当前时间（毫秒）
+     * @param idleMillis 空闲时间阈值
+     * @return 回收的桶数
+     */
+    public int evictIdle(long now, long idleMillis) {
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            AtomicReferenceArray<Bucket> table = stripe.table;
+            // 倒序扫描，后面紧跟空位的墓碑可以直接置空，缩短探测链
+            for (int i = table.length() - 1; i >= 0; i--) {
+                Bucket bucket = table.get(i);
+                if (bucket == null) {
+                    continue;
+                }
+                if (bucket != TOMBSTONE && now - (bucket.state.get() >>> TOKEN_BITS) > idleMillis
+                        && table.compareAndSet(i, bucket, TOMBSTONE)) {
+                    stripe.size.decrementAndGet();
+                    evicted++;
+                    bucket = TOMBSTONE;
+                }
+                if (bucket == TOMBSTONE && table.get((i + 1) & (table.length() - 1)) == null) {
+                    table.compareAndSet(i, TOMBSTONE, null);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * 当前跟踪的桶数
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size.get();
+        }
+        return size;
+    }
+
+    /**
+     * 因表满而未跟踪（直接放行）的请求数
+     */
+    public long getOverflowCount() {
+        return overflow.sum();
+    }
+
+    private Bucket getOrCreate(long chatId, long userId, long now) {
+        long hash = mix(chatId * 0x9E3779B97F4A7C15L + userId);
+        Stripe stripe = stripes[(int) (hash >>> 32) & stripeMask];
+        AtomicReferenceArray<Bucket> table = stripe.table;
+        int mask = table.length() - 1;
+        Bucket created = null;
+        while (true) {
+            int reusable = -1;
+            int empty = -1;
+            int index = (int) hash & mask;
+            for (int probe = 0; probe <= mask; probe++, index = (index + 1) & mask) {
+                Bucket bucket = table.get(index);
+                if (bucket == null) {
+                    empty = index;
+                    break;
+                }
+                if (bucket == TOMBSTONE) {
+                    if (reusable < 0) {
+                        reusable = index;
+                    }
+                } else if (bucket.chatId == chatId && bucket.userId == userId) {
+                    return bucket;
+                }
+            }
+            // 没有可用槽位，或装载率超过3/4时不再插入，避免探测链过长
+            if ((reusable < 0 && empty < 0) || stripe.size.get() >= table.length() - (table.length() >> 2)) {
+                return null;
+            }
+            if (created == null) {
+                created = new Bucket(chatId, userId, pack(now, maxTokens));
+            }
+            int slot = reusable >= 0 ? reusable : empty;
+            Bucket expected = reusable >= 0 ? TOMBSTONE : null;
+            if (table.get(slot) == expected && table.compareAndSet(slot, expected, created)) {
+                stripe.size.incrementAndGet();
+                return created;
+            }
+            // 槽位被其他线程占用，重新探测
+        }
+    }
+
+    private static long pack(long time, long tokens) {
+        return (time << TOKEN_BITS) | tokens;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Bucket {
+        private final long chatId;
+        private final long userId;
+        private final AtomicLong state;
+        private final AtomicInteger strikes = new AtomicInteger();
+
+        Bucket(long chatId, long userId, long state) {
+            this.chatId = chatId;
+            this.userId = userId;
+            this.state = new AtomicLong(state);
+        }
+    }
+
+    private static final class Stripe {
+        private final AtomicReferenceArray<Bucket> table;
+        private final AtomicInteger size = new AtomicInteger();
+
+        Stripe(int capacity) {
+            this.table = new AtomicReferenceArray<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.bot.aabot;
+
+import com.bot.aabot.dao.ActivityCounterDao;
+import com.bot.aabot.entity.UserActivityLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用户活动计数器测试类
+ */
+public class ActivityCounterTest {
+
+    private static UserActivityLog log(String userId, String type, String content) {
+        UserActivityLog log = new UserActivityLog();
+        log.setChatId("-100");
+        log.setUserId(userId);
+        log.setActivityType(type);
+        log.setActivityLog(content);
+        return log;
+    }
+
+    @Test
+    public void testMessageAndCheckIn() {
+        assertEquals(List.of(new ActivityCounterDao.CounterKey("-100", "1", ActivityCounterDao.COUNTER_MESSAGE)),
+                ActivityCounterDao.countersFor(log("1", "photo_message", null)));
+        assertEquals(List.of(new ActivityCounterDao.CounterKey("-100", "1", ActivityCounterDao.COUNTER_CHECK_IN)),
+                ActivityCounterDao.countersFor(log("1", "check_in", "签到")));
+        // other_message 不在消息数统计范围内
+        assertTrue(ActivityCounterDao.countersFor(log("1", "other_message", null)).isEmpty());
+    }
+
+    @Test
+    public void testInteractionCountsTargetUser() {
+        // 被互动次数计入目标用户，且按完整ID匹配
+        assertEquals(List.of(new ActivityCounterDao.CounterKey("-100", "123", "received_message_reply")),
+                ActivityCounterDao.countersFor(log("1", "message_reply", "互动消息ID:12,目标用户:123")));
+        assertTrue(ActivityCounterDao.countersFor(log("1", "message_reply", "普通回复内容")).isEmpty());
+        assertTrue(ActivityCounterDao.countersFor(log("1", "message_reaction", null)).isEmpty());
+    }
+}
@@ -0,0 +1,61 @@
+package com.bot.aabot;
+
+import com.bot.aabot.dao.CheckInStreakDao.CheckInStreak;
+import com.bot.aabot.utils.LongPairMap;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 签到连续天数测试类
+ */
+public class CheckInStreakTest {
+
+    private static long day(String date) {
+        return LocalDate.parse(date).toEpochDay();
+    }
+
+    @Test
+    public void testStreak() {
+        CheckInStreak streak = CheckInStreak.NONE.next(day("2025-09-01"));
+        assertEquals(1, streak.currentStreak());
+        streak = streak.next(day("2025-09-02")).next(day("2025-09-03"));
+        assertEquals(3, streak.currentStreak());
+        assertEquals(3, streak.longestStreak());
+        // 同一天重复签到不计数
+        assertSame(streak, streak.next(day("2025-09-03")));
+
+        // 中断后重新计数，最长连续天数保留，跨月连续
+        streak = streak.next(day("2025-09-05")).next(day("2025-09-30")).next(day("2025-10-01"));
+        assertEquals(2, streak.currentStreak());
+        assertEquals(3, streak.longestStreak());
+        assertEquals(6, streak.total());
+
+        // 今天未签到时当前连续天数为0
+        assertEquals(2, streak.streakOn(day("2025-10-01")));
+        assertEquals(0, streak.streakOn(day("2025-10-02")));
+        assertEquals(0, CheckInStreak.NONE.streakOn(day("2025-10-01")));
+    }
+
+    @Test
+    public void testLongPairMap() {
+        LongPairMap<String> map = new LongPairMap<>(2);
+        for (long user = 0; user < 1000; user++) {
+            map.put(-1001234567890L, user, "a" + user);
+            map.put(-1009876543210L, user, "b" + user);
+        }
+        assertEquals(2000, map.size());
+        assertEquals("a7", map.get(-1001234567890L, 7));
+        assertEquals("b999", map.get(-1009876543210L, 999));
+        assertNull(map.get(-1001234567890L, 1000));
+        assertNull(map.get(7, -1001234567890L));
+
+        // 替换不增加条目数
+        map.put(-1001234567890L, 7, "c");
+        assertEquals("c", map.get(-1001234567890L, 7));
+        assertEquals(2000, map.size());
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, 1, null));
+    }
+}
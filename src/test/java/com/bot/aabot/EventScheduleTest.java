@@ -0,0 +1,65 @@
+package com.bot.aabot;
+
+import com.bot.aabot.entity.EventRecord;
+import com.bot.aabot.utils.EventSchedule;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 活动时间表测试类
+ */
+public class EventScheduleTest {
+
+    private static EventRecord event(int id, String groupId, String start, String end) {
+        EventRecord event = new EventRecord();
+        event.setEventId(id);
+        event.setEventGroupId(groupId);
+        event.setStartTime(start);
+        event.setEndTime(end);
+        return event;
+    }
+
+    private static long at(String time) {
+        return LocalDateTime.parse(time.replace(' ', 'T')).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @Test
+    public void testActiveEvents() {
+        List<EventRecord> events = List.of(
+                event(2, "g1", "2025-09-01 00:00:00", "2025-09-30 23:59:59"),
+                event(1, "g1", "2025-09-10 00:00:00", "2025-09-20 00:00:00"),
+                event(3, "g2", "2025-10-01 00:00:00", "2025-10-31 00:00:00"),
+                event(4, "g1", "bad time", "2025-09-30 00:00:00"));
+        EventSchedule schedule = EventSchedule.build(events, at("2025-09-15 12:00:00"));
+
+        // 按活动ID顺序返回，时间无法解析的活动被忽略
+        List<EventRecord> active = schedule.activeEvents("g1");
+        assertEquals(2, active.size());
+        assertEquals(1, active.get(0).getEventId());
+        assertEquals(2, active.get(1).getEventId());
+        assertTrue(schedule.activeEvents("g2").isEmpty());
+        assertTrue(schedule.activeEvents("unknown").isEmpty());
+        // 下一个边界是活动1结束时间所在秒之后
+        assertEquals(at("2025-09-20 00:00:01"), schedule.nextBoundary());
+    }
+
+    @Test
+    public void testBoundaries() {
+        List<EventRecord> events = List.of(event(1, "g1", "2025-09-10 00:00:00", "2025-09-20 00:00:00"));
+        EventSchedule schedule = EventSchedule.build(events, at("2025-09-09 23:59:59"));
+        assertTrue(schedule.activeEvents("g1").isEmpty());
+        assertEquals(at("2025-09-10 00:00:00"), schedule.nextBoundary());
+
+        // 开始时刻与结束时间所在的那一秒都算进行中
+        assertEquals(1, schedule.at(at("2025-09-10 00:00:00")).activeEvents("g1").size());
+        assertEquals(1, schedule.at(at("2025-09-20 00:00:00") + 999).activeEvents("g1").size());
+        EventSchedule ended = schedule.at(at("2025-09-20 00:00:01"));
+        assertTrue(ended.activeEvents("g1").isEmpty());
+        assertEquals(Long.MAX_VALUE, ended.nextBoundary());
+    }
+}
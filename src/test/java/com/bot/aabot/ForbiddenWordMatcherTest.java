@@ -0,0 +1,76 @@
+package com.bot.aabot;
+
+import com.bot.aabot.utils.ForbiddenWordMatcher;
+import com.bot.aabot.utils.MessagesUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 违禁词匹配器测试类
+ */
+public class ForbiddenWordMatcherTest {
+
+    @Test
+    public void testFindFirst() {
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of("hers", "he", "she", "his"));
+        // 多个词同时命中时返回列表中最靠前的
+        assertEquals("hers", matcher.findFirst("ushers"));
+        assertEquals("he", matcher.findFirst("nothing here"));
+        assertEquals("his", matcher.findFirst("this"));
+        assertNull(matcher.findFirst("abc"));
+        assertNull(matcher.findFirst(null));
+    }
+
+    @Test
+    public void testCleaning() {
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of("加 微信", "VX"));
+        // 匹配时与 cleanMessageText 一样跳过空白和 ,。;、 并忽略大小写
+        assertEquals("加微信", matcher.findFirst("请加 ,微。信"));
+        assertEquals("vx", matcher.findFirst("私聊v\nx"));
+        assertNull(matcher.findFirst("加好友"));
+    }
+
+    @Test
+    public void testEmptyWordsIgnored() {
+        // 清洗后为空的词不应命中所有消息
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(List.of("、", " ", "广告"));
+        assertEquals(1, matcher.size());
+        assertNull(matcher.findFirst("正常消息"));
+        assertNull(ForbiddenWordMatcher.empty().findFirst("广告"));
+    }
+
+    @Test
+    public void testSameResultAsContainsLoop() {
+        Random random = new Random(42);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            words.add(randomText(random, 1 + random.nextInt(4), 4));
+        }
+        ForbiddenWordMatcher matcher = ForbiddenWordMatcher.compile(words);
+        for (int i = 0; i < 5000; i++) {
+            String text = randomText(random, random.nextInt(16), 6);
+            String cleaned = MessagesUtil.cleanMessageText(text);
+            String expected = null;
+            for (String word : words) {
+                if (cleaned.contains(word)) {
+                    expected = word;
+                    break;
+                }
+            }
+            assertEquals(expected, matcher.findFirst(text), text);
+        }
+    }
+
+    private static String randomText(Random random, int length, int alphabet) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(alphabet)));
+        }
+        return sb.toString();
+    }
+}
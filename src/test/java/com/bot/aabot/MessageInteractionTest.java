@@ -0,0 +1,29 @@
+package com.bot.aabot;
+
+import com.bot.aabot.dao.InteractionDao;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 消息互动记录测试类
+ */
+public class MessageInteractionTest {
+
+    @Test
+    public void testParseActivityLog() {
+        assertEquals(new InteractionDao.InteractionRef(12, "123"),
+                InteractionDao.parseActivityLog("互动消息ID:12,目标用户:123"));
+        // 消息ID与目标用户按完整值解析，消息12不会与123混淆
+        assertEquals(123, InteractionDao.parseActivityLog("互动消息ID:123,目标用户:12").messageId());
+    }
+
+    @Test
+    public void testParseInvalidActivityLog() {
+        assertNull(InteractionDao.parseActivityLog(null));
+        assertNull(InteractionDao.parseActivityLog("普通回复内容 互动消息ID:12,目标用户:123"));
+        assertNull(InteractionDao.parseActivityLog("互动消息ID:null,目标用户:123"));
+        assertNull(InteractionDao.parseActivityLog("互动消息ID:12,目标用户:"));
+        assertNull(InteractionDao.parseActivityLog("互动消息ID:12"));
+    }
+}
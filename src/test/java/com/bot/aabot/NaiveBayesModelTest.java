@@ -0,0 +1,85 @@
+package com.bot.aabot;
+
+import com.bot.aabot.utils.NaiveBayesModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 朴素贝叶斯广告模型测试类
+ */
+public class NaiveBayesModelTest {
+
+    private static final String[] SPAM = {
+            "限时优惠，加入投资群每天稳赚，名额有限速来咨询",
+            "专业代理刷单兼职，日结工资，私聊客服了解详情",
+            "免费领取彩金，注册即送，加客服微信了解",
+            "稳赚不赔的投资项目，带你躺赚，名额有限",
+            "兼职日结，在家就能赚钱，详情私聊客服"
+    };
+    private static final String[] HAM = {
+            "今天的分享会改到下午三点，大家记得带电脑",
+            "这个接口的返回值好像有问题，谁帮忙看一下",
+            "周末的活动报名截止到周五晚上，别忘了",
+            "刚刚发布了新版本，更新说明在公告里",
+            "会议室在三楼东侧，进门左转就是"
+    };
+
+    private NaiveBayesModel trained() {
+        NaiveBayesModel model = new NaiveBayesModel(16);
+        for (String text : SPAM) {
+            assertTrue(model.train(text, true, 1));
+        }
+        for (String text : HAM) {
+            assertTrue(model.train(text, false, 1));
+        }
+        return model;
+    }
+
+    @Test
+    public void testClassify() {
+        NaiveBayesModel model = trained();
+        assertTrue(model.isReady(5));
+        assertFalse(model.isReady(6));
+        // 改写过的广告与正常消息
+        assertTrue(model.spamProbability("兼职刷单日结，私聊客服，名额有限", 0) > 0.9);
+        assertTrue(model.spamProbability("下午的会议改到三楼，大家记得带电脑", 0) < 0.1);
+        // 过短的文本不评分
+        assertEquals(0, model.spamProbability("兼职", 8));
+        // 没有样本时不评分
+        assertEquals(0, new NaiveBayesModel(16).spamProbability(SPAM[0], 0));
+    }
+
+    @Test
+    public void testUntrain() {
+        NaiveBayesModel model = trained();
+        String text = "这个群的活动奖励是怎么发放的";
+        double before = model.spamProbability(text, 0);
+        // 误标为广告后撤销，分数恢复
+        model.train(text, true, 1);
+        assertTrue(model.spamProbability(text, 0) > before);
+        model.train(text, true, -1);
+        assertEquals(before, model.spamProbability(text, 0), 1e-9);
+        assertEquals(SPAM.length, model.getSpamDocs());
+    }
+
+    @Test
+    public void testPersistRoundTrip() {
+        NaiveBayesModel model = trained();
+        Map<Integer, int[]> rows = new HashMap<>();
+        assertTrue(model.drainDirty((feature, spam, ham) -> rows.put(feature, new int[]{spam, ham})) > 0);
+        // 取出后不再重复
+        assertEquals(0, model.drainDirty((feature, spam, ham) -> fail()));
+
+        NaiveBayesModel loaded = new NaiveBayesModel(16);
+        rows.forEach((feature, counts) -> loaded.load(feature, counts[0], counts[1]));
+        assertEquals(model.getSpamDocs(), loaded.getSpamDocs());
+        assertEquals(model.getHamDocs(), loaded.getHamDocs());
+        for (String text : new String[]{SPAM[0], HAM[0], "随便说点什么内容"}) {
+            assertEquals(model.spamProbability(text, 0), loaded.spamProbability(text, 0), 1e-9);
+        }
+    }
+}
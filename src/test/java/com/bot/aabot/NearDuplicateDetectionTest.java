@@ -0,0 +1,96 @@
+package com.bot.aabot;
+
+import com.bot.aabot.utils.FingerprintRing;
+import com.bot.aabot.utils.SimHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 近似重复检测测试类
+ */
+public class NearDuplicateDetectionTest {
+
+    @Test
+    public void testSimHash() {
+        String ad = "限时优惠！加入我们的投资群，每天稳赚百分之二十，名额有限，速来咨询客服";
+        long a = SimHash.fingerprint(ad, 10);
+        // 标点、空格、全角与大小写差异不影响指纹
+        assertEquals(a, SimHash.fingerprint("限时优惠 加入我们的投资群 每天稳赚百分之二十 名额有限 速来咨询客服！！", 10));
+        // 少量改动的变体距离较近，无关文本距离较远
+        long variant = SimHash.fingerprint("限时优惠！加入我们的投资群，每天稳赚百分之三十，名额有限，速来咨询客服", 10);
+        long other = SimHash.fingerprint("今天的分享会改到下午三点，大家记得带上电脑，会议室在三楼东侧", 10);
+        assertTrue(SimHash.distance(a, variant) < SimHash.distance(a, other));
+        // 过短的文本不计算指纹
+        assertEquals(0L, SimHash.fingerprint("谢谢大家", 10));
+        assertEquals(0L, SimHash.fingerprint(null, 10));
+    }
+
+    @Test
+    public void testCollectDistinctOwners() {
+        FingerprintRing ring = new FingerprintRing(16, 8);
+        long fingerprint = 0x0123456789ABCDEFL;
+        ring.add(fingerprint, 1);
+        ring.add(fingerprint ^ 0b101, 2); // 距离2
+        ring.add(fingerprint, 2);
+        ring.add(fingerprint ^ 0xF0F0L, 3); // 距离8
+        ring.add(fingerprint, 4);
+
+        long[] found = new long[4];
+        int count = ring.collectOwners(fingerprint, 3, 4, found, 0);
+        Set<Long> owners = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            owners.add(found[i]);
+        }
+        // 排除自身，同一用户只计一次，距离超限的不计
+        assertEquals(Set.of(1L, 2L), owners);
+    }
+
+    @Test
+    public void testOverwrittenEntriesExpire() {
+        FingerprintRing ring = new FingerprintRing(4, 8);
+        ring.add(42L, 1);
+        for (int i = 0; i < 4; i++) {
+            ring.add(0x7000000000000000L + i * 0x10001000100010L, 100 + i);
+        }
+        assertEquals(4, ring.size());
+        assertEquals(0, ring.collectOwners(42L, 0, 0, new long[2], 0));
+    }
+
+    @Test
+    public void testSameResultAsLinearScan() {
+        Random random = new Random(7);
+        int capacity = 2000;
+        FingerprintRing ring = new FingerprintRing(capacity, capacity);
+        long[] fingerprints = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            long base = random.nextLong();
+            fingerprints[i] = base == 0L ? 1L : base;
+            ring.add(fingerprints[i], i);
+        }
+        for (int i = 0; i < 500; i++) {
+            long query = fingerprints[random.nextInt(capacity)];
+            // 随机翻转0~3位
+            for (int flips = random.nextInt(4); flips > 0; flips--) {
+                query ^= 1L << random.nextInt(64);
+            }
+            Set<Long> expected = new HashSet<>();
+            for (int j = 0; j < capacity; j++) {
+                if (SimHash.distance(fingerprints[j], query) <= 3) {
+                    expected.add((long) j);
+                }
+            }
+            long[] found = new long[capacity];
+            int count = ring.collectOwners(query, 3, -1, found, 0);
+            Set<Long> actual = new HashSet<>();
+            for (int j = 0; j < count; j++) {
+                actual.add(found[j]);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+}
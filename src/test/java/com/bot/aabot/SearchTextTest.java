@@ -0,0 +1,38 @@
+package com.bot.aabot;
+
+import com.bot.aabot.utils.SearchText;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 全文检索文本处理测试类
+ */
+public class SearchTextTest {
+
+    @Test
+    public void testToIndexText() {
+        // 中日韩字符单独成词，英文数字保持原样
+        assertEquals(" 签  到 abc123", SearchText.toIndexText("签到abc123"));
+        assertEquals("hello  世  界 ！", SearchText.toIndexText("hello 世界！"));
+        assertEquals("", SearchText.toIndexText(null));
+    }
+
+    @Test
+    public void testToMatchQuery() {
+        // 每个关键词是一个短语，标点被丢弃，多个关键词同时满足
+        assertEquals("\"签 到\"", SearchText.toMatchQuery("签到"));
+        assertEquals("\"签 到 abc\" AND \"hello\"", SearchText.toMatchQuery(" 签到abc  hello "));
+        assertEquals("\"a b\"", SearchText.toMatchQuery("a\"b"));
+        assertNull(SearchText.toMatchQuery("！？ ..."));
+        assertNull(SearchText.toMatchQuery(null));
+    }
+
+    @Test
+    public void testSnippet() {
+        assertEquals("…二段签到第三…", SearchText.snippet("第一段内容第二段签到第三段", "签到", 2));
+        assertEquals("签到成功", SearchText.snippet("签到成功", "签到", 10));
+        // 未命中时从开头截取
+        assertEquals("abc…", SearchText.snippet("abcdef", "xyz", 3));
+    }
+}
@@ -0,0 +1,172 @@
+package com.bot.aabot;
+
+import com.bot.aabot.service.TelegramSendGateway;
+import com.bot.aabot.service.TelegramSendGateway.SendPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 出站发送网关测试类
+ */
+public class TelegramSendGatewayTest {
+
+    private final TgBot tgBot = mock(TgBot.class);
+    private final List<BotApiMethod<?>> executed = new CopyOnWriteArrayList<>();
+    private final List<Long> executedAt = new CopyOnWriteArrayList<>();
+    private TelegramSendGateway gateway;
+
+    private TelegramSendGateway newGateway(double groupPerMinute, double chatBurst) {
+        TelegramSendGateway created = new TelegramSendGateway();
+        ReflectionTestUtils.setField(created, "tgBot", tgBot);
+        ReflectionTestUtils.setField(created, "globalRate", 30.0);
+        ReflectionTestUtils.setField(created, "groupPerMinute", groupPerMinute);
+        ReflectionTestUtils.setField(created, "privatePerSecond", 1.0);
+        ReflectionTestUtils.setField(created, "chatBurst", chatBurst);
+        ReflectionTestUtils.setField(created, "maxRetries", 3);
+        ReflectionTestUtils.setField(created, "queueCapacity", 100);
+        ReflectionTestUtils.setField(created, "workers", 2);
+        ReflectionTestUtils.setField(created, "asyncMode", "platform");
+        created.init();
+        gateway = created;
+        return created;
+    }
+
+    private void record(BotApiMethod<?> method) {
+        executed.add(method);
+        executedAt.add(System.nanoTime());
+    }
+
+    private static SendMessage message(String chatId, String text) {
+        return SendMessage.builder().chatId(chatId).text(text).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (gateway != null) {
+            gateway.shutdown();
+        }
+    }
+
+    @Test
+    public void testChatPacing() throws Exception {
+        when(tgBot.executeMethod(any())).thenAnswer(invocation -> {
+            record(invocation.getArgument(0));
+            return null;
+        });
+        // 群组每分钟600条即每100ms一条，突发1条
+        TelegramSendGateway gateway = newGateway(600, 1);
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(gateway.submit(-100L, SendPriority.REPLY, message("-100", "reply-" + i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, executed.size());
+        for (int i = 0; i < 3; i++) {
+            // 同一会话按提交顺序发出
+            assertEquals("reply-" + i, ((SendMessage) executed.get(i)).getText());
+        }
+        for (int i = 1; i < 3; i++) {
+            long gapMillis = TimeUnit.NANOSECONDS.toMillis(executedAt.get(i) - executedAt.get(i - 1));
+            assertTrue(gapMillis >= 80, "同一会话的发送间隔过短: " + gapMillis + "ms");
+        }
+
+        // 审核操作不受会话限速
+        executed.clear();
+        executedAt.clear();
+        long start = System.nanoTime();
+        futures.clear();
+        for (int i = 0; i < 3; i++) {
+            futures.add(gateway.submit(-100L, SendPriority.MODERATION, message("-100", "moderation-" + i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(3, executed.size());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 80);
+    }
+
+    @Test
+    public void testRetryAfterBackoff() throws Exception {
+        ResponseParameters parameters = mock(ResponseParameters.class);
+        when(parameters.getRetryAfter()).thenReturn(1);
+        TelegramApiRequestException tooManyRequests = mock(TelegramApiRequestException.class);
+        when(tooManyRequests.getErrorCode()).thenReturn(429);
+        when(tooManyRequests.getParameters()).thenReturn(parameters);
+
+        AtomicInteger limitedCalls = new AtomicInteger();
+        when(tgBot.executeMethod(any())).thenAnswer(invocation -> {
+            SendMessage method = invocation.getArgument(0);
+            record(method);
+            if (method.getChatId().equals("-100") && limitedCalls.getAndIncrement() == 0) {
+                throw tooManyRequests;
+            }
+            return null;
+        });
+        TelegramSendGateway gateway = newGateway(600, 3);
+
+        CompletableFuture<?> limited = gateway.submit(-100L, SendPriority.REPLY, message("-100", "limited"));
+        // 等第一次调用收到429后再提交其他会话的消息
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limitedCalls.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<?> other = gateway.submit(-200L, SendPriority.REPLY, message("-200", "other"));
+
+        other.get(5, TimeUnit.SECONDS);
+        limited.get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, executed.size());
+        // 被限流的会话暂停期间，其他会话照常发送
+        assertEquals("other", ((SendMessage) executed.get(1)).getText());
+        assertEquals("limited", ((SendMessage) executed.get(2)).getText());
+        long backoffMillis = TimeUnit.NANOSECONDS.toMillis(executedAt.get(2) - executedAt.get(0));
+        assertTrue(backoffMillis >= 950, "未按 retry_after 暂停: " + backoffMillis + "ms");
+        assertTrue(gateway.getStatusSummary().contains("限流重试: 1"));
+    }
+
+    @Test
+    public void testNotificationCoalescing() throws Exception {
+        when(tgBot.executeMethod(any())).thenAnswer(invocation -> {
+            record(invocation.getArgument(0));
+            return null;
+        });
+        // 群组每分钟120条即每500ms一条，突发1条，第一条发出后后续通知需要排队
+        TelegramSendGateway gateway = newGateway(120, 1);
+
+        gateway.notify(message("-100", "a")).get(5, TimeUnit.SECONDS);
+        CompletableFuture<Message> second = gateway.notify(message("-100", "b"));
+        CompletableFuture<Message> third = gateway.notify(message("-100", "c"));
+        SendMessage otherTopic = message("-100", "topic");
+        otherTopic.setMessageThreadId(7);
+        CompletableFuture<Message> topic = gateway.notify(otherTopic);
+
+        // 同一会话同一话题排队中的通知合并为一条，共享同一结果
+        assertSame(second, third);
+        assertNotSame(second, topic);
+        CompletableFuture.allOf(second, topic).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, executed.size());
+        assertEquals("a", ((SendMessage) executed.get(0)).getText());
+        assertEquals("b\n\nc", ((SendMessage) executed.get(1)).getText());
+        assertEquals("topic", ((SendMessage) executed.get(2)).getText());
+        assertTrue(gateway.getStatusSummary().contains("合并: 1"));
+    }
+}
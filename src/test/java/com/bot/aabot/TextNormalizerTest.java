@@ -0,0 +1,49 @@
+package com.bot.aabot;
+
+import com.bot.aabot.utils.TextNormalizer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 消息文本规范化测试类
+ */
+public class TextNormalizerTest {
+
+    @Test
+    public void testNormalize() {
+        // 空白、中英文标点被去除，大小写统一
+        assertEquals("加微信vx", TextNormalizer.normalize(" 加,微。信;、V X\n"));
+        assertEquals("hello世界", TextNormalizer.normalize("Hello, 世界！"));
+        assertEquals("引号书名号", TextNormalizer.normalize("“引号”《书名号》"));
+        assertEquals("", TextNormalizer.normalize(null));
+    }
+
+    @Test
+    public void testFullWidth() {
+        // 全角字母数字转半角，全角空格和全角标点被去除
+        assertEquals("hello123", TextNormalizer.normalize("ＨＥＬＬＯ　１２３！"));
+        assertEquals("vx", TextNormalizer.normalize("ｖｘ"));
+    }
+
+    @Test
+    public void testMatches() {
+        char[] keyword = TextNormalizer.normalize("签到").toCharArray();
+        assertTrue(TextNormalizer.matches("签到", keyword));
+        assertTrue(TextNormalizer.matches("  签到！", keyword));
+        assertFalse(TextNormalizer.matches("签到啦", keyword));
+        assertFalse(TextNormalizer.matches("签", keyword));
+        assertFalse(TextNormalizer.matches(null, keyword));
+        assertTrue(TextNormalizer.matches("CheckIn", TextNormalizer.normalize("checkin").toCharArray()));
+    }
+
+    @Test
+    public void testLongTextBuffer() {
+        // 超过初始缓冲区长度的文本也能完整规范化
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("Ab ");
+        }
+        assertEquals("ab".repeat(10000), TextNormalizer.normalize(sb));
+    }
+}
@@ -0,0 +1,89 @@
+package com.bot.aabot;
+
+import com.bot.aabot.utils.TokenBucketTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 刷屏限流令牌桶表测试类
+ */
+public class TokenBucketTableTest {
+
+    @Test
+    public void testBurstAndRefill() {
+        TokenBucketTable table = new TokenBucketTable(64, 4, 2.0, 3);
+        long now = 1_000_000L;
+        // 突发3条放行，之后被限流，连续限流次数递增
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, table.tryAcquire(-100L, 1L, now));
+        }
+        assertEquals(1, table.tryAcquire(-100L, 1L, now));
+        assertEquals(2, table.tryAcquire(-100L, 1L, now));
+        // 其他用户、其他群组不受影响
+        assertEquals(0, table.tryAcquire(-100L, 2L, now));
+        assertEquals(0, table.tryAcquire(-200L, 1L, now));
+        // 每秒补充2条，放行一条后连续限流次数清零
+        assertEquals(0, table.tryAcquire(-100L, 1L, now + 500));
+        assertEquals(1, table.tryAcquire(-100L, 1L, now + 500));
+        assertEquals(2, table.tryAcquire(-100L, 1L, now + 500));
+        // 补满后重新计数
+        assertEquals(0, table.tryAcquire(-100L, 1L, now + 10_000));
+        assertEquals(0, table.tryAcquire(-100L, 1L, now + 10_000));
+        assertEquals(0, table.tryAcquire(-100L, 1L, now + 10_000));
+        assertEquals(1, table.tryAcquire(-100L, 1L, now + 10_000));
+    }
+
+    @Test
+    public void testEvictIdle() {
+        TokenBucketTable table = new TokenBucketTable(256, 4, 1.0, 1);
+        long now = 1_000_000L;
+        for (long user = 0; user < 20; user++) {
+            table.tryAcquire(-100L, user, now);
+        }
+        table.tryAcquire(-100L, 0L, now + 5_000);
+        assertEquals(20, table.size());
+        assertEquals(19, table.evictIdle(now + 6_000, 2_000));
+        assertEquals(1, table.size());
+        // 未被回收的桶保留状态
+        assertEquals(1, table.tryAcquire(-100L, 0L, now + 5_000));
+        // 回收后重新创建的桶是满的
+        assertEquals(0, table.tryAcquire(-100L, 1L, now + 6_000));
+    }
+
+    @Test
+    public void testFullTableFailsOpen() {
+        TokenBucketTable table = new TokenBucketTable(8, 1, 1.0, 1);
+        for (long user = 0; user < 100; user++) {
+            assertEquals(0, table.tryAcquire(-100L, user, 1_000_000L));
+        }
+        assertTrue(table.size() < 100);
+        assertTrue(table.getOverflowCount() > 0);
+    }
+
+    @Test
+    public void testConcurrentAcquire() throws Exception {
+        TokenBucketTable table = new TokenBucketTable(1024, 16, 0.0001, 50);
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        long now = 1_000_000L;
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 100; i++) {
+                    if (table.tryAcquire(-100L, 7L, now) == 0) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // 同一个桶并发消耗时不会超发
+        assertEquals(50, allowed.get());
+    }
+}
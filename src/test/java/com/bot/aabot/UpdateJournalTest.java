@@ -0,0 +1,157 @@
+package com.bot.aabot;
+
+import com.bot.aabot.service.UpdateJournal;
+import com.bot.aabot.service.UpdateJournal.Stage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 更新预写日志测试类
+ */
+public class UpdateJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<UpdateJournal> opened = new ArrayList<>();
+
+    /**
+     * 在同一目录上打开日志，相当于一次进程启动
+     */
+    private UpdateJournal open(int segmentSize, int maxReplayAttempts) {
+        UpdateJournal journal = new UpdateJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "journalDir", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", segmentSize);
+        ReflectionTestUtils.setField(journal, "maxReplayAttempts", maxReplayAttempts);
+        ReflectionTestUtils.setField(journal, "recoveredIdTtl", 600000L);
+        journal.init();
+        opened.add(journal);
+        return journal;
+    }
+
+    private static Update update(int updateId) {
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        return update;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        opened.forEach(UpdateJournal::shutdown);
+    }
+
+    @Test
+    public void testRecoverReplaysOnlyUnfinishedStages() {
+        UpdateJournal journal = open(1 << 16, 3);
+        // 所有必需阶段已确认
+        UpdateJournal.Ticket done = journal.append(update(1));
+        done.require(Stage.SAVE_MESSAGE);
+        done.markDone(Stage.SAVE_MESSAGE);
+        done.release();
+        // 积分阶段未确认
+        UpdateJournal.Ticket failed = journal.append(update(2));
+        failed.require(Stage.SAVE_MESSAGE);
+        failed.require(Stage.SCORE);
+        failed.markDone(Stage.SAVE_MESSAGE);
+        failed.release();
+        // 同一 update_id 重复投递
+        assertNull(journal.append(update(2)));
+
+        UpdateJournal restarted = open(1 << 16, 3);
+        List<Map.Entry<Update, UpdateJournal.Ticket>> replay = restarted.drainPendingReplay();
+        assertEquals(1, replay.size());
+        assertEquals(2, replay.get(0).getKey().getUpdateId());
+        assertTrue(replay.get(0).getValue().isDone(Stage.SAVE_MESSAGE));
+        assertFalse(replay.get(0).getValue().isDone(Stage.SCORE));
+        // 只能取一次
+        assertTrue(restarted.drainPendingReplay().isEmpty());
+        // 启动后 Telegram 重新投递旧更新时跳过
+        assertNull(restarted.append(update(1)));
+        assertNull(restarted.append(update(2)));
+    }
+
+    @Test
+    public void testMaxReplayAttemptsCutoff() {
+        UpdateJournal journal = open(1 << 16, 2);
+        UpdateJournal.Ticket ticket = journal.append(update(7));
+        ticket.require(Stage.SCORE);
+        ticket.release();
+
+        // 每次重放都失败，第二次重放后放弃
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            List<Map.Entry<Update, UpdateJournal.Ticket>> replay = open(1 << 16, 2).drainPendingReplay();
+            assertEquals(1, replay.size(), "第" + attempt + "次重放");
+            UpdateJournal.Ticket replayed = replay.get(0).getValue();
+            replayed.require(Stage.SCORE);
+            replayed.release();
+        }
+        assertTrue(open(1 << 16, 2).drainPendingReplay().isEmpty());
+    }
+
+    @Test
+    public void testCompactRelocatesFailedRecords() throws IOException {
+        // 小段文件，每段只能容纳几条记录
+        UpdateJournal journal = open(200, 3);
+        UpdateJournal.Ticket failed = journal.append(update(100));
+        failed.require(Stage.SCORE);
+        failed.release();
+        UpdateJournal.Ticket inFlight = journal.append(update(101));
+        inFlight.require(Stage.SAVE_MESSAGE);
+        for (int i = 102; i < 120; i++) {
+            journal.append(update(i)).release();
+        }
+        long before = segmentFiles();
+        assertTrue(before > 2);
+
+        // 第一段还有处理中的记录，不能删除；其余已封存的段全部处理完毕，可以删除
+        journal.compact();
+        long withInFlight = segmentFiles();
+        assertTrue(withInFlight < before);
+        assertTrue(withInFlight >= 2);
+
+        // 第一段处理完后删除，其中失败的记录先搬到当前段
+        inFlight.markDone(Stage.SAVE_MESSAGE);
+        inFlight.release();
+        journal.compact();
+        assertTrue(segmentFiles() < withInFlight);
+
+        // 搬走的失败记录重启后仍然重放，已完成的记录不重放
+        List<Map.Entry<Update, UpdateJournal.Ticket>> replay = open(200, 3).drainPendingReplay();
+        assertEquals(1, replay.size());
+        assertEquals(100, replay.get(0).getKey().getUpdateId());
+        assertFalse(replay.get(0).getValue().isDone(Stage.SCORE));
+    }
+
+    @Test
+    public void testCancelReleasesUpdateId() {
+        UpdateJournal journal = open(1 << 16, 3);
+        UpdateJournal.Ticket ticket = journal.append(update(9));
+        ticket.cancel();
+        // 撤销后 Telegram 重新投递时可以再次写入
+        UpdateJournal.Ticket redelivered = journal.append(update(9));
+        assertNotNull(redelivered);
+        redelivered.release();
+
+        assertTrue(open(1 << 16, 3).drainPendingReplay().isEmpty());
+    }
+}
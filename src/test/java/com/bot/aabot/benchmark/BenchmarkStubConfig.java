@@ -0,0 +1,138 @@
+package com.bot.aabot.benchmark;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.telegram.telegrambots.meta.api.methods.GetMe;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: BenchmarkStubConfig
+ * Package: com.bot.aabot.benchmark
+ * Description: 基准测试用的桩配置，提供不访问网络、可配置延迟的 TelegramClient 与 ChatModel
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/15
+ */
+@TestConfiguration
+public class BenchmarkStubConfig {
+
+    /** 各 Telegram 方法的调用次数，按方法类名统计 */
+    static final Map<String, LongAdder> TELEGRAM_CALLS = new ConcurrentHashMap<>();
+    /** ChatModel 调用次数 */
+    static final LongAdder CHAT_MODEL_CALLS = new LongAdder();
+
+    private static final AtomicInteger MESSAGE_IDS = new AtomicInteger(1_000_000);
+
+    @Value("${benchmark.telegram-latency-ms:50}")
+    private long telegramLatencyMs;
+
+    @Value("${benchmark.chat-model-latency-ms:800}")
+    private long chatModelLatencyMs;
+
+    @Value("${benchmark.chat-model-reply:好的}")
+    private String chatModelReply;
+
+    /**
+     * 桩 TelegramClient：每次调用休眠固定延迟后返回与方法匹配的结果
+     */
+    @Bean
+    public TelegramClient telegramClient() {
+        return (TelegramClient) Proxy.newProxyInstance(TelegramClient.class.getClassLoader(),
+                new Class<?>[]{TelegramClient.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return switch (method.getName()) {
+                            case "hashCode" -> System.identityHashCode(proxy);
+                            case "equals" -> proxy == args[0];
+                            default -> "StubTelegramClient";
+                        };
+                    }
+                    Object request = args != null && args.length > 0 ? args[0] : null;
+                    TELEGRAM_CALLS.computeIfAbsent(request == null ? method.getName() : request.getClass().getSimpleName(),
+                            k -> new LongAdder()).increment();
+                    sleep(telegramLatencyMs);
+                    Object result = stubResult(method.getReturnType(), request);
+                    if (CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+                        return CompletableFuture.completedFuture(stubResult(Object.class, request));
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * 桩 ChatModel：休眠固定延迟后返回固定回复
+     */
+    @Bean
+    @Primary
+    public ChatModel benchmarkChatModel() {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                CHAT_MODEL_CALLS.increment();
+                sleep(chatModelLatencyMs);
+                return new ChatResponse(List.of(new Generation(new AssistantMessage(chatModelReply))));
+            }
+        };
+    }
+
+    private static Object stubResult(Class<?> returnType, Object request) {
+        if (returnType == Boolean.class || returnType == boolean.class) {
+            return Boolean.TRUE;
+        }
+        if (returnType == Message.class || request instanceof SendMessage || request instanceof EditMessageText) {
+            return stubMessage(request);
+        }
+        if (returnType == List.class) {
+            return List.of();
+        }
+        if (request instanceof GetMe) {
+            return new User(1L, "BenchmarkBot", true);
+        }
+        return Boolean.TRUE;
+    }
+
+    private static Message stubMessage(Object request) {
+        long chatId = 0L;
+        if (request instanceof SendMessage sendMessage) {
+            chatId = Long.parseLong(sendMessage.getChatId());
+        } else if (request instanceof EditMessageText editMessageText && editMessageText.getChatId() != null) {
+            chatId = Long.parseLong(editMessageText.getChatId());
+        }
+        Message message = new Message();
+        message.setMessageId(MESSAGE_IDS.incrementAndGet());
+        message.setChat(new Chat(chatId, "supergroup"));
+        message.setDate((int) (System.currentTimeMillis() / 1000));
+        return message;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
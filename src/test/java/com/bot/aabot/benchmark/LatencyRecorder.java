@@ -0,0 +1,88 @@
+package com.bot.aabot.benchmark;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: LatencyRecorder
+ * Package: com.bot.aabot.benchmark
+ * Description: 按阶段记录耗时样本并计算分位数
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/15
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Samples> queueSamples = new ConcurrentHashMap<>();
+    private final Map<String, Samples> runSamples = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private volatile long lastCompletionNanos;
+
+    public void record(String stage, long queueNanos, long runNanos, boolean failed) {
+        queueSamples.computeIfAbsent(stage, k -> new Samples()).add(queueNanos);
+        runSamples.computeIfAbsent(stage, k -> new Samples()).add(runNanos);
+        if (failed) {
+            failures.computeIfAbsent(stage, k -> new LongAdder()).increment();
+        }
+        lastCompletionNanos = System.nanoTime();
+    }
+
+    public long getLastCompletionNanos() {
+        return lastCompletionNanos;
+    }
+
+    /**
+     * 生成各阶段的分位数报告（毫秒）
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder(String.format("%-20s %8s %10s %10s %10s %10s %6s%n",
+                "stage", "count", "wait_p50", "wait_p99", "run_p50", "run_p99", "fail"));
+        for (String stage : new TreeMap<>(runSamples).keySet()) {
+            long[] waits = queueSamples.get(stage).snapshot();
+            long[] runs = runSamples.get(stage).snapshot();
+            LongAdder failed = failures.get(stage);
+            sb.append(String.format("%-20s %8d %10.2f %10.2f %10.2f %10.2f %6d%n",
+                    stage, runs.length,
+                    percentile(waits, 0.50), percentile(waits, 0.99),
+                    percentile(runs, 0.50), percentile(runs, 0.99),
+                    failed == null ? 0 : failed.sum()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 计算已排序样本的分位数（毫秒），使用最近秩法
+     */
+    static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1_000_000.0;
+    }
+
+    /**
+     * 可增长的样本数组
+     */
+    private static class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized long[] snapshot() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
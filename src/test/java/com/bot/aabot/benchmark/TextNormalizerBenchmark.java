@@ -0,0 +1,132 @@
+package com.bot.aabot.benchmark;
+
+import com.bot.aabot.utils.ForbiddenWordMatcher;
+import com.bot.aabot.utils.TextNormalizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassName: TextNormalizerBenchmark
+ * Package: com.bot.aabot.benchmark
+ * Description: 消息文本规范化微基准。
+ * 对比旧的正则清洗（replaceAll + toLowerCase）与 TextNormalizer 在违禁词检查和签到关键词判断上的耗时与分配量，
+ * 通过 GC 分析器输出 gc.alloc.rate.norm（每次调用分配的字节数）。
+ * 默认不执行，运行方式：
+ * mvn test -Dtest=TextNormalizerBenchmark -Dbenchmark.enabled=true
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextNormalizerBenchmark {
+
+    private static final String[] MESSAGES = {
+            "大家好，今天的活动几点开始？",
+            "Check the new release notes: https://example.com/release",
+            "  签到 ",
+            "请加 VX，私聊了解更多优惠信息。",
+            "ＨＥＬＬＯ　ＷＯＲＬＤ！这是一条全角消息",
+            "这个方案我觉得可以，明天一起讨论一下细节、时间和分工。"
+    };
+
+    private List<String> forbiddenWords;
+    private ForbiddenWordMatcher matcher;
+    private Set<String> checkInKeywords;
+    private char[][] normalizedCheckInKeywords;
+    private int index;
+
+    @Setup
+    public void setup() {
+        forbiddenWords = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            forbiddenWords.add("广告" + i);
+        }
+        forbiddenWords.add("加vx");
+        matcher = ForbiddenWordMatcher.compile(forbiddenWords);
+        checkInKeywords = new HashSet<>(List.of("签到", "打卡", "checkin"));
+        normalizedCheckInKeywords = checkInKeywords.stream()
+                .map(keyword -> TextNormalizer.normalize(keyword).toCharArray())
+                .toArray(char[][]::new);
+    }
+
+    private String next() {
+        index = (index + 1) % MESSAGES.length;
+        return MESSAGES[index];
+    }
+
+    @Benchmark
+    public String regexClean() {
+        return next().replaceAll("[\\s,。;、]", "").toLowerCase();
+    }
+
+    @Benchmark
+    public String normalizerClean() {
+        return TextNormalizer.normalize(next());
+    }
+
+    @Benchmark
+    public String spamCheckRegexContains() {
+        String cleaned = next().replaceAll("[\\s,。;、]", "").toLowerCase();
+        for (String word : forbiddenWords) {
+            if (cleaned.contains(word)) {
+                return word;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String spamCheckNormalizerMatcher() {
+        return matcher.findFirst(next());
+    }
+
+    @Benchmark
+    public boolean checkInTrimContains() {
+        return checkInKeywords.contains(next().trim());
+    }
+
+    @Benchmark
+    public boolean checkInNormalizerMatches() {
+        String text = next();
+        for (char[] keyword : normalizedCheckInKeywords) {
+            if (TextNormalizer.matches(text, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.enabled", matches = "true")
+    public void run() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(TextNormalizerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,275 @@
+package com.bot.aabot.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.core.AppenderBase;
+import com.bot.aabot.TgBot;
+import com.bot.aabot.service.UpdateDispatcher;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * ClassName: UpdateReplayBenchmark
+ * Package: com.bot.aabot.benchmark
+ * Description: 更新重放压测。
+ * 从历史 log 表或录制的 JSONL 文件读取更新，按指定速率通过 TgBot.consume 驱动完整处理流程，
+ * Telegram 与 ChatModel 使用可配置延迟的桩实现，输出吞吐量、各阶段 p50/p99、丢弃任务数与 SQLITE_BUSY 次数。
+ * 默认不执行，运行方式：
+ * mvn test -Dtest=UpdateReplayBenchmark -Dbenchmark.enabled=true -Dbenchmark.log-db=./bot.db -Dbenchmark.rate=200
+ *
+ * @author fuchen
+ * @version 1.0
+ * @createTime 2025/9/15
+ */
+@EnabledIfSystemProperty(named = "benchmark.enabled", matches = "true")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:sqlite:${benchmark.db:target/benchmark.db}",
+        "bot.ingest.mode=webhook",
+        "bot.webhook.url=",
+        "spring.ai.model.chat=none",
+        "spring.ai.model.embedding=none",
+        "spring.ai.openai.chat.enabled=false",
+        "spring.ai.openai.embedding.enabled=false",
+        "spring.ai.vectorstore.type=none"
+})
+@Import(BenchmarkStubConfig.class)
+public class UpdateReplayBenchmark {
+
+    @Autowired
+    private TgBot tgBot;
+    @Autowired
+    private UpdateDispatcher updateDispatcher;
+
+    @Value("${benchmark.jsonl:}")
+    private String jsonlPath;
+
+    @Value("${benchmark.log-db:}")
+    private String logDbPath;
+
+    @Value("${benchmark.log-table:log}")
+    private String logTable;
+
+    @Value("${benchmark.limit:10000}")
+    private int limit;
+
+    @Value("${benchmark.rate:0}")
+    private int rate; // 每秒投递的更新数，0表示不限速
+
+    @Value("${benchmark.batch-size:1}")
+    private int batchSize; // 每次调用consume的更新数，大于1时走批量消费
+
+    @Value("${benchmark.default-chat-id:-1000000000001}")
+    private long defaultChatId; // 历史表中没有chat_id列时使用
+
+    @Value("${benchmark.drain-timeout:600000}")
+    private long drainTimeout;
+
+    @Test
+    public void replay() throws Exception {
+        List<Update> updates = loadUpdates();
+        assertFalse(updates.isEmpty(), "没有可重放的更新，请指定 benchmark.jsonl 或 benchmark.log-db");
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        SqliteBusyCounter busyCounter = new SqliteBusyCounter();
+        Logger rootLogger = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        busyCounter.setContext(rootLogger.getLoggerContext());
+        busyCounter.start();
+        rootLogger.addAppender(busyCounter);
+        updateDispatcher.setStageListener(recorder::record);
+
+        long[] shedBefore = shedCounts();
+        LatencyRecorder intake = new LatencyRecorder();
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * Math.max(1, batchSize) / rate : 0;
+        long startNanos = System.nanoTime();
+        long nextNanos = startNanos;
+        try {
+            for (int i = 0; i < updates.size(); i += Math.max(1, batchSize)) {
+                if (intervalNanos > 0) {
+                    long wait = nextNanos - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    nextNanos += intervalNanos;
+                }
+                List<Update> batch = updates.subList(i, Math.min(updates.size(), i + Math.max(1, batchSize)));
+                long consumeStart = System.nanoTime();
+                if (batch.size() == 1) {
+                    tgBot.consume(batch.get(0));
+                } else {
+                    tgBot.consume(batch);
+                }
+                intake.record("consume", 0, System.nanoTime() - consumeStart, false);
+            }
+            long feedNanos = System.nanoTime() - startNanos;
+            awaitDrain();
+            long endNanos = Math.max(recorder.getLastCompletionNanos(), startNanos + feedNanos);
+            long[] shedAfter = shedCounts();
+
+            double seconds = (endNanos - startNanos) / 1_000_000_000.0;
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("========== 更新重放压测报告 ==========%n"));
+            report.append(String.format("更新数: %d, 目标速率: %s, 批大小: %d%n",
+                    updates.size(), rate > 0 ? rate + "/s" : "不限", batchSize));
+            report.append(String.format("投递耗时: %.2fs, 处理完成耗时: %.2fs, 吞吐量: %.1f 更新/s%n",
+                    feedNanos / 1_000_000_000.0, seconds, updates.size() / seconds));
+            report.append(intake.report());
+            report.append(recorder.report());
+            report.append("丢弃任务数:");
+            for (UpdateDispatcher.Priority priority : UpdateDispatcher.Priority.values()) {
+                report.append(String.format(" %s=%d", priority, shedAfter[priority.ordinal()] - shedBefore[priority.ordinal()]));
+            }
+            report.append(String.format("%nSQLITE_BUSY 次数: %d%n", busyCounter.count.sum()));
+            report.append(String.format("Telegram 调用: %s, ChatModel 调用: %d%n",
+                    BenchmarkStubConfig.TELEGRAM_CALLS, BenchmarkStubConfig.CHAT_MODEL_CALLS.sum()));
+            System.out.println(report);
+        } finally {
+            updateDispatcher.setStageListener(null);
+            rootLogger.detachAppender(busyCounter);
+            busyCounter.stop();
+        }
+    }
+
+    /**
+     * 等待所有分发通道处理完毕
+     */
+    private void awaitDrain() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + drainTimeout;
+        int idleChecks = 0;
+        // 连续多次检查通道为空，避免正在执行的任务再投递后续阶段时误判
+        while (idleChecks < 3 && System.currentTimeMillis() < deadline) {
+            idleChecks = updateDispatcher.getPendingCount() == 0 ? idleChecks + 1 : 0;
+            Thread.sleep(200);
+        }
+    }
+
+    private long[] shedCounts() {
+        long[] counts = new long[UpdateDispatcher.Priority.values().length];
+        for (UpdateDispatcher.Priority priority : UpdateDispatcher.Priority.values()) {
+            counts[priority.ordinal()] = updateDispatcher.getShedCount(priority);
+        }
+        return counts;
+    }
+
+    /**
+     * 加载待重放的更新，update_id 重新编号以免被预写日志去重
+     */
+    private List<Update> loadUpdates() throws Exception {
+        List<Update> updates = jsonlPath.isEmpty() ? loadFromLogTable() : loadFromJsonl();
+        int updateId = (int) (System.currentTimeMillis() / 1000);
+        for (Update update : updates) {
+            update.setUpdateId(updateId++);
+        }
+        return updates;
+    }
+
+    private List<Update> loadFromJsonl() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        List<Update> updates = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(jsonlPath), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && updates.size() < limit) {
+                if (!line.isBlank()) {
+                    updates.add(mapper.readValue(line, Update.class));
+                }
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * 从历史消息表还原文本消息更新，旧表没有 chat_id、topic_id 列时使用默认会话
+     */
+    private List<Update> loadFromLogTable() throws Exception {
+        List<Update> updates = new ArrayList<>();
+        if (logDbPath.isEmpty()) {
+            return updates;
+        }
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + logDbPath);
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT * FROM " + logTable + " WHERE message IS NOT NULL ORDER BY log_id LIMIT ?")) {
+            statement.setInt(1, limit);
+            try (ResultSet rs = statement.executeQuery()) {
+                Set<String> columns = new HashSet<>();
+                ResultSetMetaData meta = rs.getMetaData();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    columns.add(meta.getColumnName(i).toLowerCase());
+                }
+                while (rs.next()) {
+                    long chatId = columns.contains("chat_id") && rs.getObject("chat_id") != null
+                            ? rs.getLong("chat_id") : defaultChatId;
+                    Message message = new Message();
+                    message.setMessageId(rs.getInt("message_id"));
+                    message.setChat(new Chat(chatId, "supergroup"));
+                    String userName = rs.getString("user_name");
+                    message.setFrom(new User(rs.getLong("user_id"), userName == null ? "user" : userName, false));
+                    message.setDate((int) (System.currentTimeMillis() / 1000));
+                    message.setText(rs.getString("message"));
+                    if (columns.contains("topic_id") && rs.getObject("topic_id") != null) {
+                        message.setMessageThreadId(rs.getInt("topic_id"));
+                        message.setIsTopicMessage(true);
+                    }
+                    Update update = new Update();
+                    update.setMessage(message);
+                    updates.add(update);
+                }
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * 统计日志中出现的 SQLITE_BUSY / database is locked 错误
+     */
+    private static class SqliteBusyCounter extends AppenderBase<ILoggingEvent> {
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            if (isBusy(event.getFormattedMessage())) {
+                count.increment();
+                return;
+            }
+            for (IThrowableProxy t = event.getThrowableProxy(); t != null; t = t.getCause()) {
+                if (isBusy(t.getMessage())) {
+                    count.increment();
+                    return;
+                }
+            }
+        }
+
+        private static boolean isBusy(String message) {
+            return message != null && (message.contains("SQLITE_BUSY") || message.contains("database is locked"));
+        }
+    }
+}